@@ -0,0 +1,34 @@
+package com.example.jsoncommon.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * CPU使用率・メモリ使用率が前回送信した値からほぼ変わっていない場合に、MetricsJson の代わりに送信する生存通知
+ * timestamp は最後のサンプルの時刻で、そこから IntervalSec 秒ずつさかのぼった SampleCount 件のサンプルを表す。
+ * JsonReceiverは前回のメトリクスの値を引き継いでリソース履歴に記録する。
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class HeartbeatJson extends NoticeBaseJson {
+    @JsonProperty("SampleCount")
+    private int sampleCount;
+
+    @JsonProperty("IntervalSec")
+    private int intervalSec;
+
+    public HeartbeatJson(UUID id, ZonedDateTime timestamp, String agentVersion, String instanceName,
+            int sampleCount, int intervalSec) {
+        super(id, NoticeType.HEARTBEAT, timestamp, agentVersion, instanceName);
+        this.sampleCount = sampleCount;
+        this.intervalSec = intervalSec;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.jsoncommon.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -17,4 +18,20 @@ public class Metrics {
 
     @JsonProperty("InstanceTypeChangeRequest")
     private InstanceTypeChangeRequest instanceTypeChangeRequest;
+
+    /** 通知間隔内のCPU使用率の集計値（高頻度の取得が無効な場合はnull） */
+    @JsonProperty("CpuStats")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private UsageStats cpuStats;
+
+    /** 通知間隔内のメモリ使用率の集計値（高頻度の取得が無効な場合はnull） */
+    @JsonProperty("MemoryStats")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private UsageStats memoryStats;
+
+    public Metrics(Double cpuUsage, Double memoryUsage, InstanceTypeChangeRequest instanceTypeChangeRequest) {
+        this.cpuUsage = cpuUsage;
+        this.memoryUsage = memoryUsage;
+        this.instanceTypeChangeRequest = instanceTypeChangeRequest;
+    }
 }
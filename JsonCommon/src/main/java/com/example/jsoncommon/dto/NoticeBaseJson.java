@@ -1,5 +1,6 @@
 package com.example.jsoncommon.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -26,4 +27,14 @@ public abstract class NoticeBaseJson {
 
     @JsonProperty("InstanceName")
     private String instanceName;
+
+    /** 送信に失敗してスプールから再送信された通知の場合true（falseの場合は出力しない） */
+    @JsonProperty("Replayed")
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean replayed;
+
+    public NoticeBaseJson(UUID id, NoticeType noticeType, ZonedDateTime timestamp, String agentVersion,
+            String instanceName) {
+        this(id, noticeType, timestamp, agentVersion, instanceName, false);
+    }
 }
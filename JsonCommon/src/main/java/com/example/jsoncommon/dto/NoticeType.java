@@ -4,5 +4,7 @@ public enum NoticeType {
     METRICS,
     UP,
     DOWN,
-    THRESHOLD
+    THRESHOLD,
+    SLOT,
+    HEARTBEAT
 }
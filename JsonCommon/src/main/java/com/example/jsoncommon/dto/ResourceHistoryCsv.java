@@ -1,16 +1,25 @@
 package com.example.jsoncommon.dto;
 
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
+@CsvRecord
 @NoArgsConstructor
 @AllArgsConstructor
 public class ResourceHistoryCsv {
+    @CsvColumn(value = "Hostname", dictionary = true)
     private String hostname;
+    @CsvColumn("Timestamp")
     private String timestamp;
+    @CsvColumn("CpuUsage")
     private Double cpuUsage;
+    @CsvColumn("MemoryUsage")
     private Double memoryUsage;
+    @CsvColumn(value = "InstanceTypeChangeRequest", dictionary = true)
     private InstanceTypeChangeRequest instanceTypeChangeRequest;
 }
@@ -0,0 +1,43 @@
+package com.example.jsoncommon.dto;
+
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * リソース履歴の集計値（1分・1時間単位）
+ */
+@Data
+@CsvRecord
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceRollupCsv {
+    @CsvColumn(value = "Hostname", dictionary = true)
+    private String hostname;
+    /** 集計区間の開始時刻 */
+    @CsvColumn("BucketStart")
+    private String bucketStart;
+    @CsvColumn("SampleCount")
+    private Integer sampleCount;
+    @CsvColumn("CpuMin")
+    private Double cpuMin;
+    @CsvColumn("CpuMax")
+    private Double cpuMax;
+    @CsvColumn("CpuAvg")
+    private Double cpuAvg;
+    @CsvColumn("MemoryMin")
+    private Double memoryMin;
+    @CsvColumn("MemoryMax")
+    private Double memoryMax;
+    @CsvColumn("MemoryAvg")
+    private Double memoryAvg;
+    @CsvColumn("WithinCount")
+    private Integer withinCount;
+    @CsvColumn("UpperCount")
+    private Integer upperCount;
+    @CsvColumn("LowerCount")
+    private Integer lowerCount;
+}
@@ -0,0 +1,27 @@
+package com.example.jsoncommon.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * JsonReceiverがエージェントに割り当てる送信スロットの通知
+ * エージェントは通知間隔を SlotCount 個に分割した SlotIndex 番目の位置でメトリクスを送信する。
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class SlotJson extends NoticeBaseJson {
+    @JsonProperty("SlotIndex")
+    private int slotIndex;
+
+    @JsonProperty("SlotCount")
+    private int slotCount;
+
+    public SlotJson(int slotIndex, int slotCount) {
+        this.slotIndex = slotIndex;
+        this.slotCount = slotCount;
+        this.setNoticeType(NoticeType.SLOT);
+    }
+}
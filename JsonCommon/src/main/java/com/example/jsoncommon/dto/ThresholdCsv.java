@@ -1,10 +1,14 @@
 package com.example.jsoncommon.dto;
 
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
+@CsvRecord
 @NoArgsConstructor
 @AllArgsConstructor
 public class ThresholdCsv {
@@ -13,20 +17,36 @@ public class ThresholdCsv {
             boolean boolean2, boolean boolean3, boolean boolean4) {
     }
 
+    @CsvColumn(value = "HOSTNAME", dictionary = true)
     private String hostname;
+    @CsvColumn(value = "SCALING_MODE", dictionary = true)
     private ScalingMode scalingMode;
+    @CsvColumn("UPPER_CHANGEABLE_ENABLE")
     private Boolean upperChangeableEnable;
+    @CsvColumn("UPPER_CPU_THRESHOLD")
     private Double upperCpuThreshold;
+    @CsvColumn("UPPER_CPU_DURATION_MIN")
     private Integer upperCpuDurationMin;
+    @CsvColumn("UPPER_MEM_THRESHOLD")
     private Double upperMemThreshold;
+    @CsvColumn("UPPER_MEM_DURATION_MIN")
     private Integer upperMemDurationMin;
+    @CsvColumn(value = "UPPER_CONDITION_LOGIC", dictionary = true)
     private ConditionLogic upperConditionLogic;
+    @CsvColumn("LOWER_CHANGEABLE_ENABLE")
     private Boolean lowerChangeableEnable;
+    @CsvColumn("LOWER_CPU_THRESHOLD")
     private Double lowerCpuThreshold;
+    @CsvColumn("LOWER_CPU_DURATION_MIN")
     private Integer lowerCpuDurationMin;
+    @CsvColumn("LOWER_MEM_THRESHOLD")
     private Double lowerMemThreshold;
+    @CsvColumn("LOWER_MEM_DURATION_MIN")
     private Integer lowerMemDurationMin;
+    @CsvColumn(value = "LOWER_CONDITION_LOGIC", dictionary = true)
     private ConditionLogic lowerConditionLogic;
+    @CsvColumn("MICRO_CHANGEABLE_ENABLE")
     private Boolean microChangeableEnable;
+    @CsvColumn("MICRO_FORCE_ON_STANBY")
     private Boolean microForceOnStandby;
 }
@@ -0,0 +1,29 @@
+package com.example.jsoncommon.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 通知間隔内に取得した使用率（%）のサンプルの集計値
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageStats {
+    @JsonProperty("Min")
+    private double min;
+
+    @JsonProperty("Max")
+    private double max;
+
+    @JsonProperty("Avg")
+    private double avg;
+
+    @JsonProperty("P95")
+    private double p95;
+
+    @JsonProperty("SampleCount")
+    private int sampleCount;
+}
@@ -0,0 +1,250 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CSVファイルへの追記用チャネルのLRUキャッシュ
+ * パスごとに追記モードのFileChannelを保持し、キャッシュにある場合は1回のwriteで追記する。
+ * 上限を超えた場合は最も長く使われていないチャネルを閉じ、一定時間使われていないチャネルはアクセス時に閉じる。
+ * ファイルの末尾位置はキャッシュ内で管理するため、キャッシュを経由しない追記とは併用できない。
+ * 追記とファイルの置き換えはファイルごとのロック（パスのハッシュで分けたストライプロック）で排他し、
+ * 置き換えの前に開いたチャネルで置き換え後に追記して行が失われることを防ぐ。
+ */
+final class AppendChannelCache {
+
+    /** ファイルごとのロックのストライプ数 */
+    private static final int LOCK_STRIPES = 64;
+
+    private final int maxOpenChannels;
+    private final long idleTimeoutNanos;
+
+    /** アクセス順のマップ（先頭が最も長く使われていないチャネル） */
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** 追記と置き換えを排他するファイルごとのロック */
+    private final ReentrantLock[] fileLocks = new ReentrantLock[LOCK_STRIPES];
+
+    private static final class Entry {
+        final FileChannel channel;
+        /** ファイルの末尾位置（次に追記する行の先頭） */
+        long size;
+        long lastUsedNanos;
+        boolean closed;
+
+        Entry(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    AppendChannelCache(int maxOpenChannels, long idleTimeoutMillis) {
+        this.maxOpenChannels = maxOpenChannels;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            fileLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * ファイルに1行追記する（ファイルが空の場合はヘッダー行も書き込む）
+     *
+     * @param path   ファイルのパス
+     * @param header エンコード済みのヘッダー行（改行コードを含む）
+     * @param line   エンコード済みの追記する行（改行コードを含む）
+     * @return 追記した行の先頭のバイト位置
+     * @throws IOException IO例外
+     */
+    long append(Path path, byte[] header, ByteBuffer line) throws IOException {
+        ReentrantLock fileLock = fileLock(path);
+        fileLock.lock();
+        try {
+            return appendLocked(path, header, line);
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private long appendLocked(Path path, byte[] header, ByteBuffer line) throws IOException {
+        while (true) {
+            Entry entry = acquire(path);
+            synchronized (entry) {
+                // 取得後に他のスレッドが閉じた場合は開き直す
+                if (entry.closed) {
+                    continue;
+                }
+                int length = line.remaining();
+                if (entry.size == 0) {
+                    // ヘッダーと1行目をまとめて書き込む
+                    ByteBuffer[] buffers = { ByteBuffer.wrap(header), line };
+                    while (line.hasRemaining()) {
+                        entry.channel.write(buffers);
+                    }
+                    entry.size = header.length;
+                } else {
+                    while (line.hasRemaining()) {
+                        entry.channel.write(line);
+                    }
+                }
+                long offset = entry.size;
+                entry.size += length;
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * 追記した内容をディスクへ同期する
+     * チャネルがキャッシュにない場合（閉じられた場合）もファイルを開いて同期する
+     *
+     * @param path ファイルのパス
+     * @throws IOException IO例外
+     */
+    void force(Path path) throws IOException {
+        ReentrantLock fileLock = fileLock(path);
+        fileLock.lock();
+        try {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(path);
+            }
+            if (entry != null) {
+                synchronized (entry) {
+                    if (!entry.closed) {
+                        entry.channel.force(false);
+                        return;
+                    }
+                }
+            }
+            if (Files.exists(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                }
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * ファイルを別のファイルで置き換え、キャッシュしているチャネルを閉じる
+     * 置き換えが完了するまで同じファイルへの追記を待たせ、置き換え後のファイルに古いチャネルで追記されて
+     * 行が失われることを防ぐ。
+     *
+     * @param path   置き換えるファイルのパス
+     * @param source 置き換え元のファイル（移動される）
+     * @throws IOException IO例外
+     */
+    void replace(Path path, Path source) throws IOException {
+        ReentrantLock fileLock = fileLock(path);
+        fileLock.lock();
+        try {
+            try {
+                Files.move(source, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            invalidate(path);
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * ファイルへの追記・置き換えを排他するロックを取得する
+     *
+     * @param path ファイルのパス
+     * @return ロック
+     */
+    ReentrantLock fileLock(Path path) {
+        return fileLocks[Math.floorMod(path.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * 指定パスのチャネルを閉じる（ファイルを上書き・削除する前に呼び出す）
+     *
+     * @param path ファイルのパス
+     * @throws IOException IO例外
+     */
+    synchronized void invalidate(Path path) throws IOException {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            close(entry);
+        }
+    }
+
+    /**
+     * 全てのチャネルを閉じる
+     *
+     * @throws IOException IO例外
+     */
+    synchronized void closeAll() throws IOException {
+        for (Entry entry : entries.values()) {
+            close(entry);
+        }
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Entry acquire(Path path) throws IOException {
+        long now = System.nanoTime();
+        closeIdle(now);
+
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            Path dir = path.getParent();
+            if (dir != null && !Files.exists(dir)) {
+                Files.createDirectories(dir);
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            entry = new Entry(channel, channel.size());
+            entries.put(path, entry);
+
+            if (entries.size() > maxOpenChannels) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                close(eldest.next());
+                eldest.remove();
+            }
+        }
+        entry.lastUsedNanos = now;
+        return entry;
+    }
+
+    /**
+     * 一定時間使われていないチャネルを閉じる
+     */
+    private void closeIdle(long now) throws IOException {
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (now - entry.lastUsedNanos < idleTimeoutNanos) {
+                // アクセス順のため以降のチャネルは全て使用中
+                break;
+            }
+            close(entry);
+            iterator.remove();
+        }
+    }
+
+    private static void close(Entry entry) throws IOException {
+        synchronized (entry) {
+            entry.closed = true;
+            entry.channel.close();
+        }
+    }
+}
@@ -1,23 +1,46 @@
 package com.example.jsoncommon.repository;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 public abstract class CsvRepositoryBase {
 
+    /** キーで更新できるストレージの1項目あたりの推定バイト数（行数からバイト数を見積もる際に使用する） */
+    static final int ESTIMATED_BYTES_PER_COLUMN = 12;
+
+    /** 保存先ごとの文字列辞書（同じ保存先を使う全リポジトリで共有する） */
+    private static final Map<Object, StringDictionary> DICTIONARIES = new ConcurrentHashMap<>();
+
     @Value("${app.csv.output-dir}")
     private String outputDir;
 
+    /** カンマ区切りの出力ディレクトリ（複数指定した場合はファイルを振り分ける。未指定の場合は outputDir のみ） */
+    @Value("${app.csv.output-dirs:}")
+    private String outputDirs;
+
+    /** ファイルを振り分けるリング（初回使用時に作成する） */
+    private ShardRing shardRing;
+
+    /** 辞書対象の列を整数IDに置き換えて保存するか */
+    @Value("${app.csv.dictionary.enabled:false}")
+    private boolean dictionaryEnabled;
+
+    /** 保存先のストレージ（未設定の場合は出力ディレクトリのCSVファイルを使用する） */
+    private TableStorage storage;
+
+    /** 出力ディレクトリのCSVファイルを使用するストレージ（初回使用時に作成する） */
+    private TableStorage csvStorage;
+
     /**
      * outputDirを設定するセッター
      * 
@@ -25,6 +48,117 @@ public abstract class CsvRepositoryBase {
      */
     public void setOutputDir(String outputDir) {
         this.outputDir = outputDir;
+        this.csvStorage = null;
+        this.shardRing = null;
+    }
+
+    /**
+     * 出力ディレクトリを複数設定するセッター
+     * 
+     * @param outputDirs カンマ区切りの出力ディレクトリ
+     */
+    public void setOutputDirs(String outputDirs) {
+        this.outputDirs = outputDirs;
+        this.csvStorage = null;
+        this.shardRing = null;
+    }
+
+    /**
+     * 辞書対象の列を整数IDに置き換えて保存するかを設定する
+     * 読み込みは設定に関わらず辞書参照を解決するため、途中で切り替えても既存の行はそのまま読み込める
+     * 
+     * @param dictionaryEnabled 置き換える場合true
+     */
+    public void setDictionaryEnabled(boolean dictionaryEnabled) {
+        this.dictionaryEnabled = dictionaryEnabled;
+    }
+
+    /**
+     * 保存先のストレージを設定する
+     * TableStorage のBeanが登録されている場合（app.storage.backend=mvstore 等）に注入される
+     * 
+     * @param storage ストレージ
+     */
+    @Autowired(required = false)
+    public void setStorage(TableStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * 保存先のストレージを取得する
+     * 
+     * @return ストレージ
+     */
+    protected TableStorage getStorage() {
+        if (storage != null) {
+            return storage;
+        }
+        if (csvStorage == null) {
+            ShardRing ring = getShardRing();
+            csvStorage = ring.getDirectories().size() > 1
+                    ? new ShardedTableStorage(ring)
+                    : new CsvTableStorage(ring.getDirectories().get(0));
+        }
+        return csvStorage;
+    }
+
+    /**
+     * キーで行を更新・削除・範囲検索できるストレージを取得する
+     * 
+     * @return ストレージ（CSVファイル等、キーで更新できない場合はnull）
+     */
+    protected KeyedTableStorage getKeyedStorage() {
+        return getStorage() instanceof KeyedTableStorage keyed ? keyed : null;
+    }
+
+    /**
+     * ファイルを出力ディレクトリに振り分けるリングを取得する
+     * 
+     * @return リング（app.csv.output-dirs が未指定の場合は outputDir のみ）
+     */
+    protected ShardRing getShardRing() {
+        if (shardRing == null) {
+            shardRing = outputDirs == null || outputDirs.isBlank()
+                    ? new ShardRing(List.of(Paths.get(outputDir)))
+                    : ShardRing.parse(outputDirs);
+        }
+        return shardRing;
+    }
+
+    /**
+     * 保存先の文字列辞書を取得する
+     * 
+     * @return 文字列辞書
+     */
+    protected StringDictionary getDictionary() {
+        Object key = storage != null ? storage : getShardRing().getDirectories();
+        return DICTIONARIES.computeIfAbsent(key, k -> new StringDictionary(getStorage()));
+    }
+
+    /**
+     * マッパーで辞書対象とされた列の値を辞書参照に置き換える（app.csv.dictionary.enabled=false の場合はそのまま返す）
+     * キーで更新できるストレージでは先頭の列をキーとして保持するため、先頭の列は置き換えない
+     * 
+     * @param mapper DTOのマッパー
+     * @param values 列の順に並べた値（書き換える）
+     * @return 置き換えた値
+     * @throws IOException 辞書への登録に失敗した場合
+     */
+    protected Object[] encodeColumns(CsvRowMapper<?> mapper, Object[] values) throws IOException {
+        long columns = mapper.getDictionaryColumns();
+        if (getKeyedStorage() != null) {
+            columns &= ~1L;
+        }
+        if (!dictionaryEnabled || columns == 0L) {
+            return values;
+        }
+        StringDictionary dictionary = getDictionary();
+        for (int i = 0; i < values.length && i < Long.SIZE; i++) {
+            if ((columns & (1L << i)) != 0 && values[i] != null) {
+                values[i] = dictionary.encode(values[i].toString());
+            }
+        }
+        return values;
     }
 
     /**
@@ -33,27 +167,24 @@ public abstract class CsvRepositoryBase {
      * @param fileName ファイル名
      * @param headers  ヘッダー配列
      * @param values   書き込む値
+     * @return 書き込んだ行の位置
      * @throws IOException IO例外
      */
-    protected void writeToCsv(String fileName, String[] headers, Object... values) throws IOException {
-        Path dirPath = Paths.get(outputDir);
-        if (!Files.exists(dirPath)) {
-            Files.createDirectories(dirPath);
-        }
-
-        Path filePath = dirPath.resolve(fileName);
-        boolean fileExists = Files.exists(filePath);
-
-        CSVFormat format = CSVFormat.DEFAULT.builder()
-                .setHeader(headers)
-                .setSkipHeaderRecord(fileExists)
-                .build();
+    protected long writeToCsv(String fileName, String[] headers, Object... values) throws IOException {
+        return getStorage().append(fileName, headers, values);
+    }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath, Charset.forName("EUC-JP"),
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-                CSVPrinter printer = new CSVPrinter(writer, format)) {
-            printer.printRecord(values);
-        }
+    /**
+     * CSV ファイルに追記モードでデータを書き込む（行をバイト列に直接組み立てる）
+     * 
+     * @param fileName ファイル名
+     * @param writer   行のライター（ヘッダーを含む）
+     * @param values   書き込む値
+     * @return 書き込んだ行の位置
+     * @throws IOException IO例外
+     */
+    protected long writeToCsv(String fileName, CsvRowWriter writer, Object... values) throws IOException {
+        return getStorage().append(fileName, writer, values);
     }
 
     /**
@@ -66,46 +197,247 @@ public abstract class CsvRepositoryBase {
      * @throws IOException IO例外
      */
     protected void overwriteToCsv(String fileName, String[] headers, List<Object[]> values) throws IOException {
-        Path dirPath = Paths.get(outputDir);
-        if (!Files.exists(dirPath)) {
-            Files.createDirectories(dirPath);
-        }
+        getStorage().overwrite(fileName, headers, values);
+    }
 
-        Path filePath = dirPath.resolve(fileName);
+    /**
+     * CSV ファイルからデータを読み込む
+     * 
+     * @param fileName ファイル名
+     * @return CSVファイルの全行（ヘッダーを含む）
+     * @throws IOException IO例外
+     */
+    protected List<String> readFromCsv(String fileName) throws IOException {
+        return getStorage().readAll(fileName);
+    }
 
-        // 既存ファイルが存在する場合は削除
-        if (Files.exists(filePath)) {
-            Files.delete(filePath);
+    /**
+     * CSV ファイルのパスを取得する（インデックス等の付随ファイルの配置に使用する）
+     * 出力ディレクトリを複数指定した場合、付随ファイルは元のCSVファイルと同じディレクトリになる
+     * 
+     * @param fileName ファイル名
+     * @return CSVファイルのパス
+     */
+    protected Path getCsvPath(String fileName) {
+        if (outputDirs == null || outputDirs.isBlank()) {
+            return Paths.get(outputDir).resolve(fileName);
         }
+        return getShardRing().resolve(fileName);
+    }
 
-        CSVFormat format = CSVFormat.DEFAULT.builder()
-                .setHeader(headers)
-                .build();
+    /**
+     * CSV ファイルの末尾の位置を取得する
+     * 
+     * @param fileName ファイル名
+     * @return 末尾の位置。ファイルが存在しない場合は0
+     * @throws IOException IO例外
+     */
+    protected long getCsvSize(String fileName) throws IOException {
+        return getStorage().endPosition(fileName);
+    }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath, Charset.forName("EUC-JP"),
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-                CSVPrinter printer = new CSVPrinter(writer, format)) {
-            for (Object[] valueArray : values) {
-                printer.printRecord(valueArray);
-            }
+    /**
+     * CSV ファイルのおおよそのバイト数を取得する（保持期間処理のレート制限等、ストレージによらない単位が必要な場合に使用する）
+     * キーで更新できるストレージでは末尾の位置が行数となるため、行数に1行あたりの推定バイト数を掛けて見積もる
+     * 
+     * @param fileName ファイル名
+     * @param mapper   DTOのマッパー（列数から1行あたりのバイト数を見積もる）
+     * @return バイト数。ファイルが存在しない場合は0
+     * @throws IOException IO例外
+     */
+    protected long getCsvBytes(String fileName, CsvRowMapper<?> mapper) throws IOException {
+        long size = getCsvSize(fileName);
+        if (getKeyedStorage() == null) {
+            return size;
         }
+        return size * mapper.getHeaders().length * ESTIMATED_BYTES_PER_COLUMN;
     }
 
     /**
-     * CSV ファイルからデータを読み込む
+     * CSV ファイルを指定した位置から順に1行ずつ読み込む
      * 
      * @param fileName ファイル名
-     * @return CSVファイルの全行（ヘッダーを含む）
+     * @param offset   読み込みを開始する位置（writeToCsv が返した位置、または0）
+     * @param visitor  各行を受け取る処理。false を返すと読み込みを終了する
      * @throws IOException IO例外
      */
-    protected List<String> readFromCsv(String fileName) throws IOException {
-        Path dirPath = Paths.get(outputDir);
-        Path filePath = dirPath.resolve(fileName);
+    protected void readFromCsvForward(String fileName, long offset, TableStorage.LineVisitor visitor)
+            throws IOException {
+        getStorage().readForward(fileName, offset, visitor);
+    }
 
-        if (!Files.exists(filePath)) {
-            return List.of();
+    /**
+     * CSV ファイルを末尾から逆順に1行ずつ読み込む
+     * 読み込み量は visitor が読み込みを終了するまでに走査した行数に比例する
+     * 
+     * @param fileName ファイル名
+     * @param visitor  各行（改行コードを除く）を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    protected void readFromCsvReverse(String fileName, Predicate<String> visitor) throws IOException {
+        getStorage().readReverse(fileName, visitor);
+    }
+
+    /**
+     * CSV ファイルの全行を先頭から順に解析しながら読み込む（ヘッダー行を含む）
+     * 
+     * @param fileName ファイル名
+     * @param visitor  解析済みの各行を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    protected void readRowsFromCsv(String fileName, RowVisitor visitor) throws IOException {
+        readRowsFromCsvForward(fileName, 0L, visitor);
+    }
+
+    /**
+     * CSV ファイルを指定した位置から順に解析しながら読み込む
+     * 行は文字列に変換せず、読み込み用のバッファ上で CsvRowReader により解析する
+     * 辞書参照（#ID）の項目は保存先の文字列辞書で解決する
+     * 
+     * @param fileName ファイル名
+     * @param offset   読み込みを開始する位置（writeToCsv が返した位置、または0）
+     * @param visitor  解析済みの各行を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    protected void readRowsFromCsvForward(String fileName, long offset, RowVisitor visitor) throws IOException {
+        CsvRowReader row = new CsvRowReader(getDictionary());
+        getStorage().readForwardBytes(fileName, offset,
+                (position, buffer, start, length) -> visitor.visit(position, row.reset(buffer, start, length)));
+    }
+
+    /**
+     * CSV ファイルを末尾から逆順に解析しながら読み込む
+     * 
+     * @param fileName ファイル名
+     * @param visitor  解析済みの各行を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    protected void readRowsFromCsvReverse(String fileName, RowVisitor visitor) throws IOException {
+        CsvRowReader row = new CsvRowReader(getDictionary());
+        getStorage().readReverseBytes(fileName,
+                (position, buffer, start, length) -> visitor.visit(position, row.reset(buffer, start, length)));
+    }
+
+    /**
+     * DTOを1行として CSV ファイルに追記する
+     * 辞書対象の列は設定に応じて辞書参照に置き換える
+     * 
+     * @param fileName ファイル名
+     * @param mapper   DTOのマッパー
+     * @param value    DTO
+     * @return 書き込んだ行の位置
+     * @throws IOException IO例外
+     */
+    protected <T> long writeToCsv(String fileName, CsvRowMapper<T> mapper, T value) throws IOException {
+        return writeToCsv(fileName, mapper.getWriter(), encodeColumns(mapper, mapper.toValues(value)));
+    }
+
+    /**
+     * DTOをキーの行として保存する
+     * キーで更新できるストレージでは同じキーの行を置き換え、それ以外（CSVファイル）では追記する
+     * 
+     * @param fileName ファイル名
+     * @param mapper   DTOのマッパー
+     * @param key      キー（先頭の列の値）
+     * @param value    DTO
+     * @throws IOException IO例外
+     */
+    protected <T> void upsertToCsv(String fileName, CsvRowMapper<T> mapper, String key, T value) throws IOException {
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed == null) {
+            writeToCsv(fileName, mapper, value);
+            return;
+        }
+        keyed.upsert(fileName, mapper.getHeaders(), key, encodeColumns(mapper, mapper.toValues(value)));
+    }
+
+    /**
+     * 時系列のテーブルから指定期間の行を古いものから順に解析しながら読み込む（キーで範囲検索できるストレージのみ）
+     * 
+     * @param fileName   ファイル名
+     * @param hostname   ホスト名
+     * @param fromMillis 期間の開始（エポックミリ秒、この時刻を含む）
+     * @param toMillis   期間の終了（エポックミリ秒、この時刻を含む）
+     * @param visitor    解析済みの各行を受け取る処理（位置は行の時刻）。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    protected void readRowsFromSeries(String fileName, String hostname, long fromMillis, long toMillis,
+            RowVisitor visitor) throws IOException {
+        CsvRowReader row = new CsvRowReader(getDictionary());
+        getKeyedStorage().readSeries(fileName, hostname, fromMillis, toMillis, (position, line) -> {
+            byte[] bytes = line.getBytes(CsvTableStorage.CHARSET);
+            return visitor.visit(position, row.reset(bytes, 0, bytes.length));
+        });
+    }
+
+    /**
+     * DTOのリストで CSV ファイルを上書きする
+     * 
+     * @param fileName ファイル名
+     * @param mapper   DTOのマッパー
+     * @param values   DTOのリスト
+     * @throws IOException IO例外
+     */
+    protected <T> void overwriteToCsv(String fileName, CsvRowMapper<T> mapper, List<T> values) throws IOException {
+        List<Object[]> rows = new ArrayList<>(values.size());
+        for (T value : values) {
+            rows.add(encodeColumns(mapper, mapper.toValues(value)));
         }
+        overwriteToCsv(fileName, mapper.getHeaders(), rows);
+    }
+
+    /**
+     * CSV ファイルの全レコードをDTOとして読み込む（ヘッダー行や項目の足りない行は除く）
+     * 
+     * @param fileName ファイル名
+     * @param mapper   DTOのマッパー
+     * @return DTOのリスト（ファイルの順）
+     * @throws IOException IO例外
+     */
+    protected <T> List<T> findAllFromCsv(String fileName, CsvRowMapper<T> mapper) throws IOException {
+        List<T> result = new ArrayList<>();
+        readRowsFromCsv(fileName, (position, row) -> {
+            if (mapper.isRecord(row)) {
+                result.add(mapper.read(row));
+            }
+            return true;
+        });
+        return result;
+    }
 
-        return Files.readAllLines(filePath, Charset.forName("EUC-JP"));
+    /**
+     * 先頭の項目が指定した値と一致する最初のレコードをDTOとして読み込む
+     * 
+     * @param fileName ファイル名
+     * @param mapper   DTOのマッパー
+     * @param key      先頭の項目の値
+     * @return DTO（存在しない場合はOptional.empty()）
+     * @throws IOException IO例外
+     */
+    protected <T> Optional<T> findFirstFromCsv(String fileName, CsvRowMapper<T> mapper, String key)
+            throws IOException {
+        List<T> found = new ArrayList<>(1);
+        readRowsFromCsv(fileName, (position, row) -> {
+            if (mapper.isRecord(row) && row.fieldEquals(0, key)) {
+                found.add(mapper.read(row));
+                return false;
+            }
+            return true;
+        });
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    /**
+     * 解析済みの各行を位置とともに受け取る処理
+     * CsvRowReader は次の行の解析に再利用されるため、visit から戻った後は参照しないこと
+     */
+    @FunctionalInterface
+    protected interface RowVisitor {
+        /**
+         * @param position 行の位置
+         * @param row      解析済みの行
+         * @return 読み込みを続ける場合true
+         */
+        boolean visit(long position, CsvRowReader row);
     }
 }
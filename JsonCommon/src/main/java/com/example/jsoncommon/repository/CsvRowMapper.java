@@ -0,0 +1,73 @@
+package com.example.jsoncommon.repository;
+
+/**
+ * DTOとCSVの1行を相互に変換するマッパー
+ * 実装は @CsvRecord を付けたDTOごとにコンパイル時に生成される（「DTOのクラス名 + Mapper」の INSTANCE）。
+ *
+ * @param <T> DTOの型
+ */
+public interface CsvRowMapper<T> {
+
+    /**
+     * ヘッダー配列を取得する
+     *
+     * @return ヘッダー配列
+     */
+    String[] getHeaders();
+
+    /**
+     * 行のライターを取得する
+     *
+     * @return ヘッダーを保持するライター
+     */
+    CsvRowWriter getWriter();
+
+    /**
+     * 読み込みに必要な最小の項目数を取得する（省略可能な列を除いた列数）
+     *
+     * @return 項目数
+     */
+    int getRequiredColumns();
+
+    /**
+     * 辞書で整数IDに置き換えて保存できる列を取得する
+     *
+     * @return 列の位置に対応するビットを立てた値（@CsvColumn(dictionary = true) の列）
+     */
+    long getDictionaryColumns();
+
+    /**
+     * 解析済みの1行をDTOに変換する
+     *
+     * @param row 解析済みの行
+     * @return DTO
+     * @throws RuntimeException 項目を変換できない場合（NumberFormatException 等）
+     */
+    T read(CsvRowReader row);
+
+    /**
+     * DTOを書き込む値の配列に変換する
+     *
+     * @param value DTO
+     * @return 列の順に並べた値
+     */
+    Object[] toValues(T value);
+
+    /**
+     * ヘッダー行か判定する
+     *
+     * @param row 解析済みの行
+     * @return 先頭の項目が先頭のヘッダー名と一致する場合true
+     */
+    boolean isHeader(CsvRowReader row);
+
+    /**
+     * DTOとして読み込める行か判定する（ヘッダー行や項目の足りない行を除く）
+     *
+     * @param row 解析済みの行
+     * @return 読み込める場合true
+     */
+    default boolean isRecord(CsvRowReader row) {
+        return row.size() >= getRequiredColumns() && !isHeader(row);
+    }
+}
@@ -0,0 +1,476 @@
+package com.example.jsoncommon.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * EUC-JPのCSVの1行をバイト列のまま解析するリーダー
+ * 行を配列に分割せずに各項目の範囲だけを記録し、項目は必要になった時点で型ごとに変換する。
+ * 引用符で囲まれた項目（項目内のカンマ・二重引用符）にも対応する。
+ * EUC-JPの2バイト文字はカンマ・引用符と同じバイトを含まないため、バイト単位で区切り位置を判定できる。
+ * 辞書を指定した場合、引用符なしの「#ID」の項目は辞書参照として値を解決する（比較はIDの一致で行う）。
+ * 1つのインスタンスを行ごとに reset して使い回すため、スレッド間で共有しないこと。
+ */
+public final class CsvRowReader {
+
+    /** 10の累乗（double で正確に表現できる範囲） */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** double で正確に表現できる整数の上限 */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /** 比較対象の文字列のIDをキャッシュする数 */
+    private static final int LOOKUP_CACHE_SIZE = 4;
+
+    /** 辞書参照を解決する辞書（null の場合は「#ID」をそのまま文字列として扱う） */
+    private final StringDictionary dictionary;
+
+    /** 比較対象の文字列（同一インスタンス）とIDのキャッシュ */
+    private final String[] lookupValues = new String[LOOKUP_CACHE_SIZE];
+    private final int[] lookupIds = new int[LOOKUP_CACHE_SIZE];
+    private int lookupNext;
+
+    private byte[] buffer;
+    private int count;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    /** 項目内に二重引用符のエスケープ（""）を含むか */
+    private boolean[] escaped = new boolean[16];
+    /** 項目が引用符で囲まれているか */
+    private boolean[] quoted = new boolean[16];
+
+    public CsvRowReader() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary 辞書参照を解決する辞書
+     */
+    public CsvRowReader(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * 1行分のバイト列を解析する
+     * 解析結果はバイト列を参照するため、次に reset するまでバイト列を変更しないこと
+     *
+     * @param buffer バイト列
+     * @param offset 行の先頭
+     * @param length 行の長さ（改行コードを除く）
+     * @return このリーダー
+     */
+    public CsvRowReader reset(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.count = 0;
+        int end = offset + length;
+        int position = offset;
+
+        while (true) {
+            int start;
+            int fieldEnd;
+            boolean hasEscape = false;
+            boolean hasQuote = position < end && buffer[position] == '"';
+            if (hasQuote) {
+                start = ++position;
+                while (position < end) {
+                    if (buffer[position] == '"') {
+                        if (position + 1 < end && buffer[position + 1] == '"') {
+                            hasEscape = true;
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+                fieldEnd = position;
+                // 閉じ引用符から次の区切りまでは読み飛ばす
+                while (position < end && buffer[position] != ',') {
+                    position++;
+                }
+            } else {
+                start = position;
+                while (position < end && buffer[position] != ',') {
+                    position++;
+                }
+                fieldEnd = position;
+            }
+            addField(start, fieldEnd, hasEscape, hasQuote);
+
+            if (position >= end) {
+                return this;
+            }
+            // 区切りのカンマを読み飛ばす（行末のカンマの後には空の項目がある）
+            position++;
+        }
+    }
+
+    /**
+     * 文字列の1行を解析する
+     *
+     * @param line 行（改行コードを除く）
+     * @return このリーダー
+     */
+    public CsvRowReader reset(String line) {
+        byte[] bytes = line.getBytes(CsvTableStorage.CHARSET);
+        return reset(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 項目数を取得する
+     *
+     * @return 項目数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 項目が空か判定する
+     *
+     * @param index 項目の位置
+     * @return 空の場合true
+     */
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return starts[index] == ends[index];
+    }
+
+    /**
+     * 項目が指定した文字列と一致するか判定する（ASCIIの文字列は変換せずに比較する）
+     *
+     * @param index 項目の位置
+     * @param value 比較する文字列
+     * @return 一致する場合true
+     */
+    public boolean fieldEquals(int index, String value) {
+        checkIndex(index);
+        int id = dictionaryId(index);
+        if (id >= 0) {
+            return id == lookupId(value);
+        }
+        if (escaped[index]) {
+            return getString(index).equals(value);
+        }
+        int start = starts[index];
+        int length = ends[index] - start;
+        if (length != value.length()) {
+            // ASCII以外の文字を含む場合はバイト数と文字数が一致しない
+            return !isAscii(value) && getString(index).equals(value);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                return getString(index).equals(value);
+            }
+            if (buffer[start + i] != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 項目を文字列として取得する
+     *
+     * @param index 項目の位置
+     * @return 文字列（空の項目は空文字列）
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        if (start == end) {
+            return "";
+        }
+        int id = dictionaryId(index);
+        if (id >= 0) {
+            return dictionary.valueOf(id);
+        }
+        byte[] source = buffer;
+        if (escaped[index]) {
+            source = unescape(start, end);
+            start = 0;
+            end = source.length;
+        }
+        for (int i = start; i < end; i++) {
+            if (source[i] < 0) {
+                return new String(source, start, end - start, CsvTableStorage.CHARSET);
+            }
+        }
+        // ASCIIのみの場合はデコーダーを使わずにコピーする
+        return new String(source, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 項目を double として取得する
+     * 仮数部が2^53以下かつ10の指数が22以下の10進表記は文字列を作らずに変換し、それ以外は Double.parseDouble で変換する
+     *
+     * @param index 項目の位置
+     * @return 値
+     * @throws NumberFormatException 数値として解析できない場合
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        int position = starts[index];
+        int end = ends[index];
+        if (escaped[index] || position == end) {
+            return Double.parseDouble(getString(index));
+        }
+
+        boolean negative = false;
+        if (buffer[position] == '-' || buffer[position] == '+') {
+            negative = buffer[position] == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenPoint = false;
+        for (; position < end; position++) {
+            byte b = buffer[position];
+            if (b >= '0' && b <= '9') {
+                if (mantissa > (MAX_EXACT_MANTISSA - 9) / 10) {
+                    return Double.parseDouble(getString(index));
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    exponent--;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if ((b == 'E' || b == 'e') && digits > 0) {
+                int parsed = parseExponent(position + 1, end);
+                if (parsed == Integer.MIN_VALUE) {
+                    return Double.parseDouble(getString(index));
+                }
+                exponent += parsed;
+                position = end;
+                break;
+            } else {
+                return Double.parseDouble(getString(index));
+            }
+        }
+
+        if (digits == 0 || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(getString(index));
+        }
+        // 仮数と10の累乗がともに正確に表現できるため、1回の乗除算で正しく丸められる
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * 項目を Double として取得する
+     *
+     * @param index 項目の位置
+     * @return 値（空の項目はnull）
+     */
+    public Double getNullableDouble(int index) {
+        return isEmpty(index) ? null : getDouble(index);
+    }
+
+    /**
+     * 項目を int として取得する
+     *
+     * @param index 項目の位置
+     * @return 値
+     * @throws NumberFormatException 数値として解析できない場合
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+        int position = starts[index];
+        int end = ends[index];
+        if (escaped[index] || position == end) {
+            return Integer.parseInt(getString(index));
+        }
+
+        boolean negative = buffer[position] == '-';
+        if (negative || buffer[position] == '+') {
+            position++;
+        }
+        // 9桁までは桁あふれしない
+        if (position == end || end - position > 9) {
+            return Integer.parseInt(getString(index));
+        }
+        int value = 0;
+        for (; position < end; position++) {
+            byte b = buffer[position];
+            if (b < '0' || b > '9') {
+                return Integer.parseInt(getString(index));
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 項目を Integer として取得する
+     *
+     * @param index 項目の位置
+     * @return 値（空の項目はnull）
+     */
+    public Integer getNullableInt(int index) {
+        return isEmpty(index) ? null : getInt(index);
+    }
+
+    /**
+     * 項目を boolean として取得する（Boolean.parseBoolean と同じく大文字小文字を区別せず "true" の場合のみtrue）
+     *
+     * @param index 項目の位置
+     * @return 値
+     */
+    public boolean getBoolean(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        if (escaped[index] || ends[index] - start != 4) {
+            return false;
+        }
+        return (buffer[start] | 0x20) == 't' && (buffer[start + 1] | 0x20) == 'r'
+                && (buffer[start + 2] | 0x20) == 'u' && (buffer[start + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * 項目を Boolean として取得する
+     *
+     * @param index 項目の位置
+     * @return 値（空の項目はnull）
+     */
+    public Boolean getNullableBoolean(int index) {
+        return isEmpty(index) ? null : getBoolean(index);
+    }
+
+    /**
+     * 項目を列挙型として取得する
+     *
+     * @param index 項目の位置
+     * @param type  列挙型
+     * @return 値
+     * @throws IllegalArgumentException 列挙型の定数名でない場合
+     */
+    public <E extends Enum<E>> E getEnum(int index, Class<E> type) {
+        return Enum.valueOf(type, getString(index));
+    }
+
+    /**
+     * 項目を列挙型として取得する
+     *
+     * @param index 項目の位置
+     * @param type  列挙型
+     * @return 値（空の項目はnull）
+     */
+    public <E extends Enum<E>> E getNullableEnum(int index, Class<E> type) {
+        return isEmpty(index) ? null : getEnum(index, type);
+    }
+
+    /**
+     * 指数部を解析する
+     *
+     * @return 指数（解析できない場合は Integer.MIN_VALUE）
+     */
+    private int parseExponent(int position, int end) {
+        boolean negative = false;
+        if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+            negative = buffer[position] == '-';
+            position++;
+        }
+        if (position == end || end - position > 3) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (; position < end; position++) {
+            byte b = buffer[position];
+            if (b < '0' || b > '9') {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 二重引用符のエスケープ（""）を戻したバイト列を返す
+     */
+    private byte[] unescape(int start, int end) {
+        byte[] result = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            result[length++] = buffer[i];
+            if (buffer[i] == '"' && i + 1 < end && buffer[i + 1] == '"') {
+                i++;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    private void addField(int start, int end, boolean hasEscape, boolean hasQuote) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            escaped = Arrays.copyOf(escaped, count * 2);
+            quoted = Arrays.copyOf(quoted, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        escaped[count] = hasEscape;
+        quoted[count] = hasQuote;
+        count++;
+    }
+
+    /**
+     * 項目が辞書参照の場合はIDを返す
+     *
+     * @return ID（辞書参照でない場合は-1）
+     */
+    private int dictionaryId(int index) {
+        int start = starts[index];
+        int end = ends[index];
+        if (dictionary == null || quoted[index] || end - start < 2 || end - start > 10 || buffer[start] != '#') {
+            return -1;
+        }
+        int id = 0;
+        for (int i = start + 1; i < end; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            id = id * 10 + (b - '0');
+        }
+        return id;
+    }
+
+    /**
+     * 比較対象の文字列のIDを取得する（直近に比較した文字列は辞書を引かずに同一インスタンスの比較で求める）
+     */
+    private int lookupId(String value) {
+        for (int i = 0; i < LOOKUP_CACHE_SIZE; i++) {
+            if (lookupValues[i] == value) {
+                return lookupIds[i];
+            }
+        }
+        int id = dictionary.lookup(value);
+        lookupValues[lookupNext] = value;
+        lookupIds[lookupNext] = id;
+        lookupNext = (lookupNext + 1) % LOOKUP_CACHE_SIZE;
+        return id;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("項目の位置が範囲外です: " + index + " (項目数: " + count + ")");
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
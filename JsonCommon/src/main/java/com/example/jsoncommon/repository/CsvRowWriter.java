@@ -0,0 +1,177 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+
+/**
+ * CSVの1行をEUC-JPのバイト列に直接組み立てるライター
+ * ヘッダー行は生成時にエンコードしたバイト列を保持する。
+ * ASCIIの文字はそのまま1バイトに変換し、ASCII以外の文字を含む値のみエンコーダーを使用する。
+ * 引用符の付け方は commons-csv の CSVFormat.DEFAULT と同じで、既存のCSVファイルと同じ内容を出力する。
+ * 値に StringDictionary.Ref を渡した場合は辞書参照（#ID）として書き込む。
+ * 組み立てにはスレッドごとの作業領域を使用するため、1つのインスタンスを複数スレッドで共有できる。
+ */
+public final class CsvRowWriter {
+
+    /** スレッドごとの作業領域 */
+    private static final ThreadLocal<RowBuffer> BUFFERS = ThreadLocal.withInitial(RowBuffer::new);
+
+    private final String[] headers;
+    private final byte[] headerBytes;
+
+    /**
+     * @param headers ヘッダー配列
+     */
+    public CsvRowWriter(String... headers) {
+        this.headers = headers.clone();
+        RowBuffer buffer = new RowBuffer();
+        try {
+            buffer.appendRecord(headers);
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("ヘッダーをEUC-JPに変換できません: " + Arrays.toString(headers), e);
+        }
+        this.headerBytes = Arrays.copyOf(buffer.bytes, buffer.length);
+    }
+
+    /**
+     * ヘッダー配列を取得する
+     *
+     * @return ヘッダー配列
+     */
+    public String[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * エンコード済みのヘッダー行（改行コードを含む）を取得する
+     */
+    byte[] headerBytes() {
+        return headerBytes;
+    }
+
+    /**
+     * 値をCSVの1行（改行コードを含む）に変換する
+     * 返すバッファは呼び出したスレッドの作業領域を参照するため、同じスレッドで次に呼び出すまでに使用すること
+     *
+     * @param values 書き込む値（nullは空欄）
+     * @return 1行分のバイト列
+     * @throws IOException 値をEUC-JPに変換できない場合
+     */
+    ByteBuffer encode(Object... values) throws IOException {
+        RowBuffer buffer = BUFFERS.get();
+        buffer.length = 0;
+        buffer.appendRecord(values);
+        return ByteBuffer.wrap(buffer.bytes, 0, buffer.length);
+    }
+
+    /**
+     * 1行分のバイト列を組み立てる作業領域
+     */
+    private static final class RowBuffer {
+        byte[] bytes = new byte[256];
+        int length;
+        final CharsetEncoder encoder = CsvTableStorage.CHARSET.newEncoder();
+
+        void appendRecord(Object[] values) throws CharacterCodingException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    put((byte) ',');
+                }
+                appendValue(values[i], i == 0);
+            }
+            put((byte) '\r');
+            put((byte) '\n');
+        }
+
+        private void appendValue(Object value, boolean first) throws CharacterCodingException {
+            // null は引用符なしの空欄（CSVPrinter と同じ）
+            if (value == null) {
+                return;
+            }
+            // 辞書参照は引用符なしの「#ID」（「#」で始まる文字列の値は引用符で囲まれるため区別できる）
+            if (value instanceof StringDictionary.Ref ref) {
+                put((byte) '#');
+                appendText(Integer.toString(ref.id()), false);
+                return;
+            }
+            CharSequence text = value instanceof CharSequence chars ? chars : value.toString();
+            if (needsQuotes(text, first)) {
+                put((byte) '"');
+                appendText(text, true);
+                put((byte) '"');
+            } else {
+                appendText(text, false);
+            }
+        }
+
+        /**
+         * CSVFormat.DEFAULT（QuoteMode.MINIMAL）で引用符が付く値か判定する
+         */
+        private static boolean needsQuotes(CharSequence text, boolean first) {
+            int length = text.length();
+            if (length == 0) {
+                // 行頭の空文字列は空行と区別するため引用符を付ける
+                return first;
+            }
+            if (text.charAt(0) <= '#') {
+                return true;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                    return true;
+                }
+            }
+            // 末尾の空白・制御文字を保持するため引用符を付ける
+            return text.charAt(length - 1) <= ' ';
+        }
+
+        private void appendText(CharSequence text, boolean escapeQuotes) throws CharacterCodingException {
+            int length = text.length();
+            ensureCapacity(length + 2);
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    appendEncoded(text, i, escapeQuotes);
+                    return;
+                }
+                if (escapeQuotes && c == '"') {
+                    put((byte) '"');
+                }
+                put((byte) c);
+            }
+        }
+
+        /**
+         * ASCII以外の文字を含む残りの部分をエンコーダーで変換して追加する
+         */
+        private void appendEncoded(CharSequence text, int from, boolean escapeQuotes)
+                throws CharacterCodingException {
+            String rest = text.subSequence(from, text.length()).toString();
+            if (escapeQuotes) {
+                rest = rest.replace("\"", "\"\"");
+            }
+            encoder.reset();
+            ByteBuffer encoded = encoder.encode(CharBuffer.wrap(rest));
+            int encodedLength = encoded.remaining();
+            ensureCapacity(encodedLength);
+            encoded.get(bytes, length, encodedLength);
+            length += encodedLength;
+        }
+
+        private void put(byte b) {
+            ensureCapacity(1);
+            bytes[length++] = b;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (length + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+            }
+        }
+    }
+}
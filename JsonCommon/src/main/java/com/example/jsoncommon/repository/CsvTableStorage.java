@@ -0,0 +1,298 @@
+package com.example.jsoncommon.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * CSVファイルを保存先とするストレージ（既定の実装）
+ * テーブルごとに出力ディレクトリ配下のCSVファイル（EUC-JP）に保存する。位置はファイル内のバイト位置。
+ */
+public class CsvTableStorage implements TableStorage {
+
+    static final Charset CHARSET = Charset.forName("EUC-JP");
+
+    /** 位置指定読み込みで1回に読むバイト数 */
+    private static final int READ_BLOCK_SIZE = 8192;
+
+    /** キャッシュする追記用チャネルの上限数 */
+    private static final int MAX_OPEN_CHANNELS = 256;
+
+    /** 追記用チャネルを閉じるまでの未使用時間（ミリ秒） */
+    private static final long CHANNEL_IDLE_TIMEOUT_MILLIS = 60_000L;
+
+    /** 追記用チャネルのキャッシュ（同じファイルに書き込む全インスタンスで共有する） */
+    private static final AppendChannelCache CHANNELS = new AppendChannelCache(MAX_OPEN_CHANNELS,
+            CHANNEL_IDLE_TIMEOUT_MILLIS);
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** 上書き時の一時ファイルの接尾辞 */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path outputDir;
+
+    public CsvTableStorage(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * 追記はチャネルキャッシュ経由で行い、キャッシュにある場合は1回のwriteで完了する
+     */
+    @Override
+    public long append(String table, String[] headers, Object... values) throws IOException {
+        return append(table, new CsvRowWriter(headers), values);
+    }
+
+    /**
+     * 行をバイト列に直接組み立て、チャネルキャッシュ経由で追記する
+     */
+    @Override
+    public long append(String table, CsvRowWriter writer, Object... values) throws IOException {
+        Path filePath = outputDir.resolve(table).toAbsolutePath();
+        return CHANNELS.append(filePath, writer.headerBytes(), writer.encode(values));
+    }
+
+    /**
+     * キャッシュしている追記用チャネル（ない場合はファイル）をディスクへ同期する
+     */
+    @Override
+    public void sync(String table) throws IOException {
+        CHANNELS.force(outputDir.resolve(table).toAbsolutePath());
+    }
+
+    /**
+     * 一時ファイルに書き込んで同期した後に置き換えるため、書き込み中に停止しても既存のファイルは失われない
+     */
+    @Override
+    public void overwrite(String table, String[] headers, List<Object[]> values) throws IOException {
+        if (!Files.exists(outputDir)) {
+            Files.createDirectories(outputDir);
+        }
+
+        Path filePath = outputDir.resolve(table);
+        Path tempPath = outputDir.resolve(table + TEMP_SUFFIX);
+
+        CsvRowWriter rowWriter = new CsvRowWriter(headers);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            out.write(rowWriter.headerBytes());
+            for (Object[] valueArray : values) {
+                ByteBuffer row = rowWriter.encode(valueArray);
+                out.write(row.array(), row.position(), row.remaining());
+            }
+            out.flush();
+            channel.force(true);
+        }
+
+        // 追記と排他して置き換え、置き換え後に追記用にキャッシュしているチャネルを閉じる
+        CHANNELS.replace(filePath.toAbsolutePath(), tempPath);
+    }
+
+    @Override
+    public List<String> readAll(String table) throws IOException {
+        Path filePath = outputDir.resolve(table);
+
+        if (!Files.exists(filePath)) {
+            return List.of();
+        }
+
+        return Files.readAllLines(filePath, CHARSET);
+    }
+
+    @Override
+    public void readForward(String table, long position, LineVisitor visitor) throws IOException {
+        readForwardBytes(table, position,
+                (linePosition, buffer, offset, length) -> visitor.visit(linePosition,
+                        new String(buffer, offset, length, CHARSET)));
+    }
+
+    /**
+     * 行がブロック内に収まる場合は読み込み用のバッファをそのまま visitor に渡す
+     */
+    @Override
+    public void readForwardBytes(String table, long position, RowVisitor visitor) throws IOException {
+        Path filePath = outputDir.resolve(table);
+
+        if (!Files.exists(filePath)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long readPosition = position;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BLOCK_SIZE);
+            // 前のブロックから持ち越した行の前半部分とその先頭位置
+            byte[] pending = EMPTY;
+            long lineStart = position;
+
+            while (readPosition < size) {
+                buffer.clear();
+                int read = channel.read(buffer, readPosition);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] block = buffer.array();
+
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (block[i] != '\n') {
+                        continue;
+                    }
+                    boolean proceed;
+                    if (pending.length == 0) {
+                        proceed = emitLine(lineStart, block, start, i, visitor);
+                    } else {
+                        byte[] line = concat(pending, block, start, i);
+                        proceed = emitLine(lineStart, line, 0, line.length, visitor);
+                        pending = EMPTY;
+                    }
+                    if (!proceed) {
+                        return;
+                    }
+                    start = i + 1;
+                    lineStart = readPosition + start;
+                }
+                pending = concat(pending, block, start, read);
+                readPosition += read;
+            }
+
+            emitLine(lineStart, pending, 0, pending.length, visitor);
+        }
+    }
+
+    @Override
+    public void readReverse(String table, Predicate<String> visitor) throws IOException {
+        readReverseBytes(table,
+                (linePosition, buffer, offset, length) -> visitor.test(new String(buffer, offset, length, CHARSET)));
+    }
+
+    /**
+     * ファイル末尾からブロック単位で位置指定読み込みを行うため、
+     * 読み込み量は visitor が読み込みを終了するまでに走査した行数に比例する
+     */
+    @Override
+    public void readReverseBytes(String table, RowVisitor visitor) throws IOException {
+        Path filePath = outputDir.resolve(table);
+
+        if (!Files.exists(filePath)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long position = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BLOCK_SIZE);
+            // 前のブロックから持ち越した行の後半部分
+            byte[] pending = EMPTY;
+
+            while (position > 0) {
+                int blockSize = (int) Math.min(READ_BLOCK_SIZE, position);
+                position -= blockSize;
+
+                buffer.clear().limit(blockSize);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                byte[] block = buffer.array();
+
+                int end = blockSize;
+                for (int i = blockSize - 1; i >= 0; i--) {
+                    if (block[i] != '\n') {
+                        continue;
+                    }
+                    boolean proceed;
+                    if (pending.length == 0) {
+                        proceed = emitLine(position + i + 1, block, i + 1, end, visitor);
+                    } else {
+                        byte[] line = concat(block, i + 1, end, pending);
+                        proceed = emitLine(position + i + 1, line, 0, line.length, visitor);
+                        pending = EMPTY;
+                    }
+                    if (!proceed) {
+                        return;
+                    }
+                    end = i;
+                }
+                pending = concat(block, 0, end, pending);
+            }
+
+            emitLine(0L, pending, 0, pending.length, visitor);
+        }
+    }
+
+    @Override
+    public long endPosition(String table) throws IOException {
+        Path filePath = outputDir.resolve(table);
+        return Files.exists(filePath) ? Files.size(filePath) : 0L;
+    }
+
+    @Override
+    public void exportCsv(String table, Path target) throws IOException {
+        Path filePath = outputDir.resolve(table);
+        if (!Files.exists(filePath) || filePath.toAbsolutePath().equals(target.toAbsolutePath())) {
+            return;
+        }
+        Files.copy(filePath, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public List<String> listTables() throws IOException {
+        if (!Files.exists(outputDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(outputDir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(".csv"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * 1行分のバイト列 buffer[from, to) を visitor に渡す（行末の CR は除き、空行は読み飛ばす）
+     */
+    private static boolean emitLine(long position, byte[] buffer, int from, int to, RowVisitor visitor) {
+        int end = to;
+        if (end > from && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == from) {
+            return true;
+        }
+        return visitor.visit(position, buffer, from, end - from);
+    }
+
+    /**
+     * block[from, to) の後ろに tail を連結したバイト列を返す
+     */
+    private static byte[] concat(byte[] block, int from, int to, byte[] tail) {
+        byte[] result = new byte[(to - from) + tail.length];
+        System.arraycopy(block, from, result, 0, to - from);
+        System.arraycopy(tail, 0, result, to - from, tail.length);
+        return result;
+    }
+
+    /**
+     * head の後ろに block[from, to) を連結したバイト列を返す
+     */
+    private static byte[] concat(byte[] head, byte[] block, int from, int to) {
+        byte[] result = new byte[head.length + (to - from)];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(block, from, result, head.length, to - from);
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+
+/**
+ * キーで行を更新・削除・範囲検索できるストレージのSPI
+ * 状態を保持するテーブル（インスタンス状態・しきい値等）はエンティティのキー（先頭の列）ごとに1行を保持し、
+ * 時系列のテーブル（リソース履歴・集計値）は（ホスト名, 時刻）の複合キーの順に行を保持する。
+ * 各操作はトランザクションとして実行し、途中で停止しても操作前の状態に戻る。
+ * この SPI を実装するストレージでは、リポジトリはファイル全体の書き換えや付随ファイルのインデックスを使わない。
+ */
+public interface KeyedTableStorage extends TableStorage {
+
+    /**
+     * キーの行を追加または置き換える
+     *
+     * @param table   テーブル名（CSVファイル名）
+     * @param headers ヘッダー配列
+     * @param key     キー（先頭の列の値）
+     * @param values  書き込む値
+     * @throws IOException IO例外
+     */
+    void upsert(String table, String[] headers, String key, Object... values) throws IOException;
+
+    /**
+     * キーの行を削除する
+     *
+     * @param table テーブル名（CSVファイル名）
+     * @param key   キー（先頭の列の値）
+     * @return 削除した場合true
+     * @throws IOException IO例外
+     */
+    boolean delete(String table, String key) throws IOException;
+
+    /**
+     * 時系列のテーブルに行を追加する（同じホスト名・時刻の行が既にある場合も別の行として保持する）
+     *
+     * @param table       テーブル名（CSVファイル名）
+     * @param headers     ヘッダー配列
+     * @param hostname    ホスト名
+     * @param epochMillis 時刻（エポックミリ秒）
+     * @param values      書き込む値
+     * @throws IOException IO例外
+     */
+    void appendSeries(String table, String[] headers, String hostname, long epochMillis, Object... values)
+            throws IOException;
+
+    /**
+     * 時系列のテーブルから指定期間の行を古いものから順に読み込む
+     *
+     * @param table      テーブル名（CSVファイル名）
+     * @param hostname   ホスト名
+     * @param fromMillis 期間の開始（エポックミリ秒、この時刻を含む）
+     * @param toMillis   期間の終了（エポックミリ秒、この時刻を含む）
+     * @param visitor    各行を受け取る処理（位置は行の時刻）。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    void readSeries(String table, String hostname, long fromMillis, long toMillis, LineVisitor visitor)
+            throws IOException;
+
+    /**
+     * 時系列のテーブルから指定期間の行を削除する
+     *
+     * @param table      テーブル名（CSVファイル名）
+     * @param hostname   ホスト名
+     * @param fromMillis 期間の開始（エポックミリ秒、この時刻を含む）
+     * @param toMillis   期間の終了（エポックミリ秒、この時刻を含まない）
+     * @return 削除した行数
+     * @throws IOException IO例外
+     */
+    int deleteSeries(String table, String hostname, long fromMillis, long toMillis) throws IOException;
+}
@@ -0,0 +1,500 @@
+package com.example.jsoncommon.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.csv.CSVFormat;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.tx.Transaction;
+import org.h2.mvstore.tx.TransactionMap;
+import org.h2.mvstore.tx.TransactionStore;
+import org.h2.mvstore.type.BasicDataType;
+import org.h2.mvstore.type.StringDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * 組み込みのH2 MVStoreを保存先とするストレージ
+ * app.storage.backend=mvstore の場合に有効になり、全てのCSVリポジトリの保存先となる。
+ * テーブルは用途に応じて次のB-treeマップに保持し、値はCSV形式の行とする。ヘッダー行はテーブル名ごとに別のマップに保持する。
+ * <ul>
+ * <li>状態のテーブル: キー（先頭の列の値）→ 行。上書きは変更のあったキーのみを更新・削除する</li>
+ * <li>時系列のテーブル: （ホスト名, 時刻, 連番）→ 行。期間の検索・削除はキーの範囲をカーソルでたどる</li>
+ * <li>追記のみのテーブル（履歴・辞書等）: 追記順の連番 → 行</li>
+ * </ul>
+ * 状態・時系列のテーブルへの書き込みはトランザクションとして実行し、コミット後にストアに書き出すため、
+ * 途中で停止しても操作前の状態に戻る。
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "mvstore")
+public class MvStoreTableStorage implements KeyedTableStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(MvStoreTableStorage.class);
+
+    /** 追記のみのテーブル用マップ名の接頭辞 */
+    private static final String LOG_PREFIX = "table:";
+
+    /** 状態のテーブル用マップ名の接頭辞 */
+    private static final String KEYED_PREFIX = "keyed:";
+
+    /** 時系列のテーブル用マップ名の接頭辞 */
+    private static final String SERIES_PREFIX = "series:";
+
+    /** テーブル名 → ヘッダー行のマップ名 */
+    private static final String HEADERS_MAP = "headers";
+
+    private static final long HEADER_KEY = 0L;
+
+    private final MVStore store;
+    private final TransactionStore transactions;
+    private final MVMap<String, String> headerLines;
+
+    public MvStoreTableStorage(
+            @Value("${app.storage.mvstore.file:${app.csv.output-dir}/store.mv.db}") String storeFile)
+            throws IOException {
+        Path storePath = Paths.get(storeFile);
+        if (storePath.getParent() != null) {
+            Files.createDirectories(storePath.getParent());
+        }
+        this.store = new MVStore.Builder()
+                .fileName(storePath.toString())
+                .autoCommitDisabled()
+                .open();
+        this.transactions = new TransactionStore(store);
+        // 停止時にコミットされていなかったトランザクションを取り消す
+        this.transactions.init();
+        this.headerLines = store.openMap(HEADERS_MAP);
+        logger.info("MVStoreストレージを開きました: {}", storePath);
+    }
+
+    @Override
+    public synchronized long append(String table, String[] headers, Object... values) throws IOException {
+        MVMap<Long, String> map = openLogMap(table);
+        if (map.isEmpty()) {
+            map.put(HEADER_KEY, formatLine(headers));
+        }
+        long position = map.lastKey() + 1;
+        map.put(position, formatLine(values));
+        commit();
+        return position;
+    }
+
+    /**
+     * 状態のテーブルでは先頭の列をキーとして、内容が変わった行の更新と、なくなったキーの削除のみを1つのトランザクションで行う。
+     * 追記のみのテーブルとして作成済みの場合は全行を置き換える
+     */
+    @Override
+    public synchronized void overwrite(String table, String[] headers, List<Object[]> values) throws IOException {
+        if (store.hasMap(LOG_PREFIX + table)) {
+            MVMap<Long, String> map = openLogMap(table);
+            map.clear();
+            map.put(HEADER_KEY, formatLine(headers));
+            long position = HEADER_KEY;
+            for (Object[] valueArray : values) {
+                map.put(++position, formatLine(valueArray));
+            }
+            commit();
+            return;
+        }
+        write(table, headers, transaction -> {
+            TransactionMap<String, String> map = openKeyedMap(transaction, table);
+            Set<String> keys = new HashSet<>();
+            for (Object[] valueArray : values) {
+                String key = String.valueOf(valueArray[0]);
+                String line = formatLine(valueArray);
+                if (!line.equals(map.get(key))) {
+                    map.put(key, line);
+                }
+                keys.add(key);
+            }
+            List<String> removed = new ArrayList<>();
+            for (Iterator<String> iterator = map.keyIterator(null); iterator.hasNext();) {
+                String key = iterator.next();
+                if (!keys.contains(key)) {
+                    removed.add(key);
+                }
+            }
+            removed.forEach(map::remove);
+        });
+    }
+
+    @Override
+    public synchronized void upsert(String table, String[] headers, String key, Object... values)
+            throws IOException {
+        write(table, headers, transaction -> openKeyedMap(transaction, table).put(key, formatLine(values)));
+    }
+
+    @Override
+    public synchronized boolean delete(String table, String key) throws IOException {
+        if (!store.hasMap(KEYED_PREFIX + table)) {
+            return false;
+        }
+        boolean[] deleted = { false };
+        write(table, null, transaction -> deleted[0] = openKeyedMap(transaction, table).remove(key) != null);
+        return deleted[0];
+    }
+
+    /**
+     * 同じホスト名・時刻の行がある場合は連番を1つ進めたキーで追加する
+     */
+    @Override
+    public synchronized void appendSeries(String table, String[] headers, String hostname, long epochMillis,
+            Object... values) throws IOException {
+        write(table, headers, transaction -> {
+            TransactionMap<SeriesKey, String> map = openSeriesMap(transaction, table);
+            SeriesKey last = map.floorKey(new SeriesKey(hostname, epochMillis, Long.MAX_VALUE));
+            long sequence = last != null && last.hostname().equals(hostname) && last.epochMillis() == epochMillis
+                    ? last.sequence() + 1
+                    : 0L;
+            map.put(new SeriesKey(hostname, epochMillis, sequence), formatLine(values));
+        });
+    }
+
+    /**
+     * （ホスト名, 開始時刻）から B-tree のカーソルで順にたどり、期間外の行は読み込まない
+     */
+    @Override
+    public void readSeries(String table, String hostname, long fromMillis, long toMillis, LineVisitor visitor)
+            throws IOException {
+        if (!store.hasMap(SERIES_PREFIX + table)) {
+            return;
+        }
+        read(transaction -> {
+            Iterator<Map.Entry<SeriesKey, String>> cursor = openSeriesMap(transaction, table).entryIterator(
+                    new SeriesKey(hostname, fromMillis, Long.MIN_VALUE),
+                    new SeriesKey(hostname, toMillis, Long.MAX_VALUE));
+            while (cursor.hasNext()) {
+                Map.Entry<SeriesKey, String> entry = cursor.next();
+                if (!visitor.visit(entry.getKey().epochMillis(), entry.getValue())) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized int deleteSeries(String table, String hostname, long fromMillis, long toMillis)
+            throws IOException {
+        if (!store.hasMap(SERIES_PREFIX + table) || fromMillis >= toMillis) {
+            return 0;
+        }
+        int[] deleted = { 0 };
+        write(table, null, transaction -> {
+            TransactionMap<SeriesKey, String> map = openSeriesMap(transaction, table);
+            List<SeriesKey> keys = new ArrayList<>();
+            Iterator<SeriesKey> cursor = map.keyIterator(new SeriesKey(hostname, fromMillis, Long.MIN_VALUE),
+                    new SeriesKey(hostname, toMillis - 1, Long.MAX_VALUE));
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+            }
+            keys.forEach(map::remove);
+            deleted[0] = keys.size();
+        });
+        return deleted[0];
+    }
+
+    @Override
+    public List<String> readAll(String table) throws IOException {
+        List<String> lines = new ArrayList<>();
+        readForward(table, 0L, (position, line) -> lines.add(line));
+        return lines;
+    }
+
+    /**
+     * 状態・時系列のテーブルの位置は、ヘッダー行を0とした行の順番とする
+     */
+    @Override
+    public void readForward(String table, long position, LineVisitor visitor) throws IOException {
+        if (store.hasMap(LOG_PREFIX + table)) {
+            Cursor<Long, String> cursor = openLogMap(table).cursor(position);
+            while (cursor.hasNext()) {
+                long key = cursor.next();
+                if (!visitor.visit(key, cursor.getValue())) {
+                    return;
+                }
+            }
+            return;
+        }
+        String header = headerLines.get(table);
+        if (header == null) {
+            return;
+        }
+        if (position <= HEADER_KEY && !visitor.visit(HEADER_KEY, header)) {
+            return;
+        }
+        read(transaction -> {
+            Iterator<String> values = openRows(transaction, table).values().iterator();
+            long rowPosition = HEADER_KEY;
+            while (values.hasNext()) {
+                String line = values.next();
+                if (++rowPosition >= position && !visitor.visit(rowPosition, line)) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void readReverse(String table, Predicate<String> visitor) throws IOException {
+        if (store.hasMap(LOG_PREFIX + table)) {
+            Cursor<Long, String> cursor = openLogMap(table).cursor(null, null, true);
+            while (cursor.hasNext()) {
+                cursor.next();
+                if (!visitor.test(cursor.getValue())) {
+                    return;
+                }
+            }
+            return;
+        }
+        String header = headerLines.get(table);
+        if (header == null) {
+            return;
+        }
+        boolean[] proceed = { true };
+        read(transaction -> {
+            TransactionMap<Object, String> rows = openRows(transaction, table);
+            for (Object key = rows.lastKey(); key != null && proceed[0]; key = rows.lowerKey(key)) {
+                proceed[0] = visitor.test(rows.get(key));
+            }
+        });
+        if (proceed[0]) {
+            visitor.test(header);
+        }
+    }
+
+    @Override
+    public long endPosition(String table) throws IOException {
+        if (store.hasMap(LOG_PREFIX + table)) {
+            Long lastKey = openLogMap(table).lastKey();
+            return lastKey == null ? 0L : lastKey + 1;
+        }
+        if (!headerLines.containsKey(table)) {
+            return 0L;
+        }
+        long[] size = { 0L };
+        read(transaction -> size[0] = openRows(transaction, table).sizeAsLong());
+        return size[0] + 1;
+    }
+
+    @Override
+    public void exportCsv(String table, Path target) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(target, CsvTableStorage.CHARSET,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String line : readAll(table)) {
+                writer.write(line);
+                writer.write(CSVFormat.DEFAULT.getRecordSeparator());
+            }
+        }
+    }
+
+    @Override
+    public List<String> listTables() {
+        Set<String> tables = new TreeSet<>(headerLines.keySet());
+        for (String name : store.getMapNames()) {
+            if (name.startsWith(LOG_PREFIX)) {
+                tables.add(name.substring(LOG_PREFIX.length()));
+            }
+        }
+        return new ArrayList<>(tables);
+    }
+
+    /**
+     * 全テーブルをCSVファイルとして出力ディレクトリに書き出す（運用者による任意のタイミングでの出力用）
+     *
+     * @param targetDir 出力先ディレクトリ
+     * @return 書き出したテーブル数
+     * @throws IOException IO例外
+     */
+    public int exportAll(Path targetDir) throws IOException {
+        List<String> tables = listTables();
+        for (String table : tables) {
+            exportCsv(table, targetDir.resolve(table));
+        }
+        logger.info("MVStoreの内容をCSVに出力しました: {} テーブル, 出力先={}", tables.size(), targetDir);
+        return tables.size();
+    }
+
+    /**
+     * アプリケーション停止中にストアファイルの内容をCSVに書き出す
+     *
+     * @param args ストアファイルのパス、出力先ディレクトリ
+     * @throws IOException IO例外
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("使い方: MvStoreTableStorage <ストアファイル> <出力先ディレクトリ>");
+            System.exit(1);
+        }
+        MvStoreTableStorage storage = new MvStoreTableStorage(args[0]);
+        try {
+            storage.exportAll(Paths.get(args[1]));
+        } finally {
+            storage.close();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (!store.isClosed()) {
+            transactions.close();
+            store.close();
+            logger.info("MVStoreストレージを閉じました");
+        }
+    }
+
+    /**
+     * トランザクション内で書き込み、コミットしてからストアに書き出す（失敗した場合は取り消す）
+     *
+     * @param headers ヘッダー配列（nullの場合はヘッダー行を更新しない）
+     */
+    private void write(String table, String[] headers, TransactionBody body) throws IOException {
+        Transaction transaction = transactions.begin();
+        try {
+            body.run(transaction);
+            if (headers != null) {
+                String header = formatLine(headers);
+                if (!header.equals(headerLines.get(table))) {
+                    headerLines.put(table, header);
+                }
+            }
+            transaction.commit();
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw new IOException("MVStoreへの書き込みに失敗しました: " + table, e);
+        }
+        commit();
+    }
+
+    /**
+     * コミット済みの内容を読み込む
+     */
+    private void read(TransactionBody body) throws IOException {
+        Transaction transaction = transactions.begin();
+        try {
+            body.run(transaction);
+        } catch (RuntimeException e) {
+            throw new IOException("MVStoreからの読み込みに失敗しました", e);
+        } finally {
+            transaction.commit();
+        }
+    }
+
+    private MVMap<Long, String> openLogMap(String table) {
+        return store.openMap(LOG_PREFIX + table);
+    }
+
+    private static TransactionMap<String, String> openKeyedMap(Transaction transaction, String table) {
+        return transaction.openMap(KEYED_PREFIX + table, StringDataType.INSTANCE, StringDataType.INSTANCE);
+    }
+
+    private static TransactionMap<SeriesKey, String> openSeriesMap(Transaction transaction, String table) {
+        return transaction.openMap(SERIES_PREFIX + table, SeriesKeyType.INSTANCE, StringDataType.INSTANCE);
+    }
+
+    /**
+     * 状態または時系列のテーブルの行をキーの順に参照するマップを開く
+     */
+    @SuppressWarnings("unchecked")
+    private TransactionMap<Object, String> openRows(Transaction transaction, String table) {
+        Object map = store.hasMap(SERIES_PREFIX + table)
+                ? openSeriesMap(transaction, table)
+                : openKeyedMap(transaction, table);
+        return (TransactionMap<Object, String>) map;
+    }
+
+    private void commit() throws IOException {
+        try {
+            store.commit();
+        } catch (IllegalStateException e) {
+            throw new IOException("MVStoreへのコミットに失敗しました", e);
+        }
+    }
+
+    private static String formatLine(Object[] values) {
+        return CSVFormat.DEFAULT.format(values);
+    }
+
+    /**
+     * トランザクション内の処理
+     */
+    @FunctionalInterface
+    private interface TransactionBody {
+        void run(Transaction transaction);
+    }
+
+    /**
+     * 時系列のテーブルのキー（同じホスト名・時刻の行は連番で区別する）
+     */
+    record SeriesKey(String hostname, long epochMillis, long sequence) implements Comparable<SeriesKey> {
+        @Override
+        public int compareTo(SeriesKey other) {
+            int result = hostname.compareTo(other.hostname);
+            if (result == 0) {
+                result = Long.compare(epochMillis, other.epochMillis);
+            }
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * SeriesKey の永続化形式（ホスト名のUTF-8バイト列、時刻、連番）
+     */
+    static final class SeriesKeyType extends BasicDataType<SeriesKey> {
+
+        static final SeriesKeyType INSTANCE = new SeriesKeyType();
+
+        @Override
+        public int getMemory(SeriesKey key) {
+            return 48 + 2 * key.hostname().length();
+        }
+
+        @Override
+        public void write(WriteBuffer buffer, SeriesKey key) {
+            byte[] hostname = key.hostname().getBytes(StandardCharsets.UTF_8);
+            buffer.putVarInt(hostname.length).put(hostname).putVarLong(key.epochMillis()).putVarLong(key.sequence());
+        }
+
+        @Override
+        public SeriesKey read(ByteBuffer buffer) {
+            byte[] hostname = new byte[DataUtils.readVarInt(buffer)];
+            buffer.get(hostname);
+            return new SeriesKey(new String(hostname, StandardCharsets.UTF_8), DataUtils.readVarLong(buffer),
+                    DataUtils.readVarLong(buffer));
+        }
+
+        @Override
+        public int compare(SeriesKey a, SeriesKey b) {
+            return a.compareTo(b);
+        }
+
+        @Override
+        public SeriesKey[] createStorage(int size) {
+            return new SeriesKey[size];
+        }
+    }
+}
@@ -1,25 +1,58 @@
 package com.example.jsoncommon.repository;
 
-import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
 import com.example.jsoncommon.dto.MetricsJson;
 import com.example.jsoncommon.dto.ResourceHistoryCsv;
+import com.example.jsoncommon.dto.ResourceHistoryCsvMapper;
+import com.example.jsoncommon.repository.lsm.LsmHistoryStore;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Repository
 public class ResourceHistoryRepository extends CsvRepositoryBase {
 
-    private static final String[] HEADERS = { "Hostname", "Timestamp", "CpuUsage", "MemoryUsage",
-            "InstanceTypeChangeRequest" };
+    private static final Logger logger = LoggerFactory.getLogger(ResourceHistoryRepository.class);
+
+    private static final String FILE_PREFIX = "resource_history_";
+    private static final String FILE_SUFFIX = ".csv";
+
+    private static final ResourceHistoryCsvMapper MAPPER = ResourceHistoryCsvMapper.INSTANCE;
 
     @Value("${resource.history.retention-days:30}")
     private int retentionDays;
 
+    /** ホスト名ごとの時刻インデックス（初回アクセス時に読み込み・再構築する） */
+    private final Map<String, SparseTimeIndex> timeIndexes = new ConcurrentHashMap<>();
+
+    /** ホスト名ごとのロック（追記と保持期間処理による書き換えを排他する） */
+    private final Map<String, Object> hostLocks = new ConcurrentHashMap<>();
+
+    /** 全ホスト共有のLSMストア（resource.history.store=lsm の場合のみ。未設定の場合はホストごとのCSV） */
+    private LsmHistoryStore lsmHistoryStore;
+
+    /**
+     * LSMストアを設定する
+     * 
+     * @param lsmHistoryStore LSMストア
+     */
+    @Autowired(required = false)
+    public void setLsmHistoryStore(LsmHistoryStore lsmHistoryStore) {
+        this.lsmHistoryStore = lsmHistoryStore;
+    }
+
     /**
      * 保持期間を設定する（テスト用）
      * 
@@ -27,6 +60,9 @@ public class ResourceHistoryRepository extends CsvRepositoryBase {
      */
     public void setRetentionDays(int retentionDays) {
         this.retentionDays = retentionDays;
+        if (lsmHistoryStore != null) {
+            lsmHistoryStore.setRetentionDays(retentionDays);
+        }
     }
 
     /**
@@ -39,16 +75,85 @@ public class ResourceHistoryRepository extends CsvRepositoryBase {
     }
 
     public void save(MetricsJson metricsJson) throws IOException {
+        if (lsmHistoryStore != null) {
+            lsmHistoryStore.append(metricsJson.getInstanceName(),
+                    metricsJson.getTimestamp(),
+                    metricsJson.getMetrics().getCpuUsage(),
+                    metricsJson.getMetrics().getMemoryUsage(),
+                    metricsJson.getMetrics().getInstanceTypeChangeRequest());
+            return;
+        }
+        synchronized (getHostLock(metricsJson.getInstanceName())) {
+            append(metricsJson);
+        }
+    }
+
+    private void append(MetricsJson metricsJson) throws IOException {
         String filename = String.format("resource_history_%s.csv", metricsJson.getInstanceName());
-        writeToCsv(filename, HEADERS,
+        Object[] values = encodeColumns(MAPPER, new Object[] {
                 metricsJson.getInstanceName(),
                 metricsJson.getTimestamp(),
                 metricsJson.getMetrics().getCpuUsage(),
                 metricsJson.getMetrics().getMemoryUsage(),
-                metricsJson.getMetrics().getInstanceTypeChangeRequest());
+                metricsJson.getMetrics().getInstanceTypeChangeRequest() });
+
+        // キーで範囲検索できるストレージでは（ホスト名, 時刻）をキーとして保存し、時刻インデックスは使わない
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            keyed.appendSeries(filename, MAPPER.getHeaders(), metricsJson.getInstanceName(),
+                    metricsJson.getTimestamp().toInstant().toEpochMilli(), values);
+            return;
+        }
+
+        long offset = writeToCsv(filename, MAPPER.getWriter(), values);
+
+        // 時刻インデックスを更新
+        getTimeIndex(metricsJson.getInstanceName())
+                .add(toMinuteBucket(metricsJson.getTimestamp()), offset);
+    }
+
+    /**
+     * リソース履歴が保存されている全ホスト名を取得する
+     * 
+     * @return ホスト名のリスト
+     * @throws IOException IO例外
+     */
+    public List<String> findAllHostnames() throws IOException {
+        if (lsmHistoryStore != null) {
+            return lsmHistoryStore.findAllHostnames();
+        }
+        List<String> hostnames = new ArrayList<>();
+        for (String table : getStorage().listTables()) {
+            if (table.startsWith(FILE_PREFIX) && table.endsWith(FILE_SUFFIX)) {
+                hostnames.add(table.substring(FILE_PREFIX.length(), table.length() - FILE_SUFFIX.length()));
+            }
+        }
+        return hostnames;
+    }
+
+    /**
+     * 指定ホスト名のリソース履歴を保存しているディレクトリを取得する（ディスクごとの並列処理の振り分けに使用する）
+     * 
+     * @param hostname ホスト名
+     * @return ディレクトリ
+     */
+    public Path getHistoryDirectory(String hostname) {
+        return getCsvPath(String.format("resource_history_%s.csv", hostname)).toAbsolutePath().getParent();
+    }
 
-        // 保存後に古いデータを自動削除
-        deleteOldRecords(metricsJson.getInstanceName());
+    /**
+     * 指定ホスト名のリソース履歴のサイズを取得する
+     * 
+     * @param hostname ホスト名
+     * @return バイト数（キーで更新できるストレージでは行数からの推定値）
+     * @throws IOException IO例外
+     */
+    public long getHistorySize(String hostname) throws IOException {
+        // LSMストアでは保持期間処理をコンパクションで行うため走査対象はない
+        if (lsmHistoryStore != null) {
+            return 0L;
+        }
+        return getCsvBytes(String.format("resource_history_%s.csv", hostname), MAPPER);
     }
 
     /**
@@ -60,110 +165,263 @@ public class ResourceHistoryRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public List<ResourceHistoryCsv> findRecentByHostname(String hostname, int minutes) throws IOException {
+        if (lsmHistoryStore != null) {
+            return lsmHistoryStore.findRecentByHostname(hostname, minutes);
+        }
         String filename = String.format("resource_history_%s.csv", hostname);
-
-        List<String> lines = readFromCsv(filename);
         List<ResourceHistoryCsv> allMatching = new ArrayList<>();
 
-        if (lines.isEmpty()) {
-            return allMatching;
-        }
-
         ZonedDateTime now = ZonedDateTime.now();
         ZonedDateTime thresholdTime = now.minusMinutes(minutes);
 
-        // 逆順から取得
-        for (int i = lines.size() - 1; i >= 0; i--) {
-            String line = lines.get(i);
-            String[] parts = line.split(",", -1);
+        if (getKeyedStorage() != null) {
+            readRowsFromSeries(filename, hostname, thresholdTime.toInstant().toEpochMilli(), Long.MAX_VALUE,
+                    (position, row) -> {
+                        allMatching.add(MAPPER.read(row));
+                        return true;
+                    });
+            // 最新のものから順に並べる
+            Collections.reverse(allMatching);
+            return allMatching;
+        }
 
-            // ヘッダー行はスキップ
-            if (parts[0].equals("Hostname")) {
-                continue;
+        // ファイル末尾から逆順に読み込むため、結果は最新のものから順に並ぶ（ソート不要）
+        readRowsFromCsvReverse(filename, (position, row) -> {
+            // ヘッダー行（ファイル先頭）に到達したら終了
+            if (MAPPER.isHeader(row)) {
+                return false;
             }
 
-            if (parts.length >= 5 && parts[0].equals(hostname)) {
+            if (row.size() >= MAPPER.getRequiredColumns() && row.fieldEquals(0, hostname)) {
                 try {
-                    ZonedDateTime timestamp = ZonedDateTime.parse(parts[1]);
+                    ZonedDateTime timestamp = ZonedDateTime.parse(row.getString(1));
 
                     // 指定期間より古いデータになったら終了（CSVが時系列順であることを前提）
                     if (timestamp.isBefore(thresholdTime)) {
-                        break;
+                        return false;
                     }
 
-                    ResourceHistoryCsv info = new ResourceHistoryCsv(
-                            parts[0], // hostname
-                            parts[1], // timestamp
-                            Double.parseDouble(parts[2]), // cpuUsage
-                            Double.parseDouble(parts[3]), // memoryUsage
-                            InstanceTypeChangeRequest.valueOf(parts[4]) // instanceTypeChangeRequest
-                    );
-                    allMatching.add(info);
+                    allMatching.add(MAPPER.read(row));
                 } catch (Exception e) {
                     // パースエラー等は無視して次へ
-                    continue;
                 }
             }
-        }
-
-        // タイムスタンプでソート（降順:最新が先頭）
-        allMatching.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
+            return true;
+        });
 
         return allMatching;
     }
 
     /**
-     * 保持期間を過ぎた古いレコードを削除する
+     * 指定ホスト名の指定期間のリソース情報を取得する
+     * 時刻インデックスを二分探索して開始位置を求め、該当範囲の行のみを読み込む
      * 
      * @param hostname ホスト名
+     * @param from     期間の開始（この時刻を含む）
+     * @param to       期間の終了（この時刻を含む）
+     * @return リソース情報のリスト（古いものから順）
      * @throws IOException IO例外
      */
-    public void deleteOldRecords(String hostname) throws IOException {
+    public List<ResourceHistoryCsv> findByHostnameAndPeriod(String hostname, ZonedDateTime from, ZonedDateTime to)
+            throws IOException {
+        if (lsmHistoryStore != null) {
+            return lsmHistoryStore.findByHostnameAndPeriod(hostname, from, to);
+        }
         String filename = String.format("resource_history_%s.csv", hostname);
+        List<ResourceHistoryCsv> result = new ArrayList<>();
 
-        List<String> lines = readFromCsv(filename);
+        if (getKeyedStorage() != null) {
+            readRowsFromSeries(filename, hostname, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli(),
+                    (position, row) -> {
+                        result.add(MAPPER.read(row));
+                        return true;
+                    });
+            return result;
+        }
 
-        // ファイルが存在しない、または空の場合は何もしない
-        if (lines.isEmpty()) {
-            return;
+        long startOffset = getTimeIndex(hostname).floorOffset(toMinuteBucket(from));
+
+        readRowsFromCsvForward(filename, Math.max(startOffset, 0L), (offset, row) -> {
+            if (!MAPPER.isRecord(row) || !row.fieldEquals(0, hostname)) {
+                return true;
+            }
+            try {
+                ZonedDateTime timestamp = ZonedDateTime.parse(row.getString(1));
+                if (timestamp.isBefore(from)) {
+                    return true;
+                }
+                // 期間の終了を過ぎたら終了（CSVが時系列順であることを前提）
+                if (timestamp.isAfter(to)) {
+                    return false;
+                }
+                result.add(MAPPER.read(row));
+            } catch (Exception e) {
+                // パースエラー等は無視して次へ
+            }
+            return true;
+        });
+
+        return result;
+    }
+
+    /**
+     * ホスト名の時刻インデックスを取得する
+     * 未読み込みの場合はインデックスファイルを読み込み、CSVに追いついていない分を末尾から補完する。
+     * インデックスがCSVと整合しない場合（保持期間処理でCSVが書き換えられた等）は再構築する
+     */
+    private SparseTimeIndex getTimeIndex(String hostname) throws IOException {
+        SparseTimeIndex index = timeIndexes.get(hostname);
+        if (index != null) {
+            return index;
+        }
+
+        String filename = String.format("resource_history_%s.csv", hostname);
+        index = SparseTimeIndex.open(getCsvPath(filename + SparseTimeIndex.SUFFIX));
+
+        if (!index.isEmpty() && !catchUpTimeIndex(filename, index)) {
+            logger.info("時刻インデックスがCSVと整合しないため再構築します: {}", filename);
+            index.clear();
+        }
+        if (index.isEmpty()) {
+            catchUpTimeIndex(filename, index);
+        }
+
+        SparseTimeIndex existing = timeIndexes.putIfAbsent(hostname, index);
+        return existing != null ? existing : index;
+    }
+
+    /**
+     * インデックスの最終エントリ以降のCSV行をインデックスに反映する
+     * 
+     * @return 最終エントリがCSVの内容と一致した場合true
+     */
+    private boolean catchUpTimeIndex(String filename, SparseTimeIndex index) throws IOException {
+        long from = index.isEmpty() ? 0L : index.lastOffset();
+        if (from >= getCsvSize(filename)) {
+            return index.isEmpty();
+        }
+
+        boolean[] consistent = { true };
+        readRowsFromCsvForward(filename, from, (offset, row) -> {
+            Long minute = parseMinuteBucket(row);
+            // 最終エントリの位置にある行が記録された時刻と一致しなければ不整合
+            if (offset == from && !index.isEmpty() && (minute == null || minute != index.lastMinute())) {
+                consistent[0] = false;
+                return false;
+            }
+            if (minute == null) {
+                return true;
+            }
+            try {
+                index.add(minute, offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        });
+        return consistent[0];
+    }
+
+    /**
+     * CSVの1行からタイムスタンプのバケット（エポック分）を取得する
+     * 
+     * @return バケット（ヘッダー行やパースできない行の場合はnull）
+     */
+    private static Long parseMinuteBucket(CsvRowReader row) {
+        if (!MAPPER.isRecord(row)) {
+            return null;
+        }
+        try {
+            return toMinuteBucket(ZonedDateTime.parse(row.getString(1)));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private Object getHostLock(String hostname) {
+        return hostLocks.computeIfAbsent(hostname, key -> new Object());
+    }
+
+    private static long toMinuteBucket(ZonedDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(), 60L);
+    }
+
+    /**
+     * 保持期間を過ぎた古いレコードを削除する
+     * 
+     * @param hostname ホスト名
+     * @return 削除した件数
+     * @throws IOException IO例外
+     */
+    public int deleteOldRecords(String hostname) throws IOException {
+        // LSMストアではコンパクションと定期的な圧縮処理で保持期間を過ぎたレコードを削除する
+        if (lsmHistoryStore != null) {
+            return 0;
         }
+        synchronized (getHostLock(hostname)) {
+            return rewriteWithinRetention(hostname);
+        }
+    }
+
+    private int rewriteWithinRetention(String hostname) throws IOException {
+        String filename = String.format("resource_history_%s.csv", hostname);
 
         ZonedDateTime now = ZonedDateTime.now();
         ZonedDateTime thresholdTime = now.minusDays(retentionDays);
 
-        List<Object[]> recordsToKeep = new ArrayList<>();
+        // キーで範囲検索できるストレージでは保持期間より前のキーの範囲のみを削除する
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            return keyed.deleteSeries(filename, hostname, Long.MIN_VALUE, thresholdTime.toInstant().toEpochMilli());
+        }
 
-        for (String line : lines) {
-            String[] parts = line.split(",", -1);
+        List<Object[]> recordsToKeep = new ArrayList<>();
+        int[] dataLineCount = { 0 };
 
+        readRowsFromCsv(filename, (position, row) -> {
             // ヘッダー行はスキップ（上書き時に自動追加される）
-            if (parts[0].equals("Hostname")) {
-                continue;
+            if (MAPPER.isHeader(row)) {
+                return true;
             }
+            dataLineCount[0]++;
 
-            if (parts.length >= 5) {
+            if (row.size() >= MAPPER.getRequiredColumns()) {
                 try {
-                    ZonedDateTime timestamp = ZonedDateTime.parse(parts[1]);
+                    ZonedDateTime timestamp = ZonedDateTime.parse(row.getString(1));
 
                     // 保持期間内のデータのみを保持
                     if (!timestamp.isBefore(thresholdTime)) {
-                        recordsToKeep.add(new Object[] {
-                                parts[0], // hostname
-                                parts[1], // timestamp
-                                parts[2], // cpuUsage
-                                parts[3], // memoryUsage
-                                parts[4] // instanceTypeChangeRequest
-                        });
+                        recordsToKeep.add(encodeColumns(MAPPER, new Object[] {
+                                row.getString(0), // hostname
+                                row.getString(1), // timestamp
+                                row.getString(2), // cpuUsage
+                                row.getString(3), // memoryUsage
+                                row.getString(4) // instanceTypeChangeRequest
+                        }));
                     }
                 } catch (Exception e) {
                     // パースエラー等は無視して次へ
-                    continue;
                 }
             }
+            return true;
+        });
+
+        // 削除対象がなければ書き換えない（時刻インデックスを維持するため）
+        if (recordsToKeep.size() == dataLineCount[0]) {
+            return 0;
         }
 
         // 保持するレコードでCSVを上書き
-        overwriteToCsv(filename, HEADERS, recordsToKeep);
+        overwriteToCsv(filename, MAPPER.getHeaders(), recordsToKeep);
+
+        // 行の位置が変わるため時刻インデックスを破棄する（次回アクセス時に再構築）
+        SparseTimeIndex index = timeIndexes.remove(hostname);
+        if (index != null) {
+            index.clear();
+        } else {
+            Files.deleteIfExists(getCsvPath(filename + SparseTimeIndex.SUFFIX));
+        }
+        return dataLineCount[0] - recordsToKeep.size();
     }
 
 }
@@ -0,0 +1,241 @@
+package com.example.jsoncommon.repository;
+
+import com.example.jsoncommon.dto.ResourceRollupCsv;
+import com.example.jsoncommon.dto.ResourceRollupCsvMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * リソース履歴の集計値（1分・1時間単位）を粒度・ホスト名ごとのCSVに保存するリポジトリ
+ */
+@Repository
+public class ResourceRollupRepository extends CsvRepositoryBase {
+
+    private static final ResourceRollupCsvMapper MAPPER = ResourceRollupCsvMapper.INSTANCE;
+
+    @Value("${resource.history.rollup.minute.retention-days:90}")
+    private int minuteRetentionDays;
+
+    @Value("${resource.history.rollup.hour.retention-days:400}")
+    private int hourRetentionDays;
+
+    /**
+     * 粒度ごとの保持期間を設定する（テスト用）
+     *
+     * @param tier          粒度
+     * @param retentionDays 保持期間（日数）
+     */
+    public void setRetentionDays(RollupTier tier, int retentionDays) {
+        if (tier == RollupTier.MINUTE) {
+            this.minuteRetentionDays = retentionDays;
+        } else {
+            this.hourRetentionDays = retentionDays;
+        }
+    }
+
+    /**
+     * 粒度ごとの保持期間を取得する
+     *
+     * @param tier 粒度
+     * @return 保持期間（日数）
+     */
+    public int getRetentionDays(RollupTier tier) {
+        return tier == RollupTier.MINUTE ? minuteRetentionDays : hourRetentionDays;
+    }
+
+    /**
+     * 集計値を保存する
+     *
+     * @param tier   粒度
+     * @param rollup 集計値
+     * @throws IOException IO例外
+     */
+    public void save(RollupTier tier, ResourceRollupCsv rollup) throws IOException {
+        Object[] values = encodeColumns(MAPPER, MAPPER.toValues(rollup));
+
+        // キーで範囲検索できるストレージでは（ホスト名, 集計区間の開始時刻）をキーとして保存する
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            keyed.appendSeries(getFileName(tier, rollup.getHostname()), MAPPER.getHeaders(), rollup.getHostname(),
+                    ZonedDateTime.parse(rollup.getBucketStart()).toInstant().toEpochMilli(), values);
+            return;
+        }
+        writeToCsv(getFileName(tier, rollup.getHostname()), MAPPER.getWriter(), values);
+    }
+
+    /**
+     * 指定ホスト名の指定期間の集計値を取得する
+     * 同じ集計区間の行が複数ある場合（再起動をまたいだ区間等）は1件にまとめる
+     *
+     * @param tier     粒度
+     * @param hostname ホスト名
+     * @param from     期間の開始（この時刻を含む区間から）
+     * @param to       期間の終了（この時刻を含む区間まで）
+     * @return 集計値のリスト（古いものから順）
+     * @throws IOException IO例外
+     */
+    public List<ResourceRollupCsv> findByHostnameAndPeriod(RollupTier tier, String hostname,
+            ZonedDateTime from, ZonedDateTime to) throws IOException {
+        ZonedDateTime fromBucket = tier.bucketStart(from);
+        List<ResourceRollupCsv> result = new ArrayList<>();
+
+        RowVisitor visitor = (position, row) -> {
+            ResourceRollupCsv rollup = read(row, hostname);
+            if (rollup == null) {
+                return true;
+            }
+            ZonedDateTime bucketStart = ZonedDateTime.parse(rollup.getBucketStart());
+            if (bucketStart.isBefore(fromBucket)) {
+                return true;
+            }
+            // 期間の終了を過ぎたら終了（CSVが時系列順であることを前提）
+            if (bucketStart.isAfter(to)) {
+                return false;
+            }
+
+            ResourceRollupCsv last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last != null && last.getBucketStart().equals(rollup.getBucketStart())) {
+                result.set(result.size() - 1, merge(last, rollup));
+            } else {
+                result.add(rollup);
+            }
+            return true;
+        };
+
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            readRowsFromSeries(getFileName(tier, hostname), hostname, fromBucket.toInstant().toEpochMilli(),
+                    to.toInstant().toEpochMilli(), visitor);
+        } else {
+            readRowsFromCsvForward(getFileName(tier, hostname), 0L, visitor);
+        }
+
+        return result;
+    }
+
+    /**
+     * 指定ホスト名の集計値のサイズを取得する
+     *
+     * @param tier     粒度
+     * @param hostname ホスト名
+     * @return バイト数（キーで更新できるストレージでは行数からの推定値）
+     * @throws IOException IO例外
+     */
+    public long getRollupSize(RollupTier tier, String hostname) throws IOException {
+        return getCsvBytes(getFileName(tier, hostname), MAPPER);
+    }
+
+    /**
+     * 保持期間を過ぎた古い集計値を削除する
+     *
+     * @param tier     粒度
+     * @param hostname ホスト名
+     * @return 削除した件数
+     * @throws IOException IO例外
+     */
+    public int deleteOldRecords(RollupTier tier, String hostname) throws IOException {
+        String filename = getFileName(tier, hostname);
+        ZonedDateTime thresholdTime = ZonedDateTime.now().minusDays(getRetentionDays(tier));
+
+        // キーで範囲検索できるストレージでは保持期間より前のキーの範囲のみを削除する
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            return keyed.deleteSeries(filename, hostname, Long.MIN_VALUE, thresholdTime.toInstant().toEpochMilli());
+        }
+
+        List<ResourceRollupCsv> recordsToKeep = new ArrayList<>();
+        int[] dataLineCount = { 0 };
+
+        readRowsFromCsv(filename, (position, row) -> {
+            // ヘッダー行はスキップ（上書き時に自動追加される）
+            if (MAPPER.isHeader(row)) {
+                return true;
+            }
+            dataLineCount[0]++;
+
+            ResourceRollupCsv rollup = read(row, hostname);
+            if (rollup != null && !ZonedDateTime.parse(rollup.getBucketStart()).isBefore(thresholdTime)) {
+                recordsToKeep.add(rollup);
+            }
+            return true;
+        });
+
+        // 削除対象がなければ書き換えない
+        if (recordsToKeep.size() == dataLineCount[0]) {
+            return 0;
+        }
+
+        // 保持するレコードでCSVを上書き
+        overwriteToCsv(filename, MAPPER, recordsToKeep);
+        return dataLineCount[0] - recordsToKeep.size();
+    }
+
+    private static String getFileName(RollupTier tier, String hostname) {
+        return String.format("resource_rollup_%s_%s.csv", tier.getLabel(), hostname);
+    }
+
+    /**
+     * 解析済みの1行を集計値に変換する
+     *
+     * @return 集計値（ヘッダー行・他のホストの行・パースできない行の場合はnull）
+     */
+    private static ResourceRollupCsv read(CsvRowReader row, String hostname) {
+        if (!MAPPER.isRecord(row) || !row.fieldEquals(0, hostname)) {
+            return null;
+        }
+        try {
+            ResourceRollupCsv rollup = MAPPER.read(row);
+            ZonedDateTime.parse(rollup.getBucketStart());
+            return rollup;
+        } catch (Exception e) {
+            // パースエラー等は無視して次へ
+            return null;
+        }
+    }
+
+    /**
+     * 同じ集計区間の2つの集計値を1つにまとめる
+     */
+    private static ResourceRollupCsv merge(ResourceRollupCsv a, ResourceRollupCsv b) {
+        int count = a.getSampleCount() + b.getSampleCount();
+        return new ResourceRollupCsv(
+                a.getHostname(),
+                a.getBucketStart(),
+                count,
+                min(a.getCpuMin(), b.getCpuMin()),
+                max(a.getCpuMax(), b.getCpuMax()),
+                weightedAvg(a.getCpuAvg(), a.getSampleCount(), b.getCpuAvg(), b.getSampleCount()),
+                min(a.getMemoryMin(), b.getMemoryMin()),
+                max(a.getMemoryMax(), b.getMemoryMax()),
+                weightedAvg(a.getMemoryAvg(), a.getSampleCount(), b.getMemoryAvg(), b.getSampleCount()),
+                a.getWithinCount() + b.getWithinCount(),
+                a.getUpperCount() + b.getUpperCount(),
+                a.getLowerCount() + b.getLowerCount());
+    }
+
+    private static Double min(Double a, Double b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return Math.min(a, b);
+    }
+
+    private static Double max(Double a, Double b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return Math.max(a, b);
+    }
+
+    private static Double weightedAvg(Double a, int aCount, Double b, int bCount) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return (a * aCount + b * bCount) / (aCount + bCount);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.jsoncommon.repository;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * リソース履歴の集計の粒度
+ */
+public enum RollupTier {
+    MINUTE("1m", Duration.ofMinutes(1), ChronoUnit.MINUTES),
+    HOUR("1h", Duration.ofHours(1), ChronoUnit.HOURS);
+
+    private final String label;
+    private final Duration duration;
+    private final ChronoUnit unit;
+
+    RollupTier(String label, Duration duration, ChronoUnit unit) {
+        this.label = label;
+        this.duration = duration;
+        this.unit = unit;
+    }
+
+    /** ファイル名に使用する粒度の表記 */
+    public String getLabel() {
+        return label;
+    }
+
+    /** 集計区間の長さ */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * タイムスタンプが属する集計区間の開始時刻を取得する
+     *
+     * @param timestamp タイムスタンプ
+     * @return 集計区間の開始時刻
+     */
+    public ZonedDateTime bucketStart(ZonedDateTime timestamp) {
+        return timestamp.truncatedTo(unit);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.jsoncommon.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 出力ディレクトリの追加・削除後に、ファイルを ShardRing で求めたディレクトリへ移動するツール
+ * 追記用チャネルや時刻インデックスを保持したまま移動しないよう、アプリケーションの停止中に実行すること。
+ * 削除するディレクトリのファイルも移動する場合は、移動元ディレクトリとして指定する。
+ */
+public class ShardRebalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private final ShardRing ring;
+
+    /**
+     * @param ring 移動先を求めるリング（新しい構成）
+     */
+    public ShardRebalancer(ShardRing ring) {
+        this.ring = ring;
+    }
+
+    /**
+     * 各ディレクトリのファイルのうち、配置先が異なるものを移動する
+     * 移動先に同名のファイルが既にある場合は上書きせずに警告を出力する
+     *
+     * @param extraSources リングに含まれない移動元ディレクトリ（削除するディレクトリ等）
+     * @return 移動したファイル数
+     * @throws IOException IO例外
+     */
+    public int rebalance(List<Path> extraSources) throws IOException {
+        List<Path> sources = Stream.concat(ring.getDirectories().stream(),
+                extraSources.stream().map(dir -> dir.toAbsolutePath().normalize()))
+                .distinct()
+                .toList();
+        int moved = 0;
+        for (Path source : sources) {
+            if (!Files.isDirectory(source)) {
+                continue;
+            }
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(source)) {
+                files = stream.filter(Files::isRegularFile).toList();
+            }
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                Path targetDir = ring.locate(fileName);
+                if (targetDir.equals(source)) {
+                    continue;
+                }
+                Path target = targetDir.resolve(fileName);
+                if (Files.exists(target)) {
+                    logger.warn("移動先に同名のファイルが存在するため移動しません: {} -> {}", file, target);
+                    continue;
+                }
+                Files.createDirectories(targetDir);
+                // 異なるファイルシステム間ではコピー後に削除される
+                Files.move(file, target);
+                moved++;
+                logger.debug("ファイルを移動しました: {} -> {}", file, target);
+            }
+        }
+        logger.info("出力ディレクトリの再配置が完了しました: 移動ファイル数={}, ディレクトリ={}", moved, ring.getDirectories());
+        return moved;
+    }
+
+    /**
+     * アプリケーション停止中にファイルを再配置する
+     *
+     * @param args カンマ区切りの出力ディレクトリ（app.csv.output-dirs と同じ値）、移動元ディレクトリ（任意・複数可）
+     * @throws IOException IO例外
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("使い方: ShardRebalancer <出力ディレクトリ（カンマ区切り）> [移動元ディレクトリ...]");
+            System.exit(1);
+        }
+        List<Path> extraSources = Stream.of(args).skip(1).map(Path::of).toList();
+        new ShardRebalancer(ShardRing.parse(args[0])).rebalance(extraSources);
+    }
+}
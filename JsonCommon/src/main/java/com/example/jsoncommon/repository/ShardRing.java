@@ -0,0 +1,114 @@
+package com.example.jsoncommon.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 複数の出力ディレクトリにファイルを振り分けるコンシステントハッシュのリング
+ * ディレクトリごとに仮想ノードを配置し、ファイルは名前のハッシュ値以降で最初の仮想ノードのディレクトリに置く。
+ * ディレクトリを追加した場合に移動するファイルは、おおよそ追加したディレクトリの割合分のみとなる。
+ * 付随ファイル（「xxx.csv.idx」等）は元のCSVファイルと同じディレクトリに置くため、「.csv」までの名前で振り分ける。
+ */
+public final class ShardRing {
+
+    /** ディレクトリごとの仮想ノード数 */
+    private static final int VIRTUAL_NODES = 128;
+
+    private static final String CSV_SUFFIX = ".csv";
+
+    private final List<Path> directories;
+
+    /** 仮想ノードのハッシュ値 → ディレクトリ */
+    private final TreeMap<Long, Path> ring = new TreeMap<>();
+
+    /**
+     * @param directories 出力ディレクトリ（1つ以上）
+     */
+    public ShardRing(List<Path> directories) {
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("出力ディレクトリが指定されていません");
+        }
+        this.directories = directories.stream().map(dir -> dir.toAbsolutePath().normalize()).distinct().toList();
+        for (Path dir : this.directories) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(dir + "#" + i), dir);
+            }
+        }
+    }
+
+    /**
+     * カンマ区切りの出力ディレクトリの設定値からリングを作成する
+     *
+     * @param directories カンマ区切りの出力ディレクトリ
+     * @return リング
+     */
+    public static ShardRing parse(String directories) {
+        return new ShardRing(Arrays.stream(directories.split(","))
+                .map(String::trim)
+                .filter(dir -> !dir.isEmpty())
+                .map(Path::of)
+                .toList());
+    }
+
+    /**
+     * 出力ディレクトリを取得する（絶対パス）
+     *
+     * @return 出力ディレクトリ
+     */
+    public List<Path> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * ファイルを置くディレクトリを求める
+     *
+     * @param fileName ファイル名
+     * @return ディレクトリ（絶対パス）
+     */
+    public Path locate(String fileName) {
+        if (directories.size() == 1) {
+            return directories.get(0);
+        }
+        Map.Entry<Long, Path> entry = ring.ceilingEntry(hash(shardKey(fileName)));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * ファイルのパスを求める
+     *
+     * @param fileName ファイル名
+     * @return ファイルのパス
+     */
+    public Path resolve(String fileName) {
+        return locate(fileName).resolve(fileName);
+    }
+
+    /**
+     * 振り分けに使用する名前（「.csv」より後ろを除いたファイル名）
+     */
+    static String shardKey(String fileName) {
+        int index = fileName.indexOf(CSV_SUFFIX);
+        return index < 0 ? fileName : fileName.substring(0, index + CSV_SUFFIX.length());
+    }
+
+    /**
+     * FNV-1a（64ビット）に攪拌を加えたハッシュ値
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
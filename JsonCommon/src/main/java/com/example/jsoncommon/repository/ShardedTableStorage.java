@@ -0,0 +1,112 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * 複数の出力ディレクトリにテーブルを振り分けるストレージ
+ * テーブルごとに ShardRing で求めたディレクトリの CsvTableStorage に処理を委譲する。
+ * 異なるテーブルへの読み書きはディレクトリ（ディスク）ごとに独立して並行に実行できる。
+ */
+public class ShardedTableStorage implements TableStorage {
+
+    private final ShardRing ring;
+
+    /** ディレクトリ → ストレージ */
+    private final Map<Path, CsvTableStorage> storages = new LinkedHashMap<>();
+
+    /**
+     * @param ring 振り分けに使用するリング
+     */
+    public ShardedTableStorage(ShardRing ring) {
+        this.ring = ring;
+        for (Path dir : ring.getDirectories()) {
+            storages.put(dir, new CsvTableStorage(dir));
+        }
+    }
+
+    /**
+     * 振り分けに使用するリングを取得する
+     *
+     * @return リング
+     */
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    @Override
+    public long append(String table, String[] headers, Object... values) throws IOException {
+        return storageFor(table).append(table, headers, values);
+    }
+
+    @Override
+    public long append(String table, CsvRowWriter writer, Object... values) throws IOException {
+        return storageFor(table).append(table, writer, values);
+    }
+
+    @Override
+    public void sync(String table) throws IOException {
+        storageFor(table).sync(table);
+    }
+
+    @Override
+    public void overwrite(String table, String[] headers, List<Object[]> values) throws IOException {
+        storageFor(table).overwrite(table, headers, values);
+    }
+
+    @Override
+    public List<String> readAll(String table) throws IOException {
+        return storageFor(table).readAll(table);
+    }
+
+    @Override
+    public void readForward(String table, long position, LineVisitor visitor) throws IOException {
+        storageFor(table).readForward(table, position, visitor);
+    }
+
+    @Override
+    public void readReverse(String table, Predicate<String> visitor) throws IOException {
+        storageFor(table).readReverse(table, visitor);
+    }
+
+    @Override
+    public void readForwardBytes(String table, long position, RowVisitor visitor) throws IOException {
+        storageFor(table).readForwardBytes(table, position, visitor);
+    }
+
+    @Override
+    public void readReverseBytes(String table, RowVisitor visitor) throws IOException {
+        storageFor(table).readReverseBytes(table, visitor);
+    }
+
+    @Override
+    public long endPosition(String table) throws IOException {
+        return storageFor(table).endPosition(table);
+    }
+
+    @Override
+    public void exportCsv(String table, Path target) throws IOException {
+        storageFor(table).exportCsv(table, target);
+    }
+
+    /**
+     * 全ディレクトリのテーブルを名前順に返す
+     */
+    @Override
+    public List<String> listTables() throws IOException {
+        TreeSet<String> tables = new TreeSet<>();
+        for (CsvTableStorage storage : storages.values()) {
+            tables.addAll(storage.listTables());
+        }
+        return List.copyOf(tables);
+    }
+
+    private CsvTableStorage storageFor(String table) {
+        return storages.get(ring.locate(table));
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.jsoncommon.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * スナップショットと先行書き込みログ（WAL）で状態を保存するリポジトリの基底クラス
+ * 状態はキー（先頭の列）ごとに StateStore（既定はヒープ上のマップ）に保持し、変更は1行ずつWAL（スナップショットのファイル名 + ".wal"）に追記する。
+ * WALは一定間隔でまとめてディスクへ同期する（グループコミット）。追記ごとに同期する設定の場合は同期してから呼び出し元に戻る。
+ * チェックポイントでは全件をスナップショット（CSV）に書き出してからWALを空にする。
+ * WALの行数によるチェックポイントは呼び出し元のスレッドではなくバックグラウンドのスレッドで実行する。
+ * 保持先を直接更新した変更（WALに追記しない変更）はサブクラスが markUnloggedChange で通知し、次のチェックポイントで書き出す。
+ * 起動後の初回アクセス時にスナップショットを読み込み、WALの行を順に適用して状態を復元する。
+ * WALの行はスナップショットと同じ形式で、「キー,DELETED」の行は削除を表す。
+ * キーで行を更新できるストレージ（KeyedTableStorage）では、WALを使わずに変更をキーの行の更新・削除として書き込む。
+ *
+ * @param <T> 状態のDTOの型
+ */
+public abstract class SnapshotWalRepository<T> extends CsvRepositoryBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotWalRepository.class);
+
+    /** WALのファイル名の接尾辞 */
+    static final String WAL_SUFFIX = ".wal";
+
+    /** WALの削除を表す2列目の値 */
+    static final String TOMBSTONE = "DELETED";
+
+    private final String snapshotFile;
+    private final String walFile;
+    private final CsvRowMapper<T> mapper;
+    private final Function<T, String> keyFunction;
+
+    /** WALの行数がこの値に達したらチェックポイントを実行する */
+    @Value("${app.state.checkpoint-wal-entries:10000}")
+    private int checkpointWalEntries = 10000;
+
+    /** WALに追記するたびにディスクへ同期するか（false の場合は一定間隔でまとめて同期する） */
+    @Value("${app.state.wal-sync-each-append:false}")
+    private boolean walSyncEachAppend;
+
+    /** 最後の同期以降にWALに追記したか */
+    private final AtomicBoolean walDirty = new AtomicBoolean();
+
+    /** 最後のチェックポイント以降に、WALに追記せずに保持先を更新したか */
+    private final AtomicBoolean unloggedChanges = new AtomicBoolean();
+
+    /** WALの行数によるチェックポイントの実行待ちか */
+    private final AtomicBoolean checkpointPending = new AtomicBoolean();
+
+    /** WALの行数によるチェックポイントを実行するスレッド */
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "state-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** 状態の保持先（読み込み済みの場合のみ。this で保護） */
+    private StateStore<T> states;
+
+    /** 最後のチェックポイント以降にWALに追記した行数（this で保護） */
+    private int walEntries;
+
+    /**
+     * @param snapshotFile スナップショットのファイル名
+     * @param mapper       DTOのマッパー
+     * @param keyFunction  DTOからキー（先頭の列の値）を求める関数
+     */
+    protected SnapshotWalRepository(String snapshotFile, CsvRowMapper<T> mapper, Function<T, String> keyFunction) {
+        this.snapshotFile = snapshotFile;
+        this.walFile = snapshotFile + WAL_SUFFIX;
+        this.mapper = mapper;
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * 状態の保持先を作成する（スナップショットとWALから読み込むたびに呼び出す）
+     * 既定ではヒープ上のマップ（登録順）に保持する
+     *
+     * @return 状態の保持先
+     */
+    protected StateStore<T> createStateStore() {
+        return new HeapStateStore<>();
+    }
+
+    /**
+     * 読み込み済みの状態を破棄する（次回アクセス時にスナップショットとWALから読み込み直す）
+     * 状態の保持先を切り替える場合に呼び出す
+     */
+    protected synchronized void resetStates() {
+        states = null;
+    }
+
+    /**
+     * チェックポイントを実行するWALの行数を設定する
+     *
+     * @param checkpointWalEntries WALの行数
+     */
+    public void setCheckpointWalEntries(int checkpointWalEntries) {
+        this.checkpointWalEntries = checkpointWalEntries;
+    }
+
+    /**
+     * WALに追記するたびにディスクへ同期するか設定する
+     *
+     * @param walSyncEachAppend 追記ごとに同期する場合true
+     */
+    public void setWalSyncEachAppend(boolean walSyncEachAppend) {
+        this.walSyncEachAppend = walSyncEachAppend;
+    }
+
+    @Override
+    public synchronized void setOutputDir(String outputDir) {
+        super.setOutputDir(outputDir);
+        states = null;
+    }
+
+    @Override
+    public synchronized void setOutputDirs(String outputDirs) {
+        super.setOutputDirs(outputDirs);
+        states = null;
+    }
+
+    /**
+     * 状態を追加または更新する
+     *
+     * @param value 状態
+     * @throws IOException IO例外
+     */
+    protected synchronized void putState(T value) throws IOException {
+        StateStore<T> current = loadStates();
+        String key = keyFunction.apply(value);
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            upsertToCsv(snapshotFile, mapper, key, value);
+            current.put(key, value);
+            return;
+        }
+        // WALに書き込んでからメモリ上の状態を更新する
+        writeToCsv(walFile, mapper, value);
+        syncOrDefer();
+        current.put(key, value);
+        afterWalAppend();
+    }
+
+    /**
+     * 状態を読み込み、更新した値で置き換える（読み込みから書き込みまでを1つのロック内で行う）
+     *
+     * @param key     キー
+     * @param updater 現在の状態から更新後の状態を求める関数
+     * @return 更新した場合true（キーの状態が存在しない場合false）
+     * @throws IOException IO例外
+     */
+    protected synchronized boolean updateState(String key, UnaryOperator<T> updater) throws IOException {
+        Optional<T> current = loadStates().get(key);
+        if (current.isEmpty()) {
+            return false;
+        }
+        putState(updater.apply(current.get()));
+        return true;
+    }
+
+    /**
+     * WALに追記せずに保持先を直接更新したことを記録する（次のチェックポイントでスナップショットに書き出す）
+     * 停止時もチェックポイントで書き出すが、異常終了した場合は最後のチェックポイント以降の変更が失われる
+     */
+    protected void markUnloggedChange() {
+        unloggedChanges.set(true);
+    }
+
+    /**
+     * 状態を削除する
+     *
+     * @param key キー
+     * @return 削除した場合true
+     * @throws IOException IO例外
+     */
+    protected synchronized boolean removeState(String key) throws IOException {
+        StateStore<T> current = loadStates();
+        if (current.get(key).isEmpty()) {
+            return false;
+        }
+        KeyedTableStorage keyed = getKeyedStorage();
+        if (keyed != null) {
+            keyed.delete(snapshotFile, key);
+            current.remove(key);
+            return true;
+        }
+        writeToCsv(walFile, mapper.getWriter(), key, TOMBSTONE);
+        syncOrDefer();
+        current.remove(key);
+        afterWalAppend();
+        return true;
+    }
+
+    /**
+     * キーで状態を取得する
+     *
+     * @param key キー
+     * @return 状態（存在しない場合はOptional.empty()）
+     * @throws IOException IO例外
+     */
+    protected synchronized Optional<T> findState(String key) throws IOException {
+        return loadStates().get(key);
+    }
+
+    /**
+     * 全ての状態を取得する（既定の保持先では登録順）
+     *
+     * @return 状態のリスト
+     * @throws IOException IO例外
+     */
+    protected synchronized List<T> findAllStates() throws IOException {
+        return loadStates().values();
+    }
+
+    /**
+     * 状態の件数を取得する（未読み込みの場合はスナップショットとWALから読み込む）
+     *
+     * @return 件数
+     * @throws IOException IO例外
+     */
+    protected synchronized int countStates() throws IOException {
+        return loadStates().size();
+    }
+
+    /**
+     * 全件をスナップショットに書き出してWALを空にする
+     * スナップショットの書き出しは一時ファイルからの置き換えで行うため、途中で停止しても直前のスナップショットとWALが残る。
+     * WALを空にする前に停止した場合も、同じ変更を再適用するだけとなる
+     *
+     * @throws IOException IO例外
+     */
+    public synchronized void checkpoint() throws IOException {
+        // キーで行を更新できるストレージではWALに追記した変更は既に保存されているため、保持先を直接更新した変更のみ書き込む
+        if (getKeyedStorage() != null) {
+            if (unloggedChanges.getAndSet(false)) {
+                for (T value : loadStates().values()) {
+                    upsertToCsv(snapshotFile, mapper, keyFunction.apply(value), value);
+                }
+            }
+            walEntries = 0;
+            return;
+        }
+        unloggedChanges.set(false);
+        overwriteToCsv(snapshotFile, mapper, loadStates().values());
+        overwriteToCsv(walFile, mapper.getHeaders(), List.of());
+        walEntries = 0;
+    }
+
+    /**
+     * 前回の同期以降にWALに追記している場合、WALをディスクへ同期する
+     * 同期中もWALへの追記を止めないよう、リポジトリのロックは取得しない
+     *
+     * @throws IOException IO例外
+     */
+    public void syncWal() throws IOException {
+        if (!walDirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            getStorage().sync(walFile);
+        } catch (IOException e) {
+            walDirty.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * 定期的にWALをディスクへ同期する（グループコミット）
+     */
+    @Scheduled(fixedDelayString = "${app.state.wal-sync-interval-ms:200}")
+    public void syncWalInBackground() {
+        try {
+            syncWal();
+        } catch (IOException e) {
+            logger.error("WALの同期に失敗しました: {}", walFile, e);
+        }
+    }
+
+    /**
+     * 前回のチェックポイント以降に変更がある場合にチェックポイントを実行する（定期実行・停止時）
+     */
+    @Scheduled(fixedDelayString = "${app.state.checkpoint-interval-ms:60000}")
+    public synchronized void checkpointIfDirty() {
+        if (states == null || (walEntries == 0 && !unloggedChanges.get())) {
+            return;
+        }
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            logger.error("状態のチェックポイントに失敗しました: {}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * 停止時にチェックポイントを実行し、WALを同期する
+     */
+    @PreDestroy
+    public void close() {
+        background.shutdown();
+        checkpointIfDirty();
+        syncWalInBackground();
+    }
+
+    /**
+     * 追記ごとに同期する設定の場合はWALを同期し、それ以外は次の定期的な同期に任せる
+     */
+    private void syncOrDefer() throws IOException {
+        if (walSyncEachAppend) {
+            getStorage().sync(walFile);
+        } else {
+            walDirty.set(true);
+        }
+    }
+
+    /**
+     * WALの行数が上限に達した場合、バックグラウンドでチェックポイントを実行する
+     */
+    private void afterWalAppend() {
+        walEntries++;
+        if (walEntries >= checkpointWalEntries && !background.isShutdown()
+                && checkpointPending.compareAndSet(false, true)) {
+            background.execute(() -> {
+                checkpointPending.set(false);
+                checkpointIfDirty();
+            });
+        }
+    }
+
+    /**
+     * 未読み込みの場合はスナップショットとWALから状態を復元する
+     */
+    private StateStore<T> loadStates() throws IOException {
+        if (states != null) {
+            return states;
+        }
+        long startNanos = System.nanoTime();
+        StateStore<T> loaded = createStateStore();
+        loaded.clear();
+        for (T value : findAllFromCsv(snapshotFile, mapper)) {
+            loaded.put(keyFunction.apply(value), value);
+        }
+
+        int[] replayed = { 0 };
+        readRowsFromCsv(walFile, (position, row) -> {
+            if (mapper.isHeader(row)) {
+                return true;
+            }
+            if (mapper.isRecord(row)) {
+                try {
+                    T value = mapper.read(row);
+                    loaded.put(keyFunction.apply(value), value);
+                    replayed[0]++;
+                } catch (RuntimeException e) {
+                    // 追記中に停止した末尾の行は読み込めないため無視する
+                    logger.warn("WALの行を読み込めないため無視します: {}, 位置={}", walFile, position);
+                }
+            } else if (row.size() == 2 && row.fieldEquals(1, TOMBSTONE)) {
+                loaded.remove(row.getString(0));
+                replayed[0]++;
+            }
+            return true;
+        });
+
+        states = loaded;
+        walEntries = replayed[0];
+        logger.info("状態を復元しました: {}, 件数={}, WAL適用行数={}, 所要時間={}ms", snapshotFile, loaded.size(),
+                replayed[0], (System.nanoTime() - startNanos) / 1_000_000);
+        return states;
+    }
+
+    /**
+     * ヒープ上のマップに登録順で状態を保持する既定の保持先
+     */
+    private static final class HeapStateStore<T> implements StateStore<T> {
+
+        private final Map<String, T> values = new LinkedHashMap<>();
+
+        @Override
+        public Optional<T> get(String key) {
+            return Optional.ofNullable(values.get(key));
+        }
+
+        @Override
+        public void put(String key, T value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public boolean remove(String key) {
+            return values.remove(key) != null;
+        }
+
+        @Override
+        public List<T> values() {
+            return new ArrayList<>(values.values());
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public void clear() {
+            values.clear();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 履歴CSVファイルの疎な時刻インデックス
+ * 1分単位のバケットごとに、そのバケットに属する最初の行のバイト位置を保持する。
+ * インデックスファイルは (バケット, バイト位置) の16バイト固定長エントリを追記するだけの形式で、
+ * 書き込み途中でクラッシュした場合の不完全な末尾エントリは読み込み時に破棄する。
+ */
+class SparseTimeIndex {
+
+    /** インデックスファイルの拡張子（CSVファイル名の末尾に付与する） */
+    static final String SUFFIX = ".idx";
+
+    private static final int ENTRY_SIZE = Long.BYTES * 2;
+
+    private final Path indexPath;
+    private long[] minutes = new long[16];
+    private long[] offsets = new long[16];
+    private int size;
+
+    private SparseTimeIndex(Path indexPath) {
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * インデックスファイルを読み込む
+     * ファイルが存在しない場合は空のインデックスを返す
+     * 
+     * @param indexPath インデックスファイルのパス
+     * @return インデックス
+     * @throws IOException IO例外
+     */
+    static SparseTimeIndex open(Path indexPath) throws IOException {
+        SparseTimeIndex index = new SparseTimeIndex(indexPath);
+        if (!Files.exists(indexPath)) {
+            return index;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        while (buffer.remaining() >= ENTRY_SIZE) {
+            long minute = buffer.getLong();
+            long offset = buffer.getLong();
+            // 昇順でないエントリがあればそれ以降は信用しない
+            if (index.size > 0 && (minute <= index.lastMinute() || offset <= index.lastOffset())) {
+                break;
+            }
+            index.append(minute, offset);
+        }
+        return index;
+    }
+
+    /**
+     * 追記した行をインデックスに反映する
+     * 直前のバケットより新しいバケットの行の場合のみエントリを追加する
+     * 
+     * @param minute 行のタイムスタンプ（エポック分）
+     * @param offset 行の先頭のバイト位置
+     * @throws IOException IO例外
+     */
+    synchronized void add(long minute, long offset) throws IOException {
+        if (size > 0 && (minute <= lastMinute() || offset <= lastOffset())) {
+            return;
+        }
+        append(minute, offset);
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE).putLong(minute).putLong(offset).flip();
+        if (indexPath.getParent() != null && !Files.exists(indexPath.getParent())) {
+            Files.createDirectories(indexPath.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+        }
+    }
+
+    /**
+     * 指定バケット以前で最も新しいバケットの開始位置を二分探索で取得する
+     * 
+     * @param minute 検索するバケット（エポック分）
+     * @return 開始位置のバイト位置（該当するバケットがない場合は-1）
+     */
+    synchronized long floorOffset(long minute) {
+        int pos = Arrays.binarySearch(minutes, 0, size, minute);
+        if (pos >= 0) {
+            return offsets[pos];
+        }
+        int insertion = -pos - 1;
+        return insertion == 0 ? -1L : offsets[insertion - 1];
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized long lastMinute() {
+        return minutes[size - 1];
+    }
+
+    synchronized long lastOffset() {
+        return offsets[size - 1];
+    }
+
+    /**
+     * インデックスを破棄する（ファイルも削除する）
+     * 
+     * @throws IOException IO例外
+     */
+    synchronized void clear() throws IOException {
+        size = 0;
+        Files.deleteIfExists(indexPath);
+    }
+
+    private void append(long minute, long offset) {
+        if (size == minutes.length) {
+            minutes = Arrays.copyOf(minutes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        minutes[size] = minute;
+        offsets[size] = offset;
+        size++;
+    }
+}
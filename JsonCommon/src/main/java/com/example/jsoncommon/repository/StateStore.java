@@ -0,0 +1,58 @@
+package com.example.jsoncommon.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * SnapshotWalRepository が状態を保持する先のSPI
+ * 既定ではヒープ上のマップに保持する。ホスト数に比例する状態をヒープ外に保持する場合等に、
+ * サブクラスで別の実装に置き換える。スナップショットとWALは変更の永続化のみに使う。
+ * 呼び出しは SnapshotWalRepository 内で排他されるため、実装は書き込みを排他しなくてよい。
+ *
+ * @param <T> 状態のDTOの型
+ */
+public interface StateStore<T> {
+
+    /**
+     * キーで状態を取得する
+     *
+     * @param key キー
+     * @return 状態（存在しない場合はOptional.empty()）
+     */
+    Optional<T> get(String key);
+
+    /**
+     * 状態を追加または更新する
+     *
+     * @param key   キー
+     * @param value 状態
+     */
+    void put(String key, T value);
+
+    /**
+     * 状態を削除する
+     *
+     * @param key キー
+     * @return 削除した場合true
+     */
+    boolean remove(String key);
+
+    /**
+     * 全ての状態を取得する
+     *
+     * @return 状態のリスト（順序は実装ごと）
+     */
+    List<T> values();
+
+    /**
+     * 状態の件数を取得する
+     *
+     * @return 件数
+     */
+    int size();
+
+    /**
+     * 全ての状態を削除する（スナップショットとWALから読み込み直す前に呼び出す）
+     */
+    void clear();
+}
@@ -0,0 +1,177 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 繰り返し出現する文字列（ホスト名・装置タイプ・列挙型の値等）を整数IDに置き換えるための永続辞書
+ * 辞書はストレージの string_dictionary.csv に「ID,値」の形式で追記し、IDは登録順に0から採番する。
+ * CSVには辞書参照を引用符なしの「#ID」として書き込む。
+ * 値として「#」で始まる文字列を書き込む場合は引用符で囲まれるため、辞書参照と区別できる。
+ * 出力ディレクトリごとに1つの辞書を使用し、同じディレクトリに複数のプロセスから書き込むことは想定しない。
+ */
+public final class StringDictionary {
+
+    /** 辞書のテーブル名 */
+    static final String TABLE = "string_dictionary.csv";
+
+    private static final CsvRowWriter ROW_WRITER = new CsvRowWriter("Id", "Value");
+
+    private final TableStorage storage;
+
+    /** 値 → 辞書参照 */
+    private final Map<String, Ref> refs = new ConcurrentHashMap<>();
+
+    /** ID → 値（count 未満のIDのみ有効） */
+    private volatile String[] values = new String[16];
+
+    /** 登録されている値の数（values より後に更新する） */
+    private volatile int count;
+
+    /** 辞書を読み込み済みか（this で保護） */
+    private boolean loaded;
+
+    /**
+     * @param storage 辞書を保存するストレージ
+     */
+    public StringDictionary(TableStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * 値の辞書参照を取得する（未登録の場合は登録する）
+     *
+     * @param value 値
+     * @return 辞書参照
+     * @throws IOException 辞書の読み込み・書き込みに失敗した場合
+     */
+    public Ref encode(String value) throws IOException {
+        Ref ref = refs.get(value);
+        if (ref != null) {
+            return ref;
+        }
+        synchronized (this) {
+            ensureLoaded();
+            ref = refs.get(value);
+            if (ref != null) {
+                return ref;
+            }
+            int id = count;
+            // 辞書に書き込んでから参照を返すため、参照を含む行より先に辞書の行が保存される
+            storage.append(TABLE, ROW_WRITER, id, value);
+            ref = new Ref(id);
+            register(id, value, ref);
+            return ref;
+        }
+    }
+
+    /**
+     * IDに対応する値を取得する
+     *
+     * @param id ID
+     * @return 値
+     * @throws IllegalArgumentException 辞書に存在しないIDの場合
+     * @throws UncheckedIOException     辞書の読み込みに失敗した場合
+     */
+    public String valueOf(int id) {
+        if (id >= 0 && id < count) {
+            return values[id];
+        }
+        // 他のインスタンスが追記した分を読み込む
+        synchronized (this) {
+            load();
+        }
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("辞書に存在しないIDです: " + id);
+        }
+        return values[id];
+    }
+
+    /**
+     * 値のIDを取得する（登録はしない）
+     *
+     * @param value 値
+     * @return ID（未登録の場合は-1）
+     * @throws UncheckedIOException 辞書の読み込みに失敗した場合
+     */
+    public int lookup(String value) {
+        Ref ref = refs.get(value);
+        if (ref != null) {
+            return ref.id();
+        }
+        synchronized (this) {
+            if (!loaded) {
+                load();
+            }
+        }
+        ref = refs.get(value);
+        return ref == null ? -1 : ref.id();
+    }
+
+    /**
+     * 登録されている値の数を取得する
+     *
+     * @return 値の数
+     */
+    public int size() {
+        return count;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            load();
+        }
+    }
+
+    /**
+     * 辞書テーブルのうち未読み込みのIDを読み込む
+     */
+    private void load() {
+        CsvRowReader row = new CsvRowReader();
+        try {
+            storage.readForwardBytes(TABLE, 0L, (position, buffer, offset, length) -> {
+                row.reset(buffer, offset, length);
+                if (row.size() < 2 || row.fieldEquals(0, "Id")) {
+                    return true;
+                }
+                int id = row.getInt(0);
+                if (id == count) {
+                    String value = row.getString(1);
+                    register(id, value, new Ref(id));
+                } else if (id > count) {
+                    throw new IllegalStateException("辞書のIDが連続していません: " + id);
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("辞書の読み込みに失敗しました", e);
+        }
+        loaded = true;
+    }
+
+    private void register(int id, String value, Ref ref) {
+        String[] current = values;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = value;
+        values = current;
+        count = id + 1;
+        refs.put(value, ref);
+    }
+
+    /**
+     * 辞書参照（CSVには「#ID」として書き込まれる）
+     *
+     * @param id ID
+     */
+    public record Ref(int id) {
+        @Override
+        public String toString() {
+            return "#" + id;
+        }
+    }
+}
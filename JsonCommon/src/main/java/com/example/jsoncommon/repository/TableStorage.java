@@ -0,0 +1,170 @@
+package com.example.jsoncommon.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * リポジトリの保存先となるストレージのSPI
+ * テーブルはCSVファイル名で識別し、先頭行にヘッダー、以降にCSV形式の1行ずつのレコードを保持する。
+ * 位置（position）は実装ごとの値で、追記順に単調増加する（CSVではバイト位置、MVStoreではキー）。
+ */
+public interface TableStorage {
+
+    /**
+     * テーブルにレコードを追記する（テーブルが存在しない場合はヘッダーも書き込む）
+     *
+     * @param table   テーブル名（CSVファイル名）
+     * @param headers ヘッダー配列
+     * @param values  書き込む値
+     * @return 追記したレコードの位置
+     * @throws IOException IO例外
+     */
+    long append(String table, String[] headers, Object... values) throws IOException;
+
+    /**
+     * テーブルにレコードを追記する（ヘッダーと行の組み立てに CsvRowWriter を使用する）
+     *
+     * @param table  テーブル名（CSVファイル名）
+     * @param writer 行のライター
+     * @param values 書き込む値
+     * @return 追記したレコードの位置
+     * @throws IOException IO例外
+     */
+    default long append(String table, CsvRowWriter writer, Object... values) throws IOException {
+        return append(table, writer.getHeaders(), values);
+    }
+
+    /**
+     * テーブルに追記したレコードをディスクへ同期する
+     * 既定の実装は何もしない（書き込みごとに永続化するストレージ用）
+     *
+     * @param table テーブル名（CSVファイル名）
+     * @throws IOException IO例外
+     */
+    default void sync(String table) throws IOException {
+    }
+
+    /**
+     * テーブルの内容を指定したレコードで置き換える
+     *
+     * @param table   テーブル名（CSVファイル名）
+     * @param headers ヘッダー配列
+     * @param values  書き込む値のリスト
+     * @throws IOException IO例外
+     */
+    void overwrite(String table, String[] headers, List<Object[]> values) throws IOException;
+
+    /**
+     * テーブルの全行を読み込む
+     *
+     * @param table テーブル名（CSVファイル名）
+     * @return 全行（ヘッダーを含む）。テーブルが存在しない場合は空のリスト
+     * @throws IOException IO例外
+     */
+    List<String> readAll(String table) throws IOException;
+
+    /**
+     * 指定した位置から順に1行ずつ読み込む
+     *
+     * @param table    テーブル名（CSVファイル名）
+     * @param position 読み込みを開始する位置（append が返した位置、または0）
+     * @param visitor  各行を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    void readForward(String table, long position, LineVisitor visitor) throws IOException;
+
+    /**
+     * 末尾から逆順に1行ずつ読み込む
+     *
+     * @param table   テーブル名（CSVファイル名）
+     * @param visitor 各行を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    void readReverse(String table, Predicate<String> visitor) throws IOException;
+
+    /**
+     * 指定した位置から順に1行ずつEUC-JPのバイト列のまま読み込む
+     *
+     * @param table    テーブル名（CSVファイル名）
+     * @param position 読み込みを開始する位置（append が返した位置、または0）
+     * @param visitor  各行を受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    default void readForwardBytes(String table, long position, RowVisitor visitor) throws IOException {
+        readForward(table, position, (linePosition, line) -> {
+            byte[] bytes = line.getBytes(CsvTableStorage.CHARSET);
+            return visitor.visit(linePosition, bytes, 0, bytes.length);
+        });
+    }
+
+    /**
+     * 末尾から逆順に1行ずつEUC-JPのバイト列のまま読み込む
+     *
+     * @param table   テーブル名（CSVファイル名）
+     * @param visitor 各行を受け取る処理（位置が分からない実装では位置は-1）。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    default void readReverseBytes(String table, RowVisitor visitor) throws IOException {
+        readReverse(table, line -> {
+            byte[] bytes = line.getBytes(CsvTableStorage.CHARSET);
+            return visitor.visit(-1L, bytes, 0, bytes.length);
+        });
+    }
+
+    /**
+     * 次に追記されるレコードの位置を取得する
+     *
+     * @param table テーブル名（CSVファイル名）
+     * @return 末尾の位置。テーブルが存在しない場合は0
+     * @throws IOException IO例外
+     */
+    long endPosition(String table) throws IOException;
+
+    /**
+     * テーブルの内容をCSVファイルとして書き出す
+     *
+     * @param table  テーブル名（CSVファイル名）
+     * @param target 出力先ファイル
+     * @throws IOException IO例外
+     */
+    void exportCsv(String table, Path target) throws IOException;
+
+    /**
+     * 保持している全テーブル名を取得する
+     *
+     * @return テーブル名のリスト
+     * @throws IOException IO例外
+     */
+    List<String> listTables() throws IOException;
+
+    /**
+     * 各行を位置とともに受け取る処理
+     */
+    @FunctionalInterface
+    interface LineVisitor {
+        /**
+         * @param position 行の位置
+         * @param line     行（改行コードを除く）
+         * @return 読み込みを続ける場合true
+         */
+        boolean visit(long position, String line);
+    }
+
+    /**
+     * 各行をバイト列のまま位置とともに受け取る処理
+     * バイト列は読み込み用のバッファを参照するため、visit から戻った後は参照しないこと
+     */
+    @FunctionalInterface
+    interface RowVisitor {
+        /**
+         * @param position 行の位置
+         * @param buffer   行を含むバイト列
+         * @param offset   行の先頭
+         * @param length   行の長さ（改行コードを除く）
+         * @return 読み込みを続ける場合true
+         */
+        boolean visit(long position, byte[] buffer, int offset, int length);
+    }
+}
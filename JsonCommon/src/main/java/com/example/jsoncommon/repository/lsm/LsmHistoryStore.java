@@ -0,0 +1,794 @@
+package com.example.jsoncommon.repository.lsm;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.ResourceHistoryCsv;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 全ホストのリソース履歴を共有のセグメントファイルに保存するLSM方式のストア
+ * resource.history.store=lsm の場合に有効になり、ResourceHistoryRepository の保存先となる。
+ *
+ * 追記はWALへの書き込みとmemtable（(ホスト名, タイムスタンプ) 順のスキップリスト）への追加のみで、
+ * WALは一定間隔（グループコミット）とmemtableの切り替え時にディスクへ同期する。
+ * memtableが一定件数に達するとバックグラウンドでソート済みのセグメントファイルに書き出す。
+ * セグメント数が上限を超えるとサイズの近いセグメント（同じ階層）をまとめてマージし、その際に保持期間を過ぎたレコードを削除する。
+ * 大きなセグメントは同程度の大きさのセグメントが揃うまで書き直さないため、1回のマージで書き込む量は全体の大きさに比例しない。
+ * 開いているファイルはWALとセグメント（上限+1）のみで、ホスト数に依存しない。
+ * セグメントはホストごとに一定件数のブロックに分けて書き込み、一定日数より古いブロックはDeflateで圧縮する。
+ * 書き出し時点で新しかったブロックも、定期的な圧縮処理でセグメントを書き直して圧縮する。
+ * 定期的な圧縮処理では保持期間を過ぎたレコードを含むセグメントも書き直し、全てのレコードが保持期間を過ぎた
+ * セグメントは削除する。そのため保持期間処理はマージの時期（大きなセグメントがマージされるまでの時間）に依存しない。
+ */
+@Component
+@ConditionalOnProperty(name = "resource.history.store", havingValue = "lsm")
+public class LsmHistoryStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LsmHistoryStore.class);
+
+    /** 同じ階層とみなすセグメントサイズの比（階層内で最小のセグメントに対する倍率） */
+    static final double TIER_SIZE_RATIO = 2.0;
+
+    private final Path dir;
+    private final int memtableMaxRecords;
+    private final int maxSegments;
+    private volatile int retentionDays;
+
+    /** セグメントの1ブロックの最大件数 */
+    @Value("${resource.history.lsm.block-records:4096}")
+    private volatile int blockRecords = 4096;
+
+    /** ブロックを圧縮するまでの日数（0以下の場合は圧縮しない） */
+    @Value("${resource.history.lsm.compress-after-days:7}")
+    private volatile int compressAfterDays = 7;
+
+    /** 追記のたびにWALをディスクへ同期する場合true（falseの場合は一定間隔でまとめて同期する） */
+    @Value("${resource.history.lsm.wal-sync-each-append:false}")
+    private volatile boolean walSyncEachAppend;
+
+    /** 追記（通番の採番・WAL書き込み・memtableの切り替え）の排他用 */
+    private final Object writeLock = new Object();
+    private long nextSequence;
+    private long nextFileId;
+    private Memtable active;
+
+    /** セグメントへの書き出しを待っているmemtable（古いものから順） */
+    private final Deque<Memtable> flushing = new ConcurrentLinkedDeque<>();
+
+    /** セグメント一覧の入れ替え（コンパクション）と読み込みの排他用 */
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private List<LsmSegment> segments = new ArrayList<>();
+
+    /** 履歴が存在するホスト名 */
+    private final Set<String> knownHosts = new ConcurrentSkipListSet<>();
+
+    /** 書き出しとコンパクションを実行するスレッド */
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsm-history-background");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * memtable と、その内容を記録しているWAL
+     */
+    private static final class Memtable {
+        final ConcurrentSkipListSet<LsmRecord> records = new ConcurrentSkipListSet<>(LsmRecord.ORDER);
+        final AtomicInteger size = new AtomicInteger();
+        final LsmWal wal;
+
+        Memtable(LsmWal wal) {
+            this.wal = wal;
+        }
+    }
+
+    public LsmHistoryStore(
+            @Value("${resource.history.lsm.dir:${app.csv.output-dir}/lsm}") String dir,
+            @Value("${resource.history.lsm.memtable-max-records:100000}") int memtableMaxRecords,
+            @Value("${resource.history.lsm.max-segments:4}") int maxSegments,
+            @Value("${resource.history.retention-days:30}") int retentionDays) throws IOException {
+        this.dir = Paths.get(dir);
+        this.memtableMaxRecords = memtableMaxRecords;
+        this.maxSegments = maxSegments;
+        this.retentionDays = retentionDays;
+        open();
+    }
+
+    /**
+     * 保持期間を設定する（次回のコンパクションから適用される）
+     *
+     * @param retentionDays 保持期間（日数）
+     */
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * セグメントの1ブロックの最大件数を設定する（次回のセグメントの書き出しから適用される）
+     *
+     * @param blockRecords 1ブロックの最大件数
+     */
+    public void setBlockRecords(int blockRecords) {
+        this.blockRecords = blockRecords;
+    }
+
+    /**
+     * 追記のたびにWALを同期するかどうかを設定する
+     *
+     * @param walSyncEachAppend 追記のたびに同期する場合true
+     */
+    public void setWalSyncEachAppend(boolean walSyncEachAppend) {
+        this.walSyncEachAppend = walSyncEachAppend;
+    }
+
+    /**
+     * ブロックを圧縮するまでの日数を設定する（次回のセグメントの書き出し・圧縮処理から適用される）
+     *
+     * @param compressAfterDays 日数（0以下の場合は圧縮しない）
+     */
+    public void setCompressAfterDays(int compressAfterDays) {
+        this.compressAfterDays = compressAfterDays;
+    }
+
+    /**
+     * リソース情報を追記する
+     *
+     * @param hostname          ホスト名
+     * @param timestamp         タイムスタンプ
+     * @param cpuUsage          CPU使用率
+     * @param memoryUsage       メモリ使用率
+     * @param changeRequest     インスタンスタイプ変更要求
+     * @throws IOException IO例外
+     */
+    public void append(String hostname, ZonedDateTime timestamp, Double cpuUsage, Double memoryUsage,
+            InstanceTypeChangeRequest changeRequest) throws IOException {
+        synchronized (writeLock) {
+            LsmRecord record = LsmRecord.of(hostname, timestamp.toInstant().toEpochMilli(), nextSequence++,
+                    cpuUsage, memoryUsage, changeRequest, timestamp.toString());
+            active.wal.append(record);
+            if (walSyncEachAppend) {
+                active.wal.sync();
+            }
+            active.records.add(record);
+            knownHosts.add(hostname);
+
+            if (active.size.incrementAndGet() >= memtableMaxRecords) {
+                rotate();
+            }
+        }
+    }
+
+    /**
+     * 指定ホストの指定期間のリソース情報を取得する
+     *
+     * @param hostname ホスト名
+     * @param from     期間の開始（この時刻を含む）
+     * @param to       期間の終了（この時刻を含む）
+     * @return リソース情報のリスト（古いものから順）
+     * @throws IOException IO例外
+     */
+    public List<ResourceHistoryCsv> findByHostnameAndPeriod(String hostname, ZonedDateTime from, ZonedDateTime to)
+            throws IOException {
+        return scan(hostname, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli());
+    }
+
+    /**
+     * 指定ホストの直近N分間のリソース情報を取得する
+     *
+     * @param hostname ホスト名
+     * @param minutes  取得分
+     * @return リソース情報のリスト（最新のものから順）
+     * @throws IOException IO例外
+     */
+    public List<ResourceHistoryCsv> findRecentByHostname(String hostname, int minutes) throws IOException {
+        long from = ZonedDateTime.now().minusMinutes(minutes).toInstant().toEpochMilli();
+        List<ResourceHistoryCsv> result = scan(hostname, from, Long.MAX_VALUE);
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * リソース履歴が保存されているホスト名を取得する
+     *
+     * @return ホスト名のリスト（昇順）
+     */
+    public List<String> findAllHostnames() {
+        return new ArrayList<>(knownHosts);
+    }
+
+    /**
+     * セグメントファイル数を取得する
+     *
+     * @return セグメントファイル数
+     */
+    public int getSegmentCount() {
+        segmentsLock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * memtableの内容をセグメントファイルに書き出し、完了するまで待機する
+     *
+     * @throws IOException IO例外
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (active.size.get() > 0) {
+                rotate();
+            }
+        }
+        await(background.submit(() -> {
+            flushPending();
+            return null;
+        }));
+    }
+
+    /**
+     * 現在のWALに書き込んだレコードをディスクへ同期する（グループコミット）
+     * 同期の間も追記を止めないよう、ロック内では対象のWALを取得するだけにする
+     *
+     * @throws IOException IO例外
+     */
+    public void syncWal() throws IOException {
+        LsmWal wal;
+        synchronized (writeLock) {
+            wal = active.wal;
+        }
+        wal.sync();
+    }
+
+    /**
+     * 定期的にWALをディスクへ同期する
+     */
+    @Scheduled(fixedDelayString = "${resource.history.lsm.wal-sync-interval-ms:200}")
+    public void syncWalInBackground() {
+        try {
+            syncWal();
+        } catch (IOException e) {
+            logger.error("WALの同期に失敗しました", e);
+        }
+    }
+
+    /**
+     * 全セグメントを1つにマージするコンパクションを実行し、完了するまで待機する
+     *
+     * @throws IOException IO例外
+     */
+    public void compact() throws IOException {
+        await(background.submit(() -> {
+            compactSegments();
+            return null;
+        }));
+    }
+
+    /**
+     * 圧縮対象の日数を過ぎた非圧縮のブロックまたは保持期間を過ぎたレコードを含むセグメントを書き直し、完了するまで待機する
+     *
+     * @throws IOException IO例外
+     */
+    public void compress() throws IOException {
+        await(background.submit(() -> {
+            compressColdSegments();
+            return null;
+        }));
+    }
+
+    /**
+     * 定期的に古いブロックの圧縮と保持期間を過ぎたレコードの削除をバックグラウンドで実行する
+     */
+    @Scheduled(fixedDelayString = "${resource.history.lsm.compress-interval-ms:3600000}")
+    public void compressInBackground() {
+        if (background.isShutdown()) {
+            return;
+        }
+        background.submit(() -> {
+            try {
+                compressColdSegments();
+            } catch (IOException e) {
+                logger.error("セグメントファイルの圧縮に失敗しました", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    @Override
+    public void close() throws IOException {
+        flush();
+        background.shutdown();
+        synchronized (writeLock) {
+            active.wal.sync();
+            active.wal.close();
+            // 停止処理中に追記されたレコードはWALに残し、次回起動時に復元する
+            if (active.size.get() == 0) {
+                Files.deleteIfExists(active.wal.getPath());
+            }
+        }
+        segmentsLock.writeLock().lock();
+        try {
+            for (LsmSegment segment : segments) {
+                segment.close();
+            }
+            segments = new ArrayList<>();
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        logger.info("LSMストアを閉じました: {}", dir);
+    }
+
+    /**
+     * ディレクトリからセグメントとWALを読み込む
+     * コンパクション途中でクラッシュした場合は置き換え済みのセグメントを削除し、
+     * WALに残っているレコードはセグメントに書き出す
+     */
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+
+        List<Path> segmentPaths = new ArrayList<>();
+        List<Path> walPaths = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(path);
+                } else if (LsmSegment.parseId(name) >= 0) {
+                    segmentPaths.add(path);
+                } else if (parseWalId(name) >= 0) {
+                    walPaths.add(path);
+                }
+            }
+        }
+        segmentPaths.sort(null);
+        walPaths.sort(null);
+
+        List<LsmSegment> loaded = new ArrayList<>();
+        Set<Long> replaced = new HashSet<>();
+        long maxId = -1L;
+        for (Path path : segmentPaths) {
+            try {
+                LsmSegment segment = LsmSegment.open(path);
+                loaded.add(segment);
+                replaced.addAll(segment.getReplacedIds());
+                maxId = Math.max(maxId, segment.getId());
+            } catch (IOException e) {
+                logger.error("セグメントファイルを読み込めないため無視します: {}", path, e);
+            }
+        }
+        for (LsmSegment segment : loaded) {
+            if (replaced.contains(segment.getId())) {
+                logger.info("コンパクション済みのセグメントファイルを削除します: {}", segment.getPath());
+                segment.close();
+                Files.deleteIfExists(segment.getPath());
+            } else {
+                segments.add(segment);
+                knownHosts.addAll(segment.hostnames());
+                nextSequence = Math.max(nextSequence, segment.getMaxSequence() + 1);
+            }
+        }
+
+        // WALに残っているレコードを復元してセグメントに書き出す
+        TreeSet<LsmRecord> recovered = new TreeSet<>(LsmRecord.ORDER);
+        for (Path walPath : walPaths) {
+            maxId = Math.max(maxId, parseWalId(walPath.getFileName().toString()));
+            int count = LsmWal.replay(walPath, recovered::add);
+            logger.info("WALからレコードを復元しました: {} ({}件)", walPath, count);
+        }
+        nextFileId = maxId + 1;
+        if (!recovered.isEmpty()) {
+            for (LsmRecord record : recovered) {
+                nextSequence = Math.max(nextSequence, record.sequence + 1);
+                knownHosts.add(record.hostname);
+            }
+            segments.add(LsmSegment.write(dir, nextFileId++, recovered.iterator(), List.of(), blockRecords,
+                    compressBeforeMillis()));
+        }
+        for (Path walPath : walPaths) {
+            Files.deleteIfExists(walPath);
+        }
+
+        active = new Memtable(LsmWal.open(dir.resolve(walFileName(nextFileId++))));
+        logger.info("LSMストアを開きました: {} (セグメント数={}, ホスト数={})", dir, segments.size(), knownHosts.size());
+    }
+
+    /**
+     * 現在のmemtableを書き出し待ちにし、新しいmemtableとWALに切り替える（writeLock内で呼び出す）
+     */
+    private void rotate() throws IOException {
+        // 書き出し待ちの間にクラッシュしても復元できるよう、切り替え前にWALを同期する
+        active.wal.sync();
+        flushing.addLast(active);
+        active = new Memtable(LsmWal.open(dir.resolve(walFileName(nextFileId++))));
+        background.submit(() -> {
+            try {
+                flushPending();
+            } catch (IOException e) {
+                logger.error("memtableの書き出しに失敗しました", e);
+            }
+        });
+    }
+
+    /**
+     * 書き出し待ちのmemtableをセグメントファイルに書き出す（backgroundスレッドで実行）
+     */
+    private void flushPending() throws IOException {
+        Memtable memtable;
+        while ((memtable = flushing.peekFirst()) != null) {
+            long id;
+            synchronized (writeLock) {
+                id = nextFileId++;
+            }
+            LsmSegment segment = LsmSegment.write(dir, id, memtable.records.iterator(), List.of(), blockRecords,
+                    compressBeforeMillis());
+
+            segmentsLock.writeLock().lock();
+            try {
+                List<LsmSegment> updated = new ArrayList<>(segments);
+                updated.add(segment);
+                segments = updated;
+                flushing.removeFirst();
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+            memtable.wal.close();
+            Files.deleteIfExists(memtable.wal.getPath());
+            logger.debug("memtableをセグメントファイルに書き出しました: {} ({}件)", segment.getPath(),
+                    memtable.size.get());
+        }
+
+        if (getSegmentCount() > maxSegments) {
+            compactTier();
+        }
+    }
+
+    /**
+     * サイズの近いセグメントを選んでマージする（backgroundスレッドで実行）
+     */
+    private void compactTier() throws IOException {
+        List<LsmSegment> current;
+        segmentsLock.readLock().lock();
+        try {
+            current = segments;
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        long[] sizes = new long[current.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = current.get(i).sizeInBytes();
+        }
+        List<LsmSegment> sources = new ArrayList<>();
+        for (int index : selectTier(sizes, maxSegments)) {
+            sources.add(current.get(index));
+        }
+        mergeSegments(sources);
+    }
+
+    /**
+     * サイズ階層型（size-tiered）のコンパクションでマージするセグメントを選ぶ
+     * サイズの昇順に並べ、階層内で最小のセグメントの {@link #TIER_SIZE_RATIO} 倍以内のものを同じ階層にまとめる。
+     * 上限を超えた分を解消できる件数（超過数+1件以上）を含む最も小さい階層を選び、該当する階層がない場合は
+     * 小さいものから超過数+1件を選ぶ。
+     *
+     * @param sizes       各セグメントのサイズ（バイト）
+     * @param maxSegments セグメント数の上限
+     * @return マージするセグメントの位置（sizes の添字）。マージが不要な場合は空
+     */
+    static List<Integer> selectTier(long[] sizes, int maxSegments) {
+        if (sizes.length <= maxSegments || sizes.length < 2) {
+            return List.of();
+        }
+        int required = Math.max(2, sizes.length - maxSegments + 1);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Long.compare(sizes[a], sizes[b]));
+
+        int tierStart = 0;
+        for (int i = 1; i <= order.size(); i++) {
+            boolean tierEnds = i == order.size()
+                    || sizes[order.get(i)] > Math.max(1L, sizes[order.get(tierStart)]) * TIER_SIZE_RATIO;
+            if (!tierEnds) {
+                continue;
+            }
+            if (i - tierStart >= required) {
+                return order.subList(tierStart, i);
+            }
+            tierStart = i;
+        }
+        return order.subList(0, required);
+    }
+
+    /**
+     * 全セグメントを1つにマージする（backgroundスレッドで実行）
+     */
+    private void compactSegments() throws IOException {
+        List<LsmSegment> sources;
+        segmentsLock.readLock().lock();
+        try {
+            sources = segments;
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        mergeSegments(sources);
+    }
+
+    /**
+     * 指定したセグメントを1つにマージし、保持期間を過ぎたレコードを削除する（backgroundスレッドで実行）
+     * 書き出したセグメントはマージ元を置き換え対象として記録するため、途中でクラッシュしてもレコードが重複しない
+     */
+    private void mergeSegments(List<LsmSegment> sources) throws IOException {
+        if (sources.isEmpty()) {
+            return;
+        }
+
+        long cutoff = retentionCutoffMillis();
+        TreeSet<String> hostnames = new TreeSet<>();
+        List<Long> sourceIds = new ArrayList<>();
+        for (LsmSegment segment : sources) {
+            hostnames.addAll(segment.hostnames());
+            sourceIds.add(segment.getId());
+        }
+
+        long id;
+        synchronized (writeLock) {
+            id = nextFileId++;
+        }
+        LsmSegment merged;
+        try {
+            merged = LsmSegment.write(dir, id, new MergingIterator(sources, hostnames.iterator(), cutoff),
+                    sourceIds, blockRecords, compressBeforeMillis());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        segmentsLock.writeLock().lock();
+        try {
+            List<LsmSegment> updated = new ArrayList<>();
+            updated.add(merged);
+            for (LsmSegment segment : segments) {
+                if (!sources.contains(segment)) {
+                    updated.add(segment);
+                }
+            }
+            segments = updated;
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+
+        for (LsmSegment segment : sources) {
+            segment.close();
+            Files.deleteIfExists(segment.getPath());
+        }
+        logger.info("セグメントファイルのコンパクションが完了しました: {}件 → {}", sources.size(), merged.getPath());
+    }
+
+    /**
+     * 圧縮対象の日数を過ぎた非圧縮のブロックまたは保持期間を過ぎたレコードを含むセグメントを1つずつ書き直す（backgroundスレッドで実行）
+     * 書き直す際は保持期間を過ぎたレコードを除き、全てのレコードが保持期間を過ぎたセグメントは書き直さずに削除する。
+     * 書き直したセグメントは元のセグメントを置き換え対象として記録するため、途中でクラッシュしても
+     * 次回起動時に元のセグメントが削除され、レコードが重複しない
+     */
+    private void compressColdSegments() throws IOException {
+        long compressBefore = compressBeforeMillis();
+        long cutoff = retentionCutoffMillis();
+        List<LsmSegment> sources;
+        segmentsLock.readLock().lock();
+        try {
+            sources = segments;
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+
+        for (LsmSegment source : sources) {
+            if (source.maxMillis() < cutoff) {
+                dropSegment(source);
+                continue;
+            }
+            boolean cold = compressBefore != Long.MIN_VALUE && source.hasUncompressedBlockBefore(compressBefore);
+            if (!cold && !source.hasRecordBefore(cutoff)) {
+                continue;
+            }
+            long id;
+            synchronized (writeLock) {
+                id = nextFileId++;
+            }
+            LsmSegment compressed;
+            try {
+                compressed = LsmSegment.write(dir, id,
+                        new MergingIterator(List.of(source), source.hostnames().iterator(), cutoff),
+                        List.of(source.getId()), blockRecords, compressBefore);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            segmentsLock.writeLock().lock();
+            try {
+                List<LsmSegment> updated = new ArrayList<>(segments);
+                updated.set(updated.indexOf(source), compressed);
+                segments = updated;
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+
+            long sourceBytes = source.sizeInBytes();
+            source.close();
+            Files.deleteIfExists(source.getPath());
+            logger.info("セグメントファイルを書き直しました: {} ({}バイト) → {} ({}バイト)", source.getPath(), sourceBytes,
+                    compressed.getPath(), compressed.sizeInBytes());
+        }
+    }
+
+    /**
+     * 全てのレコードが保持期間を過ぎたセグメントを削除する（backgroundスレッドで実行）
+     * 一覧から外してからファイルを削除するため、途中でクラッシュした場合は次回の処理で再度削除される
+     */
+    private void dropSegment(LsmSegment source) throws IOException {
+        segmentsLock.writeLock().lock();
+        try {
+            List<LsmSegment> updated = new ArrayList<>(segments);
+            updated.remove(source);
+            segments = updated;
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        source.close();
+        Files.deleteIfExists(source.getPath());
+        logger.info("保持期間を過ぎたセグメントファイルを削除しました: {}", source.getPath());
+    }
+
+    /**
+     * 保持期間の基準の時刻を求める（この時刻より前のレコードを削除する）
+     */
+    private long retentionCutoffMillis() {
+        return ZonedDateTime.now().minusDays(retentionDays).toInstant().toEpochMilli();
+    }
+
+    /**
+     * ブロックを圧縮する基準の時刻を求める（圧縮しない場合は Long.MIN_VALUE）
+     */
+    private long compressBeforeMillis() {
+        int days = compressAfterDays;
+        return days > 0 ? ZonedDateTime.now().minusDays(days).toInstant().toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    /**
+     * セグメント・書き出し待ち・現在のmemtableから指定ホストの期間内のレコードを時刻順に集める
+     * memtableの切り替え中に同じレコードが複数箇所から見えることがあるため、通番で重複を除く
+     */
+    private List<ResourceHistoryCsv> scan(String hostname, long fromMillis, long toMillis) throws IOException {
+        TreeSet<LsmRecord> records = new TreeSet<>(LsmRecord.ORDER);
+        LsmRecord lower = LsmRecord.probe(hostname, fromMillis, Long.MIN_VALUE);
+        LsmRecord upper = LsmRecord.probe(hostname, toMillis, Long.MAX_VALUE);
+
+        Memtable current;
+        synchronized (writeLock) {
+            current = active;
+        }
+        records.addAll(current.records.subSet(lower, true, upper, true));
+        for (Memtable memtable : flushing) {
+            records.addAll(memtable.records.subSet(lower, true, upper, true));
+        }
+
+        segmentsLock.readLock().lock();
+        try {
+            for (LsmSegment segment : segments) {
+                segment.read(hostname, fromMillis, toMillis, records::add);
+            }
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+
+        List<ResourceHistoryCsv> result = new ArrayList<>(records.size());
+        for (LsmRecord record : records) {
+            result.add(record.toCsv());
+        }
+        return result;
+    }
+
+    private static String walFileName(long id) {
+        return String.format("wal-%016d.log", id);
+    }
+
+    private static long parseWalId(String fileName) {
+        if (!fileName.startsWith("wal-") || !fileName.endsWith(".log")) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(fileName.substring(4, fileName.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("LSMストアの処理の待機中に割り込まれました", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("LSMストアの処理に失敗しました", e.getCause());
+        }
+    }
+
+    /**
+     * 複数セグメントのレコードをホスト単位でマージして (ホスト名, タイムスタンプ, 通番) 順に返す
+     * メモリ上に保持するのは1ホスト分のレコードのみ
+     */
+    private static final class MergingIterator implements Iterator<LsmRecord> {
+
+        private final List<LsmSegment> sources;
+        private final Iterator<String> hostnames;
+        private final long cutoffMillis;
+        private Iterator<LsmRecord> current = Collections.emptyIterator();
+
+        MergingIterator(List<LsmSegment> sources, Iterator<String> hostnames, long cutoffMillis) {
+            this.sources = sources;
+            this.hostnames = hostnames;
+            this.cutoffMillis = cutoffMillis;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && hostnames.hasNext()) {
+                String hostname = hostnames.next();
+                List<LsmRecord> records = new ArrayList<>();
+                try {
+                    for (LsmSegment segment : sources) {
+                        segment.read(hostname, cutoffMillis, Long.MAX_VALUE, records::add);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                records.sort(LsmRecord.ORDER);
+                current = records.iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public LsmRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.jsoncommon.repository.lsm;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.ResourceHistoryCsv;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+
+/**
+ * LSMストアの1レコード（1ホスト・1サンプル分のリソース情報）
+ * (ホスト名, タイムスタンプ, 通番) の順に並べる。
+ */
+final class LsmRecord {
+
+    static final Comparator<LsmRecord> ORDER = Comparator.comparing((LsmRecord r) -> r.hostname)
+            .thenComparingLong(r -> r.epochMillis)
+            .thenComparingLong(r -> r.sequence);
+
+    /** 値が存在しないことを表すリクエスト種別のコード */
+    private static final byte NO_REQUEST = -1;
+
+    final String hostname;
+    final long epochMillis;
+    final long sequence;
+    final double cpuUsage;
+    final double memoryUsage;
+    final byte request;
+    /** 受信したタイムスタンプの文字列表現（タイムゾーンを保持するため） */
+    final String timestamp;
+
+    LsmRecord(String hostname, long epochMillis, long sequence, double cpuUsage, double memoryUsage,
+            byte request, String timestamp) {
+        this.hostname = hostname;
+        this.epochMillis = epochMillis;
+        this.sequence = sequence;
+        this.cpuUsage = cpuUsage;
+        this.memoryUsage = memoryUsage;
+        this.request = request;
+        this.timestamp = timestamp;
+    }
+
+    static LsmRecord of(String hostname, long epochMillis, long sequence, Double cpuUsage, Double memoryUsage,
+            InstanceTypeChangeRequest request, String timestamp) {
+        return new LsmRecord(hostname, epochMillis, sequence,
+                cpuUsage == null ? Double.NaN : cpuUsage,
+                memoryUsage == null ? Double.NaN : memoryUsage,
+                request == null ? NO_REQUEST : (byte) request.ordinal(),
+                timestamp);
+    }
+
+    /**
+     * 範囲検索の境界として使用するレコードを作成する
+     */
+    static LsmRecord probe(String hostname, long epochMillis, long sequence) {
+        return new LsmRecord(hostname, epochMillis, sequence, Double.NaN, Double.NaN, NO_REQUEST, "");
+    }
+
+    ResourceHistoryCsv toCsv() {
+        return new ResourceHistoryCsv(
+                hostname,
+                timestamp,
+                Double.isNaN(cpuUsage) ? null : cpuUsage,
+                Double.isNaN(memoryUsage) ? null : memoryUsage,
+                request == NO_REQUEST ? null : InstanceTypeChangeRequest.values()[request]);
+    }
+
+    /**
+     * ホスト名以外の項目を書き込む（セグメントファイルではホスト名はブロック単位で持つ）
+     */
+    void writeBody(DataOutput out) throws IOException {
+        out.writeLong(epochMillis);
+        out.writeLong(sequence);
+        out.writeDouble(cpuUsage);
+        out.writeDouble(memoryUsage);
+        out.writeByte(request);
+        out.writeUTF(timestamp);
+    }
+
+    static LsmRecord readBody(String hostname, DataInput in) throws IOException {
+        long epochMillis = in.readLong();
+        long sequence = in.readLong();
+        double cpuUsage = in.readDouble();
+        double memoryUsage = in.readDouble();
+        byte request = in.readByte();
+        String timestamp = in.readUTF();
+        return new LsmRecord(hostname, epochMillis, sequence, cpuUsage, memoryUsage, request, timestamp);
+    }
+}
@@ -0,0 +1,486 @@
+package com.example.jsoncommon.repository.lsm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * LSMストアのソート済みセグメントファイル（不変）
+ * (ホスト名, タイムスタンプ, 通番) 順に並べたレコードをホストごとに一定件数のブロックに分けて書き込み、
+ * 末尾にホスト名→ブロック位置のインデックスを持つ。
+ * 最大時刻が圧縮対象の時刻より古いブロックはDeflateで圧縮して書き込み、読み込み時に展開する。
+ * 読み込みはインデックスで期間が重なるブロックのみを読むため、圧縮したブロックも必要な分だけ展開する。
+ *
+ * <pre>
+ * [マジック(int)] [ブロック]... [インデックス] [インデックス位置(long)] [マジック(int)]
+ * インデックス: ホスト数(int), {ホスト名(UTF), ブロック数(int),
+ *               {位置(long), 長さ(int), 展開後の長さ(int, 非圧縮は-1), 件数(int), 最小時刻(long), 最大時刻(long)}...}...,
+ *             置き換えたセグメント数(int), {セグメントID(long)}..., 最大通番(long)
+ * </pre>
+ * 旧形式（LSM1: ホストごとに非圧縮のブロック1つ）のセグメントもそのまま読み込める。
+ */
+final class LsmSegment implements AutoCloseable {
+
+    private static final int MAGIC_V1 = 0x4C534D31; // "LSM1"
+    private static final int MAGIC = 0x4C534D32; // "LSM2"
+    private static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES;
+
+    /** 圧縮しないことを表す展開後の長さ */
+    private static final int UNCOMPRESSED = -1;
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final NavigableMap<String, List<Block>> index;
+    private final List<Long> replacedIds;
+    private final long maxSequence;
+
+    private LsmSegment(long id, Path path, FileChannel channel, NavigableMap<String, List<Block>> index,
+            List<Long> replacedIds, long maxSequence) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.index = index;
+        this.replacedIds = replacedIds;
+        this.maxSequence = maxSequence;
+    }
+
+    /**
+     * 1ホストの連続したレコードを格納したブロックの位置情報
+     */
+    static final class Block {
+        final long offset;
+        final int length;
+        /** 展開後の長さ（非圧縮の場合は UNCOMPRESSED） */
+        final int rawLength;
+        final int count;
+        final long minMillis;
+        final long maxMillis;
+
+        Block(long offset, int length, int rawLength, int count, long minMillis, long maxMillis) {
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.count = count;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        boolean isCompressed() {
+            return rawLength != UNCOMPRESSED;
+        }
+    }
+
+    static String fileName(long id) {
+        return String.format("seg-%016d.dat", id);
+    }
+
+    /**
+     * ファイル名からセグメントIDを取得する
+     *
+     * @return セグメントID（セグメントファイルでない場合は-1）
+     */
+    static long parseId(String fileName) {
+        if (!fileName.startsWith("seg-") || !fileName.endsWith(".dat")) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(fileName.substring(4, fileName.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * ソート済みのレコードからセグメントファイルを作成する
+     * 一時ファイルに書き込んでから移動するため、途中でクラッシュしても不完全なセグメントは残らない
+     *
+     * @param dir                  出力ディレクトリ
+     * @param id                   セグメントID
+     * @param records              (ホスト名, タイムスタンプ, 通番) 順のレコード
+     * @param replacedIds          このセグメントが置き換える（コンパクション元の）セグメントID
+     * @param blockRecords         1ブロックの最大件数
+     * @param compressBeforeMillis 最大時刻がこの時刻より前のブロックを圧縮する（Long.MIN_VALUE で圧縮しない）
+     * @return 作成したセグメント
+     * @throws IOException IO例外
+     */
+    static LsmSegment write(Path dir, long id, Iterator<LsmRecord> records, List<Long> replacedIds,
+            int blockRecords, long compressBeforeMillis) throws IOException {
+        Path path = dir.resolve(fileName(id));
+        Path tmpPath = dir.resolve(fileName(id) + ".tmp");
+
+        try (OutputStream fileOut = Files.newOutputStream(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                CountingOutputStream counting = new CountingOutputStream(new BufferedOutputStream(fileOut));
+                DataOutputStream out = new DataOutputStream(counting)) {
+            out.writeInt(MAGIC);
+
+            BlockWriter writer = new BlockWriter(counting, Math.max(1, blockRecords), compressBeforeMillis);
+            while (records.hasNext()) {
+                writer.add(records.next());
+            }
+            writer.finish();
+
+            long indexOffset = counting.count;
+            out.writeInt(writer.index.size());
+            for (Map.Entry<String, List<Block>> entry : writer.index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Block block : entry.getValue()) {
+                    out.writeLong(block.offset);
+                    out.writeInt(block.length);
+                    out.writeInt(block.rawLength);
+                    out.writeInt(block.count);
+                    out.writeLong(block.minMillis);
+                    out.writeLong(block.maxMillis);
+                }
+            }
+            out.writeInt(replacedIds.size());
+            for (long replacedId : replacedIds) {
+                out.writeLong(replacedId);
+            }
+            out.writeLong(writer.maxSequence);
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+        }
+
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    /**
+     * セグメントファイルを開き、インデックスを読み込む
+     *
+     * @param path セグメントファイル
+     * @return セグメント
+     * @throws IOException IO例外（ファイルが壊れている場合を含む）
+     */
+    static LsmSegment open(Path path) throws IOException {
+        long id = parseId(path.getFileName().toString());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < Integer.BYTES + FOOTER_SIZE) {
+                throw new IOException("セグメントファイルが不完全です: " + path);
+            }
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int magic = footer.getInt();
+            if ((magic != MAGIC && magic != MAGIC_V1) || indexOffset < Integer.BYTES
+                    || indexOffset > size - FOOTER_SIZE) {
+                throw new IOException("セグメントファイルの形式が不正です: " + path);
+            }
+
+            ByteBuffer indexBytes = readFully(channel, indexOffset, (int) (size - FOOTER_SIZE - indexOffset));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(indexBytes.array()));
+            NavigableMap<String, List<Block>> index = new TreeMap<>();
+            int hostCount = in.readInt();
+            for (int i = 0; i < hostCount; i++) {
+                String hostname = in.readUTF();
+                if (magic == MAGIC_V1) {
+                    index.put(hostname, List.of(new Block(in.readLong(), in.readInt(), UNCOMPRESSED, in.readInt(),
+                            in.readLong(), in.readLong())));
+                    continue;
+                }
+                int blockCount = in.readInt();
+                List<Block> blocks = new ArrayList<>(blockCount);
+                for (int j = 0; j < blockCount; j++) {
+                    blocks.add(new Block(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readLong(),
+                            in.readLong()));
+                }
+                index.put(hostname, Collections.unmodifiableList(blocks));
+            }
+            int replacedCount = in.readInt();
+            List<Long> replacedIds = new ArrayList<>(replacedCount);
+            for (int i = 0; i < replacedCount; i++) {
+                replacedIds.add(in.readLong());
+            }
+            long maxSequence = in.readLong();
+            return new LsmSegment(id, path, channel, Collections.unmodifiableNavigableMap(index),
+                    Collections.unmodifiableList(replacedIds), maxSequence);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    List<Long> getReplacedIds() {
+        return replacedIds;
+    }
+
+    /** セグメント内の最大の通番（レコードがない場合は-1） */
+    long getMaxSequence() {
+        return maxSequence;
+    }
+
+    Set<String> hostnames() {
+        return index.keySet();
+    }
+
+    int recordCount(String hostname) {
+        int count = 0;
+        for (Block block : index.getOrDefault(hostname, List.of())) {
+            count += block.count;
+        }
+        return count;
+    }
+
+    /**
+     * 最大時刻が指定時刻より前の非圧縮のブロックがあるか判定する
+     *
+     * @param compressBeforeMillis 圧縮対象の時刻（エポックミリ秒）
+     * @return 圧縮対象のブロックがある場合true
+     */
+    boolean hasUncompressedBlockBefore(long compressBeforeMillis) {
+        for (List<Block> blocks : index.values()) {
+            for (Block block : blocks) {
+                if (!block.isCompressed() && block.maxMillis < compressBeforeMillis) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 指定時刻より前のレコードを含むか判定する
+     *
+     * @param millis 時刻（エポックミリ秒）
+     * @return 最小時刻が指定時刻より前のブロックがある場合true
+     */
+    boolean hasRecordBefore(long millis) {
+        for (List<Block> blocks : index.values()) {
+            if (!blocks.isEmpty() && blocks.get(0).minMillis < millis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * セグメント内の最新のレコードの時刻を取得する
+     *
+     * @return 最大時刻（エポックミリ秒、レコードがない場合は Long.MIN_VALUE）
+     */
+    long maxMillis() {
+        long max = Long.MIN_VALUE;
+        for (List<Block> blocks : index.values()) {
+            if (!blocks.isEmpty()) {
+                max = Math.max(max, blocks.get(blocks.size() - 1).maxMillis);
+            }
+        }
+        return max;
+    }
+
+    long sizeInBytes() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * 指定ホストの指定期間のレコードを時刻順に読み込む
+     * インデックスの最小・最大時刻が期間と重なるブロックのみを読み込み、圧縮されている場合は展開する
+     *
+     * @param hostname   ホスト名
+     * @param fromMillis 期間の開始（エポックミリ秒、この時刻を含む）
+     * @param toMillis   期間の終了（エポックミリ秒、この時刻を含む）
+     * @param visitor    各レコードを受け取る処理。false を返すと読み込みを終了する
+     * @throws IOException IO例外
+     */
+    void read(String hostname, long fromMillis, long toMillis, Predicate<LsmRecord> visitor) throws IOException {
+        for (Block block : index.getOrDefault(hostname, List.of())) {
+            if (block.maxMillis < fromMillis) {
+                continue;
+            }
+            if (block.minMillis > toMillis) {
+                return;
+            }
+            byte[] bytes = readFully(channel, block.offset, block.length).array();
+            if (block.isCompressed()) {
+                bytes = inflate(bytes, block.rawLength);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            for (int i = 0; i < block.count; i++) {
+                LsmRecord record = LsmRecord.readBody(hostname, in);
+                if (record.epochMillis < fromMillis) {
+                    continue;
+                }
+                if (record.epochMillis > toMillis || !visitor.test(record)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("セグメントファイルの読み込み中に終端に達しました");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] deflate(byte[] raw, int length) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("圧縮されたブロックの長さが不正です: " + length + " / " + rawLength);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("圧縮されたブロックを展開できません", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * レコードをホストごとに一定件数のブロックにまとめて書き込む
+     */
+    private static final class BlockWriter {
+        final NavigableMap<String, List<Block>> index = new TreeMap<>();
+        long maxSequence = -1L;
+
+        private final CountingOutputStream out;
+        private final int blockRecords;
+        private final long compressBeforeMillis;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+        private String hostname;
+        private int count;
+        private long minMillis;
+        private long maxMillis;
+
+        BlockWriter(CountingOutputStream out, int blockRecords, long compressBeforeMillis) {
+            this.out = out;
+            this.blockRecords = blockRecords;
+            this.compressBeforeMillis = compressBeforeMillis;
+        }
+
+        void add(LsmRecord record) throws IOException {
+            if (count >= blockRecords || (count > 0 && !record.hostname.equals(hostname))) {
+                finish();
+            }
+            if (count == 0) {
+                hostname = record.hostname;
+                minMillis = record.epochMillis;
+            }
+            record.writeBody(bufferOut);
+            count++;
+            maxMillis = record.epochMillis;
+            maxSequence = Math.max(maxSequence, record.sequence);
+        }
+
+        /**
+         * 組み立て中のブロックを書き込む
+         */
+        void finish() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            long offset = out.count;
+            byte[] raw = buffer.toByteArray();
+            Block block;
+            if (maxMillis < compressBeforeMillis) {
+                byte[] compressed = deflate(raw, raw.length);
+                out.write(compressed, 0, compressed.length);
+                block = new Block(offset, compressed.length, raw.length, count, minMillis, maxMillis);
+            } else {
+                out.write(raw, 0, raw.length);
+                block = new Block(offset, raw.length, UNCOMPRESSED, count, minMillis, maxMillis);
+            }
+            index.computeIfAbsent(hostname, key -> new ArrayList<>()).add(block);
+            buffer.reset();
+            count = 0;
+        }
+    }
+
+    /**
+     * 書き込んだバイト数を数える出力ストリーム
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.jsoncommon.repository.lsm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * LSMストアの先行書き込みログ（WAL）
+ * メモリ上のmemtableの内容をクラッシュ時に復元するため、各レコードを (長さ, CRC32, 本体) の形式で追記する。
+ * 書き込み途中でクラッシュした場合の不完全な末尾レコードは復元時に破棄する。
+ * 追記はOSのページキャッシュへの書き込みまでで、{@link #sync()} を呼び出した時点でディスクへ同期する。
+ */
+final class LsmWal implements AutoCloseable {
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    /** 最後の同期以降に追記した場合true */
+    private volatile boolean dirty;
+
+    private LsmWal(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    static LsmWal open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return new LsmWal(path, channel);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    void append(LsmRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(record.hostname);
+        record.writeBody(out);
+        byte[] body = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length)
+                .putInt(body.length)
+                .putLong(crc.getValue())
+                .put(body)
+                .flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dirty = true;
+    }
+
+    /**
+     * 追記したレコードをディスクへ同期する（前回の同期以降に追記がない場合は何もしない）
+     * セグメントへの書き出し後に閉じられたWALに対しては何もしない
+     *
+     * @throws IOException IO例外
+     */
+    void sync() throws IOException {
+        if (!dirty || !channel.isOpen()) {
+            return;
+        }
+        dirty = false;
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // 同期の直前にセグメントへ書き出されて閉じられた場合（内容はセグメントに保存済み）
+        }
+    }
+
+    /**
+     * WALファイルのレコードを先頭から順に読み込む
+     *
+     * @param path     WALファイル
+     * @param consumer 各レコードを受け取る処理
+     * @return 読み込んだレコード数
+     * @throws IOException IO例外
+     */
+    static int replay(Path path, Consumer<LsmRecord> consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        int count = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(body);
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            String hostname = in.readUTF();
+            consumer.accept(LsmRecord.readBody(hostname, in));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.jsoncommon.tcp;
+
+import com.example.jsoncommon.dto.*;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * 受信したJSON文字列を NoticeType に応じた通知クラスに変換するパーサー
+ */
+public class NoticeJsonParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoticeJsonParser.class);
+
+    private final ObjectMapper objectMapper;
+
+    public NoticeJsonParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * JSON文字列を通知に変換します
+     * 
+     * @param json JSON文字列
+     * @return 通知（NoticeTypeが存在しない・未対応の場合はnull）
+     * @throws IOException JSONの解析に失敗した場合
+     */
+    public NoticeBaseJson parse(String json) throws IOException {
+        JsonNode jsonNode = objectMapper.readTree(json);
+        if (!jsonNode.has("NoticeType")) {
+            logger.warn("NoticeTypeフィールドが存在しません: {}", json);
+            return null;
+        }
+
+        String noticeTypeStr = jsonNode.get("NoticeType").asText();
+        NoticeBaseJson message = switch (noticeTypeStr) {
+            case "METRICS" -> objectMapper.treeToValue(jsonNode, MetricsJson.class);
+            case "UP" -> objectMapper.treeToValue(jsonNode, UpJson.class);
+            case "DOWN" -> objectMapper.treeToValue(jsonNode, DownJson.class);
+            case "THRESHOLD" -> objectMapper.treeToValue(jsonNode, ThresholdJson.class);
+            case "SLOT" -> objectMapper.treeToValue(jsonNode, SlotJson.class);
+            case "HEARTBEAT" -> objectMapper.treeToValue(jsonNode, HeartbeatJson.class);
+            default -> null;
+        };
+        if (message == null) {
+            logger.warn("無視された NoticeType: {}", noticeTypeStr);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.jsoncommon.tcp;
+
+import java.io.IOException;
+
+/**
+ * TCPサーバーが受信したメッセージを解析せずに受け取るためのインターフェース
+ */
+public interface RawMessageHandler {
+    /**
+     * 受信したメッセージ（1行のJSON文字列）を処理します
+     * 受信スレッドで呼び出されるため、時間のかかる処理は行わないこと
+     * 
+     * @param json 受信したJSON文字列
+     * @throws IOException 処理に失敗した場合
+     */
+    void handleRawMessage(String json) throws IOException;
+}
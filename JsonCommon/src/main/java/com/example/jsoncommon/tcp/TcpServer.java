@@ -1,7 +1,6 @@
 package com.example.jsoncommon.tcp;
 
 import com.example.jsoncommon.dto.*;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +14,7 @@ import java.util.concurrent.ExecutorService;
 /**
  * TCPサーバー実装
  * JSON形式のメッセージを受信し、MessageHandlerに処理を委譲します
+ * RawMessageHandler を指定した場合は解析せずに受信スレッドで RawMessageHandler に渡します
  */
 public class TcpServer implements Runnable {
 
@@ -22,7 +22,8 @@ public class TcpServer implements Runnable {
     private final int port;
     private final MessageHandler messageHandler;
     private final ExecutorService executorService;
-    private final ObjectMapper objectMapper;
+    private final NoticeJsonParser parser;
+    private final RawMessageHandler rawMessageHandler;
     private volatile boolean running = true;
     private ServerSocket serverSocket;
     private int actualPort;
@@ -32,7 +33,22 @@ public class TcpServer implements Runnable {
         this.port = port;
         this.messageHandler = messageHandler;
         this.executorService = executorService;
-        this.objectMapper = objectMapper;
+        this.parser = new NoticeJsonParser(objectMapper);
+        this.rawMessageHandler = null;
+    }
+
+    /**
+     * 受信したメッセージを解析せずに渡すTCPサーバーを作成します
+     * 
+     * @param port              待受ポート
+     * @param rawMessageHandler 受信したJSON文字列を受け取るハンドラー
+     */
+    public TcpServer(int port, RawMessageHandler rawMessageHandler) {
+        this.port = port;
+        this.messageHandler = null;
+        this.executorService = null;
+        this.parser = null;
+        this.rawMessageHandler = rawMessageHandler;
     }
 
     @Override
@@ -52,7 +68,11 @@ public class TcpServer implements Runnable {
                     String inputLine;
                     while ((inputLine = in.readLine()) != null) {
                         logger.info("受信した生データ: {}", inputLine);
-                        processMessage(inputLine);
+                        if (rawMessageHandler != null) {
+                            rawMessageHandler.handleRawMessage(inputLine);
+                        } else {
+                            processMessage(inputLine);
+                        }
                     }
                 } catch (Exception e) {
                     if (running) {
@@ -75,20 +95,10 @@ public class TcpServer implements Runnable {
     private void processMessage(String json) {
         executorService.submit(() -> {
             try {
-                JsonNode jsonNode = objectMapper.readTree(json);
-                if (!jsonNode.has("NoticeType")) {
-                    logger.warn("NoticeTypeフィールドが存在しません: {}", json);
-                    return;
-                }
-
-                String noticeTypeStr = jsonNode.get("NoticeType").asText();
-                NoticeBaseJson message = parseMessage(jsonNode, noticeTypeStr);
-
+                NoticeBaseJson message = parser.parse(json);
                 if (message != null) {
                     messageHandler.handleMessage(message);
-                    logger.info("{} を処理しました: {}", noticeTypeStr, message.getId());
-                } else {
-                    logger.warn("無視された NoticeType: {}", noticeTypeStr);
+                    logger.info("{} を処理しました: {}", message.getNoticeType(), message.getId());
                 }
             } catch (Exception e) {
                 logger.error("JSON の解析または処理に失敗しました", e);
@@ -96,19 +106,6 @@ public class TcpServer implements Runnable {
         });
     }
 
-    /**
-     * NoticeTypeに応じてメッセージをパースします
-     */
-    private NoticeBaseJson parseMessage(JsonNode jsonNode, String noticeTypeStr) throws Exception {
-        return switch (noticeTypeStr) {
-            case "METRICS" -> objectMapper.treeToValue(jsonNode, MetricsJson.class);
-            case "UP" -> objectMapper.treeToValue(jsonNode, UpJson.class);
-            case "DOWN" -> objectMapper.treeToValue(jsonNode, DownJson.class);
-            case "THRESHOLD" -> objectMapper.treeToValue(jsonNode, ThresholdJson.class);
-            default -> null;
-        };
-    }
-
     /**
      * サーバーを停止します
      */
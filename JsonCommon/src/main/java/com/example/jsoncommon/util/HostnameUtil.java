@@ -3,21 +3,46 @@ package com.example.jsoncommon.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 自ホストのホスト名を取得するユーティリティ
+ * ホスト名は実行中に変わらない前提で、初回に取得した値をキャッシュする。
+ * Linuxでは /proc/sys/kernel/hostname を読み込み、プロセスを起動しない。
+ */
 public class HostnameUtil {
     private static final Logger logger = LoggerFactory.getLogger(HostnameUtil.class);
 
-    @SuppressWarnings("deprecation")
+    private static final Path KERNEL_HOSTNAME = Paths.get("/proc/sys/kernel/hostname");
+
+    private static volatile String cachedHostname;
+
     public static String getHostname() {
-        String hostname = "localhost"; // デフォルト値
+        String hostname = cachedHostname;
+        if (hostname == null) {
+            hostname = resolveHostname();
+            cachedHostname = hostname;
+        }
+        return hostname;
+    }
+
+    private static String resolveHostname() {
         try {
-            Process process = Runtime.getRuntime().exec("hostname");
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(process.getInputStream()));
-            hostname = reader.readLine();
-            process.waitFor();
-        } catch (java.io.IOException | InterruptedException e) {
+            if (Files.isReadable(KERNEL_HOSTNAME)) {
+                String hostname = Files.readString(KERNEL_HOSTNAME, StandardCharsets.US_ASCII).trim();
+                if (!hostname.isEmpty()) {
+                    return hostname;
+                }
+            }
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
             logger.error("ホスト名の取得中にエラーが発生しました: " + e.getMessage());
+            return "localhost"; // デフォルト値
         }
-        return hostname;
     }
 }
@@ -0,0 +1,80 @@
+package com.example.jsoncommon.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * トークンバケット方式のレート制限
+ * 1秒あたり permitsPerSecond 個のトークンを補充し、最大で1秒分まで貯める。
+ * 一度に大量のトークンを要求した場合は不足分を前借りし、その分だけ待機する。
+ */
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 1秒あたりのトークン数（0以下の場合は制限しない）
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = permitsPerSecond;
+        this.tokens = permitsPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * トークンを取得する（不足している場合は補充されるまで待機する）
+     *
+     * @param permits 取得するトークン数
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public void acquire(long permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 待機せずにトークンの取得を試みる
+     *
+     * @param permits 取得するトークン数
+     * @return 取得できた場合true
+     */
+    public synchronized boolean tryAcquire(long permits) {
+        if (permitsPerSecond <= 0) {
+            return true;
+        }
+        refill();
+        if (tokens < permits) {
+            return false;
+        }
+        tokens -= permits;
+        return true;
+    }
+
+    /**
+     * トークンを予約し、予約分が補充されるまでの待機時間を返す
+     */
+    private synchronized long reserve(long permits) {
+        if (permitsPerSecond <= 0) {
+            return 0L;
+        }
+        refill();
+        tokens -= permits;
+        if (tokens >= 0) {
+            return 0L;
+        }
+        return (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(capacity, tokens + elapsedSeconds * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.jsoncommon.dto;
+
+import com.example.jsoncommon.repository.CsvRowReader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @CsvRecord から生成されたマッパーのテスト
+ */
+public class CsvRecordMapperTest {
+
+    private final CsvRowReader reader = new CsvRowReader();
+
+    @Test
+    public void testThresholdCsvMapper_書き込んだ値を同じDTOに戻せる() {
+        // Arrange
+        ThresholdCsv threshold = new ThresholdCsv("host-1", ScalingMode.AUTO, true, 80.5, 5, 70.0, 10,
+                ConditionLogic.OR, false, 20.0, 15, 30.0, 20, ConditionLogic.AND, true, false);
+
+        // Act
+        Object[] values = ThresholdCsvMapper.INSTANCE.toValues(threshold);
+        ThresholdCsv restored = ThresholdCsvMapper.INSTANCE.read(reader.reset(toLine(values)));
+
+        // Assert
+        assertEquals(threshold, restored);
+        assertEquals(16, ThresholdCsvMapper.INSTANCE.getRequiredColumns());
+        assertEquals("HOSTNAME", ThresholdCsvMapper.INSTANCE.getHeaders()[0]);
+    }
+
+    @Test
+    public void testThresholdCsvMapper_空欄とnullの文字列はnullとして読み込む() {
+        // Arrange
+        reader.reset("host-1,null,,,,,,,,,,,,,,");
+
+        // Act
+        ThresholdCsv restored = ThresholdCsvMapper.INSTANCE.read(reader);
+
+        // Assert
+        assertEquals("host-1", restored.getHostname());
+        assertNull(restored.getScalingMode());
+        assertNull(restored.getUpperCpuThreshold());
+        assertNull(restored.getUpperConditionLogic());
+        assertNull(restored.getMicroForceOnStandby());
+    }
+
+    @Test
+    public void testResourceHistoryCsvMapper_ヘッダー行と項目の足りない行はレコードとして扱わない() {
+        // Arrange & Act & Assert
+        assertFalse(ResourceHistoryCsvMapper.INSTANCE.isRecord(
+                reader.reset("Hostname,Timestamp,CpuUsage,MemoryUsage,InstanceTypeChangeRequest")));
+        assertFalse(ResourceHistoryCsvMapper.INSTANCE.isRecord(reader.reset("host-1,2025-01-01T00:00Z")));
+        assertTrue(ResourceHistoryCsvMapper.INSTANCE.isRecord(
+                reader.reset("host-1,2025-01-01T00:00Z,10.0,20.0,WITHIN")));
+        assertEquals(InstanceTypeChangeRequest.WITHIN,
+                ResourceHistoryCsvMapper.INSTANCE.read(reader).getInstanceTypeChangeRequest());
+    }
+
+    private static String toLine(Object[] values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            if (values[i] != null) {
+                line.append(values[i]);
+            }
+        }
+        return line.toString();
+    }
+}
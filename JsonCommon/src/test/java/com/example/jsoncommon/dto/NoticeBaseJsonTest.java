@@ -69,6 +69,26 @@ class NoticeBaseJsonTest {
         assertEquals(InstanceTypeChangeRequest.WITHIN, metricsJson.getMetrics().getInstanceTypeChangeRequest());
     }
 
+    @Test
+    void testReplayed_再送信の場合のみ出力され読み込める() throws Exception {
+        // Arrange
+        MetricsJson live = new MetricsJson(UUID.randomUUID(), NoticeType.METRICS, ZonedDateTime.now(), "1.0.0",
+                "test-instance", new Metrics(75.5, 60.3, InstanceTypeChangeRequest.UPPER));
+        MetricsJson replayed = new MetricsJson(UUID.randomUUID(), NoticeType.METRICS, ZonedDateTime.now(), "1.0.0",
+                "test-instance", new Metrics(75.5, 60.3, InstanceTypeChangeRequest.UPPER));
+        replayed.setReplayed(true);
+
+        // Act
+        String liveJson = objectMapper.writeValueAsString(live);
+        String replayedJson = objectMapper.writeValueAsString(replayed);
+
+        // Assert
+        assertFalse(liveJson.contains("\"Replayed\""));
+        assertTrue(replayedJson.contains("\"Replayed\":true"));
+        assertTrue(objectMapper.readValue(replayedJson, MetricsJson.class).isReplayed());
+        assertFalse(objectMapper.readValue(liveJson, MetricsJson.class).isReplayed());
+    }
+
     @Test
     void testUpJsonCreation() {
         // Arrange
@@ -0,0 +1,125 @@
+package com.example.jsoncommon.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AppendChannelCacheTest {
+
+    private static final Charset CHARSET = Charset.forName("EUC-JP");
+
+    private static final byte[] HEADER = "H\r\n".getBytes(CHARSET);
+
+    @TempDir
+    Path tempDir;
+
+    private final AppendChannelCache cache = new AppendChannelCache(2, 60_000L);
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        cache.closeAll();
+    }
+
+    @Test
+    public void testAppend_ヘッダーは空のファイルにのみ書き込まれ行の先頭位置が返る() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("test.csv");
+
+        // Act
+        long first = cache.append(file, HEADER, line("日本語\r\n"));
+        long second = cache.append(file, HEADER, line("B\r\n"));
+
+        // Assert
+        assertEquals(List.of("H", "日本語", "B"), Files.readAllLines(file, CHARSET));
+        assertEquals(3L, first);
+        assertEquals(3L + "日本語\r\n".getBytes(CHARSET).length, second);
+    }
+
+    @Test
+    public void testInvalidate_上書き後は新しいファイルの末尾から追記される() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("test.csv");
+        cache.append(file, HEADER, line("A\r\n"));
+        cache.append(file, HEADER, line("B\r\n"));
+
+        // Act: キャッシュを無効化してからファイルを置き換える
+        cache.invalidate(file);
+        Files.writeString(file, "H\r\nC\r\n", CHARSET);
+        long offset = cache.append(file, HEADER, line("D\r\n"));
+
+        // Assert
+        assertEquals(List.of("H", "C", "D"), Files.readAllLines(file, CHARSET));
+        assertEquals(6L, offset);
+    }
+
+    @Test
+    public void testReplace_置き換え中の追記は置き換え後のファイルに書き込まれる() throws Exception {
+        // Arrange: 追記用のチャネルを開いた状態で置き換え元のファイルを用意する
+        Path file = tempDir.resolve("test.csv");
+        Path source = tempDir.resolve("test.csv.tmp");
+        cache.append(file, HEADER, line("A\r\n"));
+        Files.writeString(source, "H\r\nC\r\n", CHARSET);
+
+        // Act: ファイルのロックを保持している間に別スレッドから追記し、置き換えてからロックを解放する
+        ReentrantLock fileLock = cache.fileLock(file);
+        fileLock.lock();
+        CompletableFuture<Long> appended;
+        try {
+            appended = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return cache.append(file, HEADER, line("D\r\n"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(appended.isDone());
+            cache.replace(file, source);
+        } finally {
+            fileLock.unlock();
+        }
+
+        // Assert
+        assertEquals(6L, appended.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("H", "C", "D"), Files.readAllLines(file, CHARSET));
+        assertFalse(Files.exists(source));
+    }
+
+    @Test
+    public void testAppend_上限を超えると最も長く使われていないチャネルが閉じられる() throws IOException {
+        // Arrange
+        Path a = tempDir.resolve("a.csv");
+        Path b = tempDir.resolve("b.csv");
+        Path c = tempDir.resolve("c.csv");
+        cache.append(a, HEADER, line("1\r\n"));
+        cache.append(b, HEADER, line("1\r\n"));
+
+        // Act
+        cache.append(a, HEADER, line("2\r\n"));
+        cache.append(c, HEADER, line("1\r\n"));
+        cache.append(b, HEADER, line("2\r\n"));
+
+        // Assert: 閉じられたファイルも開き直して末尾に追記される
+        assertEquals(2, cache.size());
+        assertEquals(List.of("H", "1", "2"), Files.readAllLines(a, CHARSET));
+        assertEquals(List.of("H", "1", "2"), Files.readAllLines(b, CHARSET));
+        assertEquals(List.of("H", "1"), Files.readAllLines(c, CHARSET));
+    }
+
+    private static ByteBuffer line(String text) {
+        return ByteBuffer.wrap(text.getBytes(CHARSET));
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,9 +26,22 @@ public class CsvRepositoryBaseTest {
             writeToCsv(fileName, headers, values);
         }
 
+        public Path path(String fileName) {
+            return getCsvPath(fileName);
+        }
+
         public List<String> read(String fileName) throws IOException {
             return readFromCsv(fileName);
         }
+
+        public List<String> readReverse(String fileName, int limit) throws IOException {
+            List<String> lines = new ArrayList<>();
+            readFromCsvReverse(fileName, line -> {
+                lines.add(line);
+                return lines.size() < limit;
+            });
+            return lines;
+        }
     }
 
     @BeforeEach
@@ -89,4 +103,59 @@ public class CsvRepositoryBaseTest {
         }
         assertTrue(foundInLines, "Repository should be able to read back the Japanese value correctly");
     }
+
+    @Test
+    public void testReadFromCsvReverse_ブロック境界をまたいでも末尾から順に読み込める() throws IOException {
+        String fileName = "test_reverse.csv";
+        String[] headers = { "Index", "Value" };
+
+        // 逆順読み込みのブロックサイズ（8KB）を超えるデータを書き込む
+        for (int i = 0; i < 2000; i++) {
+            repository.write(fileName, headers, i, "値" + i);
+        }
+
+        // Act: 全行を逆順に読み込む
+        List<String> all = repository.readReverse(fileName, Integer.MAX_VALUE);
+
+        // Assert: ヘッダーを含む全行が逆順で取得できる
+        List<String> expected = new ArrayList<>(repository.read(fileName));
+        java.util.Collections.reverse(expected);
+        assertEquals(expected, all);
+        assertEquals("1999,値1999", all.get(0));
+        assertEquals("Index,Value", all.get(all.size() - 1));
+    }
+
+    @Test
+    public void testReadFromCsvReverse_途中で読み込みを終了できる() throws IOException {
+        String fileName = "test_reverse_stop.csv";
+        String[] headers = { "Index" };
+        for (int i = 0; i < 10; i++) {
+            repository.write(fileName, headers, i);
+        }
+
+        List<String> lines = repository.readReverse(fileName, 3);
+
+        assertEquals(List.of("9", "8", "7"), lines);
+    }
+
+    @Test
+    public void testWriteToCsv_出力ディレクトリを1つだけ指定した場合はそのディレクトリに書き込む() throws IOException {
+        // Arrange: app.csv.output-dir と異なるディレクトリを app.csv.output-dirs に1つだけ指定する
+        Path otherDir = tempDir.resolve("other");
+        repository.setOutputDirs(otherDir.toString());
+
+        // Act
+        repository.write("single.csv", new String[] { "Header1" }, "Value1");
+
+        // Assert: 書き込み先とパスの解決先が一致する
+        assertEquals(otherDir.resolve("single.csv").toAbsolutePath(), repository.path("single.csv").toAbsolutePath());
+        assertTrue(Files.exists(otherDir.resolve("single.csv")));
+        assertFalse(Files.exists(csvDir.resolve("single.csv")));
+        assertEquals(List.of("Header1", "Value1"), repository.read("single.csv"));
+    }
+
+    @Test
+    public void testReadFromCsvReverse_ファイルが存在しない場合は何も読み込まない() throws IOException {
+        assertTrue(repository.readReverse("not_exists.csv", Integer.MAX_VALUE).isEmpty());
+    }
 }
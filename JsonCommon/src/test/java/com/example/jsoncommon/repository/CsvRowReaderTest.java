@@ -0,0 +1,81 @@
+package com.example.jsoncommon.repository;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvRowReaderTest {
+
+    private final CsvRowReader reader = new CsvRowReader();
+
+    @Test
+    public void testReset_引用符で囲まれた項目を1つの項目として解析する() {
+        // Arrange & Act
+        reader.reset("\"\",\"カンマ,を含む\",\"引用符\"\"を含む\",日本語,");
+
+        // Assert
+        assertEquals(5, reader.size());
+        assertTrue(reader.isEmpty(0));
+        assertEquals("カンマ,を含む", reader.getString(1));
+        assertEquals("引用符\"を含む", reader.getString(2));
+        assertTrue(reader.fieldEquals(2, "引用符\"を含む"));
+        assertEquals("日本語", reader.getString(3));
+        assertTrue(reader.fieldEquals(3, "日本語"));
+        assertTrue(reader.isEmpty(4));
+    }
+
+    @Test
+    public void testGetDouble_Double_parseDoubleと同じ値になる() {
+        // Arrange
+        String[] values = { "0.0", "-0.0", "12.5", "45.67", "99.99999", "100", "1.0E-5", "3.4E10",
+                "12.345678901234567", "0.1", "1e22", "1e23", "NaN", "-Infinity" };
+
+        for (String value : values) {
+            // Act
+            reader.reset(value);
+
+            // Assert
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(reader.getDouble(0)), value);
+        }
+    }
+
+    @Test
+    public void testGetters_型ごとに変換でき不正な値は例外になる() {
+        // Arrange & Act
+        reader.reset("host,-42,TRUE,,UPPER,abc,2147483648");
+
+        // Assert
+        assertTrue(reader.fieldEquals(0, "host"));
+        assertFalse(reader.fieldEquals(0, "hos"));
+        assertEquals(-42, reader.getInt(1));
+        assertTrue(reader.getBoolean(2));
+        assertNull(reader.getNullableDouble(3));
+        assertNull(reader.getNullableInt(3));
+        assertNull(reader.getNullableBoolean(3));
+        assertEquals(InstanceTypeChangeRequest.UPPER, reader.getEnum(4, InstanceTypeChangeRequest.class));
+        assertThrows(NumberFormatException.class, () -> reader.getDouble(5));
+        assertThrows(NumberFormatException.class, () -> reader.getInt(6));
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.getString(7));
+    }
+
+    @Test
+    public void testRoundTrip_ライターで書いた行を同じ値に戻せる() throws IOException {
+        // Arrange
+        CsvRowWriter writer = new CsvRowWriter("A", "B", "C", "D");
+        ByteBuffer encoded = writer.encode("ホスト,\"名\"", 0.3, 7, null);
+
+        // Act: 改行コード（CRLF）を除いて解析する
+        reader.reset(encoded.array(), encoded.position(), encoded.remaining() - 2);
+
+        // Assert
+        assertEquals("ホスト,\"名\"", reader.getString(0));
+        assertEquals(0.3, reader.getDouble(1));
+        assertEquals(7, reader.getInt(2));
+        assertTrue(reader.isEmpty(3));
+    }
+}
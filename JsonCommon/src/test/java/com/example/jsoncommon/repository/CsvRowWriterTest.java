@@ -0,0 +1,46 @@
+package com.example.jsoncommon.repository;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import org.apache.commons.csv.CSVFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvRowWriterTest {
+
+    private static final Charset CHARSET = Charset.forName("EUC-JP");
+
+    @Test
+    public void testEncode_CSVFormatと同じ内容が出力される() throws IOException {
+        // Arrange
+        CsvRowWriter writer = new CsvRowWriter("A", "B", "C", "D", "E", "F");
+        Object[][] rows = {
+                { "host-1", "2025-01-01T00:00+09:00[Asia/Tokyo]", 12.5, -3, true, InstanceTypeChangeRequest.UPPER },
+                { "", null, "カンマ,を含む", "引用符\"を含む", "末尾の空白 ", "#先頭" },
+                { null, "改行\nを含む", "日本語", "", " 先頭の空白", 1.0E-5 },
+        };
+
+        for (Object[] row : rows) {
+            // Act
+            ByteBuffer encoded = writer.encode(row);
+
+            // Assert
+            String expected = CSVFormat.DEFAULT.format(row) + CSVFormat.DEFAULT.getRecordSeparator();
+            assertEquals(expected, new String(encoded.array(), encoded.position(), encoded.remaining(), CHARSET));
+        }
+    }
+
+    @Test
+    public void testHeaderBytes_ヘッダー行がエンコード済みで保持される() {
+        // Arrange & Act
+        CsvRowWriter writer = new CsvRowWriter("Hostname", "ホスト名");
+
+        // Assert
+        assertEquals("Hostname,ホスト名\r\n", new String(writer.headerBytes(), CHARSET));
+        assertArrayEquals(new String[] { "Hostname", "ホスト名" }, writer.getHeaders());
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.jsoncommon.repository;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.dto.ResourceHistoryCsv;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MvStoreTableStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MvStoreTableStorage storage;
+    private Path storeFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        storeFile = tempDir.resolve("store.mv.db");
+        storage = new MvStoreTableStorage(storeFile.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void testAppendAndReadAll_ヘッダーと追記した行が取得できる() throws IOException {
+        // Arrange
+        String[] headers = { "Header1", "Header2" };
+
+        // Act
+        storage.append("test.csv", headers, "Value1", "日本語,カンマ");
+        storage.append("test.csv", headers, "Value2", "B");
+
+        // Assert: CSVバックエンドと同じ形式の行が取得できる
+        List<String> lines = storage.readAll("test.csv");
+        assertEquals(List.of("Header1,Header2", "Value1,\"日本語,カンマ\"", "Value2,B"), lines);
+    }
+
+    @Test
+    public void testOverwrite_内容が置き換わり再オープン後も保持される() throws IOException {
+        // Arrange
+        String[] headers = { "Key", "Value" };
+        storage.append("test.csv", headers, "A", "1");
+        storage.append("test.csv", headers, "B", "2");
+
+        // Act
+        storage.overwrite("test.csv", headers, List.<Object[]>of(new Object[] { "C", "3" }));
+        storage.close();
+        storage = new MvStoreTableStorage(storeFile.toString());
+
+        // Assert
+        assertEquals(List.of("Key,Value", "C,3"), storage.readAll("test.csv"));
+        assertEquals(2L, storage.endPosition("test.csv"));
+    }
+
+    @Test
+    public void testUpsertAndDelete_キーの行のみを更新し再オープン後も保持される() throws IOException {
+        // Arrange
+        String[] headers = { "Key", "Value" };
+        storage.upsert("state.csv", headers, "B", "B", "1");
+        storage.upsert("state.csv", headers, "A", "A", "1");
+
+        // Act
+        storage.upsert("state.csv", headers, "B", "B", "2");
+        assertTrue(storage.delete("state.csv", "A"));
+        assertFalse(storage.delete("state.csv", "X"));
+        storage.close();
+        storage = new MvStoreTableStorage(storeFile.toString());
+
+        // Assert
+        assertEquals(List.of("Key,Value", "B,2"), storage.readAll("state.csv"));
+        assertEquals(2L, storage.endPosition("state.csv"));
+    }
+
+    @Test
+    public void testOverwrite_状態のテーブルは変更のあったキーのみ更新する() throws IOException {
+        // Arrange
+        String[] headers = { "Key", "Value" };
+        storage.overwrite("state.csv", headers, List.of(new Object[] { "A", "1" }, new Object[] { "B", "2" }));
+
+        // Act
+        storage.overwrite("state.csv", headers, List.of(new Object[] { "B", "3" }, new Object[] { "C", "4" }));
+
+        // Assert: キーの順に並ぶ
+        assertEquals(List.of("Key,Value", "B,3", "C,4"), storage.readAll("state.csv"));
+        List<String> reverse = new ArrayList<>();
+        storage.readReverse("state.csv", reverse::add);
+        assertEquals(List.of("C,4", "B,3", "Key,Value"), reverse);
+    }
+
+    @Test
+    public void testSeries_ホスト名と時刻のキーで範囲検索と範囲削除ができる() throws IOException {
+        // Arrange: 2ホストの行を時刻の順不同で追加（同じ時刻の行も保持する）
+        String[] headers = { "Hostname", "Time" };
+        for (long t : new long[] { 3000L, 1000L, 2000L, 2000L, 4000L }) {
+            storage.appendSeries("series.csv", headers, "host-a", t, "host-a", t);
+            storage.appendSeries("series.csv", headers, "host-b", t, "host-b", t);
+        }
+
+        // Act
+        List<Long> range = new ArrayList<>();
+        storage.readSeries("series.csv", "host-a", 2000L, 3000L, (time, line) -> range.add(time));
+        int deleted = storage.deleteSeries("series.csv", "host-a", Long.MIN_VALUE, 3000L);
+
+        // Assert
+        assertEquals(List.of(2000L, 2000L, 3000L), range);
+        assertEquals(3, deleted);
+        List<String> remaining = new ArrayList<>();
+        storage.readSeries("series.csv", "host-a", Long.MIN_VALUE, Long.MAX_VALUE,
+                (time, line) -> remaining.add(line));
+        assertEquals(List.of("host-a,3000", "host-a,4000"), remaining);
+        assertEquals(8L, storage.endPosition("series.csv"));
+    }
+
+    @Test
+    public void testReadForwardAndReverse_位置指定と逆順で読み込める() throws IOException {
+        // Arrange
+        String[] headers = { "No" };
+        List<Long> positions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            positions.add(storage.append("test.csv", headers, i));
+        }
+
+        // Act
+        List<String> forward = new ArrayList<>();
+        storage.readForward("test.csv", positions.get(2), (position, line) -> forward.add(line));
+        List<String> reverse = new ArrayList<>();
+        storage.readReverse("test.csv", line -> {
+            reverse.add(line);
+            return reverse.size() < 2;
+        });
+
+        // Assert
+        assertEquals(List.of("2", "3", "4"), forward);
+        assertEquals(List.of("4", "3"), reverse);
+    }
+
+    @Test
+    public void testExportAll_全テーブルがCSVファイルに出力される() throws IOException {
+        // Arrange
+        storage.append("a.csv", new String[] { "H" }, "日本語");
+        storage.append("b.csv", new String[] { "H" }, "x");
+        Path exportDir = tempDir.resolve("export");
+
+        // Act
+        int count = storage.exportAll(exportDir);
+
+        // Assert
+        assertEquals(2, count);
+        assertEquals(List.of("H", "日本語"), Files.readAllLines(exportDir.resolve("a.csv"), Charset.forName("EUC-JP")));
+        assertTrue(Files.exists(exportDir.resolve("b.csv")));
+    }
+
+    @Test
+    public void testResourceHistoryRepository_MVStoreを保存先として期間検索できる() throws IOException {
+        // Arrange
+        ResourceHistoryRepository repository = new ResourceHistoryRepository();
+        repository.setOutputDir(tempDir.resolve("csv").toString());
+        repository.setRetentionDays(30);
+        repository.setStorage(storage);
+        ZonedDateTime base = ZonedDateTime.now().minusHours(1).withSecond(0).withNano(0);
+        for (int i = 0; i < 30; i++) {
+            repository.save(new MetricsJson(UUID.randomUUID(), NoticeType.METRICS, base.plusMinutes(i), "1.0.0",
+                    "test-host", new Metrics((double) i, 50.0, InstanceTypeChangeRequest.WITHIN)));
+        }
+
+        // Act
+        List<ResourceHistoryCsv> range = repository.findByHostnameAndPeriod("test-host",
+                base.plusMinutes(5), base.plusMinutes(9));
+        List<ResourceHistoryCsv> recent = repository.findRecentByHostname("test-host", 120);
+
+        // Assert
+        assertEquals(5, range.size());
+        assertEquals(5.0, range.get(0).getCpuUsage());
+        assertEquals(30, recent.size());
+        assertEquals(29.0, recent.get(0).getCpuUsage());
+
+        // 保持期間処理はキーの範囲のみを削除する
+        repository.setRetentionDays(0);
+        assertEquals(30, repository.deleteOldRecords("test-host"));
+        assertTrue(repository.findRecentByHostname("test-host", 120).isEmpty());
+        assertFalse(Files.exists(tempDir.resolve("csv").resolve("resource_history_test-host.csv")));
+    }
+}
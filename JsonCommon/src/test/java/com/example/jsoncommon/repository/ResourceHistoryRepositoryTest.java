@@ -125,7 +125,7 @@ public class ResourceHistoryRepositoryTest {
     }
 
     @Test
-    public void testSaveWithAutoDeletion_保存時に古いデータが自動削除される() throws IOException {
+    public void testSave_保存時には古いデータを削除しない() throws IOException {
         // Arrange
         String hostname = "test-host";
         ZonedDateTime now = ZonedDateTime.now();
@@ -136,16 +136,28 @@ public class ResourceHistoryRepositoryTest {
         // 5日前のデータを保存
         repository.save(createMetricsJson(hostname, now.minusDays(5), 60.0, 40.0));
 
-        // Act: 新しいデータを保存（自動削除が実行される）
+        // Act: 新しいデータを保存（保持期間の処理はバックグラウンドで行うため削除されない）
         repository.save(createMetricsJson(hostname, now, 80.0, 60.0));
 
-        // Assert: 古いデータは削除され、新しいデータのみが残る
+        // Assert: 両方のデータが残り、削除処理で古いデータのみが削除される
         Path csvFilePath = csvDir.resolve("resource_history_test-host.csv");
         List<String> lines = Files.readAllLines(csvFilePath, java.nio.charset.Charset.forName("EUC-JP"));
+        assertEquals(3, lines.size());
+        assertEquals(1, repository.deleteOldRecords(hostname));
+        assertEquals(0, repository.deleteOldRecords(hostname));
+    }
 
-        // ヘッダー + 1行のデータ
-        assertEquals(2, lines.size());
-        assertTrue(lines.get(1).contains("80.0")); // 新しいデータのCPU使用率
+    @Test
+    public void testFindAllHostnames_履歴が保存されているホスト名が取得される() throws IOException {
+        // Arrange
+        repository.save(createMetricsJson("host-a", ZonedDateTime.now(), 10.0, 10.0));
+        repository.save(createMetricsJson("host-b", ZonedDateTime.now(), 10.0, 10.0));
+
+        // Act
+        List<String> hostnames = repository.findAllHostnames();
+
+        // Assert
+        assertEquals(List.of("host-a", "host-b"), hostnames);
     }
 
     @Test
@@ -158,6 +170,130 @@ public class ResourceHistoryRepositoryTest {
         assertDoesNotThrow(() -> repository.deleteOldRecords(hostname));
     }
 
+    @Test
+    public void testFindByHostnameAndPeriod_指定期間のデータのみ古い順に取得される() throws IOException {
+        // Arrange
+        String hostname = "test-host";
+        ZonedDateTime base = ZonedDateTime.now().minusHours(2).withSecond(0).withNano(0);
+
+        // 1分間隔で60件のデータを保存
+        for (int i = 0; i < 60; i++) {
+            repository.save(createMetricsJson(hostname, base.plusMinutes(i), i, 50.0));
+        }
+
+        // Act: 10分後〜20分後のデータを取得
+        List<ResourceHistoryCsv> result = repository.findByHostnameAndPeriod(hostname,
+                base.plusMinutes(10), base.plusMinutes(20));
+
+        // Assert: 境界を含む11件が古い順に取得される
+        assertEquals(11, result.size());
+        assertEquals(10.0, result.get(0).getCpuUsage());
+        assertEquals(20.0, result.get(10).getCpuUsage());
+        assertTrue(Files.exists(csvDir.resolve("resource_history_test-host.csv.idx")));
+    }
+
+    @Test
+    public void testFindByHostnameAndPeriod_インデックスが古い場合は再構築される() throws IOException {
+        // Arrange
+        String hostname = "test-host";
+        ZonedDateTime base = ZonedDateTime.now().minusHours(2).withSecond(0).withNano(0);
+        for (int i = 0; i < 5; i++) {
+            repository.save(createMetricsJson(hostname, base.plusMinutes(i), i, 50.0));
+        }
+
+        // インデックスを残したままCSVを別の内容で書き換える
+        Path csvFilePath = csvDir.resolve("resource_history_test-host.csv");
+        StringBuilder csv = new StringBuilder("Hostname,Timestamp,CpuUsage,MemoryUsage,InstanceTypeChangeRequest\r\n");
+        for (int i = 0; i < 3; i++) {
+            csv.append(hostname).append(',').append(base.plusMinutes(30 + i)).append(",").append(30.0 + i)
+                    .append(",50.0,WITHIN\r\n");
+        }
+        Files.writeString(csvFilePath, csv.toString());
+
+        // 再起動後を想定し新しいインスタンスで読み込む
+        ResourceHistoryRepository restarted = new ResourceHistoryRepository();
+        restarted.setOutputDir(csvDir.toString());
+        restarted.setRetentionDays(30);
+
+        // Act
+        List<ResourceHistoryCsv> result = restarted.findByHostnameAndPeriod(hostname,
+                base.plusMinutes(30), base.plusMinutes(40));
+
+        // Assert: 不整合なインデックスは破棄され、CSVの内容どおりに取得される
+        assertEquals(3, result.size());
+        assertEquals(30.0, result.get(0).getCpuUsage());
+    }
+
+    @Test
+    public void testFindByHostnameAndPeriod_再起動後にインデックスが追いつく() throws IOException {
+        // Arrange: インデックスを更新しない形でCSVに行を追記する
+        String hostname = "test-host";
+        ZonedDateTime base = ZonedDateTime.now().minusHours(2).withSecond(0).withNano(0);
+        for (int i = 0; i < 3; i++) {
+            repository.save(createMetricsJson(hostname, base.plusMinutes(i), i, 50.0));
+        }
+        Path csvFilePath = csvDir.resolve("resource_history_test-host.csv");
+        Files.writeString(csvFilePath,
+                hostname + "," + base.plusMinutes(10) + ",10.0,50.0,WITHIN\r\n",
+                java.nio.file.StandardOpenOption.APPEND);
+
+        ResourceHistoryRepository restarted = new ResourceHistoryRepository();
+        restarted.setOutputDir(csvDir.toString());
+        restarted.setRetentionDays(30);
+
+        // Act
+        List<ResourceHistoryCsv> result = restarted.findByHostnameAndPeriod(hostname,
+                base.plusMinutes(5), base.plusMinutes(20));
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(10.0, result.get(0).getCpuUsage());
+    }
+
+    @Test
+    public void testSave_辞書を有効にするとホスト名をIDで保存し読み込み時に解決する() throws IOException {
+        // Arrange
+        repository.setDictionaryEnabled(true);
+        ZonedDateTime now = ZonedDateTime.now();
+        repository.save(createMetricsJson("dict-host", now.minusMinutes(2), 10.0, 20.0));
+        repository.save(createMetricsJson("dict-host", now.minusMinutes(1), 30.0, 40.0));
+
+        // Act
+        List<ResourceHistoryCsv> result = repository.findRecentByHostname("dict-host", 10);
+
+        // Assert
+        List<String> lines = Files.readAllLines(csvDir.resolve("resource_history_dict-host.csv"),
+                java.nio.charset.Charset.forName("EUC-JP"));
+        assertTrue(lines.get(1).startsWith("#0,"));
+        assertTrue(lines.get(1).endsWith(",#1"));
+        assertEquals(2, result.size());
+        assertEquals("dict-host", result.get(0).getHostname());
+        assertEquals(30.0, result.get(0).getCpuUsage());
+        assertEquals(InstanceTypeChangeRequest.WITHIN, result.get(0).getInstanceTypeChangeRequest());
+    }
+
+    @Test
+    public void testGetHistorySize_キーで更新できるストレージでは行数からバイト数を見積もる() throws IOException {
+        // Arrange
+        MvStoreTableStorage storage = new MvStoreTableStorage(tempDir.resolve("history.mv.db").toString());
+        try {
+            repository.setStorage(storage);
+            ZonedDateTime now = ZonedDateTime.now();
+            repository.save(createMetricsJson("keyed-host", now.minusMinutes(2), 10.0, 20.0));
+            repository.save(createMetricsJson("keyed-host", now.minusMinutes(1), 30.0, 40.0));
+
+            // Act
+            long size = repository.getHistorySize("keyed-host");
+
+            // Assert: 5列の行を2行以上（ストレージの末尾の位置）
+            long rows = storage.endPosition("resource_history_keyed-host.csv");
+            assertTrue(rows >= 2);
+            assertEquals(rows * 5 * CsvRepositoryBase.ESTIMATED_BYTES_PER_COLUMN, size);
+        } finally {
+            storage.close();
+        }
+    }
+
     @Test
     public void testSetRetentionDays() {
         // Act
@@ -0,0 +1,78 @@
+package com.example.jsoncommon.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLocate_付随ファイルは元のCSVと同じディレクトリになる() {
+        // Arrange
+        ShardRing ring = new ShardRing(List.of(tempDir.resolve("a"), tempDir.resolve("b"), tempDir.resolve("c")));
+
+        for (int i = 0; i < 50; i++) {
+            String fileName = "resource_history_host-" + i + ".csv";
+
+            // Act & Assert
+            assertEquals(ring.locate(fileName), ring.locate(fileName + ".idx"));
+        }
+    }
+
+    @Test
+    public void testLocate_ディレクトリを追加しても一部のファイルのみ移動する() {
+        // Arrange
+        ShardRing before = new ShardRing(List.of(tempDir.resolve("a"), tempDir.resolve("b")));
+        ShardRing after = new ShardRing(List.of(tempDir.resolve("a"), tempDir.resolve("b"), tempDir.resolve("c")));
+        Path added = tempDir.resolve("c").toAbsolutePath().normalize();
+
+        // Act
+        int moved = 0;
+        for (int i = 0; i < 1000; i++) {
+            String fileName = "resource_history_host-" + i + ".csv";
+            if (!before.locate(fileName).equals(after.locate(fileName))) {
+                moved++;
+                // 移動するファイルの移動先は追加したディレクトリのみ
+                assertEquals(added, after.locate(fileName));
+            }
+        }
+
+        // Assert: 約1/3が移動する
+        assertTrue(moved > 200 && moved < 470, "moved=" + moved);
+    }
+
+    @Test
+    public void testRebalance_配置先が変わったファイルを移動し振り分けたストレージから読み込める() throws IOException {
+        // Arrange: 1ディレクトリで書き込んだ後にディレクトリを追加
+        Path dirA = tempDir.resolve("a");
+        Path dirB = tempDir.resolve("b");
+        CsvTableStorage single = new CsvTableStorage(dirA);
+        for (int i = 0; i < 20; i++) {
+            single.append("resource_history_host-" + i + ".csv", new String[] { "Hostname" }, "host-" + i);
+            Files.writeString(dirA.resolve("resource_history_host-" + i + ".csv.idx"), "idx");
+        }
+        ShardRing ring = new ShardRing(List.of(dirA, dirB));
+
+        // Act
+        int moved = new ShardRebalancer(ring).rebalance(List.of());
+
+        // Assert
+        assertTrue(moved > 0);
+        ShardedTableStorage storage = new ShardedTableStorage(ring);
+        assertEquals(20, storage.listTables().size());
+        for (int i = 0; i < 20; i++) {
+            String fileName = "resource_history_host-" + i + ".csv";
+            assertEquals(List.of("Hostname", "host-" + i), storage.readAll(fileName));
+            assertTrue(Files.exists(ring.resolve(fileName + ".idx")));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.jsoncommon.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StringDictionaryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testEncode_同じ値には同じIDを返す() throws IOException {
+        // Arrange
+        StringDictionary dictionary = new StringDictionary(new CsvTableStorage(tempDir));
+
+        // Act
+        StringDictionary.Ref first = dictionary.encode("host-a");
+        StringDictionary.Ref second = dictionary.encode("host-b");
+        StringDictionary.Ref again = dictionary.encode("host-a");
+
+        // Assert
+        assertEquals(0, first.id());
+        assertEquals(1, second.id());
+        assertEquals(first, again);
+        assertEquals("host-b", dictionary.valueOf(1));
+        assertEquals(-1, dictionary.lookup("host-c"));
+    }
+
+    @Test
+    public void testEncode_再作成後も保存済みのIDを引き継ぐ() throws IOException {
+        // Arrange
+        new StringDictionary(new CsvTableStorage(tempDir)).encode("ホストA");
+        StringDictionary reopened = new StringDictionary(new CsvTableStorage(tempDir));
+
+        // Act
+        StringDictionary.Ref next = reopened.encode("host-b");
+
+        // Assert
+        assertEquals("ホストA", reopened.valueOf(0));
+        assertEquals(0, reopened.lookup("ホストA"));
+        assertEquals(1, next.id());
+    }
+
+    @Test
+    public void testCsvRowReader_辞書参照と引用符付きの文字列を区別する() throws IOException {
+        // Arrange
+        StringDictionary dictionary = new StringDictionary(new CsvTableStorage(tempDir));
+        StringDictionary.Ref ref = dictionary.encode("host-a");
+        CsvRowWriter writer = new CsvRowWriter("Hostname", "Memo");
+        CsvRowReader reader = new CsvRowReader(dictionary);
+
+        // Act
+        String line = CsvTableStorage.CHARSET.decode(writer.encode(ref, "#0")).toString().trim();
+        reader.reset(line);
+
+        // Assert
+        assertEquals("#0,\"#0\"", line);
+        assertEquals("host-a", reader.getString(0));
+        assertTrue(reader.fieldEquals(0, "host-a"));
+        assertFalse(reader.fieldEquals(0, "host-b"));
+        assertEquals("#0", reader.getString(1));
+    }
+}
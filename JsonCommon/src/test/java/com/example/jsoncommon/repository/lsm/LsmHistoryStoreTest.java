@@ -0,0 +1,257 @@
+package com.example.jsoncommon.repository.lsm;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.ResourceHistoryCsv;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LsmHistoryStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LsmHistoryStore store;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        store = new LsmHistoryStore(tempDir.toString(), 10, 3, 30);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testAppendAndFind_memtableとセグメントをまたいで時刻順に取得できる() throws IOException {
+        // Arrange: 3ホスト×20件（memtableの上限10件を超えるためセグメントに書き出される）
+        ZonedDateTime base = ZonedDateTime.now().minusHours(1).withNano(0);
+        for (int i = 0; i < 20; i++) {
+            for (String hostname : new String[] { "host-a", "host-b", "host-c" }) {
+                store.append(hostname, base.plusSeconds(i * 2L), (double) i, 50.0, InstanceTypeChangeRequest.WITHIN);
+            }
+        }
+
+        // Act
+        List<ResourceHistoryCsv> range = store.findByHostnameAndPeriod("host-b", base.plusSeconds(10),
+                base.plusSeconds(20));
+        List<ResourceHistoryCsv> recent = store.findRecentByHostname("host-a", 120);
+
+        // Assert
+        assertEquals(6, range.size());
+        assertEquals(5.0, range.get(0).getCpuUsage());
+        assertEquals(10.0, range.get(5).getCpuUsage());
+        assertEquals("host-b", range.get(0).getHostname());
+        assertEquals(20, recent.size());
+        assertEquals(19.0, recent.get(0).getCpuUsage()); // 最新が先頭
+        assertEquals(List.of("host-a", "host-b", "host-c"), store.findAllHostnames());
+    }
+
+    @Test
+    public void testCompaction_セグメントがマージされ保持期間外のレコードが削除される() throws IOException {
+        // Arrange: 保持期間外のレコードと期間内のレコードを複数のセグメントに書き出す
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int segment = 0; segment < 3; segment++) {
+            store.append("host-a", now.minusDays(40).plusMinutes(segment), 1.0, 1.0, null);
+            store.append("host-a", now.minusMinutes(10 - segment), 2.0, 2.0, InstanceTypeChangeRequest.UPPER);
+            store.flush();
+        }
+        assertEquals(3, store.getSegmentCount());
+
+        // Act
+        store.compact();
+
+        // Assert
+        assertEquals(1, store.getSegmentCount());
+        List<ResourceHistoryCsv> all = store.findByHostnameAndPeriod("host-a", now.minusDays(60), now);
+        assertEquals(3, all.size());
+        assertTrue(all.stream().allMatch(r -> r.getInstanceTypeChangeRequest() == InstanceTypeChangeRequest.UPPER));
+        assertEquals(1, countFiles("seg-"));
+    }
+
+    @Test
+    public void testReopen_WALとセグメントから復元される() throws IOException {
+        // Arrange: 一部はセグメント、一部はWALのみに存在する状態で再オープンする
+        ZonedDateTime base = ZonedDateTime.now().minusMinutes(30).withNano(0);
+        for (int i = 0; i < 15; i++) {
+            store.append("host-a", base.plusMinutes(i), (double) i, null, InstanceTypeChangeRequest.LOWER);
+            if (i == 9) {
+                // 上限到達による書き出しの完了を待ち、残りはWALのみに書き込まれる状態にする
+                store.flush();
+            }
+        }
+        LsmHistoryStore reopened = new LsmHistoryStore(tempDir.toString(), 10, 3, 30);
+
+        // Act
+        List<ResourceHistoryCsv> all = reopened.findByHostnameAndPeriod("host-a", base, base.plusHours(1));
+        reopened.append("host-a", base.plusMinutes(20), 20.0, null, null);
+        List<ResourceHistoryCsv> afterAppend = reopened.findByHostnameAndPeriod("host-a", base, base.plusHours(1));
+        reopened.close();
+
+        // Assert
+        assertEquals(15, all.size());
+        assertNull(all.get(0).getMemoryUsage());
+        assertEquals(base.toString(), all.get(0).getTimestamp());
+        assertEquals(16, afterAppend.size());
+        assertEquals(20.0, afterAppend.get(15).getCpuUsage());
+    }
+
+    @Test
+    public void testOpenFiles_ホスト数に依存せずファイル数が一定() throws IOException {
+        // Arrange & Act: 500ホストに追記する
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int i = 0; i < 500; i++) {
+            store.append("host-" + i, now, 1.0, 1.0, InstanceTypeChangeRequest.WITHIN);
+        }
+        store.flush();
+
+        // Assert: セグメントはコンパクションにより上限以下、WALは1つ
+        assertTrue(countFiles("seg-") <= 3);
+        assertEquals(1, countFiles("wal-"));
+        assertEquals(500, store.findAllHostnames().size());
+        assertEquals(1, store.findRecentByHostname("host-250", 5).size());
+    }
+
+    @Test
+    public void testCompress_古いブロックが圧縮され透過的に読み込める() throws IOException {
+        // Arrange: 圧縮を無効にして10日前のレコードを1つのセグメントに書き出す
+        store.close();
+        store = new LsmHistoryStore(tempDir.toString(), 1000, 3, 30);
+        store.setCompressAfterDays(0);
+        store.setBlockRecords(8);
+        ZonedDateTime base = ZonedDateTime.now().minusDays(10).withNano(0);
+        for (int i = 0; i < 100; i++) {
+            store.append("host-a", base.plusMinutes(i), (double) i, 40.0, InstanceTypeChangeRequest.WITHIN);
+        }
+        store.append("host-a", ZonedDateTime.now(), 99.0, 40.0, null);
+        store.flush();
+        long uncompressedBytes = segmentBytes();
+
+        // Act
+        store.setCompressAfterDays(7);
+        store.compress();
+
+        // Assert: ファイルが小さくなり、期間の途中のブロックからも読み込める
+        assertEquals(1, countFiles("seg-"));
+        assertTrue(segmentBytes() < uncompressedBytes);
+        List<ResourceHistoryCsv> range = store.findByHostnameAndPeriod("host-a", base.plusMinutes(50),
+                base.plusMinutes(60));
+        assertEquals(11, range.size());
+        assertEquals(50.0, range.get(0).getCpuUsage());
+        assertEquals(60.0, range.get(10).getCpuUsage());
+        assertEquals(99.0, store.findRecentByHostname("host-a", 5).get(0).getCpuUsage());
+
+        store.close();
+        store = new LsmHistoryStore(tempDir.toString(), 1000, 3, 30);
+        assertEquals(101, store.findByHostnameAndPeriod("host-a", base, ZonedDateTime.now()).size());
+    }
+
+    @Test
+    public void testCompress_マージされないセグメントからも保持期間外のレコードが削除される() throws IOException {
+        // Arrange: 保持期間外のみのセグメントと、保持期間外・期間内が混在するセグメントを書き出す（上限未満のためマージされない）
+        ZonedDateTime now = ZonedDateTime.now();
+        store.append("host-a", now.minusDays(50), 1.0, 1.0, null);
+        store.append("host-b", now.minusDays(45), 1.0, 1.0, null);
+        store.flush();
+        store.append("host-a", now.minusDays(40), 1.0, 1.0, null);
+        store.append("host-a", now.minusMinutes(5), 2.0, 2.0, InstanceTypeChangeRequest.UPPER);
+        store.flush();
+        assertEquals(2, store.getSegmentCount());
+
+        // Act
+        store.compress();
+
+        // Assert: 保持期間外のみのセグメントは削除され、混在するセグメントは期間内のレコードのみで書き直される
+        assertEquals(1, store.getSegmentCount());
+        assertEquals(1, countFiles("seg-"));
+        List<ResourceHistoryCsv> all = store.findByHostnameAndPeriod("host-a", now.minusDays(60), now);
+        assertEquals(1, all.size());
+        assertEquals(2.0, all.get(0).getCpuUsage());
+        assertTrue(store.findByHostnameAndPeriod("host-b", now.minusDays(60), now).isEmpty());
+    }
+
+    @Test
+    public void testCompaction_サイズの近い小さなセグメントのみがマージされる() throws IOException {
+        // Arrange: 大きなセグメント1つを書き出した後、小さなセグメントを上限を超えるまで書き出す
+        store.close();
+        store = new LsmHistoryStore(tempDir.toString(), 1000, 3, 30);
+        ZonedDateTime base = ZonedDateTime.now().minusHours(1).withNano(0);
+        for (int i = 0; i < 500; i++) {
+            store.append("host-a", base.plusSeconds(i), (double) i, 40.0, InstanceTypeChangeRequest.WITHIN);
+        }
+        store.flush();
+        List<Path> large = listFiles("seg-");
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            store.append("host-b", base.plusMinutes(i), 1.0, 1.0, InstanceTypeChangeRequest.WITHIN);
+            store.flush();
+        }
+
+        // Assert: 大きなセグメントは書き直されず、小さなセグメント3つが1つにまとめられる
+        assertEquals(2, store.getSegmentCount());
+        assertTrue(Files.exists(large.get(0)));
+        assertEquals(500, store.findByHostnameAndPeriod("host-a", base, ZonedDateTime.now()).size());
+        assertEquals(3, store.findByHostnameAndPeriod("host-b", base, ZonedDateTime.now()).size());
+    }
+
+    @Test
+    public void testSelectTier_上限を解消できる最も小さい階層が選ばれる() {
+        // Act & Assert: 大きなセグメント（5000）を除いた同程度のサイズのセグメントが選ばれる
+        assertEquals(List.of(4, 0, 1, 3), LsmHistoryStore.selectTier(new long[] { 100, 110, 5000, 120, 90 }, 4));
+        // 上限以下の場合はマージしない
+        assertEquals(List.of(), LsmHistoryStore.selectTier(new long[] { 100, 5000 }, 4));
+        // 同じ階層に必要な件数が揃わない場合は小さいものから選ぶ
+        assertEquals(List.of(0, 1), LsmHistoryStore.selectTier(new long[] { 10, 100, 1000 }, 2));
+    }
+
+    @Test
+    public void testSyncWal_追記したレコードが同期後も読み込める() throws IOException {
+        // Arrange
+        store.setWalSyncEachAppend(true);
+        ZonedDateTime now = ZonedDateTime.now().withNano(0);
+        store.append("host-a", now, 1.0, 1.0, InstanceTypeChangeRequest.WITHIN);
+        store.setWalSyncEachAppend(false);
+        store.append("host-a", now.plusSeconds(1), 2.0, 2.0, InstanceTypeChangeRequest.WITHIN);
+
+        // Act
+        store.syncWal();
+        LsmHistoryStore reopened = new LsmHistoryStore(tempDir.toString(), 10, 3, 30);
+        List<ResourceHistoryCsv> all = reopened.findByHostnameAndPeriod("host-a", now, now.plusSeconds(1));
+        reopened.close();
+
+        // Assert
+        assertEquals(2, all.size());
+    }
+
+    private List<Path> listFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)).toList();
+        }
+    }
+
+    private long segmentBytes() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("seg-"))
+                    .mapToLong(p -> p.toFile().length())
+                    .sum();
+        }
+    }
+
+    private long countFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+}
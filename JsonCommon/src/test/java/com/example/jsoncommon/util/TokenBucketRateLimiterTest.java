@@ -0,0 +1,52 @@
+package com.example.jsoncommon.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+
+    @Test
+    void testAcquire_バケット容量内は待機しない() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1000);
+
+        long start = System.nanoTime();
+        limiter.acquire(500);
+        limiter.acquire(500);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 100, "待機時間: " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void testAcquire_不足分は補充されるまで待機する() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1000);
+        limiter.acquire(1000);
+
+        long start = System.nanoTime();
+        limiter.acquire(200);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis >= 150, "待機時間: " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void testTryAcquire_不足している場合は取得できない() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10);
+
+        assertTrue(limiter.tryAcquire(10));
+        assertFalse(limiter.tryAcquire(5));
+    }
+
+    @Test
+    void testAcquire_0以下の場合は制限しない() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0);
+
+        long start = System.nanoTime();
+        limiter.acquire(1_000_000);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 100);
+        assertTrue(limiter.tryAcquire(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.jsoncsvprocessor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * CSVの列に対応するフィールドであることを示す
+ * 対応する型は String、int/Integer、double/Double、boolean/Boolean、列挙型。
+ * ラッパー型と列挙型は空欄をnullとして読み込む（列挙型は "null" もnullとして扱う）。
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface CsvColumn {
+
+    /**
+     * @return ヘッダー名
+     */
+    String value();
+
+    /**
+     * 古い形式のファイルで存在しない場合がある列か（末尾の列のみ指定できる）
+     * 存在しない場合、String は空文字列、それ以外はnullとして読み込む
+     *
+     * @return 省略可能な場合true
+     */
+    boolean optional() default false;
+
+    /**
+     * 辞書で整数IDに置き換えて保存できる列か（ホスト名・列挙型の値等、同じ値が繰り返し出現する列に指定する）
+     * 置き換えは app.csv.dictionary.enabled=true の場合のみ行われる
+     *
+     * @return 辞書で置き換える場合true
+     */
+    boolean dictionary() default false;
+}
@@ -0,0 +1,17 @@
+package com.example.jsoncsvprocessor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * CSVの1行に対応するDTOであることを示す
+ * コンパイル時に同じパッケージに「クラス名 + Mapper」の CsvRowMapper 実装が生成される。
+ * 全てのフィールドに @CsvColumn を付け、フィールドの宣言順が列の順序となる。
+ * DTOには全フィールドを宣言順に受け取るコンストラクタとgetterが必要（Lombok の @AllArgsConstructor・@Data 等）。
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface CsvRecord {
+}
@@ -0,0 +1,274 @@
+package com.example.jsoncsvprocessor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @CsvRecord を付けたDTOの CsvRowMapper 実装を生成する注釈プロセッサ
+ * 生成するコードはリフレクションを使わず、列ごとの変換を1行ずつ並べた直線的なコードとなる。
+ */
+@SupportedAnnotationTypes("com.example.jsoncsvprocessor.CsvRecord")
+public class CsvRecordProcessor extends AbstractProcessor {
+
+    private static final String MAPPER_INTERFACE = "com.example.jsoncommon.repository.CsvRowMapper";
+    private static final String READER_CLASS = "com.example.jsoncommon.repository.CsvRowReader";
+    private static final String WRITER_CLASS = "com.example.jsoncommon.repository.CsvRowWriter";
+
+    /** 列の型の種類 */
+    private enum ColumnKind {
+        STRING, INT, INTEGER, DOUBLE, DOUBLE_BOXED, BOOLEAN, BOOLEAN_BOXED, ENUM
+    }
+
+    /** 列の定義 */
+    private record Column(String fieldName, String header, ColumnKind kind, String typeName, boolean optional,
+            boolean dictionary) {
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(CsvRecord.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@CsvRecord はクラスにのみ付けられます");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<Column> columns = readColumns(type);
+            if (columns != null) {
+                writeMapper(type, columns);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * フィールドの宣言順に列の定義を読み込む
+     *
+     * @return 列の定義（エラーがある場合はnull）
+     */
+    private List<Column> readColumns(TypeElement type) {
+        List<Column> columns = new ArrayList<>();
+        boolean valid = true;
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD || member.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            VariableElement field = (VariableElement) member;
+            CsvColumn column = field.getAnnotation(CsvColumn.class);
+            if (column == null) {
+                error(field, "@CsvRecord のクラスの全てのフィールドに @CsvColumn が必要です");
+                valid = false;
+                continue;
+            }
+            ColumnKind kind = kindOf(field.asType());
+            if (kind == null) {
+                error(field, "@CsvColumn に対応していない型です: " + field.asType());
+                valid = false;
+                continue;
+            }
+            if (!column.optional() && !columns.isEmpty() && columns.get(columns.size() - 1).optional()) {
+                error(field, "省略可能な列の後に必須の列は定義できません");
+                valid = false;
+            }
+            if (column.dictionary() && columns.size() >= Long.SIZE) {
+                error(field, "辞書で置き換える列は先頭から" + Long.SIZE + "列以内に定義してください");
+                valid = false;
+            }
+            columns.add(new Column(field.getSimpleName().toString(), column.value(), kind,
+                    field.asType().toString(), column.optional(), column.dictionary()));
+        }
+        if (valid && columns.isEmpty()) {
+            error(type, "@CsvRecord のクラスに @CsvColumn のフィールドがありません");
+            valid = false;
+        }
+        return valid ? columns : null;
+    }
+
+    private ColumnKind kindOf(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+                return ColumnKind.INT;
+            case DOUBLE:
+                return ColumnKind.DOUBLE;
+            case BOOLEAN:
+                return ColumnKind.BOOLEAN;
+            case DECLARED:
+                break;
+            default:
+                return null;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.ENUM) {
+            return ColumnKind.ENUM;
+        }
+        switch (((TypeElement) element).getQualifiedName().toString()) {
+            case "java.lang.String":
+                return ColumnKind.STRING;
+            case "java.lang.Integer":
+                return ColumnKind.INTEGER;
+            case "java.lang.Double":
+                return ColumnKind.DOUBLE_BOXED;
+            case "java.lang.Boolean":
+                return ColumnKind.BOOLEAN_BOXED;
+            default:
+                return null;
+        }
+    }
+
+    private void writeMapper(TypeElement type, List<Column> columns) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String mapperName = type.getSimpleName() + "Mapper";
+        int requiredColumns = 0;
+        long dictionaryColumns = 0L;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!columns.get(i).optional()) {
+                requiredColumns++;
+            }
+            if (columns.get(i).dictionary()) {
+                dictionaryColumns |= 1L << i;
+            }
+        }
+
+        try {
+            JavaFileObject file = processingEnv.getFiler()
+                    .createSourceFile(packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type);
+            try (Writer writer = file.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+                if (!packageName.isEmpty()) {
+                    out.println("package " + packageName + ";");
+                    out.println();
+                }
+                out.println("/**");
+                out.println(" * " + type.getSimpleName() + " とCSVの1行を相互に変換するマッパー（CsvRecordProcessor により生成）");
+                out.println(" */");
+                out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+                out.println("public final class " + mapperName + " implements " + MAPPER_INTERFACE + "<" + typeName
+                        + "> {");
+                out.println();
+                out.println("    public static final " + mapperName + " INSTANCE = new " + mapperName + "();");
+                out.println();
+                out.println("    private static final String[] HEADERS = {");
+                for (int i = 0; i < columns.size(); i++) {
+                    out.println("            \"" + escape(columns.get(i).header()) + "\""
+                            + (i < columns.size() - 1 ? "," : ""));
+                }
+                out.println("    };");
+                out.println();
+                out.println("    private static final " + WRITER_CLASS + " WRITER = new " + WRITER_CLASS + "(HEADERS);");
+                out.println();
+                out.println("    private " + mapperName + "() {");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public String[] getHeaders() {");
+                out.println("        return HEADERS.clone();");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public " + WRITER_CLASS + " getWriter() {");
+                out.println("        return WRITER;");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public int getRequiredColumns() {");
+                out.println("        return " + requiredColumns + ";");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public long getDictionaryColumns() {");
+                out.println("        return 0x" + Long.toHexString(dictionaryColumns) + "L;");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public boolean isHeader(" + READER_CLASS + " row) {");
+                out.println("        return row.fieldEquals(0, \"" + escape(columns.get(0).header()) + "\");");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public " + typeName + " read(" + READER_CLASS + " row) {");
+                out.println("        return new " + typeName + "(");
+                for (int i = 0; i < columns.size(); i++) {
+                    Column column = columns.get(i);
+                    out.println("                " + readExpression(column, i)
+                            + (i < columns.size() - 1 ? "," : "") + " // " + column.fieldName());
+                }
+                out.println("        );");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public Object[] toValues(" + typeName + " value) {");
+                out.println("        return new Object[] {");
+                for (int i = 0; i < columns.size(); i++) {
+                    Column column = columns.get(i);
+                    out.println("                value." + getterName(column) + "()"
+                            + (i < columns.size() - 1 ? "," : ""));
+                }
+                out.println("        };");
+                out.println("    }");
+                out.println("}");
+            }
+        } catch (IOException e) {
+            error(type, "マッパーの生成に失敗しました: " + e.getMessage());
+        }
+    }
+
+    private static String readExpression(Column column, int index) {
+        String expression = switch (column.kind()) {
+            case STRING -> "row.getString(" + index + ")";
+            case INT -> "row.getInt(" + index + ")";
+            case INTEGER -> "row.getNullableInt(" + index + ")";
+            case DOUBLE -> "row.getDouble(" + index + ")";
+            case DOUBLE_BOXED -> "row.getNullableDouble(" + index + ")";
+            case BOOLEAN -> "row.getBoolean(" + index + ")";
+            case BOOLEAN_BOXED -> "row.getNullableBoolean(" + index + ")";
+            case ENUM -> "(row.isEmpty(" + index + ") || row.fieldEquals(" + index + ", \"null\")) ? null : row.getEnum("
+                    + index + ", " + column.typeName() + ".class)";
+        };
+        if (!column.optional()) {
+            return expression;
+        }
+        String missing = column.kind() == ColumnKind.STRING ? "\"\"" : "null";
+        return "row.size() > " + index + " ? " + (column.kind() == ColumnKind.ENUM ? "(" + expression + ")" : expression)
+                + " : " + missing;
+    }
+
+    /**
+     * Lombok と同じ規則でgetter名を求める（プリミティブの boolean のみ is で始まる）
+     */
+    private static String getterName(Column column) {
+        String name = column.fieldName();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        return (column.kind() == ColumnKind.BOOLEAN ? "is" : "get") + capitalized;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
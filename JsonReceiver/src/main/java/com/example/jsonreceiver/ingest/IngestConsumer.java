@@ -0,0 +1,152 @@
+package com.example.jsonreceiver.ingest;
+
+import com.example.jsoncommon.dto.NoticeBaseJson;
+import com.example.jsoncommon.tcp.MessageHandler;
+import com.example.jsoncommon.tcp.NoticeJsonParser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 取り込みログを読み込んで通知を処理する処理段
+ * 処理段ごとに処理済みのオフセットを「処理段名.offset」に記録し、再起動後は記録したオフセットから再開する。
+ * オフセットを巻き戻すと（replayFrom、または停止中にファイルを編集）、その位置から通知を再処理する。
+ */
+@Slf4j
+public class IngestConsumer implements Runnable {
+
+    /** オフセットファイルの接尾辞 */
+    static final String OFFSET_SUFFIX = ".offset";
+
+    private final String name;
+    private final IngestLog ingestLog;
+    private final NoticeJsonParser parser;
+    private final MessageHandler handler;
+    private final Path offsetFile;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+
+    /** 処理済みのオフセット（次に読み込むオフセット） */
+    private volatile long committedOffset;
+
+    /** 巻き戻し先のオフセット（未指定の場合は-1） */
+    private volatile long replayOffset = -1L;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param name               処理段名
+     * @param ingestLog          取り込みログ
+     * @param parser             通知のパーサー
+     * @param handler            通知を処理するハンドラー
+     * @param offsetDir          オフセットファイルを保存するディレクトリ
+     * @param batchSize          1回に読み込む最大件数（この件数ごとにオフセットを記録する）
+     * @param pollIntervalMillis 新しいレコードを待機する最大時間（ミリ秒）
+     * @throws IOException オフセットファイルの読み込みに失敗した場合
+     */
+    public IngestConsumer(String name, IngestLog ingestLog, NoticeJsonParser parser, MessageHandler handler,
+            Path offsetDir, int batchSize, long pollIntervalMillis) throws IOException {
+        this.name = name;
+        this.ingestLog = ingestLog;
+        this.parser = parser;
+        this.handler = handler;
+        this.offsetFile = offsetDir.resolve(name + OFFSET_SUFFIX);
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        Files.createDirectories(offsetDir);
+        this.committedOffset = Files.exists(offsetFile)
+                ? Long.parseLong(Files.readString(offsetFile, StandardCharsets.US_ASCII).trim())
+                : ingestLog.getStartOffset();
+    }
+
+    @Override
+    public void run() {
+        log.info("取り込みログの処理段 {} を開始します: オフセット={}", name, committedOffset);
+        while (running) {
+            try {
+                pollOnce();
+                ingestLog.awaitAppend(committedOffset, pollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                log.error("取り込みログの処理段 {} のオフセットの記録に失敗しました", name, e);
+            }
+        }
+        log.info("取り込みログの処理段 {} を停止しました: オフセット={}", name, committedOffset);
+    }
+
+    /**
+     * 未処理のレコードを最大 batchSize 件処理し、処理済みのオフセットを記録する
+     *
+     * @return 処理した件数
+     * @throws IOException オフセットの記録に失敗した場合
+     */
+    public int pollOnce() throws IOException {
+        long replay = replayOffset;
+        if (replay >= 0) {
+            replayOffset = -1L;
+            log.info("取り込みログの処理段 {} をオフセット {} から再処理します", name, replay);
+            committedOffset = replay;
+        }
+
+        int[] processed = { 0 };
+        long next = ingestLog.read(committedOffset, batchSize, (offset, payload) -> {
+            processed[0]++;
+            String json = new String(payload, StandardCharsets.UTF_8);
+            try {
+                NoticeBaseJson message = parser.parse(json);
+                if (message != null) {
+                    handler.handleMessage(message);
+                }
+            } catch (Exception e) {
+                // 1件の失敗で処理段を止めない（原因を修正した後に replayFrom で再処理できる）
+                log.error("取り込みログの処理段 {} で通知の処理に失敗しました: オフセット={}", name, offset, e);
+            }
+        });
+        if (next != committedOffset) {
+            commit(next);
+        }
+        return processed[0];
+    }
+
+    /**
+     * 指定したオフセットから再処理する（次回の読み込みから反映される）
+     *
+     * @param offset 再処理を開始するオフセット
+     */
+    public void replayFrom(long offset) {
+        this.replayOffset = Math.max(offset, 0L);
+    }
+
+    /**
+     * 処理を停止する
+     */
+    public void stop() {
+        running = false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    private void commit(long offset) throws IOException {
+        Path temp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        Files.writeString(temp, Long.toString(offset), StandardCharsets.US_ASCII);
+        try {
+            Files.move(temp, offsetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, offsetFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committedOffset = offset;
+    }
+}
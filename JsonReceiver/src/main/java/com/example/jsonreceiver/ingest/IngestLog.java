@@ -0,0 +1,309 @@
+package com.example.jsonreceiver.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 受信した通知をそのまま記録する追記専用のセグメントログ
+ * セグメントは固定サイズのファイルをメモリマップして書き込み、満杯になると次のセグメントに切り替える。
+ * レコードは「長さ(4バイト),CRC32C(4バイト),本文」の形式で、位置（オフセット）はログ全体を通したバイト位置とする。
+ * セグメントのファイル名は先頭のオフセットで、セグメント内の位置 = オフセット - 先頭のオフセット となる。
+ * 起動時は最後のセグメントを先頭から検査し、長さが0またはCRCが一致しないレコードの位置から追記を再開する。
+ * 書き込みは1スレッドずつ行い、読み込みは書き込み済みの末尾（endOffset）までを複数スレッドから並行に行える。
+ */
+@Slf4j
+public class IngestLog implements Closeable {
+
+    /** セグメントのファイル名の接尾辞 */
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    /** レコードのヘッダーのバイト数（長さ + CRC） */
+    private static final int HEADER_BYTES = 8;
+
+    private final Path dir;
+    private final int segmentBytes;
+
+    /** 先頭のオフセット → セグメント */
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /** 書き込み中のセグメント（this で保護） */
+    private Segment active;
+
+    /** 書き込み中のセグメント内の書き込み位置（this で保護） */
+    private int writePosition;
+
+    /** 書き込み済みの末尾のオフセット（本文を書き込んだ後に更新する） */
+    private volatile long endOffset;
+
+    /**
+     * @param dir          セグメントを保存するディレクトリ
+     * @param segmentBytes セグメントのバイト数
+     * @throws IOException IO例外
+     */
+    public IngestLog(Path dir, int segmentBytes) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("セグメントのサイズが小さすぎます: " + segmentBytes);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        open();
+    }
+
+    /**
+     * レコードを追記する
+     *
+     * @param payload 本文
+     * @return 追記したレコードのオフセット
+     * @throws IOException 本文がセグメントに収まらない場合、セグメントの作成に失敗した場合
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (payload.length + HEADER_BYTES > segmentBytes) {
+            throw new IOException("レコードがセグメントのサイズを超えています: " + payload.length + "バイト");
+        }
+        if (writePosition + HEADER_BYTES + payload.length > segmentBytes) {
+            roll();
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int position = writePosition;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, payload.length);
+        // 次のレコードの長さを0にしておき、以前の書き込みの残骸を読まないようにする
+        if (position + HEADER_BYTES + payload.length + 4 <= segmentBytes) {
+            buffer.putInt(position + HEADER_BYTES + payload.length, 0);
+        }
+
+        long offset = active.baseOffset + position;
+        writePosition = position + HEADER_BYTES + payload.length;
+        endOffset = active.baseOffset + writePosition;
+        notifyAll();
+        return offset;
+    }
+
+    /**
+     * 指定したオフセットから順にレコードを読み込む
+     *
+     * @param offset     読み込みを開始するオフセット
+     * @param maxRecords 読み込む最大件数
+     * @param visitor    各レコードを受け取る処理
+     * @return 次に読み込むオフセット
+     */
+    public long read(long offset, int maxRecords, RecordVisitor visitor) {
+        long position = Math.max(offset, getStartOffset());
+        long end = endOffset;
+        int count = 0;
+        while (position < end && count < maxRecords) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+            if (entry == null) {
+                break;
+            }
+            Segment segment = entry.getValue();
+            int inSegment = (int) (position - segment.baseOffset);
+            int length = inSegment + HEADER_BYTES <= segmentBytes ? segment.buffer.getInt(inSegment) : 0;
+            if (length <= 0) {
+                // セグメントの残りは未使用のため次のセグメントに進む
+                position = segment.baseOffset + segmentBytes;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(inSegment + HEADER_BYTES, payload);
+            visitor.visit(position, payload);
+            position += HEADER_BYTES + length;
+            count++;
+        }
+        return position;
+    }
+
+    /**
+     * 指定したオフセットより後にレコードが追記されるまで待機する
+     *
+     * @param offset        オフセット
+     * @param timeoutMillis 最大待機時間（ミリ秒）
+     * @throws InterruptedException 割り込まれた場合
+     */
+    public synchronized void awaitAppend(long offset, long timeoutMillis) throws InterruptedException {
+        if (endOffset <= offset) {
+            wait(timeoutMillis);
+        }
+    }
+
+    /**
+     * 保持している最初のレコードのオフセットを取得する
+     *
+     * @return オフセット
+     */
+    public long getStartOffset() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first != null ? first.getKey() : 0L;
+    }
+
+    /**
+     * 書き込み済みの末尾のオフセットを取得する
+     *
+     * @return オフセット
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * 全てのレコードが指定したオフセットより前にあり、一定時間更新されていないセグメントを削除する
+     * 書き込み中のセグメントは削除しない
+     *
+     * @param offset     全ての読み込み側が処理済みのオフセット
+     * @param minAgeMillis 削除するセグメントの最終更新からの経過時間（ミリ秒）
+     * @return 削除したセグメント数
+     * @throws IOException IO例外
+     */
+    public synchronized int deleteSegmentsBefore(long offset, long minAgeMillis) throws IOException {
+        long threshold = System.currentTimeMillis() - minAgeMillis;
+        int deleted = 0;
+        for (Segment segment : List.copyOf(segments.values())) {
+            if (segment == active || segment.baseOffset + segmentBytes > offset) {
+                break;
+            }
+            FileTime modified = Files.getLastModifiedTime(segment.path);
+            if (modified.toMillis() > threshold) {
+                break;
+            }
+            segments.remove(segment.baseOffset);
+            Files.deleteIfExists(segment.path);
+            deleted++;
+        }
+        if (deleted > 0) {
+            log.info("取り込みログの古いセグメントを削除しました: {} 件, 先頭オフセット={}", deleted, getStartOffset());
+        }
+        return deleted;
+    }
+
+    /**
+     * 書き込み中のセグメントの内容をディスクに書き出す
+     */
+    public synchronized void force() {
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        log.info("取り込みログを閉じました: 末尾オフセット={}", endOffset);
+    }
+
+    /**
+     * 既存のセグメントを読み込み、最後のセグメントの書き込み位置を求める
+     */
+    private void open() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(path -> {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    log.warn("取り込みログのセグメントではないファイルを無視します: {}", path);
+                }
+            });
+        }
+        for (Map.Entry<Long, Path> entry : files.entrySet()) {
+            segments.put(entry.getKey(), mapSegment(entry.getKey(), entry.getValue()));
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(0L);
+            writePosition = 0;
+        } else {
+            active = segments.lastEntry().getValue();
+            writePosition = recover(active);
+        }
+        endOffset = active.baseOffset + writePosition;
+        log.info("取り込みログを開きました: {}, セグメント数={}, 先頭オフセット={}, 末尾オフセット={}",
+                dir, segments.size(), getStartOffset(), endOffset);
+    }
+
+    /**
+     * セグメントを先頭から検査し、最後の正しいレコードの直後の位置を返す
+     */
+    private int recover(Segment segment) {
+        int position = 0;
+        CRC32C crc = new CRC32C();
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentBytes) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + 4)) {
+                log.warn("取り込みログの末尾に不完全なレコードがあるため破棄します: オフセット={}",
+                        segment.baseOffset + position);
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        if (position + 4 <= segmentBytes) {
+            segment.buffer.putInt(position, 0);
+        }
+        return position;
+    }
+
+    private void roll() throws IOException {
+        if (writePosition + 4 <= segmentBytes) {
+            active.buffer.putInt(writePosition, 0);
+        }
+        active.buffer.force();
+        active = createSegment(active.baseOffset + segmentBytes);
+        writePosition = 0;
+    }
+
+    private Segment createSegment(long baseOffset) throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+        Segment segment = mapSegment(baseOffset, path);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    private Segment mapSegment(long baseOffset, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new Segment(baseOffset, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    /**
+     * メモリマップしたセグメント
+     */
+    private record Segment(long baseOffset, Path path, MappedByteBuffer buffer) {
+    }
+
+    /**
+     * 読み込んだレコードを受け取る処理
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @param offset  レコードのオフセット
+         * @param payload 本文
+         */
+        void visit(long offset, byte[] payload);
+    }
+}
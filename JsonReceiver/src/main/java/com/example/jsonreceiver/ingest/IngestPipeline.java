@@ -0,0 +1,159 @@
+package com.example.jsonreceiver.ingest;
+
+import com.example.jsoncommon.dto.DownJson;
+import com.example.jsoncommon.dto.HeartbeatJson;
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.NoticeBaseJson;
+import com.example.jsoncommon.dto.UpJson;
+import com.example.jsoncommon.tcp.MessageHandler;
+import com.example.jsoncommon.tcp.NoticeJsonParser;
+import com.example.jsoncommon.tcp.RawMessageHandler;
+import com.example.jsonreceiver.metrics.MetricsService;
+import com.example.jsonreceiver.monitortarget.InstanceStatusService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 受信した通知を取り込みログに記録し、処理段ごとに非同期で処理するパイプライン
+ * TCPサーバーは通知を取り込みログに追記するだけとなり、処理が遅れても受信は止まらない（滞留分はディスクに保持する）。
+ * 処理段は「history」（リソース履歴）、「status」（インスタンスステータス）、「scaling」（インスタンスタイプ変更）で、
+ * それぞれ独立したスレッドとオフセットで取り込みログを読み込む。
+ * receiver.ingest-log.enabled=true の場合のみ有効となる。
+ */
+@Component
+@ConditionalOnProperty(name = "receiver.ingest-log.enabled", havingValue = "true")
+@Slf4j
+public class IngestPipeline implements RawMessageHandler {
+
+    private final IngestLog ingestLog;
+    private final List<IngestConsumer> consumers;
+    private final long retentionMillis;
+
+    public IngestPipeline(MetricsService metricsService,
+            InstanceStatusService instanceStatusService,
+            ObjectMapper objectMapper,
+            @Value("${receiver.ingest-log.dir:${app.csv.output-dir}/ingest}") String dir,
+            @Value("${receiver.ingest-log.segment-bytes:67108864}") int segmentBytes,
+            @Value("${receiver.ingest-log.batch-size:100}") int batchSize,
+            @Value("${receiver.ingest-log.poll-interval-ms:500}") long pollIntervalMillis,
+            @Value("${receiver.ingest-log.retention-hours:24}") long retentionHours) throws IOException {
+        Path logDir = Paths.get(dir);
+        this.ingestLog = new IngestLog(logDir, segmentBytes);
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+
+        NoticeJsonParser parser = new NoticeJsonParser(objectMapper);
+        Path offsetDir = logDir.resolve("consumers");
+        this.consumers = List.of(
+                new IngestConsumer("history", ingestLog, parser, message -> {
+                    if (message instanceof MetricsJson metrics) {
+                        run(() -> metricsService.saveHistory(metrics));
+                    } else if (message instanceof HeartbeatJson heartbeat) {
+                        run(() -> metricsService.saveHeartbeatHistory(heartbeat));
+                    }
+                }, offsetDir, batchSize, pollIntervalMillis),
+                new IngestConsumer("status", ingestLog, parser, message -> {
+                    if (message instanceof MetricsJson metrics) {
+                        run(() -> metricsService.updateAgentLastNoticeTime(metrics));
+                    } else if (message instanceof HeartbeatJson heartbeat) {
+                        run(() -> metricsService.updateAgentLastNoticeTime(heartbeat));
+                    } else if (message instanceof UpJson up) {
+                        instanceStatusService.processUp(up);
+                    } else if (message instanceof DownJson down) {
+                        instanceStatusService.processDown(down);
+                    }
+                }, offsetDir, batchSize, pollIntervalMillis),
+                new IngestConsumer("scaling", ingestLog, parser, message -> {
+                    if (message instanceof MetricsJson metrics) {
+                        metricsService.requestInstanceTypeChange(metrics);
+                    }
+                }, offsetDir, batchSize, pollIntervalMillis));
+    }
+
+    /**
+     * 受信した通知を取り込みログに追記する
+     */
+    @Override
+    public void handleRawMessage(String json) throws IOException {
+        ingestLog.append(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 起動完了後に処理段のスレッドを開始する
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (IngestConsumer consumer : consumers) {
+            Thread thread = new Thread(consumer, "ingest-" + consumer.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 処理段を指定したオフセットから再処理する
+     *
+     * @param consumerName 処理段名
+     * @param offset       再処理を開始するオフセット（レコードのオフセット。0の場合は保持している先頭から）
+     * @return 処理段が存在する場合true
+     */
+    public boolean replay(String consumerName, long offset) {
+        Optional<IngestConsumer> consumer = consumers.stream()
+                .filter(c -> c.getName().equals(consumerName))
+                .findFirst();
+        consumer.ifPresent(c -> c.replayFrom(offset));
+        return consumer.isPresent();
+    }
+
+    /**
+     * 書き込み中のセグメントをディスクに書き出し、全処理段が処理済みで保持期間を過ぎたセグメントを削除する
+     */
+    @Scheduled(fixedDelayString = "${receiver.ingest-log.flush-interval-ms:1000}")
+    public void maintain() {
+        ingestLog.force();
+        long minOffset = consumers.stream().mapToLong(IngestConsumer::getCommittedOffset).min()
+                .orElse(0L);
+        try {
+            ingestLog.deleteSegmentsBefore(minOffset, retentionMillis);
+        } catch (IOException e) {
+            log.error("取り込みログの古いセグメントの削除に失敗しました", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        consumers.forEach(IngestConsumer::stop);
+        ingestLog.close();
+    }
+
+    /**
+     * IO例外を伴う処理を MessageHandler 内で実行する
+     */
+    private static void run(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
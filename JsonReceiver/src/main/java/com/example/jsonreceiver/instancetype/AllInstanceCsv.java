@@ -1,5 +1,8 @@
 package com.example.jsonreceiver.instancetype;
 
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -8,21 +11,25 @@ import lombok.NoArgsConstructor;
  * システム情報を保持するDTO
  */
 @Data
+@CsvRecord
 @NoArgsConstructor
 @AllArgsConstructor
 public class AllInstanceCsv {
     /**
      * ホスト名
      */
+    @CsvColumn("HOSTNAME")
     private String hostname;
 
     /**
      * 装置タイプ(ECS, EDB...)
      */
+    @CsvColumn("MACHINE_TYPE")
     private String machineType;
 
     /**
      * グループ名
      */
+    @CsvColumn("GROUP_NAME")
     private String groupName;
 }
@@ -4,7 +4,6 @@ import com.example.jsoncommon.repository.CsvRepositoryBase;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,7 +11,6 @@ import java.util.Optional;
 public class AllInstanceRepository extends CsvRepositoryBase {
 
     private static final String FILE_NAME = "all_instance.csv";
-    private static final String[] HEADERS = { "HOSTNAME", "MACHINE_TYPE", "GROUP_NAME" };
 
     /**
      * 単一のインスタンス情報を追記保存する
@@ -23,7 +21,7 @@ public class AllInstanceRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public void save(String hostname, String machineType, String groupName) throws IOException {
-        writeToCsv(FILE_NAME, HEADERS, hostname, machineType, groupName);
+        writeToCsv(FILE_NAME, AllInstanceCsvMapper.INSTANCE, new AllInstanceCsv(hostname, machineType, groupName));
     }
 
     /**
@@ -34,15 +32,7 @@ public class AllInstanceRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public void saveAll(List<AllInstanceCsv> allInstanceList) throws IOException {
-        List<Object[]> values = new ArrayList<>();
-        for (AllInstanceCsv info : allInstanceList) {
-            values.add(new Object[] {
-                    info.getHostname(),
-                    info.getMachineType(),
-                    info.getGroupName()
-            });
-        }
-        overwriteToCsv(FILE_NAME, HEADERS, values);
+        overwriteToCsv(FILE_NAME, AllInstanceCsvMapper.INSTANCE, allInstanceList);
     }
 
     /**
@@ -53,26 +43,6 @@ public class AllInstanceRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public Optional<AllInstanceCsv> findByHostname(String hostname) throws IOException {
-        List<String> lines = readFromCsv(FILE_NAME);
-
-        if (lines.isEmpty()) {
-            return Optional.empty();
-        }
-
-        // ヘッダーをスキップして検索
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-            String[] parts = line.split(",", -1);
-            if (parts.length >= 3 && parts[0].equals(hostname)) {
-                AllInstanceCsv info = new AllInstanceCsv(
-                        parts[0], // hostname
-                        parts[1], // machineType
-                        parts[2] // groupName
-                );
-                return Optional.of(info);
-            }
-        }
-
-        return Optional.empty();
+        return findFirstFromCsv(FILE_NAME, AllInstanceCsvMapper.INSTANCE, hostname);
     }
 }
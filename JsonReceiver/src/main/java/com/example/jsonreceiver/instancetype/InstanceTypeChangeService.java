@@ -5,10 +5,14 @@ import com.example.jsoncommon.util.CommandExecutor;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Executors;
@@ -34,6 +38,9 @@ public class InstanceTypeChangeService {
 
     private final ScheduledExecutorService monitoringExecutor = Executors.newScheduledThreadPool(5);
 
+    /** 確認中の変更の保存先（未設定の場合は再起動後に確認を再開しない） */
+    private PendingTypeChangeRepository pendingTypeChangeRepository;
+
     @Value("${instance-type-change.check-interval-seconds:5}")
     private int checkIntervalSeconds;
 
@@ -49,6 +56,36 @@ public class InstanceTypeChangeService {
     @Value("${shell.execution.timeout-seconds:30}")
     private int shellTimeoutSeconds;
 
+    /**
+     * 確認中の変更の保存先を設定します
+     * 
+     * @param pendingTypeChangeRepository 確認中の変更の保存先
+     */
+    @Autowired(required = false)
+    public void setPendingTypeChangeRepository(PendingTypeChangeRepository pendingTypeChangeRepository) {
+        this.pendingTypeChangeRepository = pendingTypeChangeRepository;
+    }
+
+    /**
+     * 起動時に、停止前に完了を確認中だった変更の確認を再開します
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingChanges() {
+        if (pendingTypeChangeRepository == null) {
+            return;
+        }
+        try {
+            for (PendingTypeChangeCsv change : pendingTypeChangeRepository.findAll()) {
+                logger.info("ホスト名 {} のインスタンスタイプ変更（{}）の完了確認を再開します（試行済み {} 回）",
+                        change.getHostname(), change.getTargetType(), change.getRetryCount());
+                scheduleNextCheck(change.getHostname(), change.getTargetType(),
+                        new AtomicInteger(change.getRetryCount()), change.getStartedAt(), 1);
+            }
+        } catch (IOException e) {
+            logger.error("確認中のインスタンスタイプ変更の読み込みに失敗しました", e);
+        }
+    }
+
     /**
      * インスタンスタイプを変更します
      * SystemInfo.csv → InstanceTypeLinkCsv.csv → InstanceType.csvからインスタンスタイプを取得し、
@@ -156,14 +193,17 @@ public class InstanceTypeChangeService {
         logger.info("ホスト名 {} の監視スレッドを開始します", hostname);
 
         AtomicInteger retryCount = new AtomicInteger(0);
-        scheduleNextCheck(hostname, targetInstanceType, retryCount, 1);
+        String startedAt = ZonedDateTime.now().toString();
+        recordPending(hostname, targetInstanceType, 0, startedAt);
+        scheduleNextCheck(hostname, targetInstanceType, retryCount, startedAt, 1);
     }
 
     private void scheduleNextCheck(String hostname, InstanceType targetInstanceType, AtomicInteger retryCount,
-            long delaySeconds) {
+            String startedAt, long delaySeconds) {
         monitoringExecutor.schedule(() -> {
             try {
                 int currentRetry = retryCount.incrementAndGet();
+                recordPending(hostname, targetInstanceType, currentRetry, startedAt);
                 logger.debug("ホスト名 {} のインスタンスタイプ変更完了をチェック中 (試行 {}/{})",
                         hostname, currentRetry, maxRetryCount);
 
@@ -178,27 +218,60 @@ public class InstanceTypeChangeService {
 
                     logger.info("ホスト名 {} のインスタンスタイプを {} に更新しました",
                             hostname, targetInstanceType);
+                    clearPending(hostname);
                     return; // 完了
                 }
 
                 if (currentRetry >= maxRetryCount) {
                     logger.warn("ホスト名 {} の最大リトライ回数に達しました。監視スレッドを停止します",
                             hostname);
+                    clearPending(hostname);
                     return; // 最大リトライ回数到達
                 }
 
                 // 次回のチェックをスケジュール
-                scheduleNextCheck(hostname, targetInstanceType, retryCount, checkIntervalSeconds);
+                scheduleNextCheck(hostname, targetInstanceType, retryCount, startedAt, checkIntervalSeconds);
 
             } catch (Exception e) {
                 logger.error("ホスト名 {} の監視スレッドでエラーが発生しました", hostname, e);
                 if (retryCount.get() < maxRetryCount) {
-                    scheduleNextCheck(hostname, targetInstanceType, retryCount, checkIntervalSeconds);
+                    scheduleNextCheck(hostname, targetInstanceType, retryCount, startedAt, checkIntervalSeconds);
+                } else {
+                    clearPending(hostname);
                 }
             }
         }, delaySeconds, TimeUnit.SECONDS);
     }
 
+    /**
+     * 確認中の変更を記録します（記録に失敗しても確認は継続します）
+     */
+    private void recordPending(String hostname, InstanceType targetInstanceType, int retryCount, String startedAt) {
+        if (pendingTypeChangeRepository == null) {
+            return;
+        }
+        try {
+            pendingTypeChangeRepository.save(
+                    new PendingTypeChangeCsv(hostname, targetInstanceType, retryCount, startedAt));
+        } catch (IOException e) {
+            logger.warn("ホスト名 {} の確認中のインスタンスタイプ変更の記録に失敗しました", hostname, e);
+        }
+    }
+
+    /**
+     * 確認を終了した変更の記録を削除します
+     */
+    private void clearPending(String hostname) {
+        if (pendingTypeChangeRepository == null) {
+            return;
+        }
+        try {
+            pendingTypeChangeRepository.delete(hostname);
+        } catch (IOException e) {
+            logger.warn("ホスト名 {} の確認中のインスタンスタイプ変更の記録の削除に失敗しました", hostname, e);
+        }
+    }
+
     /**
      * インスタンスタイプ変更完了を確認します
      * 外部シェルを呼び出して確認します
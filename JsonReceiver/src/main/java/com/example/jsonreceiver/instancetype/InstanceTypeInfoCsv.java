@@ -1,5 +1,8 @@
 package com.example.jsonreceiver.instancetype;
 
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -8,41 +11,49 @@ import lombok.NoArgsConstructor;
  * インスタンスタイプ情報を保持するDTO
  */
 @Data
+@CsvRecord
 @NoArgsConstructor
 @AllArgsConstructor
 public class InstanceTypeInfoCsv {
     /**
      * インスタンスタイプID
      */
+    @CsvColumn("InstanceTypeId")
     private String instanceTypeId;
 
     /**
      * Highインスタンスタイプ
      */
+    @CsvColumn("HighInstanceType")
     private String highInstanceType;
 
     /**
      * HighCPUコア数
      */
+    @CsvColumn("HighCpuCore")
     private Integer highCpuCore;
 
     /**
      * Lowインスタンスタイプ
      */
+    @CsvColumn("LowInstanceType")
     private String lowInstanceType;
 
     /**
      * LowCPUコア数
      */
+    @CsvColumn("LowCpuCore")
     private Integer lowCpuCore;
 
     /**
      * VeryLowインスタンスタイプ
      */
+    @CsvColumn("VeryLowInstanceType")
     private String veryLowInstanceType;
 
     /**
      * VeryLowCPUコア数
      */
+    @CsvColumn("VeryLowCpuCore")
     private Integer veryLowCpuCore;
 }
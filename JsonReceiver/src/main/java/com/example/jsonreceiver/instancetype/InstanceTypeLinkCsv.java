@@ -1,13 +1,19 @@
 package com.example.jsonreceiver.instancetype;
 
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
+@CsvRecord
 @NoArgsConstructor
 @AllArgsConstructor
 public class InstanceTypeLinkCsv {
+    @CsvColumn("ElType")
     private String elType;
+    @CsvColumn("InstanceTypeId")
     private String instanceTypeId;
 }
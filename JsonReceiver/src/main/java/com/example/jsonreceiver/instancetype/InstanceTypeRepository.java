@@ -4,7 +4,6 @@ import com.example.jsoncommon.repository.CsvRepositoryBase;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,11 +11,6 @@ import java.util.Optional;
 public class InstanceTypeRepository extends CsvRepositoryBase {
 
     private static final String FILE_NAME = "InstanceType.csv";
-    private static final String[] HEADERS = {
-            "InstanceTypeId", "HighInstanceType", "HighCpuCore",
-            "LowInstanceType", "LowCpuCore", "VeryLowInstanceType", "VeryLowCpuCore"
-    };
-
     /**
      * インスタンスタイプのリストを上書き保存する
      * 既存のファイルが存在する場合は削除してから新規作成する
@@ -25,19 +19,7 @@ public class InstanceTypeRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public void saveAll(List<InstanceTypeInfoCsv> instanceTypes) throws IOException {
-        List<Object[]> values = new ArrayList<>();
-        for (InstanceTypeInfoCsv info : instanceTypes) {
-            values.add(new Object[] {
-                    info.getInstanceTypeId(),
-                    info.getHighInstanceType(),
-                    info.getHighCpuCore(),
-                    info.getLowInstanceType(),
-                    info.getLowCpuCore(),
-                    info.getVeryLowInstanceType(),
-                    info.getVeryLowCpuCore()
-            });
-        }
-        overwriteToCsv(FILE_NAME, HEADERS, values);
+        overwriteToCsv(FILE_NAME, InstanceTypeInfoCsvMapper.INSTANCE, instanceTypes);
     }
 
     /**
@@ -48,31 +30,7 @@ public class InstanceTypeRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public Optional<InstanceTypeInfoCsv> findByInstanceTypeId(String instanceTypeId) throws IOException {
-        List<String> lines = readFromCsv(FILE_NAME);
-
-        if (lines.isEmpty()) {
-            return Optional.empty();
-        }
-
-        // ヘッダーをスキップして検索
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-            String[] parts = line.split(",", -1);
-            if (parts.length >= 7 && parts[0].equals(instanceTypeId)) {
-                InstanceTypeInfoCsv info = new InstanceTypeInfoCsv(
-                        parts[0], // instanceTypeId
-                        parts[1], // highInstanceType
-                        Integer.parseInt(parts[2]), // highCpuCore
-                        parts[3], // lowInstanceType
-                        Integer.parseInt(parts[4]), // lowCpuCore
-                        parts[5], // veryLowInstanceType
-                        Integer.parseInt(parts[6]) // veryLowCpuCore
-                );
-                return Optional.of(info);
-            }
-        }
-
-        return Optional.empty();
+        return findFirstFromCsv(FILE_NAME, InstanceTypeInfoCsvMapper.INSTANCE, instanceTypeId);
     }
 
 }
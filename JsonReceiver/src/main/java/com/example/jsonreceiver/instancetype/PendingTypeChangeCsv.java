@@ -0,0 +1,26 @@
+package com.example.jsonreceiver.instancetype;
+
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 完了を確認中のインスタンスタイプ変更
+ */
+@Data
+@CsvRecord
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingTypeChangeCsv {
+    @CsvColumn(value = "HOSTNAME", dictionary = true)
+    private String hostname; // HOSTNAME
+    @CsvColumn(value = "TARGET_TYPE", dictionary = true)
+    private InstanceType targetType; // TARGET_TYPE (変更先のインスタンスタイプ)
+    @CsvColumn("RETRY_COUNT")
+    private int retryCount; // RETRY_COUNT (完了確認の試行回数)
+    @CsvColumn("STARTED_AT")
+    private String startedAt; // STARTED_AT (変更開始時刻)
+}
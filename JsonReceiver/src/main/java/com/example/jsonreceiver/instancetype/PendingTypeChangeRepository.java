@@ -0,0 +1,52 @@
+package com.example.jsonreceiver.instancetype;
+
+import com.example.jsoncommon.repository.SnapshotWalRepository;
+
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 完了を確認中のインスタンスタイプ変更のリポジトリ
+ * 再起動後に完了確認を再開するため、変更の開始・確認・終了をWALに記録する。
+ */
+@Repository
+public class PendingTypeChangeRepository extends SnapshotWalRepository<PendingTypeChangeCsv> {
+
+    private static final String FILE_NAME = "pending_type_change.csv";
+
+    public PendingTypeChangeRepository() {
+        super(FILE_NAME, PendingTypeChangeCsvMapper.INSTANCE, PendingTypeChangeCsv::getHostname);
+    }
+
+    /**
+     * 確認中の変更を保存する（同じホスト名の変更は置き換える）
+     * 
+     * @param change 確認中の変更
+     * @throws IOException IO例外
+     */
+    public void save(PendingTypeChangeCsv change) throws IOException {
+        putState(change);
+    }
+
+    /**
+     * 確認中の変更を削除する
+     * 
+     * @param hostname ホスト名
+     * @throws IOException IO例外
+     */
+    public void delete(String hostname) throws IOException {
+        removeState(hostname);
+    }
+
+    /**
+     * 全ての確認中の変更を取得する
+     * 
+     * @return 確認中の変更のリスト
+     * @throws IOException IO例外
+     */
+    public List<PendingTypeChangeCsv> findAll() throws IOException {
+        return findAllStates();
+    }
+}
@@ -1,18 +1,26 @@
 package com.example.jsonreceiver.metrics;
 
+import com.example.jsoncommon.dto.HeartbeatJson;
 import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.Metrics;
 import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.NoticeType;
 import com.example.jsoncommon.repository.ResourceHistoryRepository;
 import com.example.jsonreceiver.instancetype.InstanceType;
 import com.example.jsonreceiver.instancetype.InstanceTypeChangeService;
+import com.example.jsonreceiver.monitortarget.FleetStateTable;
 import com.example.jsonreceiver.monitortarget.InstanceStatusRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -24,31 +32,30 @@ public class MetricsService {
     private final ResourceHistoryRepository resourceHistoryRepository;
     private final InstanceStatusRepository instanceStatusRepository;
     private final InstanceTypeChangeService instanceTypeChangeService;
+    private final ResourceRollupService resourceRollupService;
     // private final ThresholdService thresholdService;
 
-    public void processMetrics(MetricsJson metricsJson) {
-        try {
-            // resource_history_{ホスト名}.csvに出力
-            resourceHistoryRepository.save(metricsJson);
-
-            // AGENT_LAST_NOTICE_TIMEを更新
-            String currentTime = ZonedDateTime.now().format(TIMESTAMP_FORMATTER);
-            instanceStatusRepository.updateAgentLastNoticeTime(metricsJson.getInstanceName(), currentTime);
-            log.info("ホスト名 {} のAGENT_LAST_NOTICE_TIMEを更新しました: {}",
-                    metricsJson.getInstanceName(), currentTime);
+    /** ホストごとの最新状態の記録先（未設定の場合は記録しない） */
+    private FleetStateTable fleetStateTable;
 
-            // InstanceTypeChangeRequestをチェック
-            InstanceTypeChangeRequest request = metricsJson.getMetrics().getInstanceTypeChangeRequest();
-            if (request != null && request != InstanceTypeChangeRequest.WITHIN) {
-                log.info("ホスト名 {} のINSTANCE_CHANGE_REQUESTを検出: {}",
-                        metricsJson.getInstanceName(), request);
+    /** ホストごとに最後に受信したメトリクス（生存通知で値を引き継ぐ） */
+    private final Map<String, Metrics> lastMetrics = new ConcurrentHashMap<>();
 
-                InstanceType targetType = request == InstanceTypeChangeRequest.UPPER
-                        ? InstanceType.HIGH
-                        : InstanceType.LOW;
+    /**
+     * ホストごとの最新状態の記録先を設定する
+     * 
+     * @param fleetStateTable ホストごとの最新状態の記録先
+     */
+    @Autowired(required = false)
+    public void setFleetStateTable(FleetStateTable fleetStateTable) {
+        this.fleetStateTable = fleetStateTable;
+    }
 
-                instanceTypeChangeService.changeInstanceType(metricsJson.getInstanceName(), targetType);
-            }
+    public void processMetrics(MetricsJson metricsJson) {
+        try {
+            saveHistory(metricsJson);
+            updateAgentLastNoticeTime(metricsJson);
+            requestInstanceTypeChange(metricsJson);
 
             // しきい値判定処理を実行
             // thresholdService.checkThreshold(metricsJson);
@@ -56,4 +63,137 @@ public class MetricsService {
             throw new RuntimeException("Failed to save metrics to CSV", e);
         }
     }
+
+    /**
+     * リソース履歴を保存し、1分・1時間単位の集計に加える
+     * 
+     * @param metricsJson メトリクス通知
+     * @throws IOException IO例外
+     */
+    public void saveHistory(MetricsJson metricsJson) throws IOException {
+        // resource_history_{ホスト名}.csvに出力
+        resourceHistoryRepository.save(metricsJson);
+
+        // 1分・1時間単位の集計に加える
+        resourceRollupService.record(metricsJson);
+
+        if (metricsJson.getMetrics().getCpuUsage() != null && metricsJson.getMetrics().getMemoryUsage() != null) {
+            lastMetrics.put(metricsJson.getInstanceName(), metricsJson.getMetrics());
+        }
+    }
+
+    /**
+     * 生存通知を処理する（前回のメトリクスの値を引き継いでリソース履歴を保存し、AGENT_LAST_NOTICE_TIMEを更新する）
+     * 
+     * @param heartbeatJson 生存通知
+     */
+    public void processHeartbeat(HeartbeatJson heartbeatJson) {
+        try {
+            saveHeartbeatHistory(heartbeatJson);
+            updateAgentLastNoticeTime(heartbeatJson);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save heartbeat to CSV", e);
+        }
+    }
+
+    /**
+     * 生存通知が表すサンプルごとに、前回のメトリクスの値を引き継いでリソース履歴を保存する
+     * 前回の値がない場合（JsonReceiverの再起動直後など）は保存しない。
+     * 
+     * @param heartbeatJson 生存通知
+     * @throws IOException IO例外
+     */
+    public void saveHeartbeatHistory(HeartbeatJson heartbeatJson) throws IOException {
+        Optional<Metrics> last = findLastMetrics(heartbeatJson.getInstanceName());
+        if (last.isEmpty()) {
+            log.warn("ホスト名 {} の前回のメトリクスがないため、生存通知をリソース履歴に保存しません",
+                    heartbeatJson.getInstanceName());
+            return;
+        }
+        Metrics carried = new Metrics(last.get().getCpuUsage(), last.get().getMemoryUsage(),
+                last.get().getInstanceTypeChangeRequest());
+        for (int k = Math.max(1, heartbeatJson.getSampleCount()) - 1; k >= 0; k--) {
+            MetricsJson metricsJson = new MetricsJson(heartbeatJson.getId(), NoticeType.METRICS,
+                    heartbeatJson.getTimestamp().minusSeconds((long) k * heartbeatJson.getIntervalSec()),
+                    heartbeatJson.getAgentVersion(), heartbeatJson.getInstanceName(), carried);
+            metricsJson.setReplayed(heartbeatJson.isReplayed());
+            saveHistory(metricsJson);
+        }
+    }
+
+    /**
+     * AGENT_LAST_NOTICE_TIMEを更新し、最終通知時刻とCPU・メモリ使用率を FleetStateTable に記録する
+     * 
+     * @param metricsJson メトリクス通知
+     * @throws IOException IO例外
+     */
+    public void updateAgentLastNoticeTime(MetricsJson metricsJson) throws IOException {
+        ZonedDateTime now = ZonedDateTime.now();
+        if (fleetStateTable != null) {
+            fleetStateTable.recordMetrics(metricsJson.getInstanceName(), now.toInstant().toEpochMilli(),
+                    metricsJson.getMetrics().getCpuUsage(), metricsJson.getMetrics().getMemoryUsage());
+        }
+        instanceStatusRepository.recordAgentNotice(metricsJson.getInstanceName(), now);
+        log.info("ホスト名 {} のAGENT_LAST_NOTICE_TIMEを更新しました: {}",
+                metricsJson.getInstanceName(), now.format(TIMESTAMP_FORMATTER));
+    }
+
+    /**
+     * 生存通知を受信したホストのAGENT_LAST_NOTICE_TIMEを更新し、最終通知時刻を FleetStateTable に記録する
+     * （CPU・メモリ使用率は前回の値のままとする）
+     * 
+     * @param heartbeatJson 生存通知
+     * @throws IOException IO例外
+     */
+    public void updateAgentLastNoticeTime(HeartbeatJson heartbeatJson) throws IOException {
+        ZonedDateTime now = ZonedDateTime.now();
+        if (fleetStateTable != null) {
+            fleetStateTable.recordMetrics(heartbeatJson.getInstanceName(), now.toInstant().toEpochMilli(),
+                    null, null);
+        }
+        instanceStatusRepository.recordAgentNotice(heartbeatJson.getInstanceName(), now);
+        log.debug("ホスト名 {} のAGENT_LAST_NOTICE_TIMEを更新しました: {}",
+                heartbeatJson.getInstanceName(), now.format(TIMESTAMP_FORMATTER));
+    }
+
+    /**
+     * ホストの前回のメトリクスを取得する（受信していない場合は FleetStateTable に記録された値を使う）
+     */
+    private Optional<Metrics> findLastMetrics(String hostname) {
+        Metrics last = lastMetrics.get(hostname);
+        if (last != null) {
+            return Optional.of(last);
+        }
+        if (fleetStateTable == null) {
+            return Optional.empty();
+        }
+        return fleetStateTable.find(hostname)
+                .filter(state -> !Double.isNaN(state.cpuUsage()) && !Double.isNaN(state.memoryUsage()))
+                .map(state -> new Metrics(state.cpuUsage(), state.memoryUsage(), null));
+    }
+
+    /**
+     * InstanceTypeChangeRequestがある場合にインスタンスタイプを変更する
+     * 再送信された通知（Replayed）は過去の状態に基づく要求のため、インスタンスタイプを変更しない。
+     * 
+     * @param metricsJson メトリクス通知
+     */
+    public void requestInstanceTypeChange(MetricsJson metricsJson) {
+        InstanceTypeChangeRequest request = metricsJson.getMetrics().getInstanceTypeChangeRequest();
+        if (request != null && request != InstanceTypeChangeRequest.WITHIN && metricsJson.isReplayed()) {
+            log.info("ホスト名 {} の再送信された通知のため、INSTANCE_CHANGE_REQUEST {} を無視します",
+                    metricsJson.getInstanceName(), request);
+            return;
+        }
+        if (request != null && request != InstanceTypeChangeRequest.WITHIN) {
+            log.info("ホスト名 {} のINSTANCE_CHANGE_REQUESTを検出: {}",
+                    metricsJson.getInstanceName(), request);
+
+            InstanceType targetType = request == InstanceTypeChangeRequest.UPPER
+                    ? InstanceType.HIGH
+                    : InstanceType.LOW;
+
+            instanceTypeChangeService.changeInstanceType(metricsJson.getInstanceName(), targetType);
+        }
+    }
 }
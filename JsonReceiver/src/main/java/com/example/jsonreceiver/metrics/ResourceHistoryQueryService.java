@@ -0,0 +1,106 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.dto.ResourceHistoryCsv;
+import com.example.jsoncommon.dto.ResourceRollupCsv;
+import com.example.jsoncommon.repository.ResourceHistoryRepository;
+import com.example.jsoncommon.repository.ResourceRollupRepository;
+import com.example.jsoncommon.repository.RollupTier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * リソース履歴を要求された粒度で取得するサービス
+ * 要求された粒度を満たす中で最も粗い集計（生データ・1分・1時間）から読み込む。
+ * 選んだ粒度の保持期間が期間の開始をカバーしない場合は、より粗い粒度で代替する。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResourceHistoryQueryService {
+
+    private final ResourceHistoryRepository resourceHistoryRepository;
+    private final ResourceRollupRepository resourceRollupRepository;
+    private final ResourceRollupService resourceRollupService;
+
+    /**
+     * 指定ホスト名の指定期間のリソース履歴を取得する
+     *
+     * @param hostname   ホスト名
+     * @param from       期間の開始
+     * @param to         期間の終了
+     * @param resolution 要求する粒度（この間隔以下の粒度のデータを返す）
+     * @return 集計値のリスト（古いものから順）。生データの場合は1サンプルごとの集計値
+     * @throws IOException IO例外
+     */
+    public List<ResourceRollupCsv> findByHostname(String hostname, ZonedDateTime from, ZonedDateTime to,
+            Duration resolution) throws IOException {
+        RollupTier tier = selectTier(from, resolution);
+        log.debug("リソース履歴の取得粒度を決定しました: ホスト名={}, 要求粒度={}, 使用粒度={}",
+                hostname, resolution, tier == null ? "RAW" : tier);
+
+        if (tier == null) {
+            List<ResourceRollupCsv> result = new ArrayList<>();
+            for (ResourceHistoryCsv history : resourceHistoryRepository.findByHostnameAndPeriod(hostname, from, to)) {
+                RollupAccumulator accumulator = new RollupAccumulator(hostname,
+                        ZonedDateTime.parse(history.getTimestamp()));
+                accumulator.add(history.getCpuUsage(), history.getMemoryUsage(),
+                        history.getInstanceTypeChangeRequest());
+                result.add(accumulator.toCsv());
+            }
+            return result;
+        }
+
+        List<ResourceRollupCsv> result = new ArrayList<>(
+                resourceRollupRepository.findByHostnameAndPeriod(tier, hostname, from, to));
+
+        // 未確定の最新区間も期間内であれば含める
+        Optional<ResourceRollupCsv> open = resourceRollupService.findOpenBucket(hostname, tier);
+        if (open.isPresent()) {
+            ZonedDateTime openStart = ZonedDateTime.parse(open.get().getBucketStart());
+            boolean inRange = !openStart.isBefore(tier.bucketStart(from)) && !openStart.isAfter(to);
+            boolean newer = result.isEmpty() || openStart.isAfter(
+                    ZonedDateTime.parse(result.get(result.size() - 1).getBucketStart()));
+            if (inRange && newer) {
+                result.add(open.get());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 使用する粒度を決定する
+     *
+     * @return 粒度（生データを使用する場合はnull）
+     */
+    RollupTier selectTier(ZonedDateTime from, Duration resolution) {
+        ZonedDateTime now = ZonedDateTime.now();
+        RollupTier[] tiers = RollupTier.values();
+
+        // 要求された粒度以下で最も粗い粒度（該当なしは生データ）
+        int start = -1;
+        for (int i = 0; i < tiers.length; i++) {
+            if (tiers[i].getDuration().compareTo(resolution) <= 0) {
+                start = i;
+            }
+        }
+
+        if (start < 0 && !from.isBefore(now.minusDays(resourceHistoryRepository.getRetentionDays()))) {
+            return null;
+        }
+        for (int i = Math.max(start, 0); i < tiers.length; i++) {
+            if (!from.isBefore(now.minusDays(resourceRollupRepository.getRetentionDays(tiers[i])))) {
+                return tiers[i];
+            }
+        }
+        // いずれの保持期間もカバーしない場合は最も長く保持している粒度を使用する
+        return tiers[tiers.length - 1];
+    }
+}
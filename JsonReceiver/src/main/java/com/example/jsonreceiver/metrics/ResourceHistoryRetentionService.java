@@ -0,0 +1,436 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.repository.ResourceHistoryRepository;
+import com.example.jsoncommon.repository.ResourceRollupRepository;
+import com.example.jsoncommon.repository.RollupTier;
+import com.example.jsoncommon.util.TokenBucketRateLimiter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * リソース履歴の保持期間処理をバックグラウンドで実行するサービス
+ * ホストごとにリソース履歴と、各粒度の集計値（ResourceRollupRepository）の保持期間を過ぎた行を削除する。
+ * 定期実行（cron）または手動実行で開始し、全ホストの履歴をフォークジョインで並列に処理する。
+ * 出力ディレクトリを複数指定した場合はディレクトリ（ディスク）ごとにスレッドプールとレート制限を分け、ディスク間で並行に処理する。
+ * 開始から時間枠を過ぎた場合は残りのホストを次回に持ち越し、読み書き量はレート制限する。
+ * 持ち越したホストは持ち越しファイルに保存し、次回はそのホストから処理する。
+ * レート制限の待機は {@link ForkJoinPool#managedBlock} で行い、待機中もプールの他のワーカーが処理を続けられるようにする。
+ * レート制限はストレージによらずバイト数で行う（キーで更新できるストレージでは行数から見積もる）。
+ * 実行中は一定間隔で進捗をログに出力し、進捗ファイルに書き出す（終了時の結果も書き出す）。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResourceHistoryRetentionService {
+
+    /** 手動実行のトリガーファイル名（CSV出力ディレクトリに作成すると実行される） */
+    static final String TRIGGER_FILE_NAME = "retention.trigger";
+
+    /** 次回に持ち越したホストを保存するファイル名（CSV出力ディレクトリに作成する） */
+    static final String DEFERRED_FILE_NAME = "retention.deferred";
+
+    /** 進捗を書き出すファイル名（CSV出力ディレクトリに作成する） */
+    static final String PROGRESS_FILE_NAME = "retention.progress";
+
+    private final ResourceHistoryRepository resourceHistoryRepository;
+
+    /** 集計値のリポジトリ（未設定の場合は集計値の保持期間処理を行わない） */
+    private ResourceRollupRepository resourceRollupRepository;
+
+    @Value("${app.csv.output-dir}")
+    private String outputDir;
+
+    @Value("${resource.history.retention.window-minutes:120}")
+    private int windowMinutes;
+
+    @Value("${resource.history.retention.parallelism:4}")
+    private int parallelism;
+
+    @Value("${resource.history.retention.max-bytes-per-second:10485760}")
+    private long maxBytesPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger hostsTotal = new AtomicInteger();
+    private final AtomicInteger hostsProcessed = new AtomicInteger();
+    private final AtomicInteger hostsDeferred = new AtomicInteger();
+    private final AtomicInteger hostsFailed = new AtomicInteger();
+    private final AtomicLong rowsDeleted = new AtomicLong();
+    private final AtomicLong bytesScanned = new AtomicLong();
+    private final Set<String> deferredHosts = ConcurrentHashMap.newKeySet();
+    private volatile ZonedDateTime lastStartedAt;
+    private volatile ZonedDateTime lastFinishedAt;
+
+    @Autowired(required = false)
+    public void setResourceRollupRepository(ResourceRollupRepository resourceRollupRepository) {
+        this.resourceRollupRepository = resourceRollupRepository;
+    }
+
+    /**
+     * 定期実行
+     */
+    @Scheduled(cron = "${resource.history.retention.cron:0 0 3 * * *}")
+    public void scheduledSweep() {
+        sweep("定期実行");
+    }
+
+    /**
+     * 実行中の保持期間処理の進捗をログと進捗ファイルに出力する
+     */
+    @Scheduled(fixedDelayString = "${resource.history.retention.progress-interval-ms:60000}")
+    public void reportProgress() {
+        if (!running.get()) {
+            return;
+        }
+        RetentionProgress progress = getProgress();
+        log.info("保持期間処理の進捗: 処理済み={}/{}, 持ち越し={}, 失敗={}, 削除行数={}, 走査サイズ={}",
+                progress.getHostsProcessed(), progress.getHostsTotal(), progress.getHostsDeferred(),
+                progress.getHostsFailed(), progress.getRowsDeleted(), progress.getBytesScanned());
+        writeProgressFile(progress);
+    }
+
+    /**
+     * トリガーファイルが作成されていれば保持期間処理を開始する
+     */
+    @Scheduled(fixedDelayString = "${resource.history.retention.trigger-check-interval-ms:10000}")
+    public void checkTriggerFile() {
+        Path trigger = Paths.get(outputDir).resolve(TRIGGER_FILE_NAME);
+        try {
+            if (Files.deleteIfExists(trigger)) {
+                log.info("保持期間処理のトリガーファイルを検出しました: {}", trigger);
+                triggerNow();
+            }
+        } catch (IOException e) {
+            log.error("保持期間処理のトリガーファイルの確認に失敗しました: {}", trigger, e);
+        }
+    }
+
+    /**
+     * 保持期間処理を別スレッドで開始する（手動実行）
+     *
+     * @return 開始した場合true（実行中の場合false）
+     */
+    public boolean triggerNow() {
+        if (running.get()) {
+            log.info("保持期間処理は実行中のため開始しません");
+            return false;
+        }
+        Thread thread = new Thread(() -> sweep("手動実行"), "retention-sweep");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 全ホストの保持期間処理を実行する
+     *
+     * @param reason 実行契機（ログ出力用）
+     * @return 実行した場合true（既に実行中の場合false）
+     */
+    public boolean sweep(String reason) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("保持期間処理は実行中のため{}をスキップします", reason);
+            return false;
+        }
+
+        List<ForkJoinPool> pools = new ArrayList<>();
+        try {
+            List<String> previouslyDeferred = loadDeferredHosts();
+            List<String> hostnames = prioritizeDeferred(resourceHistoryRepository.findAllHostnames(),
+                    previouslyDeferred);
+            Map<Path, List<String>> hostsByDirectory = groupByDirectory(hostnames);
+            resetProgress(hostnames.size());
+            log.info("保持期間処理を開始します（{}）: 対象ホスト数={}, 前回からの持ち越し={}, ディレクトリ数={}, ディレクトリごとの並列数={}, 時間枠={}分",
+                    reason, hostnames.size(), previouslyDeferred.size(), hostsByDirectory.size(), parallelism,
+                    windowMinutes);
+
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(windowMinutes);
+            List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+            for (List<String> hosts : hostsByDirectory.values()) {
+                ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+                pools.add(pool);
+                // レート制限はディスクごとに適用する
+                TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(maxBytesPerSecond);
+                tasks.add(pool.submit(new SweepTask(hosts, 0, hosts.size(), limiter, deadline)));
+            }
+            for (ForkJoinTask<Void> task : tasks) {
+                task.join();
+            }
+            saveDeferredHosts(hostnames);
+
+            lastFinishedAt = ZonedDateTime.now();
+            log.info("保持期間処理が完了しました: 処理済み={}, 持ち越し={}, 失敗={}, 削除行数={}, 走査サイズ={}",
+                    hostsProcessed.get(), hostsDeferred.get(), hostsFailed.get(),
+                    rowsDeleted.get(), bytesScanned.get());
+        } catch (IOException e) {
+            log.error("保持期間処理の対象ホストの取得に失敗しました", e);
+        } finally {
+            pools.forEach(ForkJoinPool::shutdown);
+            running.set(false);
+            writeProgressFile(getProgress());
+        }
+        return true;
+    }
+
+    /**
+     * 保持期間処理の進捗を取得する
+     *
+     * @return 進捗
+     */
+    public RetentionProgress getProgress() {
+        return new RetentionProgress(
+                running.get(),
+                hostsTotal.get(),
+                hostsProcessed.get(),
+                hostsDeferred.get(),
+                hostsFailed.get(),
+                rowsDeleted.get(),
+                bytesScanned.get(),
+                lastStartedAt,
+                lastFinishedAt);
+    }
+
+    /**
+     * 前回持ち越したホストを先頭にし、残りのホストを元の順序で続ける（既に存在しないホストは除く）
+     *
+     * @param hostnames 全ホスト名
+     * @param deferred  前回持ち越したホスト名
+     * @return 処理順に並べたホスト名
+     */
+    static List<String> prioritizeDeferred(List<String> hostnames, List<String> deferred) {
+        Set<String> existing = new HashSet<>(hostnames);
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String hostname : deferred) {
+            if (existing.contains(hostname)) {
+                ordered.add(hostname);
+            }
+        }
+        ordered.addAll(hostnames);
+        return new ArrayList<>(ordered);
+    }
+
+    /**
+     * 前回持ち越したホストを読み込む（ファイルがない場合は空）
+     */
+    private List<String> loadDeferredHosts() {
+        Path file = Paths.get(outputDir).resolve(DEFERRED_FILE_NAME);
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.isBlank())
+                    .toList();
+        } catch (IOException e) {
+            log.warn("保持期間処理の持ち越しファイルの読み込みに失敗しました: {}", file, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * 今回持ち越したホストを処理順に保存する（持ち越しがない場合はファイルを削除する）
+     */
+    private void saveDeferredHosts(List<String> hostnames) {
+        Path file = Paths.get(outputDir).resolve(DEFERRED_FILE_NAME);
+        try {
+            if (deferredHosts.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            List<String> deferred = hostnames.stream().filter(deferredHosts::contains).toList();
+            Path tempFile = file.resolveSibling(DEFERRED_FILE_NAME + ".tmp");
+            Files.write(tempFile, deferred, StandardCharsets.UTF_8);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("保持期間処理の持ち越しファイルの保存に失敗しました: {}", file, e);
+        }
+    }
+
+    /**
+     * 進捗を進捗ファイルに書き出す（「項目名=値」の行形式）
+     */
+    private void writeProgressFile(RetentionProgress progress) {
+        Path file = Paths.get(outputDir).resolve(PROGRESS_FILE_NAME);
+        List<String> lines = List.of(
+                "running=" + progress.isRunning(),
+                "hostsTotal=" + progress.getHostsTotal(),
+                "hostsProcessed=" + progress.getHostsProcessed(),
+                "hostsDeferred=" + progress.getHostsDeferred(),
+                "hostsFailed=" + progress.getHostsFailed(),
+                "rowsDeleted=" + progress.getRowsDeleted(),
+                "bytesScanned=" + progress.getBytesScanned(),
+                "lastStartedAt=" + (progress.getLastStartedAt() == null ? "" : progress.getLastStartedAt()),
+                "lastFinishedAt=" + (progress.getLastFinishedAt() == null ? "" : progress.getLastFinishedAt()));
+        try {
+            Path tempFile = file.resolveSibling(PROGRESS_FILE_NAME + ".tmp");
+            Files.write(tempFile, lines, StandardCharsets.UTF_8);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保持期間処理の進捗ファイルの書き出しに失敗しました: {}", file, e);
+        }
+    }
+
+    /**
+     * ホストを履歴の保存先ディレクトリごとにまとめる（ホストの順序は維持する）
+     */
+    private Map<Path, List<String>> groupByDirectory(List<String> hostnames) {
+        Map<Path, List<String>> hostsByDirectory = new LinkedHashMap<>();
+        for (String hostname : hostnames) {
+            hostsByDirectory.computeIfAbsent(resourceHistoryRepository.getHistoryDirectory(hostname),
+                    key -> new ArrayList<>()).add(hostname);
+        }
+        return hostsByDirectory;
+    }
+
+    private void resetProgress(int total) {
+        hostsTotal.set(total);
+        hostsProcessed.set(0);
+        hostsDeferred.set(0);
+        hostsFailed.set(0);
+        rowsDeleted.set(0);
+        bytesScanned.set(0);
+        deferredHosts.clear();
+        lastStartedAt = ZonedDateTime.now();
+    }
+
+    private void sweepHost(String hostname, TokenBucketRateLimiter limiter, long deadline) {
+        if (System.nanoTime() > deadline || Thread.currentThread().isInterrupted()) {
+            defer(hostname);
+            return;
+        }
+        try {
+            long size = resourceHistoryRepository.getHistorySize(hostname);
+            ForkJoinPool.managedBlock(new RateLimitBlocker(limiter, size));
+            bytesScanned.addAndGet(size);
+
+            int deleted = resourceHistoryRepository.deleteOldRecords(hostname);
+            rowsDeleted.addAndGet(deleted);
+            if (deleted > 0) {
+                log.debug("保持期間を過ぎたリソース履歴を削除しました: ホスト名={}, 削除行数={}", hostname, deleted);
+            }
+            if (resourceRollupRepository != null) {
+                sweepRollups(hostname, limiter);
+            }
+            hostsProcessed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            defer(hostname);
+        } catch (IOException e) {
+            hostsFailed.incrementAndGet();
+            log.error("リソース履歴の保持期間処理に失敗しました: ホスト名={}", hostname, e);
+        }
+    }
+
+    /**
+     * ホストの各粒度の集計値のうち保持期間を過ぎた行を削除する
+     */
+    private void sweepRollups(String hostname, TokenBucketRateLimiter limiter)
+            throws IOException, InterruptedException {
+        for (RollupTier tier : RollupTier.values()) {
+            long size = resourceRollupRepository.getRollupSize(tier, hostname);
+            if (size == 0L) {
+                continue;
+            }
+            ForkJoinPool.managedBlock(new RateLimitBlocker(limiter, size));
+            bytesScanned.addAndGet(size);
+
+            int deleted = resourceRollupRepository.deleteOldRecords(tier, hostname);
+            rowsDeleted.addAndGet(deleted);
+            if (deleted > 0) {
+                log.debug("保持期間を過ぎた集計値を削除しました: ホスト名={}, 粒度={}, 削除行数={}", hostname, tier, deleted);
+            }
+        }
+    }
+
+    private void defer(String hostname) {
+        deferredHosts.add(hostname);
+        hostsDeferred.incrementAndGet();
+    }
+
+    /**
+     * レート制限の待機をフォークジョインプールに通知するブロッカー
+     * 待機中はプールが補償スレッドを起動し、他のホストの処理を止めない。
+     */
+    private static class RateLimitBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final TokenBucketRateLimiter limiter;
+        private final long permits;
+        private boolean acquired;
+
+        RateLimitBlocker(TokenBucketRateLimiter limiter, long permits) {
+            this.limiter = limiter;
+            this.permits = permits;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!acquired) {
+                limiter.acquire(permits);
+                acquired = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return acquired || (acquired = limiter.tryAcquire(permits));
+        }
+    }
+
+    /**
+     * ホストの範囲を分割して並列に処理するタスク
+     */
+    private class SweepTask extends RecursiveAction {
+
+        private final List<String> hostnames;
+        private final int from;
+        private final int to;
+        private final TokenBucketRateLimiter limiter;
+        private final long deadline;
+
+        SweepTask(List<String> hostnames, int from, int to, TokenBucketRateLimiter limiter, long deadline) {
+            this.hostnames = hostnames;
+            this.from = from;
+            this.to = to;
+            this.limiter = limiter;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                sweepHost(hostnames.get(from), limiter, deadline);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SweepTask(hostnames, from, middle, limiter, deadline),
+                    new SweepTask(hostnames, middle, to, limiter, deadline));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.ResourceRollupCsv;
+import com.example.jsoncommon.repository.ResourceRollupRepository;
+import com.example.jsoncommon.repository.RollupTier;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 受信したメトリクスを1分・1時間単位に集計して保存するサービス
+ * ホスト名・粒度ごとに集計中の区間を1つだけメモリ上に持ち、次の区間のサンプルを受信した時点
+ * または区間の終了後しばらく受信がない時点で確定して保存する。
+ * 保持期間を過ぎた集計値の削除は ResourceHistoryRetentionService がバックグラウンドで行う。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResourceRollupService {
+
+    /** 区間の終了後、遅れて届くサンプルを待つ時間 */
+    private static final Duration FLUSH_GRACE = Duration.ofMinutes(1);
+
+    private final ResourceRollupRepository resourceRollupRepository;
+
+    /** ホスト名ごとの集計中の区間 */
+    private final Map<String, Map<RollupTier, RollupAccumulator>> openBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * メトリクスを集計に加える
+     *
+     * @param metricsJson メトリクス
+     */
+    public void record(MetricsJson metricsJson) {
+        String hostname = metricsJson.getInstanceName();
+        ZonedDateTime timestamp = metricsJson.getTimestamp();
+        Map<RollupTier, RollupAccumulator> buckets = openBuckets.computeIfAbsent(hostname,
+                key -> new EnumMap<>(RollupTier.class));
+
+        // 同一ホストの保存順序を保つため、確定した区間の保存もロック内で行う
+        synchronized (buckets) {
+            for (RollupTier tier : RollupTier.values()) {
+                ZonedDateTime bucketStart = tier.bucketStart(timestamp);
+                RollupAccumulator accumulator = buckets.get(tier);
+
+                if (accumulator != null && bucketStart.isBefore(accumulator.getBucketStart())) {
+                    log.debug("確定済みの集計区間のメトリクスのため集計しません: ホスト名={}, 粒度={}, タイムスタンプ={}",
+                            hostname, tier, timestamp);
+                    continue;
+                }
+                if (accumulator == null || bucketStart.isAfter(accumulator.getBucketStart())) {
+                    if (accumulator != null) {
+                        save(tier, accumulator);
+                    }
+                    accumulator = new RollupAccumulator(hostname, bucketStart);
+                    buckets.put(tier, accumulator);
+                }
+
+                accumulator.add(metricsJson.getMetrics().getCpuUsage(),
+                        metricsJson.getMetrics().getMemoryUsage(),
+                        metricsJson.getMetrics().getInstanceTypeChangeRequest());
+            }
+        }
+    }
+
+    /**
+     * 集計中の区間の現時点の集計値を取得する
+     *
+     * @param hostname ホスト名
+     * @param tier     粒度
+     * @return 集計値（集計中の区間がない場合は空）
+     */
+    public Optional<ResourceRollupCsv> findOpenBucket(String hostname, RollupTier tier) {
+        Map<RollupTier, RollupAccumulator> buckets = openBuckets.get(hostname);
+        if (buckets == null) {
+            return Optional.empty();
+        }
+        synchronized (buckets) {
+            RollupAccumulator accumulator = buckets.get(tier);
+            return accumulator == null ? Optional.empty() : Optional.of(accumulator.toCsv());
+        }
+    }
+
+    /**
+     * 終了してから一定時間経過した集計中の区間を確定して保存する
+     * 送信が止まったホストの最後の区間を保存するために定期実行する
+     */
+    @Scheduled(fixedDelayString = "${resource.history.rollup.flush-interval-ms:60000}")
+    public void flushIdleBuckets() {
+        ZonedDateTime now = ZonedDateTime.now();
+        for (Map<RollupTier, RollupAccumulator> buckets : openBuckets.values()) {
+            synchronized (buckets) {
+                Iterator<Map.Entry<RollupTier, RollupAccumulator>> iterator = buckets.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<RollupTier, RollupAccumulator> entry = iterator.next();
+                    ZonedDateTime bucketEnd = entry.getValue().getBucketStart().plus(entry.getKey().getDuration());
+                    if (bucketEnd.plus(FLUSH_GRACE).isBefore(now)) {
+                        save(entry.getKey(), entry.getValue());
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 集計中の全ての区間を保存する（停止時）
+     */
+    @PreDestroy
+    public void flushAll() {
+        for (Map<RollupTier, RollupAccumulator> buckets : openBuckets.values()) {
+            synchronized (buckets) {
+                buckets.forEach(this::save);
+                buckets.clear();
+            }
+        }
+        log.info("集計中のリソース履歴を保存しました");
+    }
+
+    private void save(RollupTier tier, RollupAccumulator accumulator) {
+        ResourceRollupCsv rollup = accumulator.toCsv();
+        String hostname = rollup.getHostname();
+        try {
+            resourceRollupRepository.save(tier, rollup);
+        } catch (IOException e) {
+            log.error("リソース履歴の集計値の保存に失敗しました: ホスト名={}, 粒度={}", hostname, tier, e);
+        }
+    }
+}
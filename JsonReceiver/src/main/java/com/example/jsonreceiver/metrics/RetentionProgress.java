@@ -0,0 +1,32 @@
+package com.example.jsonreceiver.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+
+/**
+ * リソース履歴の保持期間処理の進捗
+ */
+@Data
+@AllArgsConstructor
+public class RetentionProgress {
+    /** 実行中かどうか */
+    private boolean running;
+    /** 対象ホスト数 */
+    private int hostsTotal;
+    /** 処理済みホスト数 */
+    private int hostsProcessed;
+    /** 時間枠の終了により次回に持ち越したホスト数 */
+    private int hostsDeferred;
+    /** 処理に失敗したホスト数 */
+    private int hostsFailed;
+    /** 削除した行数 */
+    private long rowsDeleted;
+    /** 走査したバイト数（キーで更新できるストレージでは行数からの推定値） */
+    private long bytesScanned;
+    /** 直近の開始時刻 */
+    private ZonedDateTime lastStartedAt;
+    /** 直近の終了時刻 */
+    private ZonedDateTime lastFinishedAt;
+}
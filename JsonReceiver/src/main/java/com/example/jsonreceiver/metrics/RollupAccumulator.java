@@ -0,0 +1,79 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.ResourceRollupCsv;
+
+import java.time.ZonedDateTime;
+
+/**
+ * 1つの集計区間のメトリクスを逐次集計する
+ */
+class RollupAccumulator {
+
+    private final String hostname;
+    private final ZonedDateTime bucketStart;
+
+    private int sampleCount;
+    private int cpuCount;
+    private double cpuMin = Double.MAX_VALUE;
+    private double cpuMax = -Double.MAX_VALUE;
+    private double cpuSum;
+    private int memoryCount;
+    private double memoryMin = Double.MAX_VALUE;
+    private double memoryMax = -Double.MAX_VALUE;
+    private double memorySum;
+    private int withinCount;
+    private int upperCount;
+    private int lowerCount;
+
+    RollupAccumulator(String hostname, ZonedDateTime bucketStart) {
+        this.hostname = hostname;
+        this.bucketStart = bucketStart;
+    }
+
+    ZonedDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    /**
+     * 1サンプル分を集計に加える（値がnullの項目は集計しない）
+     */
+    void add(Double cpuUsage, Double memoryUsage, InstanceTypeChangeRequest request) {
+        sampleCount++;
+        if (cpuUsage != null) {
+            cpuCount++;
+            cpuMin = Math.min(cpuMin, cpuUsage);
+            cpuMax = Math.max(cpuMax, cpuUsage);
+            cpuSum += cpuUsage;
+        }
+        if (memoryUsage != null) {
+            memoryCount++;
+            memoryMin = Math.min(memoryMin, memoryUsage);
+            memoryMax = Math.max(memoryMax, memoryUsage);
+            memorySum += memoryUsage;
+        }
+        if (request == InstanceTypeChangeRequest.UPPER) {
+            upperCount++;
+        } else if (request == InstanceTypeChangeRequest.LOWER) {
+            lowerCount++;
+        } else if (request == InstanceTypeChangeRequest.WITHIN) {
+            withinCount++;
+        }
+    }
+
+    ResourceRollupCsv toCsv() {
+        return new ResourceRollupCsv(
+                hostname,
+                bucketStart.toString(),
+                sampleCount,
+                cpuCount == 0 ? null : cpuMin,
+                cpuCount == 0 ? null : cpuMax,
+                cpuCount == 0 ? null : cpuSum / cpuCount,
+                memoryCount == 0 ? null : memoryMin,
+                memoryCount == 0 ? null : memoryMax,
+                memoryCount == 0 ? null : memorySum / memoryCount,
+                withinCount,
+                upperCount,
+                lowerCount);
+    }
+}
@@ -0,0 +1,614 @@
+package com.example.jsonreceiver.monitortarget;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * ホストごとの最新状態をヒープ外のメモリに固定レイアウトで保持するテーブル
+ * InstanceStatusRepository の状態の保持先であり、インスタンスステータスの読み込みと更新はこのテーブルに対して行う
+ * （スナップショットとWALは永続化のみに使う）。
+ * ホスト名に登録順の連番（ホストID）を割り当て、ホストIDの位置のスロットにプリミティブ値のみを保持する。
+ * スロットは一定数ごとのチャンク（ByteBuffer.allocateDirect）に分けて確保するため、
+ * ヒープに保持するのはホスト名とホストIDの対応のみで、インスタンスステータスはホスト数が増えてもヒープを使わない。
+ *
+ * <pre>
+ * スロット（112バイト）: 通番(long), エージェント状態(int), 現在のインスタンスタイプのコード(int),
+ *                       最終通知時刻(long), CPU使用率(double), メモリ使用率(double),
+ *                       マシン種別・リージョン・タイプID・上位/標準/最小タイプ・エージェントバージョンのコード(int×7),
+ *                       フラグ(int), 最終更新時刻(long, int, int), 最終通知受信時刻(long, int, int), 予備(long)
+ * </pre>
+ * インスタンスタイプ名等の文字列は種類が少ないため、値ごとに割り当てたコードをスロットに保持する。
+ * 時刻の文字列は秒・ナノ秒・形式（タイムゾーンのコード等）に分けて保持し、読み込み時に同じ文字列に戻す。
+ * 時刻として解釈できない文字列はコードを割り当てずにホストID・項目ごとのマップに保持する（件数はホスト数の2倍までとなる）。
+ * インスタンスステータスの最終通知受信時刻は、記録した値と recordMetrics で記録した最終通知時刻のうち新しい方を返す
+ * （メトリクス・生存通知ごとの受信はインスタンスステータスを書き換えずに最終通知時刻のみを記録する）。
+ * 各スロットは通番によるシーケンスロックで保護する。書き込みは通番を奇数にしてから値を書き換えて偶数に戻し、
+ * 読み込みは通番が偶数かつ読み込みの前後で変わらないことを確認するため、読み込み側はロックを取らない。
+ */
+@Component
+@Slf4j
+public class FleetStateTable {
+
+    /** スロットのバイト数 */
+    static final int SLOT_BYTES = 112;
+
+    /** 1チャンクのスロット数 */
+    static final int SLOTS_PER_CHUNK = 4096;
+
+    private static final int SEQ = 0;
+    private static final int STATUS = 8;
+    private static final int CURRENT_TYPE = 12;
+    private static final int LAST_NOTICE = 16;
+    private static final int CPU = 24;
+    private static final int MEMORY = 32;
+    private static final int MACHINE_TYPE = 40;
+    private static final int REGION = 44;
+    private static final int TYPE_ID = 48;
+    private static final int TYPE_HIGH = 52;
+    private static final int TYPE_SMALL_STANDARD = 56;
+    private static final int TYPE_MICRO = 60;
+    private static final int AGENT_VERSION = 64;
+    private static final int FLAGS = 68;
+    private static final int LAST_UPDATE = 72;
+    private static final int AGENT_LAST_NOTICE_TIME = 88;
+
+    /** 時刻の各項目の位置（時刻の先頭からの相対位置） */
+    private static final int TIME_SECONDS = 0;
+    private static final int TIME_NANOS = 8;
+    private static final int TIME_FORMAT = 12;
+
+    /** フラグ: インスタンスステータスが登録されている */
+    private static final int FLAG_STATUS = 1;
+
+    /** 時刻の形式: yyyy-MM-dd HH:mm:ss（タイムゾーンなし） */
+    private static final int FORMAT_LOCAL = -2;
+
+    /** 時刻の形式: 時刻として解釈できない文字列（秒の位置に文字列のコードを保持する） */
+    private static final int FORMAT_TEXT = -3;
+
+    private static final DateTimeFormatter LOCAL_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** 値が存在しないことを表す列挙型の値 */
+    private static final int NONE = -1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle DOUBLES = MethodHandles.byteBufferViewVarHandle(double[].class,
+            ByteOrder.nativeOrder());
+
+    private static final InstanceStatusValue[] STATUS_VALUES = InstanceStatusValue.values();
+
+    private final int maxHosts;
+
+    /** ホスト名 → ホストID */
+    private final Map<String, Integer> hostIds = new ConcurrentHashMap<>();
+
+    /** 次に割り当てるホストID（書き込みは this で保護） */
+    private volatile int nextHostId;
+
+    private final AtomicReferenceArray<ByteBuffer> chunks;
+
+    /** ホストID → ホスト名（チャンクごと） */
+    private final AtomicReferenceArray<String[]> hostnames;
+
+    /** 文字列 → コード */
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+
+    /** コード → 文字列 */
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    /** ホストID・項目 → 時刻として解釈できない時刻の文字列（書き込みはスロットの通番で保護） */
+    private final Map<Long, String> textTimes = new ConcurrentHashMap<>();
+
+    /**
+     * ホストの最新状態（読み込み時点の値）
+     *
+     * @param hostname         ホスト名
+     * @param agentStatus      エージェント状態（未設定の場合はnull）
+     * @param currentType      現在のインスタンスタイプ（未設定の場合はnull）
+     * @param lastNoticeMillis 最終通知時刻（エポックミリ秒、未設定の場合は0）
+     * @param cpuUsage         CPU使用率（未設定の場合はNaN）
+     * @param memoryUsage      メモリ使用率（未設定の場合はNaN）
+     */
+    public record FleetState(String hostname, InstanceStatusValue agentStatus, String currentType,
+            long lastNoticeMillis, double cpuUsage, double memoryUsage) {
+    }
+
+    /**
+     * @param maxHosts 保持する最大ホスト数
+     */
+    public FleetStateTable(@Value("${receiver.fleet-state.max-hosts:1048576}") int maxHosts) {
+        this.maxHosts = maxHosts;
+        this.chunks = new AtomicReferenceArray<>((maxHosts + SLOTS_PER_CHUNK - 1) / SLOTS_PER_CHUNK);
+        this.hostnames = new AtomicReferenceArray<>(chunks.length());
+    }
+
+    /**
+     * メトリクス通知の受信を記録する
+     *
+     * @param hostname         ホスト名
+     * @param lastNoticeMillis 受信時刻（エポックミリ秒）
+     * @param cpuUsage         CPU使用率（nullの場合は前回の値を保持する）
+     * @param memoryUsage      メモリ使用率（nullの場合は前回の値を保持する）
+     */
+    public void recordMetrics(String hostname, long lastNoticeMillis, Double cpuUsage, Double memoryUsage) {
+        int id = hostId(hostname);
+        if (id < 0) {
+            return;
+        }
+        ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+        int base = (id % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        long seq = lock(chunk, base);
+        LONGS.set(chunk, base + LAST_NOTICE, lastNoticeMillis);
+        if (cpuUsage != null) {
+            DOUBLES.set(chunk, base + CPU, cpuUsage.doubleValue());
+        }
+        if (memoryUsage != null) {
+            DOUBLES.set(chunk, base + MEMORY, memoryUsage.doubleValue());
+        }
+        unlock(chunk, base, seq);
+    }
+
+    /**
+     * エージェント状態と現在のインスタンスタイプを記録する
+     *
+     * @param hostname    ホスト名
+     * @param agentStatus エージェント状態（nullの場合は前回の値を保持する）
+     * @param currentType 現在のインスタンスタイプ（nullまたは空文字列の場合は前回の値を保持する）
+     */
+    public void recordStatus(String hostname, InstanceStatusValue agentStatus, String currentType) {
+        int id = hostId(hostname);
+        if (id < 0) {
+            return;
+        }
+        int typeCode = currentType == null || currentType.isEmpty() ? NONE : code(currentType);
+        ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+        int base = (id % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        long seq = lock(chunk, base);
+        if (agentStatus != null) {
+            INTS.set(chunk, base + STATUS, agentStatus.ordinal());
+        }
+        if (typeCode != NONE) {
+            INTS.set(chunk, base + CURRENT_TYPE, typeCode);
+        }
+        unlock(chunk, base, seq);
+    }
+
+    /**
+     * インスタンスステータスを保存する（全項目を置き換える）
+     *
+     * @param status インスタンスステータス
+     * @return 保存した場合true（最大ホスト数を超えた場合false）
+     */
+    public boolean putStatus(InstanceStatusCsv status) {
+        int id = hostId(status.getHostname());
+        if (id < 0) {
+            return false;
+        }
+        int machineType = codeOrNone(status.getMachineType());
+        int region = codeOrNone(status.getRegion());
+        int currentType = codeOrNone(status.getCurrentType());
+        int typeId = codeOrNone(status.getTypeId());
+        int typeHigh = codeOrNone(status.getTypeHigh());
+        int typeSmallStandard = codeOrNone(status.getTypeSmallStandard());
+        int typeMicro = codeOrNone(status.getTypeMicro());
+        int agentVersion = codeOrNone(status.getAgentVersion());
+        long[] lastUpdate = encodeTime(status.getLastUpdate());
+        long[] agentLastNoticeTime = encodeTime(status.getAgentLastNoticeTime());
+
+        ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+        int base = (id % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        long seq = lock(chunk, base);
+        INTS.set(chunk, base + STATUS, status.getAgentStatus() == null ? NONE : status.getAgentStatus().ordinal());
+        INTS.set(chunk, base + CURRENT_TYPE, currentType);
+        INTS.set(chunk, base + MACHINE_TYPE, machineType);
+        INTS.set(chunk, base + REGION, region);
+        INTS.set(chunk, base + TYPE_ID, typeId);
+        INTS.set(chunk, base + TYPE_HIGH, typeHigh);
+        INTS.set(chunk, base + TYPE_SMALL_STANDARD, typeSmallStandard);
+        INTS.set(chunk, base + TYPE_MICRO, typeMicro);
+        INTS.set(chunk, base + AGENT_VERSION, agentVersion);
+        writeTime(chunk, base + LAST_UPDATE, lastUpdate);
+        writeTime(chunk, base + AGENT_LAST_NOTICE_TIME, agentLastNoticeTime);
+        putTextTime(id, LAST_UPDATE, status.getLastUpdate(), lastUpdate);
+        putTextTime(id, AGENT_LAST_NOTICE_TIME, status.getAgentLastNoticeTime(), agentLastNoticeTime);
+        INTS.set(chunk, base + FLAGS, (int) INTS.get(chunk, base + FLAGS) | FLAG_STATUS);
+        unlock(chunk, base, seq);
+        return true;
+    }
+
+    /**
+     * インスタンスステータスを取得する
+     *
+     * @param hostname ホスト名
+     * @return インスタンスステータス（登録されていない場合はOptional.empty()）
+     */
+    public Optional<InstanceStatusCsv> findStatus(String hostname) {
+        Integer id = hostIds.get(hostname);
+        return id == null ? Optional.empty() : Optional.ofNullable(readStatus(hostname, id));
+    }
+
+    /**
+     * インスタンスステータスを削除する（最終通知時刻・使用率は保持する）
+     *
+     * @param hostname ホスト名
+     * @return 削除した場合true
+     */
+    public boolean removeStatus(String hostname) {
+        Integer id = hostIds.get(hostname);
+        if (id == null) {
+            return false;
+        }
+        ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+        int base = (id % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        long seq = lock(chunk, base);
+        int flags = (int) INTS.get(chunk, base + FLAGS);
+        INTS.set(chunk, base + FLAGS, flags & ~FLAG_STATUS);
+        textTimes.remove(textTimeKey(id, LAST_UPDATE));
+        textTimes.remove(textTimeKey(id, AGENT_LAST_NOTICE_TIME));
+        unlock(chunk, base, seq);
+        return (flags & FLAG_STATUS) != 0;
+    }
+
+    /**
+     * 登録されている全てのインスタンスステータスをホストIDの順に取得する
+     *
+     * @return インスタンスステータスのリスト
+     */
+    public List<InstanceStatusCsv> findAllStatuses() {
+        List<InstanceStatusCsv> result = new ArrayList<>();
+        int count = nextHostId;
+        for (int id = 0; id < count; id++) {
+            InstanceStatusCsv status = readStatus(hostnames.get(id / SLOTS_PER_CHUNK)[id % SLOTS_PER_CHUNK], id);
+            if (status != null) {
+                result.add(status);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 登録されているインスタンスステータスの件数を取得する
+     *
+     * @return 件数
+     */
+    public int countStatuses() {
+        int count = 0;
+        int hosts = nextHostId;
+        for (int id = 0; id < hosts; id++) {
+            ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+            if (((int) INTS.getAcquire(chunk, (id % SLOTS_PER_CHUNK) * SLOT_BYTES + FLAGS) & FLAG_STATUS) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 全てのインスタンスステータスを削除する（最終通知時刻・使用率は保持する）
+     */
+    public void clearStatuses() {
+        hostIds.keySet().forEach(this::removeStatus);
+    }
+
+    /**
+     * ホストの最新状態を取得する
+     *
+     * @param hostname ホスト名
+     * @return 最新状態（未登録の場合はOptional.empty()）
+     */
+    public Optional<FleetState> find(String hostname) {
+        Integer id = hostIds.get(hostname);
+        return id == null ? Optional.empty() : Optional.of(read(hostname, id));
+    }
+
+    /**
+     * 登録済みの全ホストの最新状態を順に渡す（順序は不定）
+     *
+     * @param visitor 各ホストの最新状態を受け取る処理
+     */
+    public void forEach(Consumer<FleetState> visitor) {
+        hostIds.forEach((hostname, id) -> visitor.accept(read(hostname, id)));
+    }
+
+    /**
+     * 登録済みのホスト数を取得する
+     *
+     * @return ホスト数
+     */
+    public int size() {
+        return hostIds.size();
+    }
+
+    /**
+     * ホストIDを取得し、未登録の場合は割り当てる
+     *
+     * @return ホストID（最大ホスト数を超えた場合は-1）
+     */
+    private int hostId(String hostname) {
+        Integer id = hostIds.get(hostname);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = hostIds.get(hostname);
+            if (id != null) {
+                return id;
+            }
+            int newId = nextHostId;
+            if (newId >= maxHosts) {
+                log.warn("ホスト数が上限 {} に達したため状態を保持しません: {}", maxHosts, hostname);
+                return -1;
+            }
+            int chunkIndex = newId / SLOTS_PER_CHUNK;
+            if (chunks.get(chunkIndex) == null) {
+                chunks.set(chunkIndex, newChunk());
+                hostnames.set(chunkIndex, new String[SLOTS_PER_CHUNK]);
+            }
+            hostnames.get(chunkIndex)[newId % SLOTS_PER_CHUNK] = hostname;
+            nextHostId = newId + 1;
+            hostIds.put(hostname, newId);
+            return newId;
+        }
+    }
+
+    private int code(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (names) {
+            return codes.computeIfAbsent(value, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * 割り当てたコードの件数を取得する
+     *
+     * @return コードの件数
+     */
+    int countCodes() {
+        return names.size();
+    }
+
+    private int codeOrNone(String value) {
+        return value == null ? NONE : code(value);
+    }
+
+    private String nameOrNull(int code) {
+        return code == NONE ? null : names.get(code);
+    }
+
+    /**
+     * 時刻の文字列を (秒, ナノ秒, 形式) に変換する
+     * ZonedDateTime の文字列表現は形式にタイムゾーンのコードを、yyyy-MM-dd HH:mm:ss は FORMAT_LOCAL を保持し、
+     * いずれでもない文字列は FORMAT_TEXT とし、文字列は putTextTime でホストID・項目ごとに保持する（どの場合も元の文字列に戻せる）
+     */
+    private long[] encodeTime(String text) {
+        if (text == null) {
+            return new long[] { 0L, 0L, NONE };
+        }
+        if (text.length() == 19) {
+            try {
+                LocalDateTime local = LocalDateTime.parse(text, LOCAL_FORMATTER);
+                if (local.format(LOCAL_FORMATTER).equals(text)) {
+                    return new long[] { local.toEpochSecond(ZoneOffset.UTC), 0L, FORMAT_LOCAL };
+                }
+            } catch (DateTimeParseException e) {
+                // 他の形式として解釈する
+            }
+        }
+        try {
+            ZonedDateTime zoned = ZonedDateTime.parse(text);
+            if (zoned.toString().equals(text)) {
+                return new long[] { zoned.toEpochSecond(), zoned.getNano(), code(zoned.getZone().getId()) };
+            }
+        } catch (DateTimeParseException e) {
+            // 文字列のまま保持する
+        }
+        return new long[] { 0L, 0L, FORMAT_TEXT };
+    }
+
+    /**
+     * 時刻として解釈できない時刻の文字列を保持し、それ以外の場合は保持していた文字列を削除する（スロットの書き込み中に呼び出す）
+     */
+    private void putTextTime(int id, int column, String text, long[] time) {
+        if (time[2] == FORMAT_TEXT) {
+            textTimes.put(textTimeKey(id, column), text);
+        } else {
+            textTimes.remove(textTimeKey(id, column));
+        }
+    }
+
+    private static long textTimeKey(int id, int column) {
+        return ((long) id << Integer.SIZE) | column;
+    }
+
+    private String decodeTime(long seconds, int nanos, int format, String text) {
+        if (format == NONE) {
+            return null;
+        }
+        if (format == FORMAT_LOCAL) {
+            return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC).format(LOCAL_FORMATTER);
+        }
+        if (format == FORMAT_TEXT) {
+            return text;
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), ZoneId.of(names.get(format)))
+                .toString();
+    }
+
+    private static void writeTime(ByteBuffer chunk, int offset, long[] time) {
+        LONGS.set(chunk, offset + TIME_SECONDS, time[0]);
+        INTS.set(chunk, offset + TIME_NANOS, (int) time[1]);
+        INTS.set(chunk, offset + TIME_FORMAT, (int) time[2]);
+    }
+
+    private static ByteBuffer newChunk() {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        for (int base = 0; base < chunk.capacity(); base += SLOT_BYTES) {
+            for (int offset = STATUS; offset < LAST_NOTICE; offset += Integer.BYTES) {
+                INTS.set(chunk, base + offset, NONE);
+            }
+            for (int offset = MACHINE_TYPE; offset < FLAGS; offset += Integer.BYTES) {
+                INTS.set(chunk, base + offset, NONE);
+            }
+            INTS.set(chunk, base + LAST_UPDATE + TIME_FORMAT, NONE);
+            INTS.set(chunk, base + AGENT_LAST_NOTICE_TIME + TIME_FORMAT, NONE);
+            DOUBLES.set(chunk, base + CPU, Double.NaN);
+            DOUBLES.set(chunk, base + MEMORY, Double.NaN);
+        }
+        VarHandle.releaseFence();
+        return chunk;
+    }
+
+    /**
+     * 通番を奇数にしてスロットを書き込み中にする（他の書き込みが終わるまで待機する）
+     *
+     * @return 書き込み前の通番
+     */
+    private static long lock(ByteBuffer chunk, int base) {
+        while (true) {
+            long seq = (long) LONGS.getAcquire(chunk, base + SEQ);
+            if ((seq & 1) == 0 && LONGS.compareAndSet(chunk, base + SEQ, seq, seq + 1)) {
+                return seq;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void unlock(ByteBuffer chunk, int base, long seq) {
+        LONGS.setRelease(chunk, base + SEQ, seq + 2);
+    }
+
+    /**
+     * 書き込み中でない状態の値を読み込む（読み込み中に書き込まれた場合は読み直す）
+     */
+    private FleetState read(String hostname, int id) {
+        ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+        int base = (id % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        while (true) {
+            long seq = (long) LONGS.getAcquire(chunk, base + SEQ);
+            if ((seq & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int status = (int) INTS.get(chunk, base + STATUS);
+            int currentType = (int) INTS.get(chunk, base + CURRENT_TYPE);
+            long lastNotice = (long) LONGS.get(chunk, base + LAST_NOTICE);
+            double cpu = (double) DOUBLES.get(chunk, base + CPU);
+            double memory = (double) DOUBLES.get(chunk, base + MEMORY);
+            VarHandle.acquireFence();
+            if ((long) LONGS.getAcquire(chunk, base + SEQ) == seq) {
+                return new FleetState(hostname,
+                        status == NONE ? null : STATUS_VALUES[status],
+                        nameOrNull(currentType),
+                        lastNotice, cpu, memory);
+            }
+        }
+    }
+
+    /**
+     * 書き込み中でない状態のインスタンスステータスを読み込む（読み込み中に書き込まれた場合は読み直す）
+     *
+     * @return インスタンスステータス（登録されていない場合はnull）
+     */
+    private InstanceStatusCsv readStatus(String hostname, int id) {
+        ByteBuffer chunk = chunks.get(id / SLOTS_PER_CHUNK);
+        int base = (id % SLOTS_PER_CHUNK) * SLOT_BYTES;
+        while (true) {
+            long seq = (long) LONGS.getAcquire(chunk, base + SEQ);
+            if ((seq & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int flags = (int) INTS.get(chunk, base + FLAGS);
+            int status = (int) INTS.get(chunk, base + STATUS);
+            int currentType = (int) INTS.get(chunk, base + CURRENT_TYPE);
+            int machineType = (int) INTS.get(chunk, base + MACHINE_TYPE);
+            int region = (int) INTS.get(chunk, base + REGION);
+            int typeId = (int) INTS.get(chunk, base + TYPE_ID);
+            int typeHigh = (int) INTS.get(chunk, base + TYPE_HIGH);
+            int typeSmallStandard = (int) INTS.get(chunk, base + TYPE_SMALL_STANDARD);
+            int typeMicro = (int) INTS.get(chunk, base + TYPE_MICRO);
+            int agentVersion = (int) INTS.get(chunk, base + AGENT_VERSION);
+            long updateSeconds = (long) LONGS.get(chunk, base + LAST_UPDATE + TIME_SECONDS);
+            int updateNanos = (int) INTS.get(chunk, base + LAST_UPDATE + TIME_NANOS);
+            int updateFormat = (int) INTS.get(chunk, base + LAST_UPDATE + TIME_FORMAT);
+            long noticeSeconds = (long) LONGS.get(chunk, base + AGENT_LAST_NOTICE_TIME + TIME_SECONDS);
+            int noticeNanos = (int) INTS.get(chunk, base + AGENT_LAST_NOTICE_TIME + TIME_NANOS);
+            int noticeFormat = (int) INTS.get(chunk, base + AGENT_LAST_NOTICE_TIME + TIME_FORMAT);
+            long lastNotice = (long) LONGS.get(chunk, base + LAST_NOTICE);
+            String updateText = updateFormat == FORMAT_TEXT ? textTimes.get(textTimeKey(id, LAST_UPDATE)) : null;
+            String noticeText = noticeFormat == FORMAT_TEXT
+                    ? textTimes.get(textTimeKey(id, AGENT_LAST_NOTICE_TIME))
+                    : null;
+            VarHandle.acquireFence();
+            if ((long) LONGS.getAcquire(chunk, base + SEQ) != seq) {
+                continue;
+            }
+            if ((flags & FLAG_STATUS) == 0) {
+                return null;
+            }
+            return new InstanceStatusCsv(
+                    hostname,
+                    nameOrNull(machineType),
+                    nameOrNull(region),
+                    nameOrNull(currentType),
+                    nameOrNull(typeId),
+                    nameOrNull(typeHigh),
+                    nameOrNull(typeSmallStandard),
+                    nameOrNull(typeMicro),
+                    decodeTime(updateSeconds, updateNanos, updateFormat, updateText),
+                    status == NONE ? null : STATUS_VALUES[status],
+                    nameOrNull(agentVersion),
+                    latestNoticeTime(noticeSeconds, noticeNanos, noticeFormat, noticeText, lastNotice));
+        }
+    }
+
+    /**
+     * 記録した最終通知受信時刻と最終通知時刻（エポックミリ秒）のうち新しい方の文字列を返す
+     * 最終通知時刻の方が新しい場合はシステムのタイムゾーンの yyyy-MM-dd HH:mm:ss とする
+     */
+    private String latestNoticeTime(long seconds, int nanos, int format, String text, long lastNoticeMillis) {
+        if (lastNoticeMillis <= 0) {
+            return decodeTime(seconds, nanos, format, text);
+        }
+        LocalDateTime lastNotice = LocalDateTime.ofInstant(Instant.ofEpochMilli(lastNoticeMillis),
+                ZoneId.systemDefault());
+        boolean newer;
+        if (format == NONE || format == FORMAT_TEXT) {
+            newer = true;
+        } else if (format == FORMAT_LOCAL) {
+            newer = lastNotice.toEpochSecond(ZoneOffset.UTC) > seconds;
+        } else {
+            newer = lastNoticeMillis / 1000 > seconds;
+        }
+        return newer ? lastNotice.format(LOCAL_FORMATTER) : decodeTime(seconds, nanos, format, text);
+    }
+}
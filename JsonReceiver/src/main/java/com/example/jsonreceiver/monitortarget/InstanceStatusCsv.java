@@ -1,23 +1,39 @@
 package com.example.jsonreceiver.monitortarget;
 
+import com.example.jsoncsvprocessor.CsvColumn;
+import com.example.jsoncsvprocessor.CsvRecord;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
+@CsvRecord
 @NoArgsConstructor
 @AllArgsConstructor
 public class InstanceStatusCsv {
+    @CsvColumn(value = "HOSTNAME", dictionary = true)
     private String hostname; // HOSTNAME
+    @CsvColumn(value = "MACHINE_TYPE", dictionary = true)
     private String machineType; // MACHINE_TYPE (SystemInfo.csvのElType)
+    @CsvColumn(value = "REGION", dictionary = true)
     private String region; // REGION
+    @CsvColumn(value = "CURRENT_TYPE", dictionary = true)
     private String currentType; // CURRENT_TYPE (現在のインスタンスタイプ)
+    @CsvColumn("TYPE_ID")
     private String typeId; // TYPE_ID (InstanceTypeLinkCsv.csvのInstanceTypeId)
+    @CsvColumn("TYPE_HIGH")
     private String typeHigh; // TYPE_HIGH (InstanceType.csvのHighInstanceType)
+    @CsvColumn("TYPE_SMALL_STANDARD")
     private String typeSmallStandard; // TYPE_SMALL_STANDARD (InstanceType.csvのLowInstanceType)
+    @CsvColumn("TYPE_MICRO")
     private String typeMicro; // TYPE_MICRO (InstanceType.csvのVeryLowInstanceType)
+    @CsvColumn("LASTUPDATE")
     private String lastUpdate; // LASTUPDATE (最終更新時刻)
+    @CsvColumn(value = "AGENT_STATUS", dictionary = true)
     private InstanceStatusValue agentStatus; // AGENT_STATUS (エージェント状態)
+    @CsvColumn("AGENT_VERSION")
     private String agentVersion; // AGENT_VERSION (エージェントバージョン)
+    @CsvColumn(value = "AGENT_LAST_NOTICE_TIME", optional = true)
     private String agentLastNoticeTime; // AGENT_LAST_NOTICE_TIME (最終通知受信時刻)
 }
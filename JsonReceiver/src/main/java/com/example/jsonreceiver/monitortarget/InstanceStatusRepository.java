@@ -1,82 +1,84 @@
 package com.example.jsonreceiver.monitortarget;
 
-import com.example.jsoncommon.repository.CsvRepositoryBase;
-
+import com.example.jsoncommon.repository.SnapshotWalRepository;
+import com.example.jsoncommon.repository.StateStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
-import java.util.*;
-
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * インスタンスステータスのリポジトリ
+ * 状態は FleetStateTable（ヒープ外）に保持し、読み込み・更新（最終通知受信時刻の更新を含む）はテーブルに対して行う。
+ * 変更は monitor_target.csv.wal に追記し、monitor_target.csv はチェックポイント時に書き出すスナップショットとなる。
+ * メトリクス・生存通知ごとの最終通知受信時刻はテーブルのみに記録し（ロックとWALを使わない）、チェックポイント時に書き出す。
+ * FleetStateTable が設定されていない場合はヒープ上のマップに保持する。
+ */
 @Repository
-public class InstanceStatusRepository extends CsvRepositoryBase {
+public class InstanceStatusRepository extends SnapshotWalRepository<InstanceStatusCsv> {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceStatusRepository.class);
 
     private static final String FILE_NAME = "monitor_target.csv";
-    private static final String[] HEADERS = {
-            "HOSTNAME", "MACHINE_TYPE", "REGION", "CURRENT_TYPE", "TYPE_ID",
-            "TYPE_HIGH", "TYPE_SMALL_STANDARD", "TYPE_MICRO",
-            "LASTUPDATE", "AGENT_STATUS", "AGENT_VERSION", "AGENT_LAST_NOTICE_TIME"
-    };
+
+    private static final DateTimeFormatter NOTICE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** 状態の保持先（未設定の場合はヒープ上のマップに保持する） */
+    private volatile FleetStateTable fleetStateTable;
+
+    public InstanceStatusRepository() {
+        super(FILE_NAME, InstanceStatusCsvMapper.INSTANCE, InstanceStatusCsv::getHostname);
+    }
 
     /**
-     * インスタンスステータスを保存する（上書き保存）
-     * 既存データを読み込み、該当ホスト名のデータを更新または追加してから上書き保存
+     * 状態の保持先を設定する（次にスナップショットとWALから読み込む時点から使用する）
      * 
-     * @param status インスタンスステータス
-     * @throws IOException IO例外
+     * @param fleetStateTable 状態の保持先
      */
-    public void save(InstanceStatusCsv status) throws IOException {
-        // 既存データを読み込む
-        Map<String, InstanceStatusCsv> statusMap = new LinkedHashMap<>();
-        List<String> lines = readFromCsv(FILE_NAME);
-
-        if (!lines.isEmpty()) {
-            // ヘッダーをスキップして既存データを読み込む
-            for (int i = 1; i < lines.size(); i++) {
-                String line = lines.get(i);
-                String[] parts = line.split(",", -1);
-                if (parts.length >= 11) {
-                    InstanceStatusCsv existingStatus = new InstanceStatusCsv(
-                            parts[0], // hostname
-                            parts[1], // machineType
-                            parts[2], // region
-                            parts[3], // currentType
-                            parts[4], // typeId
-                            parts[5], // typeHigh
-                            parts[6], // typeSmallStandard
-                            parts[7], // typeMicro
-                            parts[8], // lastUpdate
-                            !parts[9].isEmpty() ? InstanceStatusValue.valueOf(parts[9]) : null, // agentStatus
-                            parts[10], // agentVersion
-                            parts.length >= 12 ? parts[11] : "" // agentLastNoticeTime
-                    );
-                    statusMap.put(parts[0], existingStatus);
-                }
-            }
-        }
+    @Autowired(required = false)
+    public synchronized void setFleetStateTable(FleetStateTable fleetStateTable) {
+        this.fleetStateTable = fleetStateTable;
+        resetStates();
+    }
 
-        // 新しいステータスを追加または更新
-        statusMap.put(status.getHostname(), status);
-
-        // 全データを上書き保存
-        List<Object[]> values = new ArrayList<>();
-        for (InstanceStatusCsv s : statusMap.values()) {
-            values.add(new Object[] {
-                    s.getHostname(),
-                    nullToEmpty(s.getMachineType()),
-                    nullToEmpty(s.getRegion()),
-                    nullToEmpty(s.getCurrentType()),
-                    nullToEmpty(s.getTypeId()),
-                    nullToEmpty(s.getTypeHigh()),
-                    nullToEmpty(s.getTypeSmallStandard()),
-                    nullToEmpty(s.getTypeMicro()),
-                    nullToEmpty(s.getLastUpdate()),
-                    s.getAgentStatus() != null ? s.getAgentStatus().name() : "",
-                    nullToEmpty(s.getAgentVersion()),
-                    nullToEmpty(s.getAgentLastNoticeTime())
-            });
+    /**
+     * 起動時に保存済みのインスタンスステータスを FleetStateTable に読み込む
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadFleetState() {
+        if (fleetStateTable == null) {
+            return;
         }
+        try {
+            logger.info("インスタンスステータスを FleetStateTable に読み込みました: {} 件", countStates());
+        } catch (IOException e) {
+            logger.error("インスタンスステータスの FleetStateTable への読み込みに失敗しました", e);
+        }
+    }
 
-        overwriteToCsv(FILE_NAME, HEADERS, values);
+    @Override
+    protected StateStore<InstanceStatusCsv> createStateStore() {
+        return fleetStateTable != null ? new FleetStateStore(fleetStateTable) : super.createStateStore();
+    }
+
+    /**
+     * インスタンスステータスを保存する
+     * 該当ホスト名のデータを更新または追加し、変更をWALに追記する
+     * 
+     * @param status インスタンスステータス
+     * @throws IOException IO例外
+     */
+    public void save(InstanceStatusCsv status) throws IOException {
+        putState(status);
     }
 
     /**
@@ -87,36 +89,7 @@ public class InstanceStatusRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public Optional<InstanceStatusCsv> findByHostname(String hostname) throws IOException {
-        List<String> lines = readFromCsv(FILE_NAME);
-
-        if (lines.isEmpty()) {
-            return Optional.empty();
-        }
-
-        // ヘッダーをスキップして検索
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-            String[] parts = line.split(",", -1);
-            if (parts.length >= 11 && parts[0].equals(hostname)) {
-                InstanceStatusCsv status = new InstanceStatusCsv(
-                        parts[0], // hostname
-                        parts[1], // machineType
-                        parts[2], // region
-                        parts[3], // currentType
-                        parts[4], // typeId
-                        parts[5], // typeHigh
-                        parts[6], // typeSmallStandard
-                        parts[7], // typeMicro
-                        parts[8], // lastUpdate
-                        !parts[9].isEmpty() ? InstanceStatusValue.valueOf(parts[9]) : null, // agentStatus
-                        parts[10], // agentVersion
-                        parts.length >= 12 ? parts[11] : "" // agentLastNoticeTime
-                );
-                return Optional.of(status);
-            }
-        }
-
-        return Optional.empty();
+        return findState(hostname);
     }
 
     /**
@@ -126,37 +99,7 @@ public class InstanceStatusRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public List<InstanceStatusCsv> findAll() throws IOException {
-        List<String> lines = readFromCsv(FILE_NAME);
-        List<InstanceStatusCsv> statuses = new ArrayList<>();
-
-        if (lines.isEmpty()) {
-            return statuses;
-        }
-
-        // ヘッダーをスキップして検索
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-            String[] parts = line.split(",", -1);
-            if (parts.length >= 11) {
-                InstanceStatusCsv status = new InstanceStatusCsv(
-                        parts[0], // hostname
-                        parts[1], // machineType
-                        parts[2], // region
-                        parts[3], // currentType
-                        parts[4], // typeId
-                        parts[5], // typeHigh
-                        parts[6], // typeSmallStandard
-                        parts[7], // typeMicro
-                        parts[8], // lastUpdate
-                        !parts[9].isEmpty() ? InstanceStatusValue.valueOf(parts[9]) : null, // agentStatus
-                        parts[10], // agentVersion
-                        parts.length >= 12 ? parts[11] : "" // agentLastNoticeTime
-                );
-                statuses.add(status);
-            }
-        }
-
-        return statuses;
+        return findAllStates();
     }
 
     /**
@@ -167,24 +110,19 @@ public class InstanceStatusRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public void updateCurrentType(String hostname, String currentType) throws IOException {
-        Optional<InstanceStatusCsv> statusOpt = findByHostname(hostname);
-        if (statusOpt.isPresent()) {
-            InstanceStatusCsv status = statusOpt.get();
-            InstanceStatusCsv updatedStatus = new InstanceStatusCsv(
-                    status.getHostname(),
-                    status.getMachineType(),
-                    status.getRegion(),
-                    currentType,
-                    status.getTypeId(),
-                    status.getTypeHigh(),
-                    status.getTypeSmallStandard(),
-                    status.getTypeMicro(),
-                    status.getLastUpdate(),
-                    status.getAgentStatus(),
-                    status.getAgentVersion(),
-                    status.getAgentLastNoticeTime());
-            save(updatedStatus);
-        }
+        updateState(hostname, status -> new InstanceStatusCsv(
+                status.getHostname(),
+                status.getMachineType(),
+                status.getRegion(),
+                currentType,
+                status.getTypeId(),
+                status.getTypeHigh(),
+                status.getTypeSmallStandard(),
+                status.getTypeMicro(),
+                status.getLastUpdate(),
+                status.getAgentStatus(),
+                status.getAgentVersion(),
+                status.getAgentLastNoticeTime()));
     }
 
     /**
@@ -195,30 +133,81 @@ public class InstanceStatusRepository extends CsvRepositoryBase {
      * @throws IOException IO例外
      */
     public void updateAgentLastNoticeTime(String hostname, String agentLastNoticeTime) throws IOException {
-        Optional<InstanceStatusCsv> statusOpt = findByHostname(hostname);
-        if (statusOpt.isPresent()) {
-            InstanceStatusCsv status = statusOpt.get();
-            InstanceStatusCsv updatedStatus = new InstanceStatusCsv(
-                    status.getHostname(),
-                    status.getMachineType(),
-                    status.getRegion(),
-                    status.getCurrentType(),
-                    status.getTypeId(),
-                    status.getTypeHigh(),
-                    status.getTypeSmallStandard(),
-                    status.getTypeMicro(),
-                    status.getLastUpdate(),
-                    status.getAgentStatus(),
-                    status.getAgentVersion(),
-                    agentLastNoticeTime);
-            save(updatedStatus);
+        updateState(hostname, status -> new InstanceStatusCsv(
+                status.getHostname(),
+                status.getMachineType(),
+                status.getRegion(),
+                status.getCurrentType(),
+                status.getTypeId(),
+                status.getTypeHigh(),
+                status.getTypeSmallStandard(),
+                status.getTypeMicro(),
+                status.getLastUpdate(),
+                status.getAgentStatus(),
+                status.getAgentVersion(),
+                agentLastNoticeTime));
+    }
+
+    /**
+     * メトリクス・生存通知の受信をAGENT_LAST_NOTICE_TIMEに記録する
+     * FleetStateTable が設定されている場合はテーブルの最終通知時刻のみを更新し（ロックとWALを使わない）、
+     * 次のチェックポイントでスナップショットに書き出す。設定されていない場合はWALに追記する。
+     * 
+     * @param hostname   ホスト名
+     * @param noticeTime 受信時刻
+     * @throws IOException IO例外
+     */
+    public void recordAgentNotice(String hostname, ZonedDateTime noticeTime) throws IOException {
+        FleetStateTable table = fleetStateTable;
+        if (table != null) {
+            table.recordMetrics(hostname, noticeTime.toInstant().toEpochMilli(), null, null);
+            markUnloggedChange();
+            return;
         }
+        updateAgentLastNoticeTime(hostname, noticeTime.format(NOTICE_TIME_FORMATTER));
     }
 
     /**
-     * null を空文字列に変換するヘルパーメソッド
+     * FleetStateTable にインスタンスステータスを保持する保持先
      */
-    private String nullToEmpty(String value) {
-        return value != null ? value : "";
+    private static final class FleetStateStore implements StateStore<InstanceStatusCsv> {
+
+        private final FleetStateTable table;
+
+        FleetStateStore(FleetStateTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public Optional<InstanceStatusCsv> get(String key) {
+            return table.findStatus(key);
+        }
+
+        @Override
+        public void put(String key, InstanceStatusCsv value) {
+            if (!table.putStatus(value)) {
+                throw new IllegalStateException("FleetStateTable のホスト数が上限に達したため保存できません: " + key);
+            }
+        }
+
+        @Override
+        public boolean remove(String key) {
+            return table.removeStatus(key);
+        }
+
+        @Override
+        public List<InstanceStatusCsv> values() {
+            return table.findAllStatuses();
+        }
+
+        @Override
+        public int size() {
+            return table.countStatuses();
+        }
+
+        @Override
+        public void clear() {
+            table.clearStatuses();
+        }
     }
 }
@@ -7,6 +7,7 @@ import com.example.jsoncommon.util.CommandExecutor;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -42,6 +43,19 @@ public class InstanceStatusService {
     @Value("${shell.execution.timeout-seconds:30}")
     private int shellTimeoutSeconds;
 
+    /** 送信スロットの割り当て（receiver.slotting.enabled=true の場合のみ） */
+    private SendSlotService sendSlotService;
+
+    /**
+     * 送信スロットの割り当てサービスを設定します
+     * 
+     * @param sendSlotService 送信スロットの割り当てサービス
+     */
+    @Autowired(required = false)
+    public void setSendSlotService(SendSlotService sendSlotService) {
+        this.sendSlotService = sendSlotService;
+    }
+
     /**
      * UP通知を処理します
      * ステータスをUPに変更します
@@ -67,6 +81,10 @@ public class InstanceStatusService {
             repository.updateAgentLastNoticeTime(upJson.getInstanceName(), currentTime);
             logger.info("ホスト名 {} のAGENT_LAST_NOTICE_TIMEを更新しました: {}",
                     upJson.getInstanceName(), currentTime);
+
+            if (sendSlotService != null && !upJson.isReplayed()) {
+                sendSlotService.assign(upJson);
+            }
         } catch (IOException e) {
             logger.error("UP 通知の処理に失敗しました", e);
             throw new RuntimeException("Failed to process UP notification", e);
@@ -0,0 +1,130 @@
+package com.example.jsonreceiver.monitortarget;
+
+import com.example.jsoncommon.dto.SlotJson;
+import com.example.jsoncommon.dto.UpJson;
+import com.example.jsoncommon.tcp.TcpClient;
+import com.example.jsoncommon.tcp.TcpConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * エージェントにメトリクスの送信スロットを割り当てるサービス
+ * 通知間隔を slot-count 個のスロットに分割し、UP通知を受信したエージェントにスロットを割り当てて SLOT 通知で送信する。
+ * スロットは受信した順番をビット反転した位置とするため、エージェント数によらず通知間隔内に均等に散らばる
+ * （例: 8スロットの場合 0, 4, 2, 6, 1, 5, 3, 7 の順に割り当てる）。
+ * 同じホストには同じスロットを割り当てる。receiver.slotting.enabled=true の場合のみ有効となる。
+ * SLOT 通知はUP通知のホスト名（インスタンスステータスのホスト名）宛てに専用のスレッドから送信し、
+ * 取り込みの処理段をエージェントへの接続で待たせない。
+ */
+@Service
+@ConditionalOnProperty(name = "receiver.slotting.enabled", havingValue = "true")
+@Slf4j
+public class SendSlotService {
+
+    private final TcpClient tcpClient;
+    private final int slotBits;
+    private final int slotCount;
+
+    /** ホスト名 → スロット */
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger assigned = new AtomicInteger();
+    private final Executor sendExecutor;
+
+    @Value("${tcp.client.target-port:8888}")
+    private int targetPort;
+
+    /**
+     * @param tcpClient TCPクライアント
+     * @param slotCount スロット数（2のべき乗に切り上げる）
+     */
+    public SendSlotService(TcpClient tcpClient, @Value("${receiver.slotting.slot-count:1024}") int slotCount) {
+        this(tcpClient, slotCount, Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "slot-notice");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param tcpClient    TCPクライアント
+     * @param slotCount    スロット数（2のべき乗に切り上げる）
+     * @param sendExecutor SLOT 通知を送信するExecutor
+     */
+    SendSlotService(TcpClient tcpClient, int slotCount, Executor sendExecutor) {
+        this.tcpClient = tcpClient;
+        this.sendExecutor = sendExecutor;
+        this.slotBits = 32 - Integer.numberOfLeadingZeros(Math.max(2, slotCount) - 1);
+        this.slotCount = 1 << slotBits;
+    }
+
+    /**
+     * ホストのスロットを取得する（未割り当ての場合は割り当てる）
+     *
+     * @param hostname ホスト名
+     * @return スロット（0 ～ スロット数-1）
+     */
+    public int slotFor(String hostname) {
+        return slots.computeIfAbsent(hostname,
+                h -> Integer.reverse(assigned.getAndIncrement()) >>> (Integer.SIZE - slotBits));
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * UP通知を送信したエージェントにスロットを通知する
+     * スロットはこのメソッド内で割り当て、送信は専用のスレッドで行うため、送信の完了を待たずに戻る。
+     *
+     * @param upJson UP通知
+     */
+    public void assign(UpJson upJson) {
+        String hostname = upJson.getInstanceName();
+        SlotJson message = new SlotJson(slotFor(hostname), slotCount);
+        message.setId(UUID.randomUUID());
+        message.setTimestamp(ZonedDateTime.now());
+        message.setAgentVersion(upJson.getAgentVersion());
+        message.setInstanceName(hostname);
+
+        try {
+            sendExecutor.execute(() -> send(hostname, message));
+        } catch (RejectedExecutionException e) {
+            log.warn("停止中のため、ホスト名 {} に送信スロットを通知しませんでした", hostname);
+        }
+    }
+
+    /**
+     * SLOT 通知をエージェントに送信する（送信先はエージェントのホスト名）
+     */
+    private void send(String hostname, SlotJson message) {
+        try {
+            if (tcpClient.sendJson(hostname, targetPort, message, new TcpConfig())) {
+                log.info("ホスト名 {} に送信スロットを割り当てました: {}/{}", hostname, message.getSlotIndex(), slotCount);
+            } else {
+                log.warn("ホスト名 {} に送信スロットを通知できませんでした", hostname);
+            }
+        } catch (Exception e) {
+            log.error("送信スロットの通知に失敗しました: {}", hostname, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sendExecutor instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+}
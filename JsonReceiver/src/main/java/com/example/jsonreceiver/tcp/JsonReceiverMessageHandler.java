@@ -33,6 +33,9 @@ public class JsonReceiverMessageHandler implements MessageHandler {
                 case METRICS:
                     handleMetrics((MetricsJson) message);
                     break;
+                case HEARTBEAT:
+                    handleHeartbeat((HeartbeatJson) message);
+                    break;
 
                 case UP:
                     handleUp((UpJson) message);
@@ -55,6 +58,11 @@ public class JsonReceiverMessageHandler implements MessageHandler {
         metricsService.processMetrics(message);
     }
 
+    private void handleHeartbeat(HeartbeatJson message) {
+        log.info("生存通知を処理: instance={}, samples={}", message.getInstanceName(), message.getSampleCount());
+        metricsService.processHeartbeat(message);
+    }
+
     private void handleUp(UpJson message) throws IOException {
         log.info("UP通知を処理: instance={}", message.getInstanceName());
         instanceStatusService.processUp(message);
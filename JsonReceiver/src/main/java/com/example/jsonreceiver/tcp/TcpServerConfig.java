@@ -1,10 +1,12 @@
 package com.example.jsonreceiver.tcp;
 
 import com.example.jsoncommon.tcp.TcpServer;
+import com.example.jsonreceiver.ingest.IngestPipeline;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -47,19 +49,28 @@ public class TcpServerConfig {
     @Bean
     public CommandLineRunner startJsonReceiverTcpServer(
             JsonReceiverMessageHandler messageHandler,
+            ObjectProvider<IngestPipeline> ingestPipeline,
             ObjectMapper objectMapper,
             @Qualifier("jsonReceiverTcpServerExecutor") TaskExecutor jsonReceiverTcpServerExecutor,
             @Qualifier("jsonReceiverNoticeProcessingExecutor") ExecutorService jsonReceiverNoticeProcessingExecutor) {
 
         return args -> {
             log.info("JsonReceiver TCPサーバーをポート{}で起動します", serverPort);
-            // TcpServer(int port, MessageHandler messageHandler, ExecutorService
-            // executorService, ObjectMapper objectMapper)
-            TcpServer tcpServer = new TcpServer(
-                    serverPort,
-                    messageHandler,
-                    jsonReceiverNoticeProcessingExecutor,
-                    objectMapper);
+            IngestPipeline pipeline = ingestPipeline.getIfAvailable();
+            TcpServer tcpServer;
+            if (pipeline != null) {
+                // 受信した通知は取り込みログに記録し、処理段ごとに非同期で処理する
+                log.info("取り込みログを使用します");
+                tcpServer = new TcpServer(serverPort, pipeline);
+            } else {
+                // TcpServer(int port, MessageHandler messageHandler, ExecutorService
+                // executorService, ObjectMapper objectMapper)
+                tcpServer = new TcpServer(
+                        serverPort,
+                        messageHandler,
+                        jsonReceiverNoticeProcessingExecutor,
+                        objectMapper);
+            }
 
             jsonReceiverTcpServerExecutor.execute(tcpServer);
         };
@@ -0,0 +1,106 @@
+package com.example.jsonreceiver.ingest;
+
+import com.example.jsoncommon.dto.NoticeBaseJson;
+import com.example.jsoncommon.tcp.NoticeJsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testAppendAndRead_セグメントをまたいで順に読み込める() throws IOException {
+        // Arrange: 1セグメントに3件程度しか入らないサイズ
+        IngestLog ingestLog = new IngestLog(tempDir, 64);
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            offsets.add(ingestLog.append(("record-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // Act
+        List<String> records = new ArrayList<>();
+        List<Long> readOffsets = new ArrayList<>();
+        long next = ingestLog.read(0L, 100, (offset, payload) -> {
+            readOffsets.add(offset);
+            records.add(new String(payload, StandardCharsets.UTF_8));
+        });
+
+        // Assert
+        assertEquals(10, records.size());
+        assertEquals("record-0", records.get(0));
+        assertEquals("record-9", records.get(9));
+        assertEquals(offsets, readOffsets);
+        assertEquals(ingestLog.getEndOffset(), next);
+    }
+
+    @Test
+    public void testOpen_不完全な末尾のレコードを破棄して追記を再開する() throws IOException {
+        // Arrange
+        IngestLog ingestLog = new IngestLog(tempDir, 1024);
+        ingestLog.append("first".getBytes(StandardCharsets.UTF_8));
+        long tornOffset = ingestLog.append("second".getBytes(StandardCharsets.UTF_8));
+        ingestLog.close();
+        // 2件目の本文を壊す（CRCが一致しなくなる）
+        try (FileChannel channel = FileChannel.open(tempDir.resolve(String.format("%020d.seg", 0)),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'X' }), tornOffset + 8);
+        }
+
+        // Act
+        IngestLog reopened = new IngestLog(tempDir, 1024);
+        reopened.append("third".getBytes(StandardCharsets.UTF_8));
+        List<String> records = new ArrayList<>();
+        reopened.read(0L, 100, (offset, payload) -> records.add(new String(payload, StandardCharsets.UTF_8)));
+
+        // Assert
+        assertEquals(List.of("first", "third"), records);
+    }
+
+    @Test
+    public void testConsumer_記録したオフセットから再開し巻き戻すと再処理する() throws IOException {
+        // Arrange
+        IngestLog ingestLog = new IngestLog(tempDir.resolve("log"), 4096);
+        NoticeJsonParser parser = new NoticeJsonParser(new ObjectMapper().registerModule(new JavaTimeModule()));
+        for (String hostname : new String[] { "host-a", "host-b" }) {
+            ingestLog.append(upJson(hostname).getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> handled = new ArrayList<>();
+        Path offsetDir = tempDir.resolve("consumers");
+        IngestConsumer consumer = new IngestConsumer("status", ingestLog, parser,
+                (NoticeBaseJson message) -> handled.add(message.getInstanceName()), offsetDir, 100, 10L);
+        consumer.pollOnce();
+
+        // Act: 再起動後は未処理の通知のみ処理する
+        ingestLog.append(upJson("host-c").getBytes(StandardCharsets.UTF_8));
+        IngestConsumer restarted = new IngestConsumer("status", ingestLog, parser,
+                (NoticeBaseJson message) -> handled.add(message.getInstanceName()), offsetDir, 100, 10L);
+        restarted.pollOnce();
+        restarted.replayFrom(0L);
+        restarted.pollOnce();
+
+        // Assert
+        assertEquals(List.of("host-a", "host-b", "host-c", "host-a", "host-b", "host-c"), handled);
+        assertEquals(ingestLog.getEndOffset(), restarted.getCommittedOffset());
+    }
+
+    private static String upJson(String hostname) {
+        return "{\"NoticeType\":\"UP\",\"Id\":\"123e4567-e89b-12d3-a456-426614174000\","
+                + "\"timestamp\":\"2024-01-01T00:00:00+09:00\",\"AgentVersion\":\"1.0.0\","
+                + "\"InstanceName\":\"" + hostname + "\"}";
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.jsonreceiver.metrics;
 
+import com.example.jsoncommon.dto.HeartbeatJson;
 import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
 import com.example.jsoncommon.dto.Metrics;
 import com.example.jsoncommon.dto.MetricsJson;
@@ -10,13 +11,16 @@ import com.example.jsonreceiver.instancetype.InstanceTypeChangeService;
 import com.example.jsonreceiver.monitortarget.InstanceStatusRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -33,13 +37,16 @@ public class MetricsServiceTest {
     @Mock
     private InstanceTypeChangeService instanceTypeChangeService;
 
+    @Mock
+    private ResourceRollupService resourceRollupService;
+
     private MetricsService metricsService;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
         metricsService = new MetricsService(resourceHistoryRepository, instanceStatusRepository,
-                instanceTypeChangeService);
+                instanceTypeChangeService, resourceRollupService);
     }
 
     @Test
@@ -59,7 +66,8 @@ public class MetricsServiceTest {
 
         // Assert
         verify(resourceHistoryRepository).save(metricsJson);
-        verify(instanceStatusRepository).updateAgentLastNoticeTime(eq("test-host"), anyString());
+        verify(resourceRollupService).record(metricsJson);
+        verify(instanceStatusRepository).recordAgentNotice(eq("test-host"), any(ZonedDateTime.class));
         // WITHIN なので changeInstanceType は呼ばれない
         verify(instanceTypeChangeService, never()).changeInstanceType(anyString(), any(InstanceType.class));
     }
@@ -81,10 +89,32 @@ public class MetricsServiceTest {
 
         // Assert
         verify(resourceHistoryRepository).save(metricsJson);
-        verify(instanceStatusRepository).updateAgentLastNoticeTime(eq("test-host-upper"), anyString());
+        verify(instanceStatusRepository).recordAgentNotice(eq("test-host-upper"), any(ZonedDateTime.class));
         verify(instanceTypeChangeService).changeInstanceType("test-host-upper", InstanceType.HIGH);
     }
 
+    @Test
+    public void testProcessMetrics_再送信された通知はインスタンスタイプを変更しない() throws IOException {
+        // Arrange
+        Metrics metrics = new Metrics(95.0, 60.0, InstanceTypeChangeRequest.UPPER);
+        MetricsJson metricsJson = new MetricsJson(
+                UUID.randomUUID(),
+                NoticeType.METRICS,
+                ZonedDateTime.now(),
+                "1.0.0",
+                "test-host-replayed",
+                metrics);
+        metricsJson.setReplayed(true);
+
+        // Act
+        metricsService.processMetrics(metricsJson);
+
+        // Assert: 履歴は保存し、インスタンスタイプは変更しない
+        verify(resourceHistoryRepository).save(metricsJson);
+        verify(resourceRollupService).record(metricsJson);
+        verify(instanceTypeChangeService, never()).changeInstanceType(anyString(), any(InstanceType.class));
+    }
+
     @Test
     public void testProcessMetrics_LowerRequest() throws IOException {
         // Arrange
@@ -102,7 +132,7 @@ public class MetricsServiceTest {
 
         // Assert
         verify(resourceHistoryRepository).save(metricsJson);
-        verify(instanceStatusRepository).updateAgentLastNoticeTime(eq("test-host-lower"), anyString());
+        verify(instanceStatusRepository).recordAgentNotice(eq("test-host-lower"), any(ZonedDateTime.class));
         verify(instanceTypeChangeService).changeInstanceType("test-host-lower", InstanceType.LOW);
     }
 
@@ -123,11 +153,50 @@ public class MetricsServiceTest {
 
         // Assert
         verify(resourceHistoryRepository).save(metricsJson);
-        verify(instanceStatusRepository).updateAgentLastNoticeTime(eq("test-host-null"), anyString());
+        verify(instanceStatusRepository).recordAgentNotice(eq("test-host-null"), any(ZonedDateTime.class));
         // null なので changeInstanceType は呼ばれない
         verify(instanceTypeChangeService, never()).changeInstanceType(anyString(), any(InstanceType.class));
     }
 
+    @Test
+    public void testProcessHeartbeat_前回の値を引き継いでサンプルごとに履歴を保存する() throws IOException {
+        // Arrange
+        ZonedDateTime base = ZonedDateTime.now();
+        metricsService.processMetrics(new MetricsJson(UUID.randomUUID(), NoticeType.METRICS, base, "1.0.0",
+                "test-host", new Metrics(12.5, 40.0, InstanceTypeChangeRequest.WITHIN)));
+        HeartbeatJson heartbeat = new HeartbeatJson(UUID.randomUUID(), base.plusSeconds(6), "1.0.0", "test-host",
+                3, 2);
+
+        // Act
+        metricsService.processHeartbeat(heartbeat);
+
+        // Assert
+        ArgumentCaptor<MetricsJson> saved = ArgumentCaptor.forClass(MetricsJson.class);
+        verify(resourceHistoryRepository, times(4)).save(saved.capture());
+        List<MetricsJson> carried = saved.getAllValues().subList(1, 4);
+        for (int k = 0; k < 3; k++) {
+            assertEquals(base.plusSeconds(2L * (k + 1)), carried.get(k).getTimestamp());
+            assertEquals(12.5, carried.get(k).getMetrics().getCpuUsage());
+            assertEquals(40.0, carried.get(k).getMetrics().getMemoryUsage());
+        }
+        verify(instanceStatusRepository, times(2)).recordAgentNotice(eq("test-host"), any(ZonedDateTime.class));
+        verify(instanceTypeChangeService, never()).changeInstanceType(anyString(), any(InstanceType.class));
+    }
+
+    @Test
+    public void testProcessHeartbeat_前回の値がない場合は生存のみ記録する() throws IOException {
+        // Arrange
+        HeartbeatJson heartbeat = new HeartbeatJson(UUID.randomUUID(), ZonedDateTime.now(), "1.0.0",
+                "unknown-host", 5, 2);
+
+        // Act
+        metricsService.processHeartbeat(heartbeat);
+
+        // Assert
+        verify(resourceHistoryRepository, never()).save(any());
+        verify(instanceStatusRepository).recordAgentNotice(eq("unknown-host"), any(ZonedDateTime.class));
+    }
+
     @Test
     public void testProcessMetrics_CsvRepositoryThrowsException() throws IOException {
         // Arrange
@@ -0,0 +1,62 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.repository.ResourceHistoryRepository;
+import com.example.jsoncommon.repository.ResourceRollupRepository;
+import com.example.jsoncommon.repository.RollupTier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ResourceHistoryQueryServiceTest {
+
+    @Mock
+    private ResourceHistoryRepository resourceHistoryRepository;
+
+    @Mock
+    private ResourceRollupRepository resourceRollupRepository;
+
+    @Mock
+    private ResourceRollupService resourceRollupService;
+
+    private ResourceHistoryQueryService service;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(resourceHistoryRepository.getRetentionDays()).thenReturn(7);
+        when(resourceRollupRepository.getRetentionDays(RollupTier.MINUTE)).thenReturn(90);
+        when(resourceRollupRepository.getRetentionDays(RollupTier.HOUR)).thenReturn(400);
+        service = new ResourceHistoryQueryService(resourceHistoryRepository, resourceRollupRepository,
+                resourceRollupService);
+    }
+
+    @Test
+    public void testSelectTier_要求粒度を満たす最も粗い粒度が選ばれる() {
+        ZonedDateTime from = ZonedDateTime.now().minusDays(1);
+
+        assertNull(service.selectTier(from, Duration.ofSeconds(2)));
+        assertEquals(RollupTier.MINUTE, service.selectTier(from, Duration.ofMinutes(5)));
+        assertEquals(RollupTier.HOUR, service.selectTier(from, Duration.ofHours(1)));
+        assertEquals(RollupTier.HOUR, service.selectTier(from, Duration.ofDays(1)));
+    }
+
+    @Test
+    public void testSelectTier_保持期間外の場合はより粗い粒度で代替される() {
+        // 生データの保持期間（7日）より前
+        assertEquals(RollupTier.MINUTE, service.selectTier(ZonedDateTime.now().minusDays(10),
+                Duration.ofSeconds(2)));
+        // 1分単位の保持期間（90日）より前
+        assertEquals(RollupTier.HOUR, service.selectTier(ZonedDateTime.now().minusDays(100),
+                Duration.ofMinutes(1)));
+        // いずれの保持期間より前でも最も粗い粒度を返す
+        assertEquals(RollupTier.HOUR, service.selectTier(ZonedDateTime.now().minusDays(500),
+                Duration.ofMinutes(1)));
+    }
+}
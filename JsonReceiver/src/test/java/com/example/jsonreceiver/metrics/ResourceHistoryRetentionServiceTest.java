@@ -0,0 +1,184 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.dto.ResourceRollupCsv;
+import com.example.jsoncommon.repository.ResourceHistoryRepository;
+import com.example.jsoncommon.repository.ResourceRollupRepository;
+import com.example.jsoncommon.repository.RollupTier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourceHistoryRetentionServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ResourceHistoryRepository repository;
+    private ResourceHistoryRetentionService service;
+
+    @BeforeEach
+    public void setUp() {
+        repository = new ResourceHistoryRepository();
+        repository.setOutputDir(tempDir.toString());
+        repository.setRetentionDays(1);
+
+        service = new ResourceHistoryRetentionService(repository);
+        ReflectionTestUtils.setField(service, "outputDir", tempDir.toString());
+        ReflectionTestUtils.setField(service, "windowMinutes", 10);
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "maxBytesPerSecond", 0L);
+    }
+
+    @Test
+    public void testSweep_全ホストの古いデータが削除され進捗が記録される() throws IOException {
+        // Arrange: 3ホストにそれぞれ古いデータ2件・新しいデータ1件
+        ZonedDateTime now = ZonedDateTime.now();
+        for (String hostname : new String[] { "host-a", "host-b", "host-c" }) {
+            repository.save(createMetricsJson(hostname, now.minusDays(3)));
+            repository.save(createMetricsJson(hostname, now.minusDays(2)));
+            repository.save(createMetricsJson(hostname, now));
+        }
+
+        // Act
+        boolean executed = service.sweep("テスト");
+
+        // Assert
+        assertTrue(executed);
+        RetentionProgress progress = service.getProgress();
+        assertFalse(progress.isRunning());
+        assertEquals(3, progress.getHostsTotal());
+        assertEquals(3, progress.getHostsProcessed());
+        assertEquals(0, progress.getHostsFailed());
+        assertEquals(6, progress.getRowsDeleted());
+        assertTrue(progress.getBytesScanned() > 0);
+        assertNotNull(progress.getLastFinishedAt());
+        assertEquals(2, Files.readAllLines(tempDir.resolve("resource_history_host-a.csv")).size());
+
+        // 終了時の進捗が進捗ファイルに書き出される
+        List<String> progressLines = Files.readAllLines(
+                tempDir.resolve(ResourceHistoryRetentionService.PROGRESS_FILE_NAME));
+        assertTrue(progressLines.contains("running=false"));
+        assertTrue(progressLines.contains("hostsProcessed=3"));
+        assertTrue(progressLines.contains("rowsDeleted=6"));
+    }
+
+    @Test
+    public void testSweep_保持期間を過ぎた集計値も削除される() throws IOException {
+        // Arrange: 1分単位の集計値の保持期間は2日
+        ResourceRollupRepository rollupRepository = new ResourceRollupRepository();
+        rollupRepository.setOutputDir(tempDir.toString());
+        rollupRepository.setRetentionDays(RollupTier.MINUTE, 2);
+        rollupRepository.setRetentionDays(RollupTier.HOUR, 400);
+        service.setResourceRollupRepository(rollupRepository);
+
+        ZonedDateTime now = ZonedDateTime.now().withSecond(0).withNano(0);
+        repository.save(createMetricsJson("host-a", now));
+        rollupRepository.save(RollupTier.MINUTE, createRollup("host-a", now.minusDays(3)));
+        rollupRepository.save(RollupTier.MINUTE, createRollup("host-a", now.minusMinutes(1)));
+        rollupRepository.save(RollupTier.HOUR, createRollup("host-a", now.minusDays(3).withMinute(0)));
+
+        // Act
+        service.sweep("テスト");
+
+        // Assert
+        assertEquals(1, service.getProgress().getRowsDeleted());
+        assertEquals(1, rollupRepository.findByHostnameAndPeriod(RollupTier.MINUTE, "host-a",
+                now.minusDays(4), now).size());
+        assertEquals(1, rollupRepository.findByHostnameAndPeriod(RollupTier.HOUR, "host-a",
+                now.minusDays(4), now).size());
+    }
+
+    @Test
+    public void testSweep_時間枠を過ぎたホストは持ち越される() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(service, "windowMinutes", 0);
+        repository.save(createMetricsJson("host-a", ZonedDateTime.now().minusDays(3)));
+        repository.save(createMetricsJson("host-b", ZonedDateTime.now().minusDays(3)));
+
+        // Act
+        service.sweep("テスト");
+
+        // Assert
+        RetentionProgress progress = service.getProgress();
+        assertEquals(2, progress.getHostsDeferred());
+        assertEquals(0, progress.getRowsDeleted());
+        assertEquals(List.of("host-a", "host-b"),
+                Files.readAllLines(tempDir.resolve(ResourceHistoryRetentionService.DEFERRED_FILE_NAME)));
+    }
+
+    @Test
+    public void testSweep_持ち越したホストは次回処理され持ち越しファイルが削除される() throws IOException {
+        // Arrange: 1回目は時間枠0分で全ホストを持ち越す
+        ReflectionTestUtils.setField(service, "windowMinutes", 0);
+        repository.save(createMetricsJson("host-a", ZonedDateTime.now().minusDays(3)));
+        repository.save(createMetricsJson("host-b", ZonedDateTime.now().minusDays(3)));
+        service.sweep("テスト");
+        ReflectionTestUtils.setField(service, "windowMinutes", 10);
+
+        // Act
+        service.sweep("テスト");
+
+        // Assert
+        RetentionProgress progress = service.getProgress();
+        assertEquals(2, progress.getHostsProcessed());
+        assertEquals(0, progress.getHostsDeferred());
+        assertEquals(2, progress.getRowsDeleted());
+        assertFalse(Files.exists(tempDir.resolve(ResourceHistoryRetentionService.DEFERRED_FILE_NAME)));
+    }
+
+    @Test
+    public void testPrioritizeDeferred_持ち越したホストが先頭になり削除済みのホストは除かれる() {
+        // Act
+        List<String> ordered = ResourceHistoryRetentionService.prioritizeDeferred(
+                List.of("host-a", "host-b", "host-c", "host-d"), List.of("host-c", "host-x", "host-d"));
+
+        // Assert
+        assertEquals(List.of("host-c", "host-d", "host-a", "host-b"), ordered);
+    }
+
+    @Test
+    public void testCheckTriggerFile_トリガーファイルで手動実行される() throws Exception {
+        // Arrange
+        repository.save(createMetricsJson("host-a", ZonedDateTime.now().minusDays(3)));
+        Files.createFile(tempDir.resolve(ResourceHistoryRetentionService.TRIGGER_FILE_NAME));
+
+        // Act
+        service.checkTriggerFile();
+
+        // Assert: トリガーファイルが削除され、別スレッドで処理が完了する
+        assertFalse(Files.exists(tempDir.resolve(ResourceHistoryRetentionService.TRIGGER_FILE_NAME)));
+        for (int i = 0; i < 50 && service.getProgress().getLastFinishedAt() == null; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, service.getProgress().getRowsDeleted());
+    }
+
+    private ResourceRollupCsv createRollup(String hostname, ZonedDateTime bucketStart) {
+        return new ResourceRollupCsv(hostname, bucketStart.toString(), 1, 10.0, 10.0, 10.0, 20.0, 20.0, 20.0,
+                1, 0, 0);
+    }
+
+    private MetricsJson createMetricsJson(String hostname, ZonedDateTime timestamp) {
+        return new MetricsJson(
+                UUID.randomUUID(),
+                NoticeType.METRICS,
+                timestamp,
+                "1.0.0",
+                hostname,
+                new Metrics(50.0, 50.0, InstanceTypeChangeRequest.WITHIN));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.jsonreceiver.metrics;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.dto.ResourceRollupCsv;
+import com.example.jsoncommon.repository.ResourceRollupRepository;
+import com.example.jsoncommon.repository.RollupTier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourceRollupServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ResourceRollupRepository repository;
+    private ResourceRollupService service;
+
+    @BeforeEach
+    public void setUp() {
+        repository = new ResourceRollupRepository();
+        repository.setOutputDir(tempDir.toString());
+        repository.setRetentionDays(RollupTier.MINUTE, 90);
+        repository.setRetentionDays(RollupTier.HOUR, 400);
+        service = new ResourceRollupService(repository);
+    }
+
+    @Test
+    public void testRecord_次の区間のサンプルで1分単位の集計が確定する() throws IOException {
+        // Arrange
+        ZonedDateTime base = ZonedDateTime.now().minusHours(3).withMinute(10).withSecond(0).withNano(0);
+
+        // Act: 10分台に3件、11分台に1件
+        service.record(createMetricsJson(base.plusSeconds(2), 10.0, 40.0, InstanceTypeChangeRequest.WITHIN));
+        service.record(createMetricsJson(base.plusSeconds(4), 30.0, 60.0, InstanceTypeChangeRequest.UPPER));
+        service.record(createMetricsJson(base.plusSeconds(6), 20.0, 50.0, InstanceTypeChangeRequest.UPPER));
+        service.record(createMetricsJson(base.plusMinutes(1), 90.0, 90.0, InstanceTypeChangeRequest.WITHIN));
+
+        // Assert
+        List<ResourceRollupCsv> minutes = repository.findByHostnameAndPeriod(RollupTier.MINUTE, "test-host",
+                base, base.plusMinutes(5));
+        assertEquals(1, minutes.size());
+        ResourceRollupCsv rollup = minutes.get(0);
+        assertEquals(base.toString(), rollup.getBucketStart());
+        assertEquals(3, rollup.getSampleCount());
+        assertEquals(10.0, rollup.getCpuMin());
+        assertEquals(30.0, rollup.getCpuMax());
+        assertEquals(20.0, rollup.getCpuAvg(), 0.0001);
+        assertEquals(50.0, rollup.getMemoryAvg(), 0.0001);
+        assertEquals(1, rollup.getWithinCount());
+        assertEquals(2, rollup.getUpperCount());
+        assertEquals(0, rollup.getLowerCount());
+
+        // 1時間単位はまだ集計中
+        assertTrue(repository.findByHostnameAndPeriod(RollupTier.HOUR, "test-host", base, base.plusHours(1))
+                .isEmpty());
+        assertEquals(4, service.findOpenBucket("test-host", RollupTier.HOUR).orElseThrow().getSampleCount());
+    }
+
+    @Test
+    public void testFlushIdleBuckets_終了した区間が保存される() throws IOException {
+        // Arrange
+        ZonedDateTime base = ZonedDateTime.now().minusHours(3).withMinute(0).withSecond(0).withNano(0);
+        service.record(createMetricsJson(base.plusMinutes(5), 10.0, 40.0, InstanceTypeChangeRequest.LOWER));
+
+        // Act
+        service.flushIdleBuckets();
+
+        // Assert
+        List<ResourceRollupCsv> hours = repository.findByHostnameAndPeriod(RollupTier.HOUR, "test-host",
+                base, base.plusHours(1));
+        assertEquals(1, hours.size());
+        assertEquals(1, hours.get(0).getLowerCount());
+        assertTrue(service.findOpenBucket("test-host", RollupTier.MINUTE).isEmpty());
+    }
+
+    @Test
+    public void testFindByHostnameAndPeriod_同じ区間の行はまとめられる() throws IOException {
+        // Arrange: 停止時の保存後に同じ区間のサンプルを受信した場合を想定
+        ZonedDateTime base = ZonedDateTime.now().minusHours(3).withMinute(0).withSecond(0).withNano(0);
+        service.record(createMetricsJson(base.plusSeconds(1), 10.0, 40.0, InstanceTypeChangeRequest.WITHIN));
+        service.flushAll();
+        service.record(createMetricsJson(base.plusSeconds(30), 30.0, 60.0, InstanceTypeChangeRequest.WITHIN));
+        service.flushAll();
+
+        // Act
+        List<ResourceRollupCsv> minutes = repository.findByHostnameAndPeriod(RollupTier.MINUTE, "test-host",
+                base, base.plusMinutes(1));
+
+        // Assert
+        assertEquals(1, minutes.size());
+        assertEquals(2, minutes.get(0).getSampleCount());
+        assertEquals(10.0, minutes.get(0).getCpuMin());
+        assertEquals(30.0, minutes.get(0).getCpuMax());
+        assertEquals(20.0, minutes.get(0).getCpuAvg(), 0.0001);
+    }
+
+    private MetricsJson createMetricsJson(ZonedDateTime timestamp, double cpuUsage, double memoryUsage,
+            InstanceTypeChangeRequest request) {
+        return new MetricsJson(
+                UUID.randomUUID(),
+                NoticeType.METRICS,
+                timestamp,
+                "1.0.0",
+                "test-host",
+                new Metrics(cpuUsage, memoryUsage, request));
+    }
+}
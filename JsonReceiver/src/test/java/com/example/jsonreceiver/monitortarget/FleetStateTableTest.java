@@ -0,0 +1,175 @@
+package com.example.jsonreceiver.monitortarget;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FleetStateTableTest {
+
+    @Test
+    public void testRecordAndFind_記録した値を取得できる() {
+        // Arrange
+        FleetStateTable table = new FleetStateTable(100);
+
+        // Act
+        table.recordStatus("host-a", InstanceStatusValue.UP, "c6i.large");
+        table.recordMetrics("host-a", 1000L, 12.5, 40.0);
+        table.recordMetrics("host-a", 2000L, 20.0, null);
+        table.recordStatus("host-a", InstanceStatusValue.DOWN, "");
+
+        // Assert
+        FleetStateTable.FleetState state = table.find("host-a").orElseThrow();
+        assertEquals(InstanceStatusValue.DOWN, state.agentStatus());
+        assertEquals("c6i.large", state.currentType()); // 空文字列の場合は前回の値を保持
+        assertEquals(2000L, state.lastNoticeMillis());
+        assertEquals(20.0, state.cpuUsage());
+        assertEquals(40.0, state.memoryUsage()); // nullの場合は前回の値を保持
+        assertEquals(Optional.empty(), table.find("host-b"));
+    }
+
+    @Test
+    public void testPutStatus_インスタンスステータスを元の値に戻して取得できる() {
+        // Arrange: 時刻の形式（ZonedDateTime・yyyy-MM-dd HH:mm:ss・その他の文字列）と null・空文字列を含む
+        FleetStateTable table = new FleetStateTable(100);
+        InstanceStatusCsv first = new InstanceStatusCsv("host-a", "ECS", "ap-northeast-1", "c6i.large", "1",
+                "c6i.xlarge", "c6i.large", "", "2024-01-01T09:00:00.123456+09:00[Asia/Tokyo]",
+                InstanceStatusValue.UP, "1.0.0", "2024-01-01 00:00:00");
+        InstanceStatusCsv second = new InstanceStatusCsv("host-b", null, "", "c6i.large", "1", "c6i.xlarge",
+                "c6i.large", "t3.micro", "不明な時刻", null, "1.0.1", null);
+        table.recordMetrics("host-a", 1000L, 10.0, 20.0);
+
+        // Act
+        table.putStatus(first);
+        table.putStatus(second);
+
+        // Assert: 登録順（ホストID順）に取得でき、メトリクスの値は保持される
+        assertEquals(first, table.findStatus("host-a").orElseThrow());
+        assertEquals(second, table.findStatus("host-b").orElseThrow());
+        assertEquals(List.of(first, second), table.findAllStatuses());
+        assertEquals(2, table.countStatuses());
+        assertEquals(10.0, table.find("host-a").orElseThrow().cpuUsage());
+        assertEquals("c6i.large", table.find("host-a").orElseThrow().currentType());
+    }
+
+    @Test
+    public void testPutStatus_時刻として解釈できない文字列にはコードを割り当てない() {
+        // Arrange
+        FleetStateTable table = new FleetStateTable(100);
+        table.putStatus(new InstanceStatusCsv("host-a", "ECS", "", "c6i.large", "", "", "", "",
+                "不明な時刻-0", InstanceStatusValue.UP, "1.0.0", "不明な時刻-0"));
+        int codes = table.countCodes();
+
+        // Act: 毎回異なる解釈できない時刻で更新する
+        for (int i = 1; i <= 1000; i++) {
+            table.putStatus(new InstanceStatusCsv("host-a", "ECS", "", "c6i.large", "", "", "", "",
+                    "不明な時刻-" + i, InstanceStatusValue.UP, "1.0.0", "不明な時刻-" + i));
+        }
+
+        // Assert: コードは増えず、最後に保存した文字列に戻せる
+        assertEquals(codes, table.countCodes());
+        InstanceStatusCsv found = table.findStatus("host-a").orElseThrow();
+        assertEquals("不明な時刻-1000", found.getLastUpdate());
+        assertEquals("不明な時刻-1000", found.getAgentLastNoticeTime());
+
+        // 解釈できる時刻で置き換えた場合は保持していた文字列を使わない
+        table.putStatus(new InstanceStatusCsv("host-a", "ECS", "", "c6i.large", "", "", "", "",
+                "2024-01-01 00:00:00", InstanceStatusValue.UP, "1.0.0", null));
+        found = table.findStatus("host-a").orElseThrow();
+        assertEquals("2024-01-01 00:00:00", found.getLastUpdate());
+        assertNull(found.getAgentLastNoticeTime());
+    }
+
+    @Test
+    public void testFindStatus_最終通知時刻の方が新しい場合は最終通知受信時刻として返す() {
+        // Arrange
+        FleetStateTable table = new FleetStateTable(100);
+        table.putStatus(new InstanceStatusCsv("host-a", "ECS", "", "c6i.large", "", "", "", "",
+                "2024-01-01 00:00:00", InstanceStatusValue.UP, "1.0.0", "2024-01-01 00:00:00"));
+        long older = ZonedDateTime.of(2023, 12, 31, 23, 59, 59, 0, ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long newer = ZonedDateTime.of(2024, 1, 1, 0, 0, 5, 0, ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        // Act & Assert: 記録した値より古い最終通知時刻は反映しない
+        table.recordMetrics("host-a", older, null, null);
+        assertEquals("2024-01-01 00:00:00", table.findStatus("host-a").orElseThrow().getAgentLastNoticeTime());
+
+        // 新しい最終通知時刻はインスタンスステータスを書き換えずに反映される
+        table.recordMetrics("host-a", newer, null, null);
+        assertEquals("2024-01-01 00:00:05", table.findStatus("host-a").orElseThrow().getAgentLastNoticeTime());
+        assertEquals(InstanceStatusValue.UP, table.findStatus("host-a").orElseThrow().getAgentStatus());
+    }
+
+    @Test
+    public void testRemoveStatus_インスタンスステータスのみ削除される() {
+        // Arrange
+        FleetStateTable table = new FleetStateTable(100);
+        table.recordMetrics("host-a", 1000L, 10.0, 20.0);
+        table.putStatus(new InstanceStatusCsv("host-a", "ECS", "", "c6i.large", "", "", "", "",
+                "2024-01-01 00:00:00", InstanceStatusValue.UP, "1.0.0", ""));
+
+        // Act
+        boolean removed = table.removeStatus("host-a");
+
+        // Assert
+        assertTrue(removed);
+        assertFalse(table.removeStatus("host-a"));
+        assertTrue(table.findStatus("host-a").isEmpty());
+        assertEquals(0, table.countStatuses());
+        assertEquals(1000L, table.find("host-a").orElseThrow().lastNoticeMillis());
+    }
+
+    @Test
+    public void testRecord_チャンクをまたいで最大ホスト数まで保持できる() {
+        // Arrange
+        int maxHosts = FleetStateTable.SLOTS_PER_CHUNK + 10;
+        FleetStateTable table = new FleetStateTable(maxHosts);
+
+        // Act
+        for (int i = 0; i < maxHosts + 5; i++) {
+            table.recordMetrics("host-" + i, i, (double) i, null);
+        }
+
+        // Assert
+        assertEquals(maxHosts, table.size());
+        FleetStateTable.FleetState last = table.find("host-" + (maxHosts - 1)).orElseThrow();
+        assertEquals(maxHosts - 1, last.cpuUsage());
+        assertNull(last.agentStatus());
+        assertTrue(Double.isNaN(last.memoryUsage()));
+        assertTrue(table.find("host-" + maxHosts).isEmpty());
+        AtomicInteger visited = new AtomicInteger();
+        table.forEach(state -> visited.incrementAndGet());
+        assertEquals(maxHosts, visited.get());
+    }
+
+    @Test
+    public void testFind_書き込み中の値を読み込まない() throws InterruptedException {
+        // Arrange: CPU使用率とメモリ使用率に常に同じ値を書き込み続ける
+        FleetStateTable table = new FleetStateTable(10);
+        table.recordMetrics("host-a", 0L, 0.0, 0.0);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (long i = 1; running.get(); i++) {
+                table.recordMetrics("host-a", i, (double) i, (double) i);
+            }
+        });
+        writer.start();
+
+        // Act & Assert: 読み込んだ値の組が常に一致する
+        try {
+            for (int i = 0; i < 200_000; i++) {
+                FleetStateTable.FleetState state = table.find("host-a").orElseThrow();
+                assertEquals(state.cpuUsage(), state.memoryUsage());
+                assertEquals((double) state.lastNoticeMillis(), state.cpuUsage());
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
@@ -1,18 +1,34 @@
 package com.example.jsonreceiver.monitortarget;
 
+import com.example.jsoncommon.repository.CsvRowWriter;
+import com.example.jsoncommon.repository.TableStorage;
 import com.example.jsonreceiver.monitortarget.InstanceStatusRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class InstanceStatusRepositoryTest {
 
@@ -48,6 +64,7 @@ public class InstanceStatusRepositoryTest {
 
                 // Act
                 repository.save(status);
+                repository.checkpoint();
 
                 // Assert
                 assertTrue(Files.exists(csvFilePath), "CSV file should exist");
@@ -182,4 +199,163 @@ public class InstanceStatusRepositoryTest {
                 assertEquals("c6i.8xlarge", found.get().getCurrentType());
                 assertEquals(InstanceStatusValue.UP, found.get().getAgentStatus());
         }
+
+        @Test
+        public void testSave_追記ごとに同期する設定ではWALに追記してから同期する() throws IOException {
+                // Arrange
+                TableStorage storage = mock(TableStorage.class);
+                repository.setStorage(storage);
+                repository.setWalSyncEachAppend(true);
+                InstanceStatusCsv status = new InstanceStatusCsv("sync-host", "ECS", "ap-northeast-1",
+                                "c6i.4xlarge", "1", "c6i.8xlarge", "c6i.2xlarge", "c6i.micro",
+                                ZonedDateTime.now().toString(), InstanceStatusValue.UP, "1.0.0", "");
+
+                // Act
+                repository.save(status);
+
+                // Assert
+                InOrder inOrder = inOrder(storage);
+                inOrder.verify(storage).append(eq("monitor_target.csv.wal"), any(CsvRowWriter.class),
+                                any(Object[].class));
+                inOrder.verify(storage).sync("monitor_target.csv.wal");
+        }
+
+        @Test
+        public void testSyncWal_複数の追記をまとめて1回で同期する() throws IOException {
+                // Arrange
+                TableStorage storage = mock(TableStorage.class);
+                repository.setStorage(storage);
+
+                // Act
+                for (int i = 0; i < 5; i++) {
+                        repository.save(createStatus("host" + i, InstanceStatusValue.UP));
+                }
+                verify(storage, never()).sync(anyString());
+                repository.syncWal();
+                repository.syncWal();
+
+                // Assert: 追記がない間は同期しない
+                verify(storage, times(5)).append(eq("monitor_target.csv.wal"), any(CsvRowWriter.class),
+                                any(Object[].class));
+                verify(storage, times(1)).sync("monitor_target.csv.wal");
+        }
+
+        @Test
+        public void testSave_WALの行数によるチェックポイントはバックグラウンドで実行する() throws IOException {
+                // Arrange
+                TableStorage storage = mock(TableStorage.class);
+                repository.setStorage(storage);
+                repository.setCheckpointWalEntries(2);
+                List<String> checkpointThreads = new CopyOnWriteArrayList<>();
+                doAnswer(invocation -> {
+                        checkpointThreads.add(Thread.currentThread().getName());
+                        return null;
+                }).when(storage).overwrite(eq("monitor_target.csv"), any(String[].class), anyList());
+
+                // Act
+                repository.save(createStatus("host1", InstanceStatusValue.UP));
+                repository.save(createStatus("host2", InstanceStatusValue.UP));
+
+                // Assert
+                verify(storage, timeout(5000)).overwrite(eq("monitor_target.csv"), any(String[].class), anyList());
+                assertEquals(List.of("state-checkpoint"), checkpointThreads);
+        }
+
+        @Test
+        public void testRestore_スナップショットとWALから状態を復元する() throws IOException {
+                // Arrange: チェックポイント後の変更はWALにのみ記録される
+                repository.save(createStatus("host1", InstanceStatusValue.UP));
+                repository.save(createStatus("host2", InstanceStatusValue.UP));
+                repository.checkpoint();
+                repository.save(createStatus("host2", InstanceStatusValue.DOWN));
+                repository.updateAgentLastNoticeTime("host1", "2024-01-01 00:00:00");
+
+                // Act: 再起動を想定して新しいインスタンスで読み込む
+                InstanceStatusRepository restarted = new InstanceStatusRepository();
+                restarted.setOutputDir(tempDir.toString());
+                List<InstanceStatusCsv> all = restarted.findAll();
+
+                // Assert
+                assertEquals(2, all.size());
+                assertEquals("2024-01-01 00:00:00", restarted.findByHostname("host1").get().getAgentLastNoticeTime());
+                assertEquals(InstanceStatusValue.DOWN, restarted.findByHostname("host2").get().getAgentStatus());
+                // スナップショットはチェックポイント時点の内容のまま
+                assertTrue(Files.readAllLines(csvFilePath).stream()
+                                .anyMatch(line -> line.startsWith("host2,") && line.contains(",UP,")));
+        }
+
+        @Test
+        public void testFleetStateTable_状態をテーブルに保持し再起動時にテーブルへ復元する() throws IOException {
+                // Arrange
+                FleetStateTable table = new FleetStateTable(100);
+                repository.setFleetStateTable(table);
+                repository.save(createStatus("host1", InstanceStatusValue.UP));
+                repository.updateAgentLastNoticeTime("host1", "2024-01-01 00:00:00");
+
+                // Act: テーブルに直接書き込んだ値がリポジトリから読み込める（テーブルが保持先である）
+                table.recordStatus("host1", InstanceStatusValue.DOWN, null);
+                Optional<InstanceStatusCsv> found = repository.findByHostname("host1");
+
+                // Assert
+                assertEquals(InstanceStatusValue.DOWN, found.orElseThrow().getAgentStatus());
+                assertEquals("2024-01-01 00:00:00", table.findStatus("host1").orElseThrow().getAgentLastNoticeTime());
+
+                // 再起動を想定して新しいテーブルにWALから復元する
+                FleetStateTable restartedTable = new FleetStateTable(100);
+                InstanceStatusRepository restarted = new InstanceStatusRepository();
+                restarted.setOutputDir(tempDir.toString());
+                restarted.setFleetStateTable(restartedTable);
+                restarted.loadFleetState();
+                assertEquals(1, restartedTable.countStatuses());
+                assertEquals("2024-01-01 00:00:00",
+                                restartedTable.findStatus("host1").orElseThrow().getAgentLastNoticeTime());
+                assertEquals(InstanceStatusValue.UP, restarted.findAll().get(0).getAgentStatus());
+        }
+
+        @Test
+        public void testRecordAgentNotice_テーブルのみに記録しチェックポイントでスナップショットに書き出す() throws IOException {
+                // Arrange
+                FleetStateTable table = new FleetStateTable(100);
+                repository.setFleetStateTable(table);
+                repository.save(createStatus("host1", InstanceStatusValue.UP));
+                repository.checkpoint();
+                Path walPath = tempDir.resolve("monitor_target.csv.wal");
+                long walSize = Files.exists(walPath) ? Files.size(walPath) : 0L;
+                ZonedDateTime noticeTime = ZonedDateTime.of(2024, 1, 2, 3, 4, 5, 0, ZoneId.systemDefault());
+
+                // Act
+                repository.recordAgentNotice("host1", noticeTime);
+
+                // Assert: WALに追記せずにテーブルから読み込める
+                assertEquals(walSize, Files.exists(walPath) ? Files.size(walPath) : 0L);
+                assertEquals("2024-01-02 03:04:05",
+                                repository.findByHostname("host1").orElseThrow().getAgentLastNoticeTime());
+
+                // チェックポイントでスナップショットに書き出す
+                repository.checkpointIfDirty();
+                assertTrue(Files.readAllLines(csvFilePath).stream()
+                                .anyMatch(line -> line.startsWith("host1,") && line.endsWith("2024-01-02 03:04:05")));
+        }
+
+        @Test
+        public void testRecordAgentNotice_テーブルがない場合はWALに追記する() throws IOException {
+                // Arrange
+                repository.save(createStatus("host1", InstanceStatusValue.UP));
+                ZonedDateTime noticeTime = ZonedDateTime.of(2024, 1, 2, 3, 4, 5, 0, ZoneId.systemDefault());
+
+                // Act
+                repository.recordAgentNotice("host1", noticeTime);
+
+                // Assert: 再起動後もWALから復元できる
+                InstanceStatusRepository restarted = new InstanceStatusRepository();
+                restarted.setOutputDir(tempDir.toString());
+                assertEquals("2024-01-02 03:04:05",
+                                restarted.findByHostname("host1").orElseThrow().getAgentLastNoticeTime());
+        }
+
+        private InstanceStatusCsv createStatus(String hostname, InstanceStatusValue agentStatus) {
+                return new InstanceStatusCsv(hostname, "ECS", "ap-northeast-1", "c6i.2xlarge", "1", "c6i.8xlarge",
+                                "c6i.2xlarge", "c6i.micro", ZonedDateTime.now().toString(), agentStatus, "1.0.0",
+                                "");
+        }
 }
@@ -0,0 +1,93 @@
+package com.example.jsonreceiver.monitortarget;
+
+import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.dto.SlotJson;
+import com.example.jsoncommon.dto.UpJson;
+import com.example.jsoncommon.tcp.TcpClient;
+import com.example.jsoncommon.tcp.TcpConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class SendSlotServiceTest {
+
+    @Mock
+    private TcpClient tcpClient;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testSlotFor_受信した順にビット反転した位置へ均等に割り当てる() {
+        // Arrange: 6スロットは8スロットに切り上げる
+        SendSlotService service = new SendSlotService(tcpClient, 6);
+
+        // Act
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            slots.add(service.slotFor("host-" + i));
+        }
+
+        // Assert
+        assertEquals(8, service.getSlotCount());
+        assertEquals(List.of(0, 4, 2, 6, 1, 5, 3, 7), slots);
+        assertEquals(2, service.slotFor("host-2")); // 同じホストには同じスロット
+    }
+
+    @Test
+    public void testAssign_UP通知を送信したエージェントのホスト名宛てにスロットを通知する() {
+        // Arrange
+        SendSlotService service = new SendSlotService(tcpClient, 1024, Runnable::run);
+        ReflectionTestUtils.setField(service, "targetPort", 8888);
+        service.slotFor("host-0");
+        UpJson up = new UpJson(UUID.randomUUID(), ZonedDateTime.now(), "1.0", "host-1");
+
+        // Act
+        service.assign(up);
+
+        // Assert
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(tcpClient).sendJson(eq("host-1"), eq(8888), captor.capture(), any(TcpConfig.class));
+        SlotJson message = (SlotJson) captor.getValue();
+        assertEquals(NoticeType.SLOT, message.getNoticeType());
+        assertEquals("host-1", message.getInstanceName());
+        assertEquals(512, message.getSlotIndex());
+        assertEquals(1024, message.getSlotCount());
+    }
+
+    @Test
+    public void testAssign_送信の完了を待たずに戻る() {
+        // Arrange: 送信はExecutorに渡されるだけで、実行されるまでTCPクライアントを呼び出さない
+        List<Runnable> pending = new ArrayList<>();
+        SendSlotService service = new SendSlotService(tcpClient, 1024, pending::add);
+        ReflectionTestUtils.setField(service, "targetPort", 8888);
+        UpJson up = new UpJson(UUID.randomUUID(), ZonedDateTime.now(), "1.0", "host-1");
+
+        // Act
+        service.assign(up);
+
+        // Assert
+        verifyNoInteractions(tcpClient);
+        assertEquals(1, pending.size());
+        assertEquals(0, service.slotFor("host-1")); // スロットは呼び出し時に割り当て済み
+
+        pending.get(0).run();
+        verify(tcpClient).sendJson(eq("host-1"), eq(8888), any(SlotJson.class), any(TcpConfig.class));
+    }
+}
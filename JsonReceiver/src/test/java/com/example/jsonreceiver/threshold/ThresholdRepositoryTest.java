@@ -1,11 +1,14 @@
 package com.example.jsonreceiver.threshold;
 
+import com.example.jsoncommon.dto.ConditionLogic;
+import com.example.jsoncommon.dto.ScalingMode;
 import com.example.jsoncommon.dto.ThresholdCsv;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -98,6 +101,34 @@ public class ThresholdRepositoryTest {
         assertEquals(5, result.get().getUpperCpuDurationMin());
     }
 
+    @Test
+    public void testSave_辞書対象の列が辞書参照で保存され元の値に戻して読み込める() throws IOException {
+        // Arrange
+        Path dictDir = tempDir.resolve("dict");
+        ThresholdRepository dictRepository = new ThresholdRepository();
+        dictRepository.setOutputDir(dictDir.toString());
+        dictRepository.setDictionaryEnabled(true);
+
+        ThresholdCsv info = new ThresholdCsv();
+        info.setHostname("dict-host");
+        info.setScalingMode(ScalingMode.MANUAL);
+        info.setUpperConditionLogic(ConditionLogic.AND);
+        info.setLowerConditionLogic(ConditionLogic.OR);
+        info.setUpperCpuThreshold(85.0);
+
+        // Act
+        dictRepository.save(info);
+        Optional<ThresholdCsv> result = dictRepository.findByHostname("dict-host");
+
+        // Assert: ファイルにはホスト名・列挙値が書き込まれず、読み込み時に元の値に戻る
+        String content = Files.readString(dictDir.resolve(dictRepository.getFilePath()),
+                Charset.forName("EUC-JP"));
+        assertFalse(content.contains("dict-host"));
+        assertFalse(content.contains("MANUAL"));
+        assertTrue(result.isPresent());
+        assertEquals(info, result.get());
+    }
+
     @Test
     public void testFindByHostname_FileNotExists() throws IOException {
         // Arrange - ファイルを削除
@@ -3,7 +3,10 @@ package com.example.jsonsender;
 import com.example.jsonsender.tcp.TcpClient;
 
 import com.example.jsonsender.config.AppConfig;
+import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.util.TokenBucketRateLimiter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
@@ -12,19 +15,18 @@ import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +41,14 @@ public class JsonFileManager {
     private final ExecutorService resendExecutor;
     private volatile boolean running = true;
 
+    /** 送信に失敗した通知のスプール（初回の保存・再送信時に開く） */
+    private SpoolLog spoolLog;
+
+    private static final Charset EUC_JP = Charset.forName("EUC-JP");
+
+    /** 通常の通知の送信が終わったか確認する間隔（ミリ秒） */
+    private static final long LIVE_SEND_POLL_MILLIS = 10L;
+
     public JsonFileManager(AppConfig appConfig, @Lazy TcpClient tcpClient, ObjectMapper objectMapper) {
         this.appConfig = appConfig;
         this.tcpClient = tcpClient;
@@ -65,6 +75,11 @@ public class JsonFileManager {
         } catch (InterruptedException e) {
             resendExecutor.shutdownNow();
         }
+        synchronized (this) {
+            if (spoolLog != null) {
+                spoolLog.close();
+            }
+        }
     }
 
     private void createOutputDir() {
@@ -78,26 +93,26 @@ public class JsonFileManager {
         }
     }
 
+    /**
+     * 送信に失敗した通知をスプールに追記する
+     * 生存通知（HEARTBEAT）は後から再送信しても生存の確認にならないため保存しない。
+     *
+     * @param data 通知
+     */
     public void save(Object data) {
         try {
-            createOutputDir();
-            String timestamp = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS")
-                    .withZone(ZoneId.of(appConfig.getTimezone()))
-                    .format(Instant.now());
-
             com.fasterxml.jackson.databind.JsonNode node = objectMapper.valueToTree(data);
             String noticeType = node.has("NoticeType") ? node.get("NoticeType").asText() : "Unknown";
-
-            String filename = String.format("%s_%s.json", timestamp, noticeType);
-            Path path = Paths.get(appConfig.getJson().getOutputDir(), filename);
+            if (NoticeType.HEARTBEAT.name().equals(noticeType)) {
+                logger.debug("送信できなかった生存通知はスプールに保存せずに破棄します");
+                return;
+            }
+            markReplayed(node);
 
             // Write JSON with EUC-JP encoding
-            try (BufferedWriter writer = Files.newBufferedWriter(path, Charset.forName("EUC-JP"),
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                String jsonString = objectMapper.writeValueAsString(node);
-                writer.write(jsonString);
-            }
-            logger.warn("送信失敗したJSONをファイルに保存しました: {}", path);
+            byte[] payload = objectMapper.writeValueAsString(node).getBytes(EUC_JP);
+            long seq = spool().append(noticeType, payload);
+            logger.warn("送信失敗したJSONをスプールに保存しました: {} (通番={})", noticeType, seq);
         } catch (IOException e) {
             logger.error("JSONファイルの保存に失敗しました", e);
         } catch (Exception e) {
@@ -119,72 +134,129 @@ public class JsonFileManager {
         }
     }
 
-    private void processFiles() {
-        File dir = new File(appConfig.getJson().getOutputDir());
-        if (!dir.exists() || !dir.isDirectory()) {
-            return;
-        }
+    /**
+     * スプールの通知を古い順に再送信する（送信に失敗した時点で中断し、次回はその通知から再送信する）
+     */
+    private void processFiles() throws IOException {
+        SpoolLog spoolLog = spool();
+        spoolLog.deleteOlderThan(TimeUnit.DAYS.toMillis(appConfig.getJson().getRotationDay()));
 
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
-        if (files == null || files.length == 0) {
+        long pending = spoolLog.getPendingCount();
+        if (pending == 0) {
             return;
         }
+        logger.info("再送信する失敗JSONを{}件見つけました", pending);
 
-        logger.info("再送信する失敗JSONファイルを{}件見つけました", files.length);
-
-        // Sort by modification time (oldest first)
-        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
-
-        for (File file : files) {
-            if (!running)
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(appConfig.getJson().getReplayRatePerSec());
+        int resent = 0;
+        while (running) {
+            List<SpoolLog.Entry> batch = spoolLog.peek(appConfig.getJson().getReplayBatchSize());
+            if (batch.isEmpty()) {
+                break;
+            }
+            // 1回の接続でまとめて送信し、接続を閉じられた場合のみカーソルを進める
+            boolean success = tcpClient.streamDirectly(appConfig.getDist().getHostname(),
+                    appConfig.getDist().getPort(), channel -> {
+                        for (SpoolLog.Entry entry : batch) {
+                            awaitTurn(limiter);
+                            writeEntry(spoolLog, entry, channel);
+                        }
+                    });
+            if (!success) {
                 break;
+            }
+            spoolLog.commitAll(batch);
+            resent += batch.size();
+        }
+        logger.info("スプールの通知を{}件再送信しました (残り{}件)", resent, spoolLog.getPendingCount());
+    }
 
-            // Check for rotation (deletion of old files)
-            if (isOldFile(file)) {
-                if (file.delete()) {
-                    logger.info("古いファイルを削除しました: {}", file.getName());
-                } else {
-                    logger.warn("古いファイルの削除に失敗しました: {}", file.getName());
-                }
-                continue;
+    /**
+     * 通知を再送信できるまで待機する
+     * 通常の通知の送信中は再送信を止め、再送信は1秒あたりの上限件数を超えないようにする。
+     */
+    private void awaitTurn(TokenBucketRateLimiter limiter) throws IOException {
+        try {
+            while (tcpClient.isLiveSendInProgress()) {
+                TimeUnit.MILLISECONDS.sleep(LIVE_SEND_POLL_MILLIS);
             }
+            limiter.acquire(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("再送信の待機中に割り込まれました");
+        }
+    }
 
-            // Try to resend
-            try {
-                // Read JSON with EUC-JP encoding
-                com.fasterxml.jackson.databind.JsonNode jsonNode;
-                try (BufferedReader reader = Files.newBufferedReader(file.toPath(), Charset.forName("EUC-JP"))) {
-                    jsonNode = objectMapper.readTree(reader);
-                }
+    /**
+     * 再送信された通知であることを示す Replayed を設定する
+     * スプールには Replayed を設定した状態で保存するため、再送信時に本文を書き換える必要はない。
+     */
+    private static void markReplayed(com.fasterxml.jackson.databind.JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            objectNode.put("Replayed", true);
+        }
+    }
 
-                // We need to send it. We should use a method in TcpClient that DOES NOT save on
-                // failure,
-                // to avoid infinite loops of saving the same file.
-                // But TcpClient currently only has one method. We will modify TcpClient later.
-                // For now, assume we will add a boolean flag to sendJson.
-
-                boolean success = tcpClient.sendJsonDirectly(appConfig.getDist().getHostname(),
-                        appConfig.getDist().getPort(), jsonNode);
-
-                if (success) {
-                    if (file.delete()) {
-                        logger.info("再送信してファイルを削除しました: {}", file.getName());
-                    } else {
-                        logger.warn("再送信しましたがファイルの削除に失敗しました: {}", file.getName());
-                    }
-                } else {
-                    break;
-                }
+    /**
+     * スプールの通知を1行のJSONとして書き込む
+     * ASCIIのみの通知はファイルからソケットへそのまま転送し、解析も再エンコードも行わない。
+     * 非ASCII文字を含む通知は、EUC-JPから送信時の文字コードに変換して書き込む。
+     */
+    private void writeEntry(SpoolLog spoolLog, SpoolLog.Entry entry, WritableByteChannel channel)
+            throws IOException {
+        if (entry.ascii()) {
+            if (!spoolLog.transferTo(entry, channel)) {
+                logger.error("スプールの通知が1行のJSONではないため破棄します (通番={})", entry.seq());
+            }
+            return;
+        }
+        String json = new String(spoolLog.read(entry), EUC_JP);
+        ByteBuffer line = ByteBuffer.wrap((json + "\n").getBytes(Charset.defaultCharset()));
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+    }
 
-            } catch (IOException e) {
-                logger.error("ファイルの読み込みまたは解析に失敗しました: {}", file.getName(), e);
+    /**
+     * 出力ディレクトリのスプールを取得する（出力ディレクトリが変わった場合は開き直す）
+     */
+    private synchronized SpoolLog spool() throws IOException {
+        Path dir = Paths.get(appConfig.getJson().getOutputDir());
+        if (spoolLog == null || !spoolLog.getDir().equals(dir)) {
+            if (spoolLog != null) {
+                spoolLog.close();
             }
+            createOutputDir();
+            spoolLog = new SpoolLog(dir, appConfig.getJson().getSpoolSegmentBytes(),
+                    appConfig.getJson().getSpoolMaxBytes());
+            migrateLegacyFiles(spoolLog);
         }
+        return spoolLog;
     }
 
-    private boolean isOldFile(File file) {
-        long diff = System.currentTimeMillis() - file.lastModified();
-        long days = TimeUnit.MILLISECONDS.toDays(diff);
-        return days >= appConfig.getJson().getRotationDay();
+    /**
+     * 以前のバージョンが1件ずつ保存した .json ファイルを、更新日時の古い順にスプールに移す
+     */
+    private void migrateLegacyFiles(SpoolLog spoolLog) throws IOException {
+        File[] files = spoolLog.getDir().toFile().listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), EUC_JP)) {
+                com.fasterxml.jackson.databind.JsonNode node = objectMapper.readTree(reader);
+                String noticeType = node.has("NoticeType") ? node.get("NoticeType").asText() : "Unknown";
+                markReplayed(node);
+                spoolLog.append(noticeType, objectMapper.writeValueAsString(node).getBytes(EUC_JP));
+            } catch (IOException e) {
+                logger.error("ファイルの読み込みまたは解析に失敗しました: {}", file.getName(), e);
+                continue;
+            }
+            if (!file.delete()) {
+                logger.warn("スプールに移したファイルの削除に失敗しました: {}", file.getName());
+            }
+        }
+        logger.info("失敗JSONファイル{}件をスプールに移しました", files.length);
     }
 }
@@ -0,0 +1,349 @@
+package com.example.jsonsender;
+
+import com.example.jsoncommon.dto.HeartbeatJson;
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsoncommon.dto.NoticeBaseJson;
+import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.util.HostnameUtil;
+import com.example.jsonsender.config.AppConfig;
+import com.example.jsonsender.metrics.MetricsDeadband;
+import com.example.jsonsender.metrics.MetricsSendService;
+import com.example.jsonsender.tcp.TcpClient;
+import com.example.jsonsender.utils.IdUtils;
+import com.example.jsonsender.utils.TimeUtils;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * メトリクスの収集と送信を別スレッドで行うパイプライン
+ * 収集段は固定レートで起動し、起動時刻は「開始時刻 + 周期 × n」に固定されるため、送信に時間がかかってもずれない。
+ * 開始時刻はエージェントの起動時刻ではなく、時計上の周期内の位置（位相）で決める。位相はホスト名のハッシュから求め、
+ * JsonReceiverから送信スロット（SLOT 通知）を割り当てられた場合はスロットの位置とする。
+ * これにより、多数のエージェントが同時に再起動しても送信が通知間隔内に分散する。
+ * 収集したメトリクス通知は上限付きのキューに渡し、送信段が1件ずつ取り出して送信する。
+ * 受信側が停止していて送信段が再試行している間にキューが満杯になった場合は、
+ * 新しい通知を送信失敗時と同様に JsonFileManager に保存し、受信側の復旧後に再送信する。
+ * MetricsDeadband が有効な場合は、前回から変化のないメトリクスを送信せず、代わりに一定間隔で生存通知（HEARTBEAT）を送信する。
+ * 生存通知は送信できなかった場合も JsonFileManager に保存しない（再送信しても生存の確認にならないため）。
+ * キューの件数、最も古い通知の滞留時間、収集の起動遅延（ジッター）を取得できる。
+ */
+@Component
+public class MetricsPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsPipeline.class);
+
+    /** キューに渡したメトリクス通知または生存通知（enqueuedNanos はキューに追加した時刻） */
+    private record Entry(NoticeBaseJson notice, long enqueuedNanos) {
+    }
+
+    private final TcpClient tcpClient;
+    private final MetricsSendService metricsSendService;
+    private final AppConfig appConfig;
+    private final JsonFileManager jsonFileManager;
+    private final BlockingQueue<Entry> queue;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /** 変化のないメトリクスの送信抑止（未設定の場合は毎回送信する） */
+    private MetricsDeadband metricsDeadband;
+
+    /** 最後に送信を抑止したサンプルの時刻（収集段のスレッドのみが参照する） */
+    private ZonedDateTime lastSuppressedAt;
+
+    private ScheduledExecutorService sampler;
+    private ScheduledFuture<?> tick;
+    private Thread sender;
+    private volatile boolean running;
+
+    /** 周期内の送信位置（エポックミリ秒を周期で割った余り） */
+    private volatile long phaseOffsetMillis = -1L;
+
+    private volatile long lastJitterMicros;
+    private final AtomicLong maxJitterMicros = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    public MetricsPipeline(TcpClient tcpClient,
+            MetricsSendService metricsSendService,
+            AppConfig appConfig,
+            JsonFileManager jsonFileManager,
+            @Value("${app.pipeline.queue-capacity:64}") int queueCapacity) {
+        this.tcpClient = tcpClient;
+        this.metricsSendService = metricsSendService;
+        this.appConfig = appConfig;
+        this.jsonFileManager = jsonFileManager;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    @Autowired(required = false)
+    public void setMetricsDeadband(MetricsDeadband metricsDeadband) {
+        this.metricsDeadband = metricsDeadband;
+    }
+
+    /**
+     * 収集段と送信段のスレッドを開始する
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (phaseOffsetMillis < 0) {
+            phaseOffsetMillis = hashPhaseOffset(HostnameUtil.getHostname(), periodMillis());
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "metrics-sampler"));
+        schedule();
+
+        sender = new Thread(() -> {
+            while (running) {
+                try {
+                    sendNext(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    logger.error("メトリクス通知の送信中にエラーが発生しました", e);
+                }
+            }
+        }, "metrics-sender");
+        sender.start();
+        logger.info("メトリクスの収集を開始します: 間隔={}秒, 位相={}ミリ秒", appConfig.getNoticeIntervalSec(),
+                phaseOffsetMillis);
+    }
+
+    /**
+     * JsonReceiverから割り当てられた送信スロットに合わせて送信位置を変更する
+     *
+     * @param slotIndex スロット（0 ～ スロット数-1）
+     * @param slotCount 通知間隔を分割するスロット数
+     */
+    public synchronized void assignSlot(int slotIndex, int slotCount) {
+        if (slotCount <= 0 || slotIndex < 0 || slotIndex >= slotCount) {
+            logger.warn("送信スロットが不正なため無視します: {}/{}", slotIndex, slotCount);
+            return;
+        }
+        phaseOffsetMillis = slotIndex * periodMillis() / slotCount;
+        logger.info("送信スロットが割り当てられました: {}/{} (位相={}ミリ秒)", slotIndex, slotCount, phaseOffsetMillis);
+        if (running) {
+            schedule();
+        }
+    }
+
+    /**
+     * 送信位置（周期内の位相）を取得する
+     *
+     * @return エポックミリ秒を周期で割った余り（未開始でスロットも未割り当ての場合は-1）
+     */
+    public long getPhaseOffsetMillis() {
+        return phaseOffsetMillis;
+    }
+
+    /**
+     * ホスト名のハッシュから周期内の送信位置を求める（同じホスト名には常に同じ位置を返す）
+     *
+     * @param hostname     ホスト名
+     * @param periodMillis 周期（ミリ秒）
+     * @return 送信位置（0 ～ 周期-1）
+     */
+    static long hashPhaseOffset(String hostname, long periodMillis) {
+        CRC32 crc = new CRC32();
+        crc.update(hostname.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % periodMillis;
+    }
+
+    /**
+     * 次の送信位置から固定レートで収集段を起動する（起動済みの場合は起動し直す）
+     */
+    private void schedule() {
+        if (tick != null) {
+            tick.cancel(false);
+        }
+        long periodMillis = periodMillis();
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.floorMod(phaseOffsetMillis - System.currentTimeMillis(), periodMillis));
+        long firstTickNanos = System.nanoTime() + delayNanos;
+        AtomicLong ticks = new AtomicLong();
+        tick = sampler.scheduleAtFixedRate(() -> sample(firstTickNanos + ticks.getAndIncrement() * periodNanos),
+                delayNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private long periodMillis() {
+        return TimeUnit.SECONDS.toMillis(appConfig.getNoticeIntervalSec());
+    }
+
+    /**
+     * パイプラインが停止するまで待機する
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * 収集段と送信段を停止し、未送信の通知を JsonFileManager に保存する
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            sampler.shutdownNow();
+            sender.interrupt();
+            try {
+                sampler.awaitTermination(5, TimeUnit.SECONDS);
+                sender.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            spool(entry.notice());
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * メトリクスを収集し、キューに渡す（収集段の1回分）
+     *
+     * @param scheduledNanos 起動予定時刻（System.nanoTime()）
+     */
+    void sample(long scheduledNanos) {
+        long jitterMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledNanos);
+        lastJitterMicros = jitterMicros;
+        maxJitterMicros.accumulateAndGet(jitterMicros, Math::max);
+        try {
+            logger.debug("メトリクスを収集します");
+            Metrics metrics = metricsSendService.collect();
+            ZonedDateTime now = TimeUtils.getNow(appConfig.getTimezone());
+            if (metricsDeadband != null) {
+                switch (metricsDeadband.offer(metrics, now.toInstant().toEpochMilli())) {
+                    case SKIP -> {
+                        lastSuppressedAt = now;
+                        return;
+                    }
+                    case HEARTBEAT -> {
+                        lastSuppressedAt = null;
+                        enqueue(heartbeat(now, metricsDeadband.takeSuppressed()));
+                        return;
+                    }
+                    case FULL -> {
+                        // 前回の生存通知以降に抑止したサンプルを先に伝える
+                        int pending = metricsDeadband.takeSuppressed();
+                        if (pending > 0 && lastSuppressedAt != null) {
+                            enqueue(heartbeat(lastSuppressedAt, pending));
+                        }
+                        lastSuppressedAt = null;
+                    }
+                }
+            }
+            enqueue(new MetricsJson(
+                    IdUtils.getId(),
+                    NoticeType.METRICS,
+                    now,
+                    appConfig.getAgentVersion(),
+                    HostnameUtil.getHostname(),
+                    metrics));
+        } catch (Exception e) {
+            // 次の周期で再度収集する
+            logger.error("メトリクスの収集中にエラーが発生しました", e);
+        }
+    }
+
+    private HeartbeatJson heartbeat(ZonedDateTime timestamp, int sampleCount) {
+        return new HeartbeatJson(
+                IdUtils.getId(),
+                timestamp,
+                appConfig.getAgentVersion(),
+                HostnameUtil.getHostname(),
+                sampleCount,
+                appConfig.getNoticeIntervalSec());
+    }
+
+    private void enqueue(NoticeBaseJson notice) {
+        if (!queue.offer(new Entry(notice, System.nanoTime()))) {
+            overflowCount.incrementAndGet();
+            logger.warn("送信キューが満杯のため、通知をファイルに保存します (キュー件数={}, 最古の滞留時間={}ミリ秒)",
+                    queue.size(), getOldestEntryAgeMillis());
+            spool(notice);
+        }
+    }
+
+    /**
+     * キューから通知を1件取り出して送信する（送信段の1回分）
+     *
+     * @return 送信した場合true、待機時間内に通知がなかった場合false
+     */
+    boolean sendNext(long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry = queue.poll(timeout, unit);
+        if (entry == null) {
+            return false;
+        }
+        tcpClient.sendJson(appConfig.getDist().getHostname(), appConfig.getDist().getPort(), entry.notice());
+        return true;
+    }
+
+    /**
+     * キューに滞留している通知の件数を取得する
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * キューに滞留している最も古い通知の滞留時間を取得する
+     *
+     * @return 滞留時間（ミリ秒、キューが空の場合は0）
+     */
+    public long getOldestEntryAgeMillis() {
+        Entry oldest = queue.peek();
+        return oldest == null ? 0L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.enqueuedNanos());
+    }
+
+    /**
+     * 直近の収集の起動遅延を取得する
+     *
+     * @return 起動予定時刻からの遅延（マイクロ秒）
+     */
+    public long getLastJitterMicros() {
+        return lastJitterMicros;
+    }
+
+    /**
+     * 起動後の収集の起動遅延の最大値を取得する
+     *
+     * @return 起動予定時刻からの遅延の最大値（マイクロ秒）
+     */
+    public long getMaxJitterMicros() {
+        return maxJitterMicros.get();
+    }
+
+    /**
+     * キューが満杯のためファイルに保存した通知の件数を取得する
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    private void spool(NoticeBaseJson notice) {
+        if (appConfig.getJson().isFailedArchive()) {
+            jsonFileManager.save(notice);
+        } else {
+            logger.warn("送信できなかった通知を破棄しました: {}", notice.getId());
+        }
+    }
+}
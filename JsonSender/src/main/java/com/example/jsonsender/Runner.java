@@ -2,13 +2,10 @@ package com.example.jsonsender;
 
 import com.example.jsonsender.tcp.TcpClient;
 import com.example.jsoncommon.dto.*;
-import com.example.jsonsender.metrics.MetricsSendService;
 import com.example.jsoncommon.util.HostnameUtil;
 import com.example.jsonsender.utils.IdUtils;
 import com.example.jsonsender.utils.TimeUtils;
 import jakarta.annotation.PreDestroy;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
@@ -17,16 +14,15 @@ import org.springframework.stereotype.Component;
 @Order(2)
 public class Runner implements CommandLineRunner {
 
-    private static final Logger logger = LoggerFactory.getLogger(Runner.class);
     private final TcpClient tcpClient;
-    private final MetricsSendService metricsSendService;
+    private final MetricsPipeline metricsPipeline;
     private final com.example.jsonsender.config.AppConfig appConfig;
 
     public Runner(TcpClient tcpClient,
-            MetricsSendService metricsSendService,
+            MetricsPipeline metricsPipeline,
             com.example.jsonsender.config.AppConfig appConfig) {
         this.tcpClient = tcpClient;
-        this.metricsSendService = metricsSendService;
+        this.metricsPipeline = metricsPipeline;
         this.appConfig = appConfig;
     }
 
@@ -40,36 +36,16 @@ public class Runner implements CommandLineRunner {
                 HostnameUtil.getHostname());
         tcpClient.sendJson(appConfig.getDist().getHostname(), appConfig.getDist().getPort(), upNotice);
 
-        while (true) {
-            try {
-                logger.debug("メトリクス収集ループを開始します");
-                Metrics metrics = metricsSendService.collect();
-                MetricsJson metricsJson = new MetricsJson(
-                        IdUtils.getId(),
-                        NoticeType.METRICS,
-                        TimeUtils.getNow(appConfig.getTimezone()),
-                        appConfig.getAgentVersion(),
-                        HostnameUtil.getHostname(),
-                        metrics);
-
-                tcpClient.sendJson(appConfig.getDist().getHostname(), appConfig.getDist().getPort(), metricsJson);
-
-                logger.debug("待機します: {}秒", appConfig.getNoticeIntervalSec());
-                Thread.sleep(appConfig.getNoticeIntervalSec() * 1000L);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                // Log error but continue loop
-                logger.error("メトリクス収集ループでエラーが発生しました。{}秒後に再試行します",
-                        appConfig.getErrorRetryIntervalSec(), e);
-                Thread.sleep(appConfig.getErrorRetryIntervalSec() * 1000L);
-            }
-        }
+        // 収集と送信は別スレッドで行い、停止するまで待機する
+        metricsPipeline.start();
+        metricsPipeline.awaitTermination();
     }
 
     @PreDestroy
     public void onExit() {
+        // 停止通知の後にメトリクス通知が送信されないよう、先にパイプラインを停止する
+        metricsPipeline.stop();
+
         // Send DOWN notification
         DownJson downNotice = new DownJson(
                 IdUtils.getId(),
@@ -0,0 +1,713 @@
+package com.example.jsonsender;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * 送信に失敗した通知を保存する追記専用のセグメントログ（スプール）
+ * 通知は1行1件のJSON（EUC-JP）としてセグメント（.jsonl）に追記し、同名の .idx に
+ * 「通番(8バイト),位置(4バイト),長さ(4バイト)」を記録する。長さの最上位ビットは本文に非ASCII文字を含むことを示す。
+ * セグメントが上限サイズを超えると次のセグメントに切り替える。
+ * METRICS 通知とそれ以外（UP/DOWN など）は別のレーンに保存し、容量の上限を超えた場合は古い METRICS のセグメントから削除する。
+ * 再送信は両レーンの先頭から通番の小さい順に読み込み、送信できた位置（カーソル）を spool.cursor に保存する。
+ * ASCII のみの本文は改行まで含めて1行のJSONとなっているため、transferTo() で解析せずにそのまま送信できる。
+ * 起動時は .idx に記録されていない末尾の書きかけのデータを切り詰める。
+ */
+public class SpoolLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolLog.class);
+
+    static final String SEGMENT_SUFFIX = ".jsonl";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String CURSOR_FILE = "spool.cursor";
+
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int NON_ASCII_FLAG = 0x80000000;
+    private static final int CURSOR_MAGIC = 0x53504331; // "SPC1"
+
+    /** レーン（METRICS 通知とそれ以外） */
+    public enum LaneType {
+        METRICS, CONTROL
+    }
+
+    /**
+     * スプールに保存した通知の位置
+     *
+     * @param lane      レーン
+     * @param seq       通番
+     * @param segmentId セグメントID
+     * @param position  セグメント内の本文の位置
+     * @param length    本文のバイト数（末尾の改行を含まない）
+     * @param ascii     本文がASCIIのみの場合true
+     */
+    public record Entry(LaneType lane, long seq, long segmentId, int position, int length, boolean ascii) {
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final Lane[] lanes = new Lane[LaneType.values().length];
+
+    /** 次に追記する通番 */
+    private long nextSeq = 1L;
+
+    /**
+     * @param dir          スプールのディレクトリ
+     * @param segmentBytes セグメントを切り替えるバイト数
+     * @param maxBytes     スプール全体の上限バイト数
+     * @throws IOException IO例外
+     */
+    public SpoolLog(Path dir, long segmentBytes, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        for (LaneType type : LaneType.values()) {
+            lanes[type.ordinal()] = new Lane(type);
+        }
+        open();
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * 通知を追記する
+     *
+     * @param noticeType 通知種別（METRICS の場合は METRICS レーンに保存する）
+     * @param payload    本文（EUC-JPのJSON、改行を含まないこと）
+     * @return 追記した通知の通番
+     * @throws IOException IO例外
+     */
+    public synchronized long append(String noticeType, byte[] payload) throws IOException {
+        Lane lane = lanes["METRICS".equals(noticeType) ? LaneType.METRICS.ordinal() : LaneType.CONTROL.ordinal()];
+        long seq = nextSeq++;
+        lane.append(seq, payload);
+        enforceQuota();
+        return seq;
+    }
+
+    /**
+     * 次に再送信する通知（両レーンの先頭のうち通番の小さいもの）を取得する
+     *
+     * @return 通知（未送信の通知がない場合はOptional.empty()）
+     * @throws IOException IO例外
+     */
+    public synchronized Optional<Entry> peek() throws IOException {
+        List<Entry> entries = peek(1);
+        return entries.isEmpty() ? Optional.empty() : Optional.of(entries.get(0));
+    }
+
+    /**
+     * 次に再送信する通知を、両レーンの先頭から通番の小さい順に最大件数まで取得する（カーソルは進めない）
+     *
+     * @param maxCount 最大件数
+     * @return 通知の一覧
+     * @throws IOException IO例外
+     */
+    public synchronized List<Entry> peek(int maxCount) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        LaneReader[] readers = new LaneReader[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            readers[i] = new LaneReader(lanes[i]);
+        }
+        while (entries.size() < maxCount) {
+            LaneReader next = null;
+            for (LaneReader reader : readers) {
+                if (reader.head != null && (next == null || reader.head.seq() < next.head.seq())) {
+                    next = reader;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            entries.add(next.head);
+            next.advance();
+        }
+        return entries;
+    }
+
+    /**
+     * 通知の本文を読み込む
+     *
+     * @param entry peek() で取得した通知
+     * @return 本文（EUC-JPのJSON）
+     * @throws IOException 容量超過などで通知が削除された場合、読み込みに失敗した場合
+     */
+    public synchronized byte[] read(Entry entry) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(entry.length());
+        FileChannel channel = segmentOf(entry).dataChannel();
+        while (payload.hasRemaining()) {
+            if (channel.read(payload, entry.position() + payload.position()) < 0) {
+                throw new IOException("スプールのセグメントが途中で終わっています: 通番=" + entry.seq());
+            }
+        }
+        return payload.array();
+    }
+
+    /**
+     * 通知の本文を末尾の改行まで含めて、解析せずにそのまま書き込む（FileChannel.transferTo を使う）
+     * 本文の先頭が '{' で、本文の直後が改行であることのみを確認する。
+     *
+     * @param entry  peek() で取得した通知
+     * @param target 書き込み先
+     * @return 書き込んだ場合true、1行のJSONとして区切られていない場合false
+     * @throws IOException 容量超過などで通知が削除された場合、書き込みに失敗した場合
+     */
+    public synchronized boolean transferTo(Entry entry, WritableByteChannel target) throws IOException {
+        FileChannel channel = segmentOf(entry).dataChannel();
+        ByteBuffer edge = ByteBuffer.allocate(1);
+        if (entry.length() == 0 || channel.read(edge, entry.position()) != 1 || edge.get(0) != '{') {
+            return false;
+        }
+        edge.clear();
+        if (channel.read(edge, (long) entry.position() + entry.length()) != 1 || edge.get(0) != '\n') {
+            return false;
+        }
+        long position = entry.position();
+        long end = position + entry.length() + 1;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("スプールの通知を書き込めませんでした: 通番=" + entry.seq());
+            }
+            position += transferred;
+        }
+        return true;
+    }
+
+    /**
+     * 通知を送信済みとしてカーソルを進める（読み終えたセグメントは削除する）
+     *
+     * @param entry peek() で取得した通知
+     * @throws IOException IO例外
+     */
+    public synchronized void commit(Entry entry) throws IOException {
+        if (advance(entry)) {
+            saveCursor();
+        }
+    }
+
+    /**
+     * 複数の通知を送信済みとしてカーソルを進め、カーソルのファイルは最後に1回だけ書き込む
+     *
+     * @param entries peek() で取得した通知（取得した順）
+     * @throws IOException IO例外
+     */
+    public synchronized void commitAll(List<Entry> entries) throws IOException {
+        boolean advanced = false;
+        for (Entry entry : entries) {
+            advanced |= advance(entry);
+        }
+        if (advanced) {
+            saveCursor();
+        }
+    }
+
+    /**
+     * 通知がレーンの先頭であればカーソルを1件進める（読み終えたセグメントは削除する）
+     *
+     * @return カーソルを進めた場合true（容量超過などで既に削除された通知の場合false）
+     */
+    private boolean advance(Entry entry) throws IOException {
+        Lane lane = lanes[entry.lane().ordinal()];
+        Entry head = lane.head();
+        if (head == null || head.seq() != entry.seq()) {
+            return false;
+        }
+        lane.cursorIndex++;
+        lane.deleteConsumedSegments();
+        return true;
+    }
+
+    /**
+     * 最終更新から指定時間を過ぎたセグメントを削除する
+     *
+     * @param maxAgeMillis 保持する時間（ミリ秒）
+     * @return 削除したセグメント数
+     * @throws IOException IO例外
+     */
+    public synchronized int deleteOlderThan(long maxAgeMillis) throws IOException {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        for (Lane lane : lanes) {
+            while (!lane.segments.isEmpty()) {
+                Segment oldest = lane.segments.firstEntry().getValue();
+                if (Files.getLastModifiedTime(oldest.data).toMillis() >= cutoff) {
+                    break;
+                }
+                logger.info("保持期間を過ぎたスプールのセグメントを削除しました: {} ({}件)",
+                        oldest.data.getFileName(), oldest.count);
+                lane.evictOldest();
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            saveCursor();
+        }
+        return deleted;
+    }
+
+    /**
+     * 未送信の通知の件数を取得する
+     */
+    public synchronized long getPendingCount() {
+        long pending = 0L;
+        for (Lane lane : lanes) {
+            for (Segment segment : lane.segments.values()) {
+                pending += segment.count;
+            }
+            if (!lane.segments.isEmpty()) {
+                pending -= lane.cursorIndex;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * スプールのセグメントの合計バイト数を取得する
+     */
+    public synchronized long getTotalBytes() {
+        long total = 0L;
+        for (Lane lane : lanes) {
+            for (Segment segment : lane.segments.values()) {
+                total += segment.bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * レーンごとのセグメント数（テスト用）
+     */
+    synchronized Map<LaneType, Integer> segmentCounts() {
+        Map<LaneType, Integer> counts = new TreeMap<>();
+        for (Lane lane : lanes) {
+            counts.put(lane.type, lane.segments.size());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Lane lane : lanes) {
+            lane.closeFiles();
+        }
+    }
+
+    /**
+     * 既存のセグメントとカーソルを読み込む
+     */
+    private void open() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                String base = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+                int separator = base.lastIndexOf('-');
+                if (separator < 0) {
+                    continue;
+                }
+                LaneType type;
+                long id;
+                try {
+                    type = LaneType.valueOf(base.substring(0, separator).toUpperCase());
+                    id = Long.parseLong(base.substring(separator + 1));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                Segment segment = Segment.recover(file, dir.resolve(base + INDEX_SUFFIX), id);
+                lanes[type.ordinal()].segments.put(id, segment);
+                nextSeq = Math.max(nextSeq, segment.lastSeq + 1);
+            }
+        }
+        for (Lane lane : lanes) {
+            if (!lane.segments.isEmpty()) {
+                lane.nextSegmentId = lane.segments.lastKey() + 1;
+            }
+        }
+        loadCursor();
+        for (Lane lane : lanes) {
+            lane.deleteConsumedSegments();
+        }
+        long pending = getPendingCount();
+        if (pending > 0) {
+            logger.info("未送信の通知がスプールに{}件あります: {}", pending, dir);
+        }
+    }
+
+    private void loadCursor() {
+        Path cursorFile = dir.resolve(CURSOR_FILE);
+        if (!Files.exists(cursorFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cursorFile)))) {
+            if (in.readInt() != CURSOR_MAGIC) {
+                logger.warn("スプールのカーソルの形式が不正なため先頭から再送信します: {}", cursorFile);
+                return;
+            }
+            for (Lane lane : lanes) {
+                long segmentId = in.readLong();
+                int index = in.readInt();
+                // 削除済みのセグメントのIDを再利用しない
+                lane.nextSegmentId = Math.max(lane.nextSegmentId, segmentId);
+                // カーソルより前のセグメントは送信済み
+                lane.segments.headMap(segmentId).clear();
+                Segment first = lane.segments.isEmpty() ? null : lane.segments.firstEntry().getValue();
+                lane.cursorIndex = first != null && first.id == segmentId ? Math.min(index, first.count) : 0;
+            }
+        } catch (IOException e) {
+            logger.warn("スプールのカーソルを読み込めないため先頭から再送信します: {}", cursorFile, e);
+        }
+    }
+
+    /**
+     * カーソルを保存する（一時ファイルに書き込んでから置き換える）
+     */
+    private void saveCursor() throws IOException {
+        Path cursorFile = dir.resolve(CURSOR_FILE);
+        Path temp = dir.resolve(CURSOR_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(CURSOR_MAGIC);
+            for (Lane lane : lanes) {
+                out.writeLong(lane.segments.isEmpty() ? lane.nextSegmentId : lane.segments.firstKey());
+                out.writeInt(lane.cursorIndex);
+            }
+        }
+        try {
+            Files.move(temp, cursorFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, cursorFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 上限バイト数を超えている間、古いセグメントを削除する（METRICS レーンを優先して削除する）
+     */
+    private void enforceQuota() throws IOException {
+        boolean evicted = false;
+        while (getTotalBytes() > maxBytes) {
+            Lane victim = !lanes[LaneType.METRICS.ordinal()].segments.isEmpty()
+                    ? lanes[LaneType.METRICS.ordinal()]
+                    : lanes[LaneType.CONTROL.ordinal()];
+            if (victim.segments.isEmpty()) {
+                break;
+            }
+            Segment oldest = victim.segments.firstEntry().getValue();
+            logger.warn("スプールの容量の上限（{}バイト）を超えたため、古い通知を削除しました: {} ({}件)",
+                    maxBytes, oldest.data.getFileName(), oldest.count - victim.cursorIndex);
+            victim.evictOldest();
+            evicted = true;
+        }
+        if (evicted) {
+            saveCursor();
+        }
+    }
+
+    private static boolean isAscii(byte[] payload) {
+        for (byte b : payload) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Segment segmentOf(Entry entry) throws IOException {
+        Segment segment = lanes[entry.lane().ordinal()].segments.get(entry.segmentId());
+        if (segment == null) {
+            throw new IOException("スプールの通知は削除されています: 通番=" + entry.seq());
+        }
+        return segment;
+    }
+
+    /**
+     * peek(int) でレーンを先頭から順に読み込む位置
+     */
+    private static final class LaneReader {
+
+        private final Lane lane;
+        private final Iterator<Segment> segments;
+        private Segment segment;
+        private int index;
+        private Entry head;
+
+        private LaneReader(Lane lane) throws IOException {
+            this.lane = lane;
+            this.segments = lane.segments.values().iterator();
+            this.segment = segments.hasNext() ? segments.next() : null;
+            this.index = lane.cursorIndex;
+            load();
+        }
+
+        private void advance() throws IOException {
+            index++;
+            load();
+        }
+
+        private void load() throws IOException {
+            while (segment != null && index >= segment.count) {
+                segment = segments.hasNext() ? segments.next() : null;
+                index = 0;
+            }
+            head = segment == null ? null : lane.entryAt(segment, index);
+        }
+    }
+
+    /**
+     * レーン（セグメントの列と読み込み位置）
+     */
+    private final class Lane {
+
+        private final LaneType type;
+
+        /** セグメントID → セグメント（先頭がカーソルのあるセグメント、末尾が書き込み中のセグメント） */
+        private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+        /** 先頭のセグメント内の次に読み込むレコードの番号 */
+        private int cursorIndex;
+
+        /** 次に作成するセグメントのID */
+        private long nextSegmentId = 1L;
+
+        /** 書き込み中のセグメントのファイル */
+        private FileChannel dataWriter;
+        private FileChannel indexWriter;
+
+        private Lane(LaneType type) {
+            this.type = type;
+        }
+
+        private void append(long seq, byte[] payload) throws IOException {
+            Segment active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+            if (active == null || active.bytes >= segmentBytes) {
+                active = createSegment();
+            }
+            if (dataWriter == null) {
+                dataWriter = FileChannel.open(active.data, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                indexWriter = FileChannel.open(active.index, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+
+            int position = (int) active.bytes;
+            ByteBuffer line = ByteBuffer.allocate(payload.length + 1);
+            line.put(payload).put((byte) '\n').flip();
+            while (line.hasRemaining()) {
+                dataWriter.write(line);
+            }
+            // 本文を書き込んでから索引を書き込むため、索引が書きかけの本文を指すことはない
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+            entry.putLong(seq).putInt(position).putInt(payload.length | (isAscii(payload) ? 0 : NON_ASCII_FLAG)).flip();
+            while (entry.hasRemaining()) {
+                indexWriter.write(entry);
+            }
+            active.bytes += payload.length + 1;
+            active.count++;
+            active.lastSeq = seq;
+        }
+
+        private Segment createSegment() throws IOException {
+            closeWriters();
+            long id = nextSegmentId++;
+            String base = String.format("%s-%016d", type.name().toLowerCase(), id);
+            Segment segment = new Segment(dir.resolve(base + SEGMENT_SUFFIX), dir.resolve(base + INDEX_SUFFIX), id);
+            Files.createFile(segment.data);
+            Files.createFile(segment.index);
+            if (segments.isEmpty()) {
+                cursorIndex = 0;
+            }
+            segments.put(id, segment);
+            return segment;
+        }
+
+        /**
+         * カーソルの位置の通知を取得する
+         */
+        private Entry head() throws IOException {
+            if (segments.isEmpty()) {
+                return null;
+            }
+            Segment segment = segments.firstEntry().getValue();
+            return cursorIndex < segment.count ? entryAt(segment, cursorIndex) : null;
+        }
+
+        private Entry entryAt(Segment segment, int index) throws IOException {
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+            FileChannel channel = segment.indexChannel();
+            while (entry.hasRemaining()) {
+                if (channel.read(entry, (long) index * INDEX_ENTRY_BYTES + entry.position()) < 0) {
+                    throw new IOException("スプールの索引が途中で終わっています: " + segment.index.getFileName());
+                }
+            }
+            entry.flip();
+            long seq = entry.getLong();
+            int position = entry.getInt();
+            int length = entry.getInt();
+            return new Entry(type, seq, segment.id, position, length & ~NON_ASCII_FLAG,
+                    (length & NON_ASCII_FLAG) == 0);
+        }
+
+        /**
+         * 読み終えたセグメントを削除する（書き込み中のセグメントは削除しない）
+         */
+        private void deleteConsumedSegments() throws IOException {
+            while (segments.size() > 1 && cursorIndex >= segments.firstEntry().getValue().count) {
+                deleteFirst();
+                cursorIndex = 0;
+            }
+        }
+
+        /**
+         * 先頭のセグメントを未送信の通知ごと削除する
+         */
+        private void evictOldest() throws IOException {
+            if (segments.size() == 1) {
+                closeWriters();
+            }
+            deleteFirst();
+            cursorIndex = 0;
+        }
+
+        private void deleteFirst() throws IOException {
+            Segment segment = segments.pollFirstEntry().getValue();
+            nextSegmentId = Math.max(nextSegmentId, segment.id + 1);
+            segment.closeReaders();
+            Files.deleteIfExists(segment.data);
+            Files.deleteIfExists(segment.index);
+        }
+
+        private void closeWriters() throws IOException {
+            if (dataWriter != null) {
+                dataWriter.close();
+                indexWriter.close();
+            }
+            dataWriter = null;
+            indexWriter = null;
+        }
+
+        private void closeFiles() {
+            try {
+                closeWriters();
+                for (Segment segment : segments.values()) {
+                    segment.closeReaders();
+                }
+            } catch (IOException e) {
+                logger.warn("スプールのファイルのクローズに失敗しました: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * セグメント（本文と索引のファイル）
+     */
+    private static final class Segment {
+
+        private final Path data;
+        private final Path index;
+        private final long id;
+        private long bytes;
+        private int count;
+        private long lastSeq;
+
+        /** 読み込み用のファイル（初回の読み込み時に開く） */
+        private FileChannel dataReader;
+        private FileChannel indexReader;
+
+        private Segment(Path data, Path index, long id) {
+            this.data = data;
+            this.index = index;
+            this.id = id;
+        }
+
+        private FileChannel dataChannel() throws IOException {
+            if (dataReader == null) {
+                dataReader = FileChannel.open(data, StandardOpenOption.READ);
+            }
+            return dataReader;
+        }
+
+        private FileChannel indexChannel() throws IOException {
+            if (indexReader == null) {
+                indexReader = FileChannel.open(index, StandardOpenOption.READ);
+            }
+            return indexReader;
+        }
+
+        private void closeReaders() throws IOException {
+            if (dataReader != null) {
+                dataReader.close();
+            }
+            if (indexReader != null) {
+                indexReader.close();
+            }
+            dataReader = null;
+            indexReader = null;
+        }
+
+        /**
+         * 既存のセグメントを読み込み、索引に記録されていない末尾のデータを切り詰める
+         */
+        private static Segment recover(Path data, Path index, long id) throws IOException {
+            Segment segment = new Segment(data, index, id);
+            if (!Files.exists(index)) {
+                Files.createFile(index);
+            }
+            long indexBytes = Files.size(index);
+            int count = (int) (indexBytes / INDEX_ENTRY_BYTES);
+            long dataEnd = 0L;
+            if (count > 0) {
+                try (RandomAccessFile in = new RandomAccessFile(index.toFile(), "r")) {
+                    in.seek((long) (count - 1) * INDEX_ENTRY_BYTES);
+                    segment.lastSeq = in.readLong();
+                    int position = in.readInt();
+                    int length = in.readInt() & ~NON_ASCII_FLAG;
+                    dataEnd = (long) position + length + 1;
+                }
+            }
+            long dataBytes = Files.size(data);
+            if (dataEnd > dataBytes) {
+                // 本文より先に索引が書き込まれることはないため、ここに来るのはファイルが破損した場合のみ
+                logger.warn("スプールのセグメントが破損しているため読み込みません: {}", data);
+                count = 0;
+                dataEnd = 0L;
+            }
+            if (indexBytes != (long) count * INDEX_ENTRY_BYTES || dataBytes != dataEnd) {
+                logger.warn("スプールのセグメントの書きかけのデータを切り詰めました: {}", data.getFileName());
+                try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+                    channel.truncate((long) count * INDEX_ENTRY_BYTES);
+                }
+                try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+                    channel.truncate(dataEnd);
+                }
+            }
+            segment.count = count;
+            segment.bytes = dataEnd;
+            return segment;
+        }
+    }
+}
@@ -68,5 +68,20 @@ public class AppConfig {
         private int rotationDay;
 
         private boolean failedArchive;
+
+        /** スプールのセグメントを切り替えるバイト数 */
+        @Min(1024)
+        private long spoolSegmentBytes = 4L * 1024 * 1024;
+
+        /** スプール全体の上限バイト数（超えた場合は古い METRICS 通知から削除する） */
+        @Min(1024)
+        private long spoolMaxBytes = 256L * 1024 * 1024;
+
+        /** 再送信時に1回の接続で送信する通知の件数 */
+        @Min(1)
+        private int replayBatchSize = 500;
+
+        /** 再送信する通知の1秒あたりの上限件数（0以下の場合は制限しない） */
+        private double replayRatePerSec = 50;
     }
 }
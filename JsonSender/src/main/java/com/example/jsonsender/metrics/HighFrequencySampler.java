@@ -0,0 +1,169 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.UsageStats;
+import com.example.jsonsender.config.AppConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU使用率とメモリ使用率を通知間隔より短い間隔で /proc から取得し、通知間隔ごとに集計する取得器
+ * サンプルはプリミティブ配列に保持し、取得のたびにオブジェクトを生成しない。
+ * 通知間隔ごとに drain() で最小・最大・平均・95パーセンタイルを求め、保持していたサンプルを破棄する。
+ * 保持数を超えた場合は古いサンプルから上書きする（送信段が止まっていても保持するサンプル数は増えない）。
+ * /proc から取得する場合（metrics.collector=proc）のみ有効にできる。
+ */
+@Component
+@ConditionalOnProperty(name = "metrics.sampling.enabled", havingValue = "true")
+public class HighFrequencySampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HighFrequencySampler.class);
+
+    private static final double PERCENTILE = 0.95;
+
+    private final ProcMetricsCollector procMetricsCollector;
+    private final long intervalMillis;
+
+    /** サンプルのリングバッファ（NaN は取得できなかったサンプル） */
+    private final double[] cpuSamples;
+    private final double[] memorySamples;
+    private int head;
+    private int size;
+
+    /** 取得結果の書き込み先と集計用の作業領域（使い回す） */
+    private final double[] usage = new double[2];
+    private final double[] scratch;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param procMetricsCollector /proc から取得するコレクター
+     * @param appConfig            アプリケーション設定（保持数は通知間隔の2倍分とする）
+     * @param intervalMillis       取得間隔（ミリ秒）
+     */
+    public HighFrequencySampler(ProcMetricsCollector procMetricsCollector,
+            AppConfig appConfig,
+            @Value("${metrics.sampling.interval-ms:250}") long intervalMillis) {
+        this.procMetricsCollector = procMetricsCollector;
+        this.intervalMillis = Math.max(1L, intervalMillis);
+        int capacity = (int) Math.max(1L,
+                TimeUnit.SECONDS.toMillis(appConfig.getNoticeIntervalSec()) * 2 / this.intervalMillis);
+        this.cpuSamples = new double[capacity];
+        this.memorySamples = new double[capacity];
+        this.scratch = new double[capacity];
+    }
+
+    /**
+     * 取得を開始する
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-fast-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                sample();
+            } catch (Exception e) {
+                logger.error("メトリクスの取得中にエラーが発生しました", e);
+            }
+        }, 0L, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("メトリクスの高頻度の取得を開始します: 間隔={}ミリ秒, 保持数={}", intervalMillis, cpuSamples.length);
+    }
+
+    /**
+     * 取得を停止する
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * CPU使用率とメモリ使用率を1回取得し、リングバッファに追加する
+     */
+    void sample() {
+        procMetricsCollector.sample(usage);
+        add(usage[0], usage[1]);
+    }
+
+    /**
+     * サンプルをリングバッファに追加する
+     *
+     * @param cpuUsage    CPU使用率（取得できなかった場合はNaN）
+     * @param memoryUsage メモリ使用率（取得できなかった場合はNaN）
+     */
+    synchronized void add(double cpuUsage, double memoryUsage) {
+        cpuSamples[head] = cpuUsage;
+        memorySamples[head] = memoryUsage;
+        head = (head + 1) % cpuSamples.length;
+        size = Math.min(size + 1, cpuSamples.length);
+    }
+
+    /**
+     * 前回の呼び出し以降のサンプルを集計し、サンプルを破棄する
+     * CPU使用率・メモリ使用率には平均値を設定する。
+     *
+     * @return 集計したメトリクス（サンプルがない場合はnull）
+     */
+    public synchronized Metrics drain() {
+        if (size == 0) {
+            return null;
+        }
+        UsageStats cpuStats = aggregate(cpuSamples);
+        UsageStats memoryStats = aggregate(memorySamples);
+        head = 0;
+        size = 0;
+        Metrics metrics = new Metrics(cpuStats == null ? null : cpuStats.getAvg(),
+                memoryStats == null ? null : memoryStats.getAvg(), null);
+        metrics.setCpuStats(cpuStats);
+        metrics.setMemoryStats(memoryStats);
+        return metrics;
+    }
+
+    /**
+     * 取得できたサンプルを作業領域に詰めて並べ替え、集計値を求める
+     *
+     * @return 集計値（取得できたサンプルがない場合はnull）
+     */
+    private UsageStats aggregate(double[] samples) {
+        int count = 0;
+        double sum = 0.0;
+        for (int n = size; n > 0; n--) {
+            double value = samples[Math.floorMod(head - n, samples.length)];
+            if (!Double.isNaN(value)) {
+                scratch[count++] = value;
+                sum += value;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        Arrays.sort(scratch, 0, count);
+        // 95パーセンタイルは最近順位法で求める
+        int rank = (int) Math.ceil(PERCENTILE * count);
+        return new UsageStats(scratch[0], scratch[count - 1], round(sum / count), scratch[rank - 1], count);
+    }
+
+    private static double round(double percent) {
+        return Math.round(percent * 10.0) / 10.0;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 前回送信した値からの変化が不感帯（デッドバンド）以内のメトリクスの送信を抑止する判定器
+ * CPU使用率・メモリ使用率の変化がどちらも不感帯以内で、インスタンスタイプ変更要求が WITHIN（または未設定）のまま変わらない場合は送信しない。
+ * 抑止中も生存通知の間隔ごとに HEARTBEAT 通知を送信し、JsonReceiverが前回の値を引き継いでリソース履歴を記録できるよう
+ * 抑止したサンプル数を伝える。
+ * 最大無送信時間を超えた場合は変化がなくてもメトリクスを送信する。
+ */
+@Component
+@ConditionalOnProperty(name = "metrics.deadband.enabled", havingValue = "true")
+public class MetricsDeadband {
+
+    /** 判定結果 */
+    public enum Decision {
+        /** メトリクス通知を送信する */
+        FULL,
+        /** 生存通知を送信する */
+        HEARTBEAT,
+        /** 送信しない */
+        SKIP
+    }
+
+    private final double cpuDeadband;
+    private final double memoryDeadband;
+    private final long heartbeatIntervalMillis;
+    private final long maxSilenceMillis;
+
+    /** 前回送信したメトリクス（未送信の場合はnull） */
+    private Metrics lastSent;
+    private long lastFullMillis;
+    private long lastNoticeMillis;
+
+    /** 前回の生存通知またはメトリクス通知の送信以降に抑止したサンプル数 */
+    private int suppressed;
+
+    /**
+     * @param cpuDeadband          CPU使用率の不感帯（ポイント）
+     * @param memoryDeadband       メモリ使用率の不感帯（ポイント）
+     * @param heartbeatIntervalSec 抑止中に生存通知を送信する間隔（秒）
+     * @param maxSilenceSec        変化がなくてもメトリクスを送信するまでの最大時間（秒）
+     */
+    public MetricsDeadband(
+            @Value("${metrics.deadband.cpu-percent:1.0}") double cpuDeadband,
+            @Value("${metrics.deadband.memory-percent:1.0}") double memoryDeadband,
+            @Value("${metrics.deadband.heartbeat-interval-sec:10}") int heartbeatIntervalSec,
+            @Value("${metrics.deadband.max-silence-sec:60}") int maxSilenceSec) {
+        this.cpuDeadband = cpuDeadband;
+        this.memoryDeadband = memoryDeadband;
+        this.heartbeatIntervalMillis = heartbeatIntervalSec * 1000L;
+        this.maxSilenceMillis = maxSilenceSec * 1000L;
+    }
+
+    /**
+     * 収集したメトリクスを送信するか判定する
+     *
+     * @param metrics   収集したメトリクス
+     * @param nowMillis 収集時刻（エポックミリ秒）
+     * @return 判定結果
+     */
+    public synchronized Decision offer(Metrics metrics, long nowMillis) {
+        if (mustSend(metrics, nowMillis)) {
+            lastSent = metrics;
+            lastFullMillis = nowMillis;
+            lastNoticeMillis = nowMillis;
+            return Decision.FULL;
+        }
+        suppressed++;
+        if (nowMillis - lastNoticeMillis >= heartbeatIntervalMillis) {
+            lastNoticeMillis = nowMillis;
+            return Decision.HEARTBEAT;
+        }
+        return Decision.SKIP;
+    }
+
+    /**
+     * 抑止したサンプル数を取得し、0に戻す
+     *
+     * @return 前回の呼び出し以降に抑止したサンプル数
+     */
+    public synchronized int takeSuppressed() {
+        int count = suppressed;
+        suppressed = 0;
+        return count;
+    }
+
+    private boolean mustSend(Metrics metrics, long nowMillis) {
+        if (lastSent == null || metrics.getCpuUsage() == null || metrics.getMemoryUsage() == null) {
+            return true;
+        }
+        InstanceTypeChangeRequest request = metrics.getInstanceTypeChangeRequest();
+        // しきい値が未設定の場合（null）は WITHIN と同様に扱う
+        boolean changeRequested = request != null && request != InstanceTypeChangeRequest.WITHIN;
+        if (changeRequested || request != lastSent.getInstanceTypeChangeRequest()) {
+            return true;
+        }
+        return Math.abs(metrics.getCpuUsage() - lastSent.getCpuUsage()) > cpuDeadband
+                || Math.abs(metrics.getMemoryUsage() - lastSent.getMemoryUsage()) > memoryDeadband
+                || nowMillis - lastFullMillis >= maxSilenceMillis;
+    }
+}
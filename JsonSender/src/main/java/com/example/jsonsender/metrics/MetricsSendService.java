@@ -3,10 +3,10 @@ package com.example.jsonsender.metrics;
 import com.example.jsoncommon.dto.ConditionLogic;
 import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
 import com.example.jsoncommon.dto.Metrics;
-import com.example.jsoncommon.dto.ResourceHistoryCsv;
 import com.example.jsoncommon.dto.ThresholdCsv;
-import com.example.jsoncommon.repository.ResourceHistoryRepository;
-import com.example.jsonsender.repository.ThresholdRepository;
+import com.example.jsoncommon.dto.UsageStats;
+import com.example.jsonsender.metrics.ThresholdStreakEvaluator.Condition;
+import com.example.jsonsender.service.ThresholdHolder;
 import com.example.jsoncommon.util.HostnameUtil;
 import com.example.jsoncommon.util.CommandExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,12 +15,12 @@ import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 
 import java.io.IOException;
-import java.time.ZonedDateTime;
-import java.util.List;
+import java.time.Instant;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -30,8 +30,8 @@ public class MetricsSendService {
 
     private static final Logger logger = LoggerFactory.getLogger(MetricsSendService.class);
 
-    private final ThresholdRepository thresholdRepository;
-    private final ResourceHistoryRepository resourceHistoryRepository;
+    private final ThresholdHolder thresholdHolder;
+    private final ThresholdStreakEvaluator streakEvaluator;
     private final CommandExecutor shellExecutor;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -41,15 +41,52 @@ public class MetricsSendService {
     @Value("${metrics.shell.timeout}")
     private int shellTimeoutSeconds;
 
+    /** /proc からの取得（未設定の場合は外部シェルから取得する） */
+    private ProcMetricsCollector procMetricsCollector;
+
+    /**
+     * /proc から取得するコレクターを設定します
+     * 
+     * @param procMetricsCollector /proc から取得するコレクター
+     */
+    @Autowired(required = false)
+    public void setProcMetricsCollector(ProcMetricsCollector procMetricsCollector) {
+        this.procMetricsCollector = procMetricsCollector;
+    }
+
+    /** 通知間隔内の高頻度の取得（未設定の場合は通知ごとに1回だけ取得する） */
+    private HighFrequencySampler highFrequencySampler;
+
+    /**
+     * 通知間隔内に高頻度で取得する取得器を設定します
+     * 
+     * @param highFrequencySampler 高頻度で取得する取得器
+     */
+    @Autowired(required = false)
+    public void setHighFrequencySampler(HighFrequencySampler highFrequencySampler) {
+        this.highFrequencySampler = highFrequencySampler;
+    }
+
     public Metrics collect() {
         Metrics metrics = getCpuMemoryUsage();
 
         // CPU/メモリ使用率がnullでない場合のみしきい値チェック
         if (metrics.getCpuUsage() != null && metrics.getMemoryUsage() != null) {
             try {
-                InstanceTypeChangeRequest instanceTypeChangeRequest = getInstanceTypeChangeRequest(
-                        metrics.getCpuUsage(), metrics.getMemoryUsage());
-                return new Metrics(metrics.getCpuUsage(), metrics.getMemoryUsage(), instanceTypeChangeRequest);
+                // 集計値がある場合、上限は短時間の急上昇を捉えるため95パーセンタイル、
+                // 下限は通知間隔を通して下回っていることを確かめるため最大値で判定する
+                UsageStats cpuStats = metrics.getCpuStats();
+                UsageStats memoryStats = metrics.getMemoryStats();
+                InstanceTypeChangeRequest instanceTypeChangeRequest;
+                if (cpuStats != null && memoryStats != null) {
+                    instanceTypeChangeRequest = getInstanceTypeChangeRequest(cpuStats.getP95(), memoryStats.getP95(),
+                            cpuStats.getMax(), memoryStats.getMax());
+                } else {
+                    instanceTypeChangeRequest = getInstanceTypeChangeRequest(metrics.getCpuUsage(),
+                            metrics.getMemoryUsage());
+                }
+                metrics.setInstanceTypeChangeRequest(instanceTypeChangeRequest);
+                return metrics;
             } catch (Exception e) {
                 logger.error("しきい値チェック中にエラーが発生しました: " + e.getMessage());
             }
@@ -59,11 +96,25 @@ public class MetricsSendService {
     }
 
     /**
-     * CPU使用率とメモリ使用率を外部シェルから取得します
+     * CPU使用率とメモリ使用率を /proc または外部シェルから取得します
      * 
      * @return メトリクス情報
      */
     protected Metrics getCpuMemoryUsage() {
+        if (highFrequencySampler != null) {
+            Metrics metrics = highFrequencySampler.drain();
+            if (metrics != null) {
+                logger.info("メトリクスを集計しました CPU使用率: {}, メモリ使用率: {}", metrics.getCpuStats(),
+                        metrics.getMemoryStats());
+                return metrics;
+            }
+        }
+        if (procMetricsCollector != null) {
+            Metrics metrics = procMetricsCollector.collect();
+            logger.info("メトリクスを取得しました CPU使用率: {}, メモリ使用率: {}", metrics.getCpuUsage(),
+                    metrics.getMemoryUsage());
+            return metrics;
+        }
         try {
             logger.debug("メトリクス収集シェルを実行します: {}", metricsShellPath);
 
@@ -102,236 +153,125 @@ public class MetricsSendService {
 
     /**
      * InstanceTypeChangeRequestを取得します
+     * しきい値は ThresholdHolder から、継続時間は ThresholdStreakEvaluator から取得し、ファイルは読み込みません
      * 
      * @param cpuUsage    CPU使用率
      * @param memoryUsage メモリ使用率
      */
     public InstanceTypeChangeRequest getInstanceTypeChangeRequest(double cpuUsage, double memoryUsage) {
-        try {
-            String hostname = HostnameUtil.getHostname();
-
-            logger.info("ホスト名 {} のしきい値をチェック中 CPU={} Memory={}", hostname, cpuUsage, memoryUsage);
-
-            // しきい値を取得
-            Optional<ThresholdCsv> thresholdOpt = thresholdRepository.findByHostname(hostname);
-            if (thresholdOpt.isEmpty()) {
-                logger.error("しきい値ファイルが見つかりません: {}", thresholdRepository.getFilePath());
-                return null;
-            }
-
-            ThresholdCsv threshold = thresholdOpt.get();
-            logger.debug("ホスト名 {} のしきい値を取得しました {}", hostname, threshold);
-
-            // しきい値を超えているか判定
-            boolean cpuExceedsUpper = cpuUsage > threshold.getUpperCpuThreshold();
-            boolean memoryExceedsUpper = memoryUsage > threshold.getUpperMemThreshold();
-            boolean cpuBelowLower = cpuUsage < threshold.getLowerCpuThreshold();
-            boolean memoryBelowLower = memoryUsage < threshold.getLowerMemThreshold();
-
-            // CPU UPPER判定
-            boolean isCpuUpperRequest = false;
-            if (cpuExceedsUpper) {
-                logger.info("CPU使用率がしきい値を上回りました CPU使用率: {}, しきい値(UPPER_CPU_THRESHOLD): {}", cpuUsage,
-                        threshold.getUpperCpuThreshold());
-
-                List<ResourceHistoryCsv> recentHistory = resourceHistoryRepository.findRecentByHostname(hostname,
-                        threshold.getUpperCpuDurationMin());
-                ZonedDateTime beginTime = getBeginTimeCpuExceedsUpper(recentHistory, threshold.getUpperCpuThreshold());
-                logger.info("{}からCPU使用率がしきい値を上回った状態が継続しています。", beginTime);
-                // しきい値を超えた状態が指定分数以上継続している場合
-                if (beginTime != null
-                        && beginTime.isBefore(ZonedDateTime.now().minusMinutes(threshold.getUpperCpuDurationMin()))) {
-                    isCpuUpperRequest = true;
-                }
-            }
-
-            // MEMORY UPPER判定
-            boolean isMemoryUpperRequest = false;
-            if (memoryExceedsUpper) {
-                logger.info("メモリ使用率がしきい値を上回りました メモリ使用率: {}, しきい値(UPPER_MEM_THRESHOLD): {}", memoryUsage,
-                        threshold.getUpperMemThreshold());
-
-                List<ResourceHistoryCsv> recentHistory = resourceHistoryRepository.findRecentByHostname(hostname,
-                        threshold.getUpperMemDurationMin());
-                ZonedDateTime beginTime = getBeginTimeMemoryExceedsUpper(recentHistory,
-                        threshold.getUpperMemThreshold());
-                logger.info("{}からメモリ使用率がしきい値を上回った状態が継続しています。", beginTime);
-                // しきい値を超えた状態が指定分数以上継続している場合
-                if (beginTime != null
-                        && beginTime.isBefore(ZonedDateTime.now().minusMinutes(threshold.getUpperMemDurationMin()))) {
-                    isMemoryUpperRequest = true;
-                }
-            }
-
-            // CPU LOWER判定
-            boolean isCpuLowerRequest = false;
-            if (cpuBelowLower) {
-                logger.info("CPU使用率がしきい値を下回りました CPU使用率: {}, しきい値(LOWER_CPU_THRESHOLD): {}", cpuUsage,
-                        threshold.getLowerCpuThreshold());
-
-                List<ResourceHistoryCsv> recentHistory = resourceHistoryRepository.findRecentByHostname(hostname,
-                        threshold.getLowerCpuDurationMin());
-                ZonedDateTime beginTime = getBeginTimeCpuBelowLower(recentHistory, threshold.getLowerCpuThreshold());
-                logger.info("{}からCPU使用率がしきい値を下回った状態が継続しています。", beginTime);
-                // しきい値を下回った状態が指定分数以上継続している場合
-                if (beginTime != null
-                        && beginTime.isBefore(ZonedDateTime.now().minusMinutes(threshold.getLowerCpuDurationMin()))) {
-                    isCpuLowerRequest = true;
-                }
-            }
-
-            // MEMORY LOWER判定
-            boolean isMemoryLowerRequest = false;
-            if (memoryBelowLower) {
-                logger.info("メモリ使用率がしきい値を下回りました メモリ使用率: {}, しきい値(LOWER_MEM_THRESHOLD): {}", memoryUsage,
-                        threshold.getLowerMemThreshold());
-
-                List<ResourceHistoryCsv> recentHistory = resourceHistoryRepository.findRecentByHostname(hostname,
-                        threshold.getLowerMemDurationMin());
-                ZonedDateTime beginTime = getBeginTimeMemoryBelowLower(recentHistory, threshold.getLowerMemThreshold());
-                logger.info("{}からメモリ使用率がしきい値を下回った状態が継続しています。", beginTime);
-                // しきい値を下回った状態が指定分数以上継続している場合
-                if (beginTime != null
-                        && beginTime.isBefore(ZonedDateTime.now().minusMinutes(threshold.getLowerMemDurationMin()))) {
-                    isMemoryLowerRequest = true;
-                }
-            }
+        return getInstanceTypeChangeRequest(cpuUsage, memoryUsage, cpuUsage, memoryUsage);
+    }
 
-            // UPPER判定
-            if (threshold.getUpperConditionLogic() == ConditionLogic.OR) {
-                if (isCpuUpperRequest || isMemoryUpperRequest) {
-                    logger.info("ホスト名 {} のメトリクスがCPUまたはMemoryのしきい値を超えています (CPU: {}, Memory: {})",
-                            hostname, cpuUsage, memoryUsage);
-                    return InstanceTypeChangeRequest.UPPER;
-                }
+    /**
+     * 上限・下限の判定に別々の値を使ってInstanceTypeChangeRequestを取得します
+     * 
+     * @param upperCpuUsage    上限の判定に使うCPU使用率
+     * @param upperMemoryUsage 上限の判定に使うメモリ使用率
+     * @param lowerCpuUsage    下限の判定に使うCPU使用率
+     * @param lowerMemoryUsage 下限の判定に使うメモリ使用率
+     */
+    public InstanceTypeChangeRequest getInstanceTypeChangeRequest(double upperCpuUsage, double upperMemoryUsage,
+            double lowerCpuUsage, double lowerMemoryUsage) {
+        String hostname = HostnameUtil.getHostname();
 
-            } else if (threshold.getUpperConditionLogic() == ConditionLogic.AND) {
-                if (isCpuUpperRequest && isMemoryUpperRequest) {
-                    logger.info("ホスト名 {} のメトリクスがCPUとMemoryともにしきい値を超えています (CPU: {}, Memory: {})",
-                            hostname, cpuUsage, memoryUsage);
-                    return InstanceTypeChangeRequest.UPPER;
-                }
-            }
+        logger.info("ホスト名 {} のしきい値をチェック中 CPU={}/{} Memory={}/{}", hostname, upperCpuUsage, lowerCpuUsage,
+                upperMemoryUsage, lowerMemoryUsage);
 
-            // LOWER判定
-            if (threshold.getLowerConditionLogic() == ConditionLogic.OR) {
-                if (isCpuLowerRequest || isMemoryLowerRequest) {
-                    logger.info("ホスト名 {} のメトリクスがCPUまたはMemoryのしきい値を下回っています (CPU: {}, Memory: {})",
-                            hostname, cpuUsage, memoryUsage);
-                    return InstanceTypeChangeRequest.LOWER;
-                }
+        // しきい値を取得（メモリ上の最新のしきい値を参照し、ファイルは読み込まない）
+        Optional<ThresholdCsv> thresholdOpt = thresholdHolder.find(hostname);
+        if (thresholdOpt.isEmpty()) {
+            logger.error("ホスト名 {} のしきい値が設定されていません", hostname);
+            return null;
+        }
 
-            } else if (threshold.getLowerConditionLogic() == ConditionLogic.AND) {
-                if (isCpuLowerRequest && isMemoryLowerRequest) {
-                    logger.info("ホスト名 {} のメトリクスがCPUとMemoryともにしきい値を下回っています (CPU: {}, Memory: {})",
-                            hostname, cpuUsage, memoryUsage);
-                    return InstanceTypeChangeRequest.LOWER;
-                }
-            }
+        ThresholdCsv threshold = thresholdOpt.get();
+        logger.debug("ホスト名 {} のしきい値を取得しました {}", hostname, threshold);
 
-            logger.info("ホスト名 {} のメトリクスはしきい値内です", hostname);
-            return InstanceTypeChangeRequest.WITHIN;
+        // サンプルを追加して、しきい値を超えた状態の開始時刻を更新
+        long nowMillis = System.currentTimeMillis();
+        streakEvaluator.record(nowMillis, upperCpuUsage, upperMemoryUsage, lowerCpuUsage, lowerMemoryUsage,
+                threshold);
 
-        } catch (IOException e) {
-            logger.error("しきい値チェックに失敗しました", e);
-            throw new RuntimeException("Failed to check threshold", e);
+        // CPU UPPER判定
+        boolean isCpuUpperRequest = isLasted(Condition.UPPER_CPU, threshold.getUpperCpuDurationMin(), nowMillis);
+        if (upperCpuUsage > threshold.getUpperCpuThreshold()) {
+            logger.info("CPU使用率がしきい値を上回りました CPU使用率: {}, しきい値(UPPER_CPU_THRESHOLD): {}", upperCpuUsage,
+                    threshold.getUpperCpuThreshold());
         }
-    }
 
-    /**
-     * CPU使用率がしきい値を上回っている状態が始まった時刻を取得
-     * 
-     * @param history           リソース情報のリスト
-     * @param upperCpuThreshold 上限しきい値
-     * @return CPU使用率がしきい値を上回っている状態が始まった時刻(null: しきい値を上回っていない)
-     */
-    private ZonedDateTime getBeginTimeCpuExceedsUpper(List<ResourceHistoryCsv> history, Double upperCpuThreshold) {
-        if (history == null || history.isEmpty()) {
-            return null;
+        // MEMORY UPPER判定
+        boolean isMemoryUpperRequest = isLasted(Condition.UPPER_MEMORY, threshold.getUpperMemDurationMin(),
+                nowMillis);
+        if (upperMemoryUsage > threshold.getUpperMemThreshold()) {
+            logger.info("メモリ使用率がしきい値を上回りました メモリ使用率: {}, しきい値(UPPER_MEM_THRESHOLD): {}", upperMemoryUsage,
+                    threshold.getUpperMemThreshold());
         }
 
-        ZonedDateTime beginTime = null;
-        for (int i = 0; i < history.size(); i++) {
-            ResourceHistoryCsv resourceInfo = history.get(i);
-            if (resourceInfo.getCpuUsage() != null && resourceInfo.getCpuUsage() > upperCpuThreshold) {
-                beginTime = ZonedDateTime.parse(resourceInfo.getTimestamp());
-            } else {
-                return beginTime;
-            }
+        // CPU LOWER判定
+        boolean isCpuLowerRequest = isLasted(Condition.LOWER_CPU, threshold.getLowerCpuDurationMin(), nowMillis);
+        if (lowerCpuUsage < threshold.getLowerCpuThreshold()) {
+            logger.info("CPU使用率がしきい値を下回りました CPU使用率: {}, しきい値(LOWER_CPU_THRESHOLD): {}", lowerCpuUsage,
+                    threshold.getLowerCpuThreshold());
         }
-        return beginTime;
-    }
 
-    /**
-     * メモリ使用率がしきい値を上回っている状態が始まった時刻を取得
-     * 
-     * @param history              リソース情報のリスト
-     * @param upperMemoryThreshold 上限しきい値
-     * @return メモリ使用率がしきい値を上回っている状態が始まった時刻(null: しきい値を上回っていない)
-     */
-    private ZonedDateTime getBeginTimeMemoryExceedsUpper(List<ResourceHistoryCsv> history,
-            Double upperMemoryThreshold) {
-        if (history == null || history.isEmpty()) {
-            return null;
+        // MEMORY LOWER判定
+        boolean isMemoryLowerRequest = isLasted(Condition.LOWER_MEMORY, threshold.getLowerMemDurationMin(),
+                nowMillis);
+        if (lowerMemoryUsage < threshold.getLowerMemThreshold()) {
+            logger.info("メモリ使用率がしきい値を下回りました メモリ使用率: {}, しきい値(LOWER_MEM_THRESHOLD): {}", lowerMemoryUsage,
+                    threshold.getLowerMemThreshold());
         }
 
-        ZonedDateTime beginTime = null;
-        for (int i = 0; i < history.size(); i++) {
-            ResourceHistoryCsv resourceInfo = history.get(i);
-            if (resourceInfo.getMemoryUsage() != null && resourceInfo.getMemoryUsage() > upperMemoryThreshold) {
-                beginTime = ZonedDateTime.parse(resourceInfo.getTimestamp());
-            } else {
-                return beginTime;
+        // UPPER判定
+        if (threshold.getUpperConditionLogic() == ConditionLogic.OR) {
+            if (isCpuUpperRequest || isMemoryUpperRequest) {
+                logger.info("ホスト名 {} のメトリクスがCPUまたはMemoryのしきい値を超えています (CPU: {}, Memory: {})",
+                        hostname, upperCpuUsage, upperMemoryUsage);
+                return InstanceTypeChangeRequest.UPPER;
             }
-        }
-        return beginTime;
-    }
 
-    /**
-     * CPU使用率がしきい値を下回っている状態が始まった時刻を取得
-     * 
-     * @param history           リソース情報のリスト
-     * @param lowerCpuThreshold 下限しきい値
-     * @return CPU使用率がしきい値を下回っている状態が始まった時刻(null: しきい値を下回っていない)
-     */
-    private ZonedDateTime getBeginTimeCpuBelowLower(List<ResourceHistoryCsv> history, Double lowerCpuThreshold) {
-        if (history == null || history.isEmpty()) {
-            return null;
+        } else if (threshold.getUpperConditionLogic() == ConditionLogic.AND) {
+            if (isCpuUpperRequest && isMemoryUpperRequest) {
+                logger.info("ホスト名 {} のメトリクスがCPUとMemoryともにしきい値を超えています (CPU: {}, Memory: {})",
+                        hostname, upperCpuUsage, upperMemoryUsage);
+                return InstanceTypeChangeRequest.UPPER;
+            }
         }
 
-        ZonedDateTime beginTime = null;
-        for (int i = 0; i < history.size(); i++) {
-            ResourceHistoryCsv resourceInfo = history.get(i);
-            if (resourceInfo.getCpuUsage() != null && resourceInfo.getCpuUsage() < lowerCpuThreshold) {
-                beginTime = ZonedDateTime.parse(resourceInfo.getTimestamp());
-            } else {
-                return beginTime;
+        // LOWER判定
+        if (threshold.getLowerConditionLogic() == ConditionLogic.OR) {
+            if (isCpuLowerRequest || isMemoryLowerRequest) {
+                logger.info("ホスト名 {} のメトリクスがCPUまたはMemoryのしきい値を下回っています (CPU: {}, Memory: {})",
+                        hostname, lowerCpuUsage, lowerMemoryUsage);
+                return InstanceTypeChangeRequest.LOWER;
+            }
+
+        } else if (threshold.getLowerConditionLogic() == ConditionLogic.AND) {
+            if (isCpuLowerRequest && isMemoryLowerRequest) {
+                logger.info("ホスト名 {} のメトリクスがCPUとMemoryともにしきい値を下回っています (CPU: {}, Memory: {})",
+                        hostname, lowerCpuUsage, lowerMemoryUsage);
+                return InstanceTypeChangeRequest.LOWER;
             }
         }
-        return beginTime;
+
+        logger.info("ホスト名 {} のメトリクスはしきい値内です", hostname);
+        return InstanceTypeChangeRequest.WITHIN;
     }
 
     /**
-     * メモリ使用率がしきい値を下回っている状態が始まった時刻を取得
+     * 条件を満たした状態が指定分数以上継続しているか判定
      * 
-     * @param history              リソース情報のリスト
-     * @param lowerMemoryThreshold 下限しきい値
-     * @return メモリ使用率がしきい値を下回っている状態が始まった時刻(null: しきい値を下回っていない)
+     * @param condition   条件
+     * @param durationMin 継続時間（分）
+     * @param nowMillis   現在時刻（エポックミリ秒）
+     * @return 継続している場合true
      */
-    private ZonedDateTime getBeginTimeMemoryBelowLower(List<ResourceHistoryCsv> history, Double lowerMemoryThreshold) {
-        if (history == null || history.isEmpty()) {
-            return null;
-        }
-
-        ZonedDateTime beginTime = null;
-        for (int i = 0; i < history.size(); i++) {
-            ResourceHistoryCsv resourceInfo = history.get(i);
-            if (resourceInfo.getMemoryUsage() != null && resourceInfo.getMemoryUsage() < lowerMemoryThreshold) {
-                beginTime = ZonedDateTime.parse(resourceInfo.getTimestamp());
-            } else {
-                return beginTime;
-            }
+    private boolean isLasted(Condition condition, int durationMin, long nowMillis) {
+        long startMillis = streakEvaluator.getStreakStartMillis(condition);
+        if (startMillis < 0) {
+            return false;
         }
-        return beginTime;
+        logger.info("{}から{}の状態が継続しています。", Instant.ofEpochMilli(startMillis), condition);
+        return streakEvaluator.hasLasted(condition, durationMin, nowMillis);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,242 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.Metrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * /proc からCPU使用率とメモリ使用率を取得するコレクター
+ * CPU使用率は /proc/stat の先頭行（全CPUの合計）のjiffiesを前回の取得時と比較して求め、
+ * メモリ使用率は /proc/meminfo の MemTotal と MemAvailable から求める。
+ * ファイルは開いたまま先頭に戻して読み込み、読み込み用のバッファも使い回すため、取得のたびにプロセスを起動しない。
+ */
+@Component
+@ConditionalOnProperty(name = "metrics.collector", havingValue = "proc", matchIfMissing = true)
+public class ProcMetricsCollector implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcMetricsCollector.class);
+
+    /** /proc/stat の先頭行に含まれる値の数（user, nice, system, idle, iowait, irq, softirq, steal） */
+    private static final int CPU_FIELDS = 8;
+    private static final int IDLE = 3;
+    private static final int IOWAIT = 4;
+
+    private static final byte[] MEM_TOTAL = "MemTotal:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_AVAILABLE = "MemAvailable:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_FREE = "MemFree:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BUFFERS = "Buffers:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CACHED = "Cached:".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path statPath;
+    private final Path meminfoPath;
+    private RandomAccessFile stat;
+    private RandomAccessFile meminfo;
+
+    /** 読み込み用のバッファ（先頭行と必要な項目が収まる大きさ） */
+    private final byte[] buffer = new byte[4096];
+    private final long[] cpuFields = new long[CPU_FIELDS];
+
+    /** 前回取得時のjiffiesの合計と待機中のjiffies（未取得の場合は-1） */
+    private long previousTotal = -1L;
+    private long previousIdle = -1L;
+
+    public ProcMetricsCollector(@Value("${metrics.proc.dir:/proc}") String procDir) {
+        this.statPath = Paths.get(procDir, "stat");
+        this.meminfoPath = Paths.get(procDir, "meminfo");
+        // 起動時点の値を基準として保持し、初回の取得から前回との差分で求める
+        readCpuUsage();
+    }
+
+    /**
+     * CPU使用率とメモリ使用率を取得する
+     *
+     * @return メトリクス情報（取得できなかった項目はnull）
+     */
+    public synchronized Metrics collect() {
+        return new Metrics(box(readCpuUsage()), box(readMemoryUsage()), null);
+    }
+
+    /**
+     * CPU使用率とメモリ使用率を取得し、プリミティブ値のまま書き込む（高頻度の取得でオブジェクトを生成しない）
+     *
+     * @param usage 書き込み先（[0]にCPU使用率、[1]にメモリ使用率。取得できなかった項目はNaN）
+     */
+    public synchronized void sample(double[] usage) {
+        usage[0] = readCpuUsage();
+        usage[1] = readMemoryUsage();
+    }
+
+    @PreDestroy
+    @Override
+    public synchronized void close() {
+        closeQuietly(stat);
+        closeQuietly(meminfo);
+        stat = null;
+        meminfo = null;
+    }
+
+    /**
+     * 前回の取得時からのCPU使用率（%）を求める
+     *
+     * @return CPU使用率（初回・読み込み失敗・jiffiesが進んでいない場合はNaN）
+     */
+    private synchronized double readCpuUsage() {
+        try {
+            if (stat == null) {
+                stat = new RandomAccessFile(statPath.toFile(), "r");
+            }
+            int length = readFromStart(stat);
+            // 先頭行「cpu  user nice system idle iowait irq softirq steal ...」の値を読み込む
+            int position = skipToDigit(buffer, 0, length);
+            for (int i = 0; i < CPU_FIELDS; i++) {
+                cpuFields[i] = 0L;
+                while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+                    cpuFields[i] = cpuFields[i] * 10 + (buffer[position++] - '0');
+                }
+                while (position < length && buffer[position] == ' ') {
+                    position++;
+                }
+                if (position >= length || buffer[position] == '\n') {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("{} の読み込みに失敗しました: {}", statPath, e.getMessage());
+            closeQuietly(stat);
+            stat = null;
+            return Double.NaN;
+        }
+
+        long total = 0L;
+        for (long field : cpuFields) {
+            total += field;
+        }
+        long idle = cpuFields[IDLE] + cpuFields[IOWAIT];
+        long totalDelta = total - previousTotal;
+        long idleDelta = idle - previousIdle;
+        boolean first = previousTotal < 0;
+        previousTotal = total;
+        previousIdle = idle;
+        if (first || totalDelta <= 0) {
+            return Double.NaN;
+        }
+        return round(100.0 * (totalDelta - idleDelta) / totalDelta);
+    }
+
+    /**
+     * メモリ使用率（%）を求める
+     *
+     * @return メモリ使用率（読み込み失敗の場合はNaN）
+     */
+    private synchronized double readMemoryUsage() {
+        try {
+            if (meminfo == null) {
+                meminfo = new RandomAccessFile(meminfoPath.toFile(), "r");
+            }
+            int length = readFromStart(meminfo);
+            long total = findKilobytes(length, MEM_TOTAL);
+            long available = findKilobytes(length, MEM_AVAILABLE);
+            if (available < 0) {
+                // MemAvailable がない古いカーネルでは空き + バッファ + キャッシュで近似する
+                available = Math.max(0L, findKilobytes(length, MEM_FREE))
+                        + Math.max(0L, findKilobytes(length, BUFFERS))
+                        + Math.max(0L, findKilobytes(length, CACHED));
+            }
+            if (total <= 0) {
+                return Double.NaN;
+            }
+            return round(100.0 * (total - available) / total);
+        } catch (IOException e) {
+            logger.error("{} の読み込みに失敗しました: {}", meminfoPath, e.getMessage());
+            closeQuietly(meminfo);
+            meminfo = null;
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * ファイルの先頭からバッファに収まる分を読み込む
+     *
+     * @return 読み込んだバイト数
+     */
+    private int readFromStart(RandomAccessFile file) throws IOException {
+        file.seek(0);
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = file.read(buffer, length, buffer.length - length)) > 0) {
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * 「名前:   値 kB」形式の行から値を取得する
+     *
+     * @return 値（kB、項目がない場合は-1）
+     */
+    private long findKilobytes(int length, byte[] name) {
+        for (int lineStart = 0; lineStart < length;) {
+            if (startsWith(lineStart, length, name)) {
+                int position = skipToDigit(buffer, lineStart + name.length, length);
+                long value = 0L;
+                while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+                    value = value * 10 + (buffer[position++] - '0');
+                }
+                return value;
+            }
+            while (lineStart < length && buffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1L;
+    }
+
+    private boolean startsWith(int position, int length, byte[] prefix) {
+        if (position + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[position + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipToDigit(byte[] bytes, int position, int length) {
+        while (position < length && (bytes[position] < '0' || bytes[position] > '9')) {
+            position++;
+        }
+        return position;
+    }
+
+    private static double round(double percent) {
+        return Math.round(percent * 10.0) / 10.0;
+    }
+
+    private static Double box(double percent) {
+        return Double.isNaN(percent) ? null : percent;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.debug("ファイルのクローズに失敗しました: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.ThresholdCsv;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * しきい値の上限・下限を超えた状態の継続時間を、サンプルごとに逐次更新して判定する評価器
+ * 直近のCPU使用率・メモリ使用率をプリミティブ配列のリングバッファに保持し、
+ * 4つの条件（上限/下限 × CPU/メモリ）ごとに条件を満たし始めた時刻を記録する。
+ * 1サンプルの更新は O(1) で、リソース履歴のCSVを読み込まない。
+ * しきい値が変わった場合のみ、リングバッファを新しい順にたどって開始時刻を求め直す。
+ * サンプルの間隔が最大間隔を超えた場合（エージェントの停止など）は継続が途切れたものとする。
+ * サンプルには上限の判定に使う値と下限の判定に使う値を別々に保持できる（通知間隔内の95パーセンタイルと最大値など）。
+ * 状態は一定サンプルごとと停止時にファイルに保存し、再起動後に読み込む。
+ */
+@Component
+public class ThresholdStreakEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThresholdStreakEvaluator.class);
+
+    private static final int MAGIC = 0x53544B32; // "STK2"
+
+    /** 上限・下限の判定に同じ値を使っていた形式 */
+    private static final int MAGIC_V1 = 0x53544B31; // "STK1"
+
+    /** 継続時間を判定する条件 */
+    public enum Condition {
+        /** CPU使用率が上限しきい値を上回る */
+        UPPER_CPU,
+        /** メモリ使用率が上限しきい値を上回る */
+        UPPER_MEMORY,
+        /** CPU使用率が下限しきい値を下回る */
+        LOWER_CPU,
+        /** メモリ使用率が下限しきい値を下回る */
+        LOWER_MEMORY
+    }
+
+    private static final Condition[] CONDITIONS = Condition.values();
+
+    private final Path stateFile;
+    private final long maxGapMillis;
+    private final int persistEvery;
+
+    /** リングバッファ（head が次に書き込む位置） */
+    private final long[] sampleMillis;
+    private final double[] upperCpuSamples;
+    private final double[] upperMemorySamples;
+    private final double[] lowerCpuSamples;
+    private final double[] lowerMemorySamples;
+    private int head;
+    private int size;
+
+    /** 条件ごとの開始時刻（条件を満たしていない場合は-1） */
+    private final long[] streakStartMillis = new long[CONDITIONS.length];
+
+    /** 開始時刻を求めたときのしきい値（条件の順） */
+    private final double[] thresholds = new double[CONDITIONS.length];
+
+    /** 前回の保存以降に追加したサンプル数 */
+    private int unsavedSamples;
+
+    /**
+     * @param stateFile       状態の保存先
+     * @param capacity        保持するサンプル数
+     * @param maxGapSeconds   継続とみなすサンプルの最大間隔（秒）
+     * @param persistEvery    状態を保存するサンプル数
+     */
+    public ThresholdStreakEvaluator(
+            @Value("${metrics.streak.file:${app.csv.output-dir:./csv}/metrics_streak.dat}") String stateFile,
+            @Value("${metrics.streak.capacity:1800}") int capacity,
+            @Value("${metrics.streak.max-gap-sec:60}") int maxGapSeconds,
+            @Value("${metrics.streak.persist-every:30}") int persistEvery) {
+        this.stateFile = Paths.get(stateFile);
+        this.maxGapMillis = maxGapSeconds * 1000L;
+        this.persistEvery = Math.max(1, persistEvery);
+        this.sampleMillis = new long[capacity];
+        this.upperCpuSamples = new double[capacity];
+        this.upperMemorySamples = new double[capacity];
+        this.lowerCpuSamples = new double[capacity];
+        this.lowerMemorySamples = new double[capacity];
+        Arrays.fill(streakStartMillis, -1L);
+        Arrays.fill(thresholds, Double.NaN);
+        load();
+    }
+
+    /**
+     * サンプルを追加し、条件ごとの開始時刻を更新する
+     *
+     * @param epochMillis サンプルの時刻（エポックミリ秒）
+     * @param cpuUsage    CPU使用率
+     * @param memoryUsage メモリ使用率
+     * @param threshold   しきい値
+     */
+    public void record(long epochMillis, double cpuUsage, double memoryUsage, ThresholdCsv threshold) {
+        record(epochMillis, cpuUsage, memoryUsage, cpuUsage, memoryUsage, threshold);
+    }
+
+    /**
+     * 上限・下限の判定に別々の値を使うサンプルを追加し、条件ごとの開始時刻を更新する
+     *
+     * @param epochMillis      サンプルの時刻（エポックミリ秒）
+     * @param upperCpuUsage    上限の判定に使うCPU使用率
+     * @param upperMemoryUsage 上限の判定に使うメモリ使用率
+     * @param lowerCpuUsage    下限の判定に使うCPU使用率
+     * @param lowerMemoryUsage 下限の判定に使うメモリ使用率
+     * @param threshold        しきい値
+     */
+    public synchronized void record(long epochMillis, double upperCpuUsage, double upperMemoryUsage,
+            double lowerCpuUsage, double lowerMemoryUsage, ThresholdCsv threshold) {
+        boolean gap = size > 0 && epochMillis - sampleMillis[previousIndex(head)] > maxGapMillis;
+        int index = head;
+        sampleMillis[index] = epochMillis;
+        upperCpuSamples[index] = upperCpuUsage;
+        upperMemorySamples[index] = upperMemoryUsage;
+        lowerCpuSamples[index] = lowerCpuUsage;
+        lowerMemorySamples[index] = lowerMemoryUsage;
+        head = (head + 1) % sampleMillis.length;
+        size = Math.min(size + 1, sampleMillis.length);
+
+        if (updateThresholds(threshold)) {
+            recomputeStreaks();
+        } else {
+            for (Condition condition : CONDITIONS) {
+                int i = condition.ordinal();
+                if (!matches(condition, index)) {
+                    streakStartMillis[i] = -1L;
+                } else if (streakStartMillis[i] < 0 || gap) {
+                    streakStartMillis[i] = epochMillis;
+                }
+            }
+        }
+
+        if (++unsavedSamples >= persistEvery) {
+            save();
+        }
+    }
+
+    /**
+     * 条件を満たし始めた時刻を取得する
+     *
+     * @param condition 条件
+     * @return 開始時刻（エポックミリ秒、条件を満たしていない場合は-1）
+     */
+    public synchronized long getStreakStartMillis(Condition condition) {
+        return streakStartMillis[condition.ordinal()];
+    }
+
+    /**
+     * 条件を満たした状態が指定分数以上継続しているか判定する
+     *
+     * @param condition   条件
+     * @param minutes     継続時間（分）
+     * @param nowMillis   現在時刻（エポックミリ秒）
+     * @return 継続している場合true
+     */
+    public synchronized boolean hasLasted(Condition condition, int minutes, long nowMillis) {
+        long start = streakStartMillis[condition.ordinal()];
+        return start >= 0 && start <= nowMillis - minutes * 60_000L;
+    }
+
+    /**
+     * 状態をファイルに保存する（一時ファイルに書き込んでから置き換える）
+     */
+    @PreDestroy
+    public synchronized void save() {
+        unsavedSamples = 0;
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try {
+            if (stateFile.getParent() != null) {
+                Files.createDirectories(stateFile.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(size);
+                for (int n = size; n > 0; n--) {
+                    int index = Math.floorMod(head - n, sampleMillis.length);
+                    out.writeLong(sampleMillis[index]);
+                    out.writeDouble(upperCpuSamples[index]);
+                    out.writeDouble(upperMemorySamples[index]);
+                    out.writeDouble(lowerCpuSamples[index]);
+                    out.writeDouble(lowerMemorySamples[index]);
+                }
+                for (int i = 0; i < CONDITIONS.length; i++) {
+                    out.writeLong(streakStartMillis[i]);
+                    out.writeDouble(thresholds[i]);
+                }
+            }
+            try {
+                Files.move(temp, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.error("しきい値判定の状態の保存に失敗しました: {}", stateFile, e);
+        }
+    }
+
+    /**
+     * 保存済みの状態を読み込む（保持数より多い場合は新しいサンプルのみ残す）
+     */
+    private void load() {
+        if (!Files.exists(stateFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                logger.warn("しきい値判定の状態ファイルの形式が不正なため無視します: {}", stateFile);
+                return;
+            }
+            int count = in.readInt();
+            for (int n = 0; n < count; n++) {
+                sampleMillis[head] = in.readLong();
+                upperCpuSamples[head] = in.readDouble();
+                upperMemorySamples[head] = in.readDouble();
+                lowerCpuSamples[head] = magic == MAGIC ? in.readDouble() : upperCpuSamples[head];
+                lowerMemorySamples[head] = magic == MAGIC ? in.readDouble() : upperMemorySamples[head];
+                head = (head + 1) % sampleMillis.length;
+                size = Math.min(size + 1, sampleMillis.length);
+            }
+            for (int i = 0; i < CONDITIONS.length; i++) {
+                streakStartMillis[i] = in.readLong();
+                thresholds[i] = in.readDouble();
+            }
+            logger.info("しきい値判定の状態を読み込みました: {} (サンプル数={})", stateFile, size);
+        } catch (IOException e) {
+            logger.warn("しきい値判定の状態を読み込めないため初期状態から開始します: {}", stateFile, e);
+            head = 0;
+            size = 0;
+            Arrays.fill(streakStartMillis, -1L);
+            Arrays.fill(thresholds, Double.NaN);
+        }
+    }
+
+    /**
+     * しきい値を記録し、前回から変わったか判定する
+     */
+    private boolean updateThresholds(ThresholdCsv threshold) {
+        double[] current = {
+                threshold.getUpperCpuThreshold(),
+                threshold.getUpperMemThreshold(),
+                threshold.getLowerCpuThreshold(),
+                threshold.getLowerMemThreshold() };
+        if (Arrays.equals(current, thresholds)) {
+            return false;
+        }
+        System.arraycopy(current, 0, thresholds, 0, current.length);
+        return true;
+    }
+
+    /**
+     * リングバッファを新しい順にたどり、条件ごとに最新のサンプルまで途切れずに条件を満たし始めた時刻を求める
+     */
+    private void recomputeStreaks() {
+        for (Condition condition : CONDITIONS) {
+            long start = -1L;
+            long newer = Long.MAX_VALUE;
+            for (int n = 1; n <= size; n++) {
+                int index = Math.floorMod(head - n, sampleMillis.length);
+                if (newer - sampleMillis[index] > maxGapMillis && n > 1) {
+                    break;
+                }
+                if (!matches(condition, index)) {
+                    break;
+                }
+                start = sampleMillis[index];
+                newer = sampleMillis[index];
+            }
+            streakStartMillis[condition.ordinal()] = start;
+        }
+    }
+
+    private boolean matches(Condition condition, int index) {
+        double threshold = thresholds[condition.ordinal()];
+        return switch (condition) {
+            case UPPER_CPU -> upperCpuSamples[index] > threshold;
+            case UPPER_MEMORY -> upperMemorySamples[index] > threshold;
+            case LOWER_CPU -> lowerCpuSamples[index] < threshold;
+            case LOWER_MEMORY -> lowerMemorySamples[index] < threshold;
+        };
+    }
+
+    private int previousIndex(int index) {
+        return Math.floorMod(index - 1, sampleMillis.length);
+    }
+}
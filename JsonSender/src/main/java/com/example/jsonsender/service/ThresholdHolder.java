@@ -0,0 +1,83 @@
+package com.example.jsonsender.service;
+
+import com.example.jsoncommon.dto.ThresholdCsv;
+import com.example.jsoncommon.util.HostnameUtil;
+import com.example.jsonsender.repository.ThresholdRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 最新のしきい値をメモリ上に保持するホルダー
+ * しきい値は版番号付きのスナップショットとして保持し、更新時はスナップショットごと差し替えるため、
+ * 読み込み側はロックを取らずに常に一貫した値を参照できる。
+ * 起動時に threshold_{ホスト名}.csv から最新のしきい値を読み込む。
+ * 保持するしきい値（ThresholdCsv）は変更しないこと。
+ */
+@Component
+@Slf4j
+public class ThresholdHolder {
+
+    /**
+     * 版番号付きのしきい値
+     *
+     * @param version   版番号（更新ごとに1ずつ増える。未設定は0）
+     * @param threshold しきい値（未設定の場合はnull）
+     */
+    public record Snapshot(long version, ThresholdCsv threshold) {
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(new Snapshot(0L, null));
+
+    public ThresholdHolder(ThresholdRepository thresholdRepository) {
+        try {
+            thresholdRepository.findByHostname(HostnameUtil.getHostname())
+                    .ifPresent(threshold -> current.set(new Snapshot(1L, threshold)));
+        } catch (IOException e) {
+            log.error("保存済みのしきい値の読み込みに失敗しました", e);
+        }
+    }
+
+    /**
+     * 最新のしきい値を取得する
+     *
+     * @return 版番号付きのしきい値
+     */
+    public Snapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * 指定ホストの最新のしきい値を取得する
+     *
+     * @param hostname ホスト名
+     * @return しきい値（未設定または別ホストのしきい値の場合はOptional.empty()）
+     */
+    public Optional<ThresholdCsv> find(String hostname) {
+        ThresholdCsv threshold = current.get().threshold();
+        return threshold != null && hostname.equals(threshold.getHostname()) ? Optional.of(threshold)
+                : Optional.empty();
+    }
+
+    /**
+     * しきい値を差し替える（現在の値と同じ場合は差し替えない）
+     *
+     * @param threshold しきい値
+     * @return 差し替えた場合は新しいスナップショット、同じ値の場合はnull
+     */
+    public Snapshot update(ThresholdCsv threshold) {
+        while (true) {
+            Snapshot previous = current.get();
+            if (threshold.equals(previous.threshold())) {
+                return null;
+            }
+            Snapshot next = new Snapshot(previous.version() + 1, threshold);
+            if (current.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -15,9 +15,16 @@ import java.io.IOException;
 public class ThresholdService {
 
     private final ThresholdRepository thresholdRepository;
+    private final ThresholdHolder thresholdHolder;
+
+    /** メモリ上のしきい値の差し替えとファイルへの保存を排他する（保存の順序を版の順序と一致させる） */
+    private final Object updateLock = new Object();
 
     /**
      * しきい値を更新します
+     * メモリ上のしきい値を差し替えてからファイルに保存します（前回と同じ値の場合は保存しません）
+     * 複数のスレッドから同時に呼び出された場合も、差し替えと保存をまとめて排他するため、
+     * ファイルには常に最新の版のしきい値が残ります
      *
      * @param hostname ホスト名
      * @param config   しきい値設定
@@ -44,8 +51,15 @@ public class ThresholdService {
                     threshold.getMicroChangeableEnable(),
                     threshold.getMicroForceOnStandby());
 
-            thresholdRepository.save(thresholdInfo);
-            log.info("しきい値を保存しました");
+            synchronized (updateLock) {
+                ThresholdHolder.Snapshot snapshot = thresholdHolder.update(thresholdInfo);
+                if (snapshot == null) {
+                    log.debug("しきい値に変更はありません");
+                    return;
+                }
+                thresholdRepository.save(thresholdInfo);
+                log.info("しきい値を保存しました: version={}", snapshot.version());
+            }
         } catch (IOException e) {
             log.error("しきい値の保存に失敗しました", e);
         }
@@ -2,10 +2,12 @@ package com.example.jsonsender.tcp;
 
 import com.example.jsoncommon.dto.*;
 import com.example.jsoncommon.tcp.MessageHandler;
+import com.example.jsonsender.MetricsPipeline;
 import com.example.jsonsender.service.ThresholdService;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
@@ -17,10 +19,22 @@ public class JsonSenderMessageHandler implements MessageHandler {
 
     private final ThresholdService thresholdService;
 
+    private MetricsPipeline metricsPipeline;
+
     public JsonSenderMessageHandler(ThresholdService thresholdService) {
         this.thresholdService = thresholdService;
     }
 
+    /**
+     * 送信スロットを反映するパイプラインを設定します
+     * 
+     * @param metricsPipeline メトリクスの収集と送信のパイプライン
+     */
+    @Autowired(required = false)
+    public void setMetricsPipeline(MetricsPipeline metricsPipeline) {
+        this.metricsPipeline = metricsPipeline;
+    }
+
     @Override
     public void handleMessage(NoticeBaseJson message) {
         log.info("JsonReceiverからメッセージを受信しました: type={}, id={}, instance={}",
@@ -30,6 +44,9 @@ public class JsonSenderMessageHandler implements MessageHandler {
             case THRESHOLD:
                 handleThreshold((ThresholdJson) message);
                 break;
+            case SLOT:
+                handleSlot((SlotJson) message);
+                break;
             default:
                 log.warn("未知のメッセージタイプ: {}", message.getNoticeType());
         }
@@ -40,4 +57,12 @@ public class JsonSenderMessageHandler implements MessageHandler {
                 message.getInstanceName(), message.getThreshold());
         thresholdService.updateThreshold(message.getInstanceName(), message.getThreshold());
     }
+
+    private void handleSlot(SlotJson message) {
+        log.info("送信スロット通知を受信: instance={}, slot={}/{}",
+                message.getInstanceName(), message.getSlotIndex(), message.getSlotCount());
+        if (metricsPipeline != null) {
+            metricsPipeline.assignSlot(message.getSlotIndex(), message.getSlotCount());
+        }
+    }
 }
@@ -6,8 +6,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class TcpClient {
@@ -17,6 +21,9 @@ public class TcpClient {
     private final com.example.jsonsender.config.AppConfig appConfig;
     private final JsonFileManager jsonFileManager;
 
+    /** 送信中の通知（再送信を除く）の件数 */
+    private final AtomicInteger liveSends = new AtomicInteger();
+
     public TcpClient(com.example.jsonsender.config.AppConfig appConfig,
             JsonFileManager jsonFileManager,
             ObjectMapper objectMapper) {
@@ -41,7 +48,53 @@ public class TcpClient {
         return sendJsonInternal(host, port, data);
     }
 
+    /**
+     * 送信先に1回接続し、書き込み処理から送信済みのJSON行をそのまま書き込む（再試行とファイルへの保存は行わない）
+     *
+     * @param host   送信先ホスト名
+     * @param port   送信先ポート番号
+     * @param writer 接続したチャネルに書き込む処理
+     * @return 接続と書き込みがすべて成功した場合true
+     */
+    public boolean streamDirectly(String host, int port, ChannelWriter writer) {
+        int timeout = appConfig.getSender().getTimeout();
+        try (SocketChannel channel = SocketChannel.open()) {
+            channel.socket().connect(new java.net.InetSocketAddress(host, port), timeout * 1000);
+            writer.writeTo(channel);
+            return true;
+        } catch (IOException e) {
+            logger.warn("サーバー {}:{} へのJSONの一括送信に失敗しました: {}", host, port, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 接続したチャネルに書き込む処理
+     */
+    @FunctionalInterface
+    public interface ChannelWriter {
+        void writeTo(WritableByteChannel channel) throws IOException;
+    }
+
+    /**
+     * 通知（再送信を除く）を送信中か判定する
+     *
+     * @return 送信中の場合true
+     */
+    public boolean isLiveSendInProgress() {
+        return liveSends.get() > 0;
+    }
+
     private boolean sendJsonInternal(String host, int port, Object data) {
+        liveSends.incrementAndGet();
+        try {
+            return sendJsonWithRetry(host, port, data);
+        } finally {
+            liveSends.decrementAndGet();
+        }
+    }
+
+    private boolean sendJsonWithRetry(String host, int port, Object data) {
         int retryMax = appConfig.getSender().getRetryMax();
         int retryIntervalSec = appConfig.getSender().getRetryIntervalSec();
         int timeout = appConfig.getSender().getTimeout();
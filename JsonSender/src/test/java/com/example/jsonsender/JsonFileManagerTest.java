@@ -9,14 +9,25 @@ import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class JsonFileManagerTest {
 
@@ -66,12 +77,12 @@ class JsonFileManagerTest {
         Thread.sleep(100);
 
         // Assert
-        File[] files = tempDir.toFile().listFiles((d, name) -> name.endsWith(".json"));
-        assertNotNull(files, "JSON files should be created");
-        assertTrue(files.length > 0, "At least one JSON file should exist");
+        File[] files = tempDir.toFile().listFiles((d, name) -> name.endsWith(SpoolLog.SEGMENT_SUFFIX));
+        assertNotNull(files, "Spool segment should be created");
+        assertTrue(files.length > 0, "At least one spool segment should exist");
 
         File jsonFile = files[0];
-        assertTrue(jsonFile.exists(), "JSON file should exist");
+        assertTrue(jsonFile.exists(), "Spool segment should exist");
 
         // Verify encoding is EUC-JP by checking bytes
         byte[] bytes = Files.readAllBytes(jsonFile.toPath());
@@ -113,4 +124,84 @@ class JsonFileManagerTest {
         assertTrue(Files.exists(newDir), "Output directory should be created");
         assertTrue(Files.isDirectory(newDir), "Output directory should be a directory");
     }
+
+    @Test
+    void testSave_以前のバージョンの失敗JSONファイルをスプールに移す() throws IOException {
+        // Arrange: 1件ずつ保存された .json ファイル
+        Files.writeString(tempDir.resolve("20240101000000000_UP.json"),
+                "{\"NoticeType\":\"UP\",\"Hostname\":\"テストホスト\"}", Charset.forName("EUC-JP"));
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("NoticeType", "METRICS");
+
+        // Act
+        jsonFileManager.save(data);
+
+        // Assert
+        File[] legacyFiles = tempDir.toFile().listFiles((d, name) -> name.endsWith(".json"));
+        assertNotNull(legacyFiles);
+        assertEquals(0, legacyFiles.length);
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 4096, 1024 * 1024)) {
+            SpoolLog.Entry first = spoolLog.peek().orElseThrow();
+            assertTrue(new String(spoolLog.read(first), "EUC-JP").contains("テストホスト"));
+            assertEquals(2L, spoolLog.getPendingCount());
+        }
+    }
+
+    @Test
+    void testSave_生存通知はスプールに保存しない() throws IOException {
+        // Arrange
+        Map<String, Object> heartbeat = new HashMap<>();
+        heartbeat.put("NoticeType", "HEARTBEAT");
+        heartbeat.put("SampleCount", 3);
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("NoticeType", "METRICS");
+
+        // Act
+        jsonFileManager.save(heartbeat);
+        jsonFileManager.save(metrics);
+        jsonFileManager.cleanup();
+
+        // Assert: METRICS のみ保存される
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 4096, 1024 * 1024)) {
+            assertEquals(1L, spoolLog.getPendingCount());
+            String saved = new String(spoolLog.read(spoolLog.peek().orElseThrow()), StandardCharsets.UTF_8);
+            assertTrue(saved.contains("\"METRICS\""));
+        }
+    }
+
+    @Test
+    void testResendAsync_スプールの通知を1回の接続で古い順に送信する() throws IOException {
+        // Arrange
+        appConfig.getJson().setReplayBatchSize(10);
+        Map<String, Object> up = new HashMap<>();
+        up.put("NoticeType", "UP");
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("NoticeType", "METRICS");
+        metrics.put("Hostname", "テストホスト");
+        jsonFileManager.save(up);
+        jsonFileManager.save(metrics);
+
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        when(tcpClient.streamDirectly(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            TcpClient.ChannelWriter writer = invocation.getArgument(2);
+            writer.writeTo(Channels.newChannel(sent));
+            return true;
+        });
+
+        // Act
+        jsonFileManager.resendAsync();
+        verify(tcpClient, timeout(5000)).streamDirectly(anyString(), anyInt(), any());
+        jsonFileManager.cleanup();
+
+        // Assert
+        verify(tcpClient, times(1)).streamDirectly(anyString(), anyInt(), any());
+        String[] lines = sent.toString(Charset.defaultCharset()).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"NoticeType\":\"UP\",\"Replayed\":true}", lines[0]);
+        assertTrue(lines[1].contains("テストホスト"));
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 4096, 1024 * 1024)) {
+            assertEquals(0L, spoolLog.getPendingCount());
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.example.jsonsender;
+
+import com.example.jsoncommon.dto.HeartbeatJson;
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.MetricsJson;
+import com.example.jsonsender.config.AppConfig;
+import com.example.jsonsender.metrics.MetricsDeadband;
+import com.example.jsonsender.metrics.MetricsSendService;
+import com.example.jsonsender.tcp.TcpClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * MetricsPipelineのテストクラス
+ */
+class MetricsPipelineTest {
+
+    @Mock
+    private TcpClient tcpClient;
+
+    @Mock
+    private MetricsSendService metricsSendService;
+
+    @Mock
+    private JsonFileManager jsonFileManager;
+
+    private AppConfig appConfig;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        appConfig = new AppConfig();
+        appConfig.setTimezone("UTC");
+        appConfig.setAgentVersion("1.0.0");
+        appConfig.setNoticeIntervalSec(1);
+        appConfig.getDist().setHostname("localhost");
+        appConfig.getDist().setPort(9999);
+        appConfig.getJson().setFailedArchive(true);
+        when(metricsSendService.collect()).thenReturn(new Metrics(10.0, 20.0, null));
+    }
+
+    @Test
+    void testSample_収集した通知を送信段が送信する() throws InterruptedException {
+        // Arrange
+        MetricsPipeline pipeline = new MetricsPipeline(tcpClient, metricsSendService, appConfig, jsonFileManager, 4);
+
+        // Act
+        pipeline.sample(System.nanoTime());
+        assertEquals(1, pipeline.getQueueDepth());
+        boolean sent = pipeline.sendNext(0, TimeUnit.MILLISECONDS);
+
+        // Assert
+        assertTrue(sent);
+        assertEquals(0, pipeline.getQueueDepth());
+        assertEquals(0L, pipeline.getOldestEntryAgeMillis());
+        verify(tcpClient).sendJson(eq("localhost"), eq(9999), any(MetricsJson.class));
+        assertFalse(pipeline.sendNext(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testSample_変化のないメトリクスは抑止し次の送信前に抑止した件数を生存通知で伝える() throws InterruptedException {
+        // Arrange
+        MetricsPipeline pipeline = new MetricsPipeline(tcpClient, metricsSendService, appConfig, jsonFileManager, 8);
+        pipeline.setMetricsDeadband(new MetricsDeadband(1.0, 1.0, 3600, 3600));
+
+        // Act: 変化のない3回の後に不感帯を超えて変化
+        for (int i = 0; i < 3; i++) {
+            pipeline.sample(System.nanoTime());
+        }
+        when(metricsSendService.collect()).thenReturn(new Metrics(30.0, 20.0, null));
+        pipeline.sample(System.nanoTime());
+        while (pipeline.sendNext(0, TimeUnit.MILLISECONDS)) {
+        }
+
+        // Assert
+        ArgumentCaptor<Object> sent = ArgumentCaptor.forClass(Object.class);
+        verify(tcpClient, times(3)).sendJson(eq("localhost"), eq(9999), sent.capture());
+        List<Object> notices = sent.getAllValues();
+        assertInstanceOf(MetricsJson.class, notices.get(0));
+        HeartbeatJson heartbeat = assertInstanceOf(HeartbeatJson.class, notices.get(1));
+        assertEquals(2, heartbeat.getSampleCount());
+        assertEquals(1, heartbeat.getIntervalSec());
+        assertEquals(30.0, ((MetricsJson) notices.get(2)).getMetrics().getCpuUsage());
+    }
+
+    @Test
+    void testSample_キューが満杯の場合はファイルに保存する() {
+        // Arrange: 送信段が止まっている状態
+        MetricsPipeline pipeline = new MetricsPipeline(tcpClient, metricsSendService, appConfig, jsonFileManager, 2);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            pipeline.sample(System.nanoTime());
+        }
+
+        // Assert
+        assertEquals(2, pipeline.getQueueDepth());
+        assertEquals(1L, pipeline.getOverflowCount());
+        verify(jsonFileManager).save(any(MetricsJson.class));
+        verify(tcpClient, never()).sendJson(any(), any(Integer.class), any());
+
+        // 停止時は未送信の通知をファイルに保存する
+        pipeline.stop();
+        verify(jsonFileManager, times(3)).save(any(MetricsJson.class));
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    void testHashPhaseOffset_ホスト名ごとに周期内で一定の位置になる() {
+        // Act
+        long first = MetricsPipeline.hashPhaseOffset("host-a", 2000L);
+        long again = MetricsPipeline.hashPhaseOffset("host-a", 2000L);
+        long[] offsets = new long[100];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = MetricsPipeline.hashPhaseOffset("host-" + i, 2000L);
+        }
+
+        // Assert: 同じホスト名は同じ位置で、100台の位置は周期の前半・後半に分散する
+        assertEquals(first, again);
+        long firstHalf = java.util.Arrays.stream(offsets).filter(offset -> offset < 1000L).count();
+        assertTrue(java.util.Arrays.stream(offsets).allMatch(offset -> offset >= 0 && offset < 2000L));
+        assertTrue(firstHalf > 25 && firstHalf < 75);
+    }
+
+    @Test
+    void testAssignSlot_割り当てられたスロットの位置で送信する() {
+        // Arrange
+        appConfig.setNoticeIntervalSec(2);
+        MetricsPipeline pipeline = new MetricsPipeline(tcpClient, metricsSendService, appConfig, jsonFileManager, 4);
+
+        // Act
+        pipeline.assignSlot(3, 8);
+        long assigned = pipeline.getPhaseOffsetMillis();
+        pipeline.assignSlot(8, 8);
+
+        // Assert: 不正なスロットは無視する
+        assertEquals(750L, assigned);
+        assertEquals(750L, pipeline.getPhaseOffsetMillis());
+    }
+
+    @Test
+    void testSample_起動予定時刻からの遅延を記録する() {
+        // Arrange
+        MetricsPipeline pipeline = new MetricsPipeline(tcpClient, metricsSendService, appConfig, jsonFileManager, 4);
+
+        // Act: 5ミリ秒遅れて起動した場合と、予定どおりに起動した場合
+        pipeline.sample(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        pipeline.sample(System.nanoTime());
+
+        // Assert
+        assertTrue(pipeline.getMaxJitterMicros() >= 5_000L);
+        assertTrue(pipeline.getLastJitterMicros() < pipeline.getMaxJitterMicros());
+    }
+}
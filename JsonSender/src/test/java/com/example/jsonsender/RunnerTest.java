@@ -2,7 +2,6 @@ package com.example.jsonsender;
 
 import com.example.jsoncommon.dto.*;
 import com.example.jsonsender.config.AppConfig;
-import com.example.jsonsender.metrics.MetricsSendService;
 import com.example.jsonsender.tcp.TcpClient;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -23,7 +22,7 @@ class RunnerTest {
     private TcpClient tcpClient;
 
     @Mock
-    private MetricsSendService metricsSendService;
+    private MetricsPipeline metricsPipeline;
 
     @Mock
     private AppConfig appConfig;
@@ -45,27 +44,13 @@ class RunnerTest {
         when(appConfig.getNoticeIntervalSec()).thenReturn(1);
         when(appConfig.getErrorRetryIntervalSec()).thenReturn(5);
 
-        runner = new Runner(tcpClient, metricsSendService, appConfig);
+        runner = new Runner(tcpClient, metricsPipeline, appConfig);
     }
 
     @Test
     void testRunSendsUpNotification() throws Exception {
-        // Arrange
-        // Throw Error to break the infinite loop in Runner.run()
-        // collect() does not declare InterruptedException, so we cannot throw it.
-        // catch(Exception) in Runner catches RuntimeException, so we use Error.
-        when(metricsSendService.collect()).thenAnswer(invocation -> {
-            throw new Error("Stop loop");
-        });
-
         // Act
-        try {
-            runner.run();
-        } catch (Error e) {
-            if (!"Stop loop".equals(e.getMessage())) {
-                throw e;
-            }
-        }
+        runner.run();
 
         // Assert
         ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
@@ -75,12 +60,15 @@ class RunnerTest {
         assertThat(captured).isInstanceOf(UpJson.class);
         UpJson notice = (UpJson) captured;
         assertThat(notice.getNoticeType()).isEqualTo(NoticeType.UP);
+        verify(metricsPipeline).start();
+        verify(metricsPipeline).awaitTermination();
     }
 
     @Test
     void testOnExitSendsDownNotification() {
         // Act
         runner.onExit();
+        verify(metricsPipeline).stop();
 
         // Assert
         ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
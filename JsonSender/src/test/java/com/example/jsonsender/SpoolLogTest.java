@@ -0,0 +1,183 @@
+package com.example.jsonsender;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SpoolLogのテストクラス
+ */
+class SpoolLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPeekAndCommit_追記した順に再送信し再起動後はカーソルから再開する() throws IOException {
+        // Arrange
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 64, 1024 * 1024)) {
+            spoolLog.append("UP", json("UP", 1));
+            for (int i = 2; i <= 5; i++) {
+                spoolLog.append("METRICS", json("METRICS", i));
+            }
+            spoolLog.append("DOWN", json("DOWN", 6));
+
+            // Act: 3件送信して停止
+            for (int i = 0; i < 3; i++) {
+                spoolLog.commit(spoolLog.peek().orElseThrow());
+            }
+        }
+
+        // Assert: 再起動後は4件目から再送信する
+        try (SpoolLog reopened = new SpoolLog(tempDir, 64, 1024 * 1024)) {
+            assertEquals(3L, reopened.getPendingCount());
+            assertEquals(List.of("METRICS-4", "METRICS-5", "DOWN-6"), drain(reopened));
+            assertEquals(Optional.empty(), reopened.peek());
+
+            // 読み終えたセグメントは削除される（書き込み中のセグメントのみ残る）
+            assertEquals(1, reopened.segmentCounts().get(SpoolLog.LaneType.METRICS));
+            assertEquals(1, reopened.segmentCounts().get(SpoolLog.LaneType.CONTROL));
+        }
+    }
+
+    @Test
+    void testCommitAll_まとめて送信した通知のカーソルを両方のレーンで進める() throws IOException {
+        // Arrange: セグメントをまたぐようにMETRICSを追記する
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 64, 1024 * 1024)) {
+            spoolLog.append("UP", json("UP", 1));
+            for (int i = 2; i <= 5; i++) {
+                spoolLog.append("METRICS", json("METRICS", i));
+            }
+            spoolLog.append("DOWN", json("DOWN", 6));
+
+            // Act: 先頭の4件をまとめて送信済みにする
+            spoolLog.commitAll(spoolLog.peek(4));
+
+            // Assert
+            assertEquals(2L, spoolLog.getPendingCount());
+        }
+
+        // 再起動後も続きから再送信する
+        try (SpoolLog reopened = new SpoolLog(tempDir, 64, 1024 * 1024)) {
+            assertEquals(List.of("METRICS-5", "DOWN-6"), drain(reopened));
+        }
+    }
+
+    @Test
+    void testAppend_容量を超えた場合は古いMETRICSから削除する() throws IOException {
+        // Arrange: セグメントは約2件ごと、上限は約8件分
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 50, 250)) {
+            spoolLog.append("UP", json("UP", 0));
+
+            // Act
+            for (int i = 1; i <= 20; i++) {
+                spoolLog.append("METRICS", json("METRICS", i));
+            }
+
+            // Assert: UP は残り、古い METRICS が削除される
+            assertTrue(spoolLog.getTotalBytes() <= 250);
+            List<String> remaining = drain(spoolLog);
+            assertEquals("UP-0", remaining.get(0));
+            assertFalse(remaining.contains("METRICS-1"));
+            assertEquals("METRICS-20", remaining.get(remaining.size() - 1));
+        }
+    }
+
+    @Test
+    void testOpen_書きかけのデータを切り詰め保持期間を過ぎたセグメントを削除する() throws IOException {
+        // Arrange
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 1024, 1024 * 1024)) {
+            spoolLog.append("UP", json("UP", 1));
+            spoolLog.append("METRICS", json("METRICS", 2));
+        }
+        Path metricsSegment = tempDir.resolve("metrics-0000000000000001" + SpoolLog.SEGMENT_SUFFIX);
+        Files.write(metricsSegment, "{\"NoticeType\":\"MET".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        // Act & Assert: 書きかけの行は読み込まず、続けて追記できる
+        try (SpoolLog reopened = new SpoolLog(tempDir, 1024, 1024 * 1024)) {
+            reopened.append("METRICS", json("METRICS", 3));
+            assertEquals(List.of("UP-1", "METRICS-2", "METRICS-3"), drain(reopened));
+        }
+
+        // Act & Assert: 更新日時が古いセグメントは削除される
+        try (SpoolLog reopened = new SpoolLog(tempDir, 1024, 1024 * 1024)) {
+            reopened.append("DOWN", json("DOWN", 4));
+            Files.setLastModifiedTime(metricsSegment, FileTime.fromMillis(System.currentTimeMillis() - 86_400_000L));
+            assertEquals(1, reopened.deleteOlderThan(3_600_000L));
+            assertFalse(Files.exists(metricsSegment));
+            assertEquals(List.of("DOWN-4"), drain(reopened));
+        }
+    }
+
+    @Test
+    void testTransferTo_ASCIIのみの通知を改行まで含めてそのまま書き込む() throws IOException {
+        // Arrange
+        Path out = tempDir.resolve("out.txt");
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 1024, 1024 * 1024);
+                FileChannel target = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            spoolLog.append("UP", json("UP", 1));
+            spoolLog.append("METRICS", "{\"Hostname\":\"テスト\"}".getBytes("EUC-JP"));
+            List<SpoolLog.Entry> entries = spoolLog.peek(10);
+
+            // Act
+            boolean transferred = spoolLog.transferTo(entries.get(0), target);
+
+            // Assert
+            assertTrue(transferred);
+            assertTrue(entries.get(0).ascii());
+            assertFalse(entries.get(1).ascii());
+            assertEquals("{\"NoticeType\":\"UP\",\"Index\":1}\n", Files.readString(out));
+            assertEquals("{\"Hostname\":\"テスト\"}", new String(spoolLog.read(entries.get(1)), "EUC-JP"));
+        }
+    }
+
+    @Test
+    void testTransferTo_1行のJSONとして区切られていない場合は書き込まない() throws IOException {
+        // Arrange: 本文の先頭が '{' ではない通知
+        Path out = tempDir.resolve("out.txt");
+        try (SpoolLog spoolLog = new SpoolLog(tempDir, 1024, 1024 * 1024);
+                FileChannel target = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            spoolLog.append("UP", "not json".getBytes(StandardCharsets.UTF_8));
+
+            // Act
+            boolean transferred = spoolLog.transferTo(spoolLog.peek().orElseThrow(), target);
+
+            // Assert
+            assertFalse(transferred);
+            assertEquals(0L, Files.size(out));
+        }
+    }
+
+    private static byte[] json(String noticeType, int index) {
+        return ("{\"NoticeType\":\"" + noticeType + "\",\"Index\":" + index + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 未送信の通知をすべて送信済みにし、「通知種別-番号」の一覧を返す
+     */
+    private static List<String> drain(SpoolLog spoolLog) throws IOException {
+        List<String> sent = new ArrayList<>();
+        Optional<SpoolLog.Entry> entry;
+        while ((entry = spoolLog.peek()).isPresent()) {
+            String json = new String(spoolLog.read(entry.get()), StandardCharsets.UTF_8);
+            String type = json.replaceAll(".*\"NoticeType\":\"(\\w+)\".*", "$1");
+            String index = json.replaceAll(".*\"Index\":(\\d+).*", "$1");
+            sent.add(type + "-" + index);
+            spoolLog.commit(entry.get());
+        }
+        return sent;
+    }
+}
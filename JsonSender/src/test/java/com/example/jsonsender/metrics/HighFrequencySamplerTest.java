@@ -0,0 +1,71 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsoncommon.dto.UsageStats;
+import com.example.jsonsender.config.AppConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HighFrequencySamplerのテストクラス
+ */
+class HighFrequencySamplerTest {
+
+    @Mock
+    private ProcMetricsCollector procMetricsCollector;
+
+    private HighFrequencySampler sampler;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        AppConfig appConfig = new AppConfig();
+        appConfig.setNoticeIntervalSec(10);
+        // 保持数は 10秒 × 2 / 1000ミリ秒 = 20
+        sampler = new HighFrequencySampler(procMetricsCollector, appConfig, 1000L);
+    }
+
+    @Test
+    void testDrain_最小最大平均と95パーセンタイルを求める() {
+        // Arrange: CPU 1～20%、メモリは取得できなかったサンプルを含む
+        for (int i = 1; i <= 20; i++) {
+            sampler.add(i, i % 2 == 0 ? 50.0 : Double.NaN);
+        }
+
+        // Act
+        Metrics metrics = sampler.drain();
+
+        // Assert
+        UsageStats cpu = metrics.getCpuStats();
+        assertEquals(1.0, cpu.getMin());
+        assertEquals(20.0, cpu.getMax());
+        assertEquals(10.5, cpu.getAvg());
+        assertEquals(19.0, cpu.getP95());
+        assertEquals(20, cpu.getSampleCount());
+        assertEquals(10.5, metrics.getCpuUsage());
+        assertEquals(10, metrics.getMemoryStats().getSampleCount());
+        assertEquals(50.0, metrics.getMemoryUsage());
+        assertNull(sampler.drain());
+    }
+
+    @Test
+    void testDrain_保持数を超えた場合は新しいサンプルのみ集計する() {
+        // Arrange
+        for (int i = 1; i <= 25; i++) {
+            sampler.add(i, Double.NaN);
+        }
+
+        // Act
+        Metrics metrics = sampler.drain();
+
+        // Assert
+        assertEquals(6.0, metrics.getCpuStats().getMin());
+        assertEquals(25.0, metrics.getCpuStats().getMax());
+        assertNull(metrics.getMemoryStats());
+        assertNull(metrics.getMemoryUsage());
+    }
+}
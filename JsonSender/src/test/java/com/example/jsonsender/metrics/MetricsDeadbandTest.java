@@ -0,0 +1,64 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
+import com.example.jsoncommon.dto.Metrics;
+import com.example.jsonsender.metrics.MetricsDeadband.Decision;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MetricsDeadbandのテストクラス
+ */
+class MetricsDeadbandTest {
+
+    private static final long BASE = 1_700_000_000_000L;
+
+    private MetricsDeadband deadband;
+
+    @BeforeEach
+    void setUp() {
+        deadband = new MetricsDeadband(1.0, 1.0, 10, 60);
+    }
+
+    @Test
+    void testOffer_不感帯以内の変化は抑止し一定間隔で生存通知とする() {
+        // Arrange
+        assertEquals(Decision.FULL, deadband.offer(metrics(10.0, 50.0, InstanceTypeChangeRequest.WITHIN), BASE));
+
+        // Act & Assert: 前回送信した値からの変化が1ポイント以内
+        for (int i = 1; i < 5; i++) {
+            assertEquals(Decision.SKIP,
+                    deadband.offer(metrics(10.5, 49.5, InstanceTypeChangeRequest.WITHIN), BASE + i * 2_000L));
+        }
+        assertEquals(Decision.HEARTBEAT,
+                deadband.offer(metrics(10.9, 50.9, InstanceTypeChangeRequest.WITHIN), BASE + 10_000L));
+        assertEquals(5, deadband.takeSuppressed());
+        assertEquals(0, deadband.takeSuppressed());
+
+        // 最大無送信時間を超えた場合は変化がなくても送信する
+        assertEquals(Decision.FULL,
+                deadband.offer(metrics(10.0, 50.0, InstanceTypeChangeRequest.WITHIN), BASE + 60_000L));
+    }
+
+    @Test
+    void testOffer_不感帯を超える変化やインスタンスタイプ変更要求は送信する() {
+        // Arrange
+        deadband.offer(metrics(10.0, 50.0, InstanceTypeChangeRequest.WITHIN), BASE);
+
+        // Act & Assert
+        assertEquals(Decision.FULL,
+                deadband.offer(metrics(11.5, 50.0, InstanceTypeChangeRequest.WITHIN), BASE + 2_000L));
+        assertEquals(Decision.FULL,
+                deadband.offer(metrics(11.5, 50.0, InstanceTypeChangeRequest.UPPER), BASE + 4_000L));
+        assertEquals(Decision.FULL,
+                deadband.offer(metrics(11.5, 50.0, InstanceTypeChangeRequest.WITHIN), BASE + 6_000L));
+        assertEquals(Decision.FULL, deadband.offer(metrics(null, 50.0, InstanceTypeChangeRequest.WITHIN), BASE + 8_000L));
+        assertEquals(0, deadband.takeSuppressed());
+    }
+
+    private static Metrics metrics(Double cpu, Double memory, InstanceTypeChangeRequest request) {
+        return new Metrics(cpu, memory, request);
+    }
+}
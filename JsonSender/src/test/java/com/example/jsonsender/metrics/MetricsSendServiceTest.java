@@ -2,8 +2,7 @@ package com.example.jsonsender.metrics;
 
 import com.example.jsoncommon.dto.Metrics;
 import com.example.jsoncommon.util.CommandExecutor;
-import com.example.jsonsender.repository.ThresholdRepository;
-import com.example.jsoncommon.repository.ResourceHistoryRepository;
+import com.example.jsonsender.service.ThresholdHolder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -26,10 +25,10 @@ import static org.mockito.Mockito.*;
 class MetricsSendServiceTest {
 
     @Mock
-    private ThresholdRepository thresholdRepository;
+    private ThresholdHolder thresholdHolder;
 
     @Mock
-    private ResourceHistoryRepository resourceHistoryRepository;
+    private ThresholdStreakEvaluator streakEvaluator;
 
     @Mock
     private CommandExecutor shellExecutor;
@@ -42,7 +41,7 @@ class MetricsSendServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        service = new MetricsSendService(thresholdRepository, resourceHistoryRepository, shellExecutor);
+        service = new MetricsSendService(thresholdHolder, streakEvaluator, shellExecutor);
 
         // シェルパスとタイムアウトを設定
         ReflectionTestUtils.setField(service, "metricsShellPath", "/path/to/metrics.sh");
@@ -2,9 +2,9 @@ package com.example.jsonsender.metrics;
 
 import com.example.jsoncommon.dto.InstanceTypeChangeRequest;
 import com.example.jsoncommon.dto.Metrics;
-import com.example.jsoncommon.repository.ResourceHistoryRepository;
+import com.example.jsoncommon.dto.UsageStats;
 import com.example.jsoncommon.util.CommandExecutor;
-import com.example.jsonsender.repository.ThresholdRepository;
+import com.example.jsonsender.service.ThresholdHolder;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,10 +20,10 @@ import static org.mockito.Mockito.*;
 class MetricsServiceTest {
 
     @Mock
-    private ThresholdRepository thresholdRepository;
+    private ThresholdHolder thresholdHolder;
 
     @Mock
-    private ResourceHistoryRepository resourceHistoryRepository;
+    private ThresholdStreakEvaluator streakEvaluator;
 
     @Mock
     private CommandExecutor shellExecutor;
@@ -32,7 +32,7 @@ class MetricsServiceTest {
 
     @BeforeEach
     void setUp() {
-        metricsSendService = spy(new MetricsSendService(thresholdRepository, resourceHistoryRepository, shellExecutor));
+        metricsSendService = spy(new MetricsSendService(thresholdHolder, streakEvaluator, shellExecutor));
     }
 
     @Test
@@ -58,6 +58,25 @@ class MetricsServiceTest {
         verify(metricsSendService, times(1)).getInstanceTypeChangeRequest(anyDouble(), anyDouble());
     }
 
+    @Test
+    void testCollect_集計値がある場合は上限を95パーセンタイル_下限を最大値で判定する() throws Exception {
+        // Given: 高頻度の取得で集計したメトリクス
+        Metrics mockMetrics = new Metrics(30.0, 40.0, null);
+        mockMetrics.setCpuStats(new UsageStats(5.0, 95.0, 30.0, 90.0, 40));
+        mockMetrics.setMemoryStats(new UsageStats(38.0, 42.0, 40.0, 41.5, 40));
+        doReturn(mockMetrics).when(metricsSendService).getCpuMemoryUsage();
+        doReturn(InstanceTypeChangeRequest.UPPER).when(metricsSendService).getInstanceTypeChangeRequest(90.0, 41.5,
+                95.0, 42.0);
+
+        // When
+        Metrics metrics = metricsSendService.collect();
+
+        // Then
+        assertEquals(InstanceTypeChangeRequest.UPPER, metrics.getInstanceTypeChangeRequest());
+        assertEquals(90.0, metrics.getCpuStats().getP95());
+        verify(metricsSendService, never()).getInstanceTypeChangeRequest(anyDouble(), anyDouble());
+    }
+
     @Test
     void testCollect_ThresholdCheckFailure() throws Exception {
         // Given: getCpuMemoryUsageがメトリクスを返す
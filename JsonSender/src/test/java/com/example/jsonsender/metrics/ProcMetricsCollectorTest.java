@@ -0,0 +1,84 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.Metrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProcMetricsCollectorのテストクラス
+ */
+class ProcMetricsCollectorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCollect_jiffiesの差分とmeminfoから使用率を求める() throws IOException {
+        // Arrange
+        writeStat(1000, 0, 500, 8000, 500);
+        Files.writeString(tempDir.resolve("meminfo"), """
+                MemTotal:        8000000 kB
+                MemFree:         1000000 kB
+                MemAvailable:    6000000 kB
+                Buffers:          100000 kB
+                Cached:          2000000 kB
+                """);
+        try (ProcMetricsCollector collector = new ProcMetricsCollector(tempDir.toString())) {
+            // 起動後に user+system が300、idle+iowait が700進んだ状態にする
+            writeStat(1200, 0, 600, 8600, 600);
+
+            // Act
+            Metrics metrics = collector.collect();
+
+            // Assert
+            assertEquals(30.0, metrics.getCpuUsage());
+            assertEquals(25.0, metrics.getMemoryUsage());
+            assertNull(metrics.getInstanceTypeChangeRequest());
+        }
+    }
+
+    @Test
+    void testCollect_MemAvailableがない場合は空きとキャッシュから求める() throws IOException {
+        // Arrange
+        writeStat(1000, 0, 500, 8000, 500);
+        Files.writeString(tempDir.resolve("meminfo"), """
+                MemTotal:        1000 kB
+                MemFree:          200 kB
+                Buffers:          100 kB
+                Cached:           100 kB
+                """);
+        try (ProcMetricsCollector collector = new ProcMetricsCollector(tempDir.toString())) {
+            // Act: jiffiesが進んでいない
+            Metrics metrics = collector.collect();
+
+            // Assert
+            assertNull(metrics.getCpuUsage());
+            assertEquals(60.0, metrics.getMemoryUsage());
+        }
+    }
+
+    @Test
+    void testCollect_ファイルがない場合はnull() {
+        // Arrange
+        try (ProcMetricsCollector collector = new ProcMetricsCollector(tempDir.resolve("missing").toString())) {
+            // Act
+            Metrics metrics = collector.collect();
+
+            // Assert
+            assertNull(metrics.getCpuUsage());
+            assertNull(metrics.getMemoryUsage());
+        }
+    }
+
+    private void writeStat(long user, long nice, long system, long idle, long iowait) throws IOException {
+        Files.writeString(tempDir.resolve("stat"), String.format(
+                "cpu  %d %d %d %d %d 0 0 0 0 0%ncpu0 %d %d %d %d %d 0 0 0 0 0%nintr 1 2 3%n",
+                user, nice, system, idle, iowait, user, nice, system, idle, iowait));
+    }
+}
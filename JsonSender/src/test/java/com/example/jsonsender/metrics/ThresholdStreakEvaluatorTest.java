@@ -0,0 +1,128 @@
+package com.example.jsonsender.metrics;
+
+import com.example.jsoncommon.dto.ThresholdCsv;
+import com.example.jsonsender.metrics.ThresholdStreakEvaluator.Condition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ThresholdStreakEvaluatorのテストクラス
+ */
+class ThresholdStreakEvaluatorTest {
+
+    private static final long BASE = 1_700_000_000_000L;
+    private static final long INTERVAL = 2_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private ThresholdStreakEvaluator evaluator;
+    private ThresholdCsv threshold;
+
+    @BeforeEach
+    void setUp() {
+        evaluator = newEvaluator();
+        threshold = threshold(80.0, 30.0);
+    }
+
+    @Test
+    void testRecord_条件を満たし続けた時刻から継続時間を判定する() {
+        // Arrange & Act: CPU 90% を6分間、その後 50% を1回
+        long now = BASE;
+        for (int i = 0; i <= 180; i++) {
+            now = BASE + i * INTERVAL;
+            evaluator.record(now, 90.0, 50.0, threshold);
+        }
+
+        // Assert
+        assertEquals(BASE, evaluator.getStreakStartMillis(Condition.UPPER_CPU));
+        assertTrue(evaluator.hasLasted(Condition.UPPER_CPU, 5, now));
+        assertFalse(evaluator.hasLasted(Condition.UPPER_CPU, 7, now));
+        assertEquals(-1L, evaluator.getStreakStartMillis(Condition.UPPER_MEMORY));
+
+        evaluator.record(now + INTERVAL, 50.0, 50.0, threshold);
+        assertEquals(-1L, evaluator.getStreakStartMillis(Condition.UPPER_CPU));
+        assertFalse(evaluator.hasLasted(Condition.UPPER_CPU, 5, now + INTERVAL));
+    }
+
+    @Test
+    void testRecord_しきい値が変わった場合はリングバッファから開始時刻を求め直す() {
+        // Arrange: CPU 70% → 85% → 95% と上昇
+        for (int i = 0; i < 30; i++) {
+            double cpu = i < 10 ? 70.0 : i < 20 ? 85.0 : 95.0;
+            evaluator.record(BASE + i * INTERVAL, cpu, 50.0, threshold);
+        }
+        assertEquals(BASE + 10 * INTERVAL, evaluator.getStreakStartMillis(Condition.UPPER_CPU));
+
+        // Act: 上限を 60% に下げる
+        evaluator.record(BASE + 30 * INTERVAL, 95.0, 50.0, threshold(60.0, 30.0));
+
+        // Assert: 70% のサンプルからしきい値を上回っていたことになる
+        assertEquals(BASE, evaluator.getStreakStartMillis(Condition.UPPER_CPU));
+    }
+
+    @Test
+    void testRecord_サンプルの間隔が空いた場合は継続が途切れる() {
+        // Arrange
+        evaluator.record(BASE, 10.0, 10.0, threshold);
+        evaluator.record(BASE + INTERVAL, 10.0, 10.0, threshold);
+
+        // Act: 最大間隔（60秒）を超えて次のサンプル
+        long resumed = BASE + 120_000L;
+        evaluator.record(resumed, 10.0, 10.0, threshold);
+
+        // Assert
+        assertEquals(resumed, evaluator.getStreakStartMillis(Condition.LOWER_CPU));
+        assertEquals(resumed, evaluator.getStreakStartMillis(Condition.LOWER_MEMORY));
+    }
+
+    @Test
+    void testRecord_上限と下限は別々の値で判定する() {
+        // Arrange & Act: 上限の判定には95パーセンタイル、下限の判定には最大値を渡す
+        evaluator.record(BASE, 85.0, 50.0, 20.0, 50.0, threshold);
+        evaluator.record(BASE + INTERVAL, 25.0, 50.0, 28.0, 50.0, threshold);
+
+        // Assert: 短時間の急上昇は上限として捉え、下限は最大値が下回った時点から継続する
+        assertEquals(-1L, evaluator.getStreakStartMillis(Condition.UPPER_CPU));
+        assertEquals(BASE, evaluator.getStreakStartMillis(Condition.LOWER_CPU));
+
+        evaluator.record(BASE + 2 * INTERVAL, 90.0, 50.0, 35.0, 50.0, threshold);
+        assertEquals(BASE + 2 * INTERVAL, evaluator.getStreakStartMillis(Condition.UPPER_CPU));
+        assertEquals(-1L, evaluator.getStreakStartMillis(Condition.LOWER_CPU));
+    }
+
+    @Test
+    void testSave_再起動後に状態を復元する() {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            evaluator.record(BASE + i * INTERVAL, 10.0, 95.0, threshold);
+        }
+        evaluator.save();
+
+        // Act
+        ThresholdStreakEvaluator reloaded = newEvaluator();
+        reloaded.record(BASE + 10 * INTERVAL, 10.0, 95.0, threshold);
+
+        // Assert
+        assertEquals(BASE, reloaded.getStreakStartMillis(Condition.LOWER_CPU));
+        assertEquals(-1L, reloaded.getStreakStartMillis(Condition.UPPER_MEMORY));
+    }
+
+    private ThresholdStreakEvaluator newEvaluator() {
+        return new ThresholdStreakEvaluator(tempDir.resolve("metrics_streak.dat").toString(), 64, 60, 1000);
+    }
+
+    private static ThresholdCsv threshold(double upperCpu, double lowerCpu) {
+        ThresholdCsv threshold = new ThresholdCsv();
+        threshold.setUpperCpuThreshold(upperCpu);
+        threshold.setUpperMemThreshold(200.0);
+        threshold.setLowerCpuThreshold(lowerCpu);
+        threshold.setLowerMemThreshold(20.0);
+        return threshold;
+    }
+}
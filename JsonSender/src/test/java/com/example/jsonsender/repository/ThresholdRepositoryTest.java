@@ -148,4 +148,25 @@ class ThresholdRepositoryTest {
         // Then: Optional.empty()が返されることを確認
         assertFalse(result.isPresent(), "ファイルが存在しない場合、しきい値情報が見つからないべきです");
     }
+
+    @Test
+    void testSave_最新のしきい値のみを保持する() throws IOException {
+        // Given: しきい値を2回保存
+        ThresholdCsv first = new ThresholdCsv();
+        first.setHostname("test-host");
+        first.setUpperCpuThreshold(80.0);
+        ThresholdCsv second = new ThresholdCsv();
+        second.setHostname("test-host");
+        second.setUpperCpuThreshold(70.0);
+        repository.save(first);
+        repository.save(second);
+
+        // When
+        Optional<ThresholdCsv> result = repository.findByHostname("test-host");
+
+        // Then: ファイルはヘッダーと1行のみで、最新のしきい値が取得できる
+        Path thresholdFile = tempDir.resolve(repository.getFilePath());
+        assertEquals(2, Files.readAllLines(thresholdFile, java.nio.charset.Charset.forName("EUC-JP")).size());
+        assertEquals(70.0, result.orElseThrow().getUpperCpuThreshold());
+    }
 }
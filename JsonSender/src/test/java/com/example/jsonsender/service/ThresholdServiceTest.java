@@ -12,8 +12,20 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 class ThresholdServiceTest {
@@ -21,22 +33,91 @@ class ThresholdServiceTest {
     @Mock
     private ThresholdRepository thresholdRepository;
 
+    private ThresholdHolder thresholdHolder;
+
     private ThresholdService thresholdService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        thresholdService = new ThresholdService(thresholdRepository);
+        thresholdHolder = new ThresholdHolder(thresholdRepository);
+        thresholdService = new ThresholdService(thresholdRepository, thresholdHolder);
     }
 
     @Test
     void updateThreshold_shouldSaveThresholdCsv() throws IOException {
         String hostname = "test-host";
-        Threshold threshold = new Threshold(
+        Threshold threshold = threshold(hostname, 90.0);
+
+        thresholdService.updateThreshold(hostname, threshold);
+
+        ArgumentCaptor<ThresholdCsv> captor = ArgumentCaptor.forClass(ThresholdCsv.class);
+        verify(thresholdRepository).save(captor.capture());
+
+        ThresholdCsv savedInfo = captor.getValue();
+        assertEquals(hostname, savedInfo.getHostname());
+        assertEquals(ScalingMode.AUTO, savedInfo.getScalingMode());
+        assertEquals(90.0, savedInfo.getUpperCpuThreshold());
+        assertEquals(20.0, savedInfo.getLowerCpuThreshold());
+        assertSame(savedInfo, thresholdHolder.find(hostname).orElseThrow());
+    }
+
+    @Test
+    void updateThreshold_同じしきい値の場合は版を上げず保存しない() throws IOException {
+        // Arrange
+        String hostname = "test-host";
+        thresholdService.updateThreshold(hostname, threshold(hostname, 90.0));
+
+        // Act
+        thresholdService.updateThreshold(hostname, threshold(hostname, 90.0));
+        thresholdService.updateThreshold(hostname, threshold(hostname, 85.0));
+
+        // Assert
+        verify(thresholdRepository, times(2)).save(any(ThresholdCsv.class));
+        assertEquals(2L, thresholdHolder.getSnapshot().version());
+        assertEquals(85.0, thresholdHolder.find(hostname).orElseThrow().getUpperCpuThreshold());
+        assertTrue(thresholdHolder.find("other-host").isEmpty());
+    }
+
+    @Test
+    void updateThreshold_同時に更新しても最後に保存されるのは最新の版のしきい値() throws Exception {
+        // Arrange: 保存に時間がかかる状態で10スレッドから異なるしきい値に更新する
+        String hostname = "test-host";
+        List<ThresholdCsv> saved = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            Thread.sleep(5);
+            saved.add(invocation.getArgument(0));
+            return null;
+        }).when(thresholdRepository).save(any(ThresholdCsv.class));
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+
+        // Act
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                double upperCpuThreshold = 80.0 + i;
+                futures.add(executor.submit(() -> thresholdService.updateThreshold(hostname,
+                        threshold(hostname, upperCpuThreshold))));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        assertEquals(10, saved.size());
+        assertEquals(10L, thresholdHolder.getSnapshot().version());
+        assertSame(thresholdHolder.find(hostname).orElseThrow(), saved.get(saved.size() - 1));
+    }
+
+    private static Threshold threshold(String hostname, double upperCpuThreshold) {
+        return new Threshold(
                 hostname,
                 ScalingMode.AUTO,
                 true, // upperChangeableEnable
-                90.0, // upperCpuThreshold
+                upperCpuThreshold, // upperCpuThreshold
                 5, // upperCpuDurationMin
                 80.0, // upperMemThreshold
                 5, // upperMemDurationMin
@@ -50,16 +131,5 @@ class ThresholdServiceTest {
                 true, // microChangeableEnable
                 false // microForceOnStandby
         );
-
-        thresholdService.updateThreshold(hostname, threshold);
-
-        ArgumentCaptor<ThresholdCsv> captor = ArgumentCaptor.forClass(ThresholdCsv.class);
-        verify(thresholdRepository).save(captor.capture());
-
-        ThresholdCsv savedInfo = captor.getValue();
-        assertEquals(hostname, savedInfo.getHostname());
-        assertEquals(ScalingMode.AUTO, savedInfo.getScalingMode());
-        assertEquals(90.0, savedInfo.getUpperCpuThreshold());
-        assertEquals(20.0, savedInfo.getLowerCpuThreshold());
     }
 }
@@ -1,8 +1,10 @@
 package com.example.jsonsender.tcp;
 
 import com.example.jsoncommon.dto.NoticeType;
+import com.example.jsoncommon.dto.SlotJson;
 import com.example.jsoncommon.dto.Threshold;
 import com.example.jsoncommon.dto.ThresholdJson;
+import com.example.jsonsender.MetricsPipeline;
 import com.example.jsonsender.service.ThresholdService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,6 +15,7 @@ import org.springframework.boot.test.system.CapturedOutput;
 import org.springframework.boot.test.system.OutputCaptureExtension;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith({ MockitoExtension.class, OutputCaptureExtension.class })
@@ -45,4 +48,19 @@ class JsonSenderMessageHandlerTest {
 
         verify(thresholdService).updateThreshold("test-instance", threshold);
     }
+
+    @Test
+    void handleMessage_送信スロット通知をパイプラインに反映する() {
+        // Arrange
+        MetricsPipeline metricsPipeline = mock(MetricsPipeline.class);
+        messageHandler.setMetricsPipeline(metricsPipeline);
+        SlotJson message = new SlotJson(5, 16);
+        message.setInstanceName("test-instance");
+
+        // Act
+        messageHandler.handleMessage(message);
+
+        // Assert
+        verify(metricsPipeline).assignSlot(5, 16);
+    }
 }